@@ -12,10 +12,8 @@ import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -30,10 +28,12 @@ import com.google.common.cache.LoadingCache;
 import io.bdeploy.bhive.BHiveTransactions.Transaction;
 import io.bdeploy.bhive.audit.AuditParameterExtractor;
 import io.bdeploy.bhive.objects.AugmentedObjectDatabase;
+import io.bdeploy.bhive.objects.EventLogDatabase;
 import io.bdeploy.bhive.objects.ManifestDatabase;
 import io.bdeploy.bhive.objects.ObjectDatabase;
 import io.bdeploy.bhive.objects.ObjectManager;
 import io.bdeploy.bhive.objects.ReadOnlyObjectDatabase;
+import io.bdeploy.bhive.objects.ReferenceJournal;
 import io.bdeploy.bhive.remote.RemoteBHive;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.ActivityReporter.Activity;
@@ -45,7 +45,6 @@ import io.bdeploy.common.metrics.Metrics;
 import io.bdeploy.common.metrics.Metrics.MetricGroup;
 import io.bdeploy.common.util.ExceptionHelper;
 import io.bdeploy.common.util.FutureHelper;
-import io.bdeploy.common.util.NamedDaemonThreadFactory;
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.common.util.RuntimeAssert;
 import io.bdeploy.common.util.Threads;
@@ -70,12 +69,15 @@ public class BHive implements AutoCloseable, BHiveExecution {
     private final Path markerTmp;
     private final BHiveTransactions transactions;
     private final ManifestDatabase manifests;
+    private final ReferenceJournal references;
+    private final EventLogDatabase events;
     private final ActivityReporter reporter;
     private final Auditor auditor;
+    private final FileOperationPool fileOps;
+    private final ObjectManager.Caches objectCaches = new ObjectManager.Caches();
 
     private Predicate<String> lockContentValidator = null;
     private Supplier<String> lockContentSupplier = null;
-    private int parallelism = 4;
     private boolean auditSlowOps = true;
     private boolean isPooling = false;
     private ObjectDatabase objects;
@@ -120,6 +122,7 @@ public class BHive implements AutoCloseable, BHiveExecution {
         Path objRoot = relRoot.resolve("objects");
         this.auditor = auditor == null ? new NullAuditor() : auditor;
         this.transactions = new BHiveTransactions(this, markerTmp, reporter);
+        this.fileOps = new FileOperationPool(transactions, 4);
         if (zipFs != null) {
             this.objects = new ObjectDatabase(objRoot, objTmp, reporter, transactions);
         } else {
@@ -134,6 +137,8 @@ public class BHive implements AutoCloseable, BHiveExecution {
             }
         }
         this.manifests = new ManifestDatabase(relRoot.resolve("manifests"));
+        this.references = zipFs == null ? new ReferenceJournal(relRoot.resolve("gc")) : null;
+        this.events = zipFs == null ? new EventLogDatabase(relRoot.resolve("events")) : null;
         this.reporter = reporter;
     }
 
@@ -226,7 +231,25 @@ public class BHive implements AutoCloseable, BHiveExecution {
      * Set the amount of threads to use for parallel-capable file operations.
      */
     public void setParallelism(int parallelism) {
-        this.parallelism = parallelism;
+        this.fileOps.setParallelism(parallelism);
+    }
+
+    /**
+     * Set the minimum size of objects which are stored as content defined chunks, 0 to disable chunking.
+     *
+     * @see ObjectDatabase#setChunkThreshold(long)
+     */
+    public void setChunkThreshold(long threshold) {
+        this.objects.setChunkThreshold(threshold);
+    }
+
+    /**
+     * Set the ZLIB level used to compress objects at rest, 0 to store objects uncompressed.
+     *
+     * @see ObjectDatabase#setAtRestCompression(int)
+     */
+    public void setAtRestCompression(int level) {
+        this.objects.setAtRestCompression(level);
     }
 
     /**
@@ -363,8 +386,10 @@ public class BHive implements AutoCloseable, BHiveExecution {
             }
             PathHelper.deleteRecursiveRetry(objTmp);
         }
+        objects.close();
         manifests.close();
         auditor.close();
+        fileOps.close();
     }
 
     /**
@@ -373,7 +398,6 @@ public class BHive implements AutoCloseable, BHiveExecution {
      */
     public abstract static class Operation<T> implements Callable<T>, BHiveExecution {
 
-        private static final AtomicInteger fileOpNum = new AtomicInteger(0);
         private BHive hive;
         private ObjectManager mgr;
         private ExecutorService fileOps;
@@ -386,9 +410,8 @@ public class BHive implements AutoCloseable, BHiveExecution {
          */
         void initOperation(BHive hive) {
             this.hive = hive;
-            this.fileOps = Executors.newFixedThreadPool(hive.parallelism,
-                    new NamedDaemonThreadFactory(() -> "File-OPS-" + fileOpNum.incrementAndGet()));
-            this.mgr = new ObjectManager(hive.objects, hive.manifests, hive.reporter, fileOps);
+            this.fileOps = hive.fileOps.forOperation();
+            this.mgr = new ObjectManager(hive.objects, hive.manifests, hive.reporter, fileOps, hive.objectCaches);
         }
 
         /**
@@ -422,6 +445,22 @@ public class BHive implements AutoCloseable, BHiveExecution {
             return hive.markerTmp;
         }
 
+        /**
+         * @return the {@link ReferenceJournal} used for incremental garbage collection, <code>null</code> if not supported (e.g.
+         *         ZIP BHives).
+         */
+        protected ReferenceJournal getReferenceJournal() {
+            return hive.references;
+        }
+
+        /**
+         * @return the {@link EventLogDatabase} holding not yet compacted event logs, <code>null</code> if not supported (e.g.
+         *         ZIP BHives).
+         */
+        protected EventLogDatabase getEventLogDatabase() {
+            return hive.events;
+        }
+
         /**
          * @return the {@link ActivityReporter} to manage {@link Activity}s with.
          */
@@ -21,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import io.bdeploy.bhive.BHive.Operation;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.objects.ObjectDatabase;
+import io.bdeploy.bhive.objects.ObjectFile;
 import io.bdeploy.bhive.objects.ObjectReferenceDatabase;
 import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.op.ObjectListOperation;
@@ -189,14 +190,14 @@ public class BHivePoolOrganizer {
     private static void moveToPool(ObjectDatabase poolDb, ObjectId id, List<BHive> origins) {
         // try to find a valid file.
         for (BHive origin : origins) {
-            Path source = origin.execute(new InternalFindValidSourceOperation().setObjectId(id));
+            ObjectFile source = origin.execute(new InternalFindValidSourceOperation().setObjectId(id));
             if (source == null) {
                 continue;
             }
 
-            try {
+            try (ObjectFile file = source) {
                 // first copy to pool, then remove from origins
-                ObjectId calculated = poolDb.addObject(source);
+                ObjectId calculated = poolDb.addObject(file.getPath());
 
                 if (!id.equals(calculated)) {
                     // uh oh. this *should* never happen as we found a valid matching file in the origin.
@@ -274,12 +275,12 @@ public class BHivePoolOrganizer {
         hive.execute(new InternalCopyObjectsOperation().setTarget(target).setObjectIds(reqObjects));
     }
 
-    private static final class InternalFindValidSourceOperation extends Operation<Path> {
+    private static final class InternalFindValidSourceOperation extends Operation<ObjectFile> {
 
         private ObjectId oid;
 
         @Override
-        public Path call() {
+        public ObjectFile call() {
             if (oid == null) {
                 throw new IllegalArgumentException("oid must be set");
             }
@@ -289,7 +290,7 @@ public class BHivePoolOrganizer {
                 return null;
             }
 
-            return getObjectManager().db(db -> db.getObjectFile(oid));
+            return getObjectManager().db(db -> db.openObjectFile(oid));
         }
 
         public InternalFindValidSourceOperation setObjectId(ObjectId id) {
@@ -344,7 +345,9 @@ public class BHivePoolOrganizer {
             getObjectManager().db(db -> {
                 oid.forEach(o -> ops.add(submitFileOperation(() -> {
                     try {
-                        target.addObject(db.getObjectFile(o));
+                        try (ObjectFile file = db.openObjectFile(o)) {
+                            target.addObject(file.getPath());
+                        }
                     } catch (Exception e) {
                         throw new IllegalStateException("Cannot copy object " + o, e);
                     }
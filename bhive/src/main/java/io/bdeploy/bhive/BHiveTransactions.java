@@ -3,6 +3,8 @@ package io.bdeploy.bhive;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -33,9 +35,13 @@ public class BHiveTransactions {
     private static final Logger log = LoggerFactory.getLogger(BHiveTransactions.class);
     private static final String TX_PID_FILE = "tx.pid";
 
+    /** Shared transactions which are not used for this long are considered abandoned, see {@link #beginShared(String)}. */
+    private static final long SHARED_TX_EXPIRY_MILLIS = Duration.ofHours(1).toMillis();
+
     private final ThreadLocal<Boolean> detachedTransactions = ThreadLocal.withInitial(() -> false);
     private final InheritableThreadLocal<Stack<String>> transactions = new InheritableThreadLocal<>();
     private final Map<String, MarkerDatabase> dbs = new ConcurrentHashMap<>();
+    private final Map<String, SharedTransaction> shared = new ConcurrentHashMap<>();
     private final BHive hive;
     private final ActivityReporter reporter;
     private final Path markerRoot;
@@ -54,6 +60,43 @@ public class BHiveTransactions {
         transactions.remove();
     }
 
+    /**
+     * @return the transactions of the current thread, which can be continued on another thread using
+     *         {@link #runAttached(Stack, Runnable)}.
+     */
+    Stack<String> getCurrentTransactions() {
+        return transactions.get();
+    }
+
+    /**
+     * Runs the given task with the given transactions, just as if the current thread had been started by the thread owning the
+     * transactions and inherited them. Afterwards the transactions previously associated with the current thread are restored.
+     * <p>
+     * This is required for pooled threads, which are not started by the thread submitting a task.
+     */
+    void runAttached(Stack<String> stack, Runnable task) {
+        Stack<String> previous = transactions.get();
+        boolean previousDetached = detachedTransactions.get();
+
+        if (stack == null) {
+            transactions.remove();
+        } else {
+            transactions.set(stack);
+        }
+        detachedTransactions.set(false);
+
+        try {
+            task.run();
+        } finally {
+            if (previous == null) {
+                transactions.remove();
+            } else {
+                transactions.set(previous);
+            }
+            detachedTransactions.set(previousDetached);
+        }
+    }
+
     private Stack<String> getOrCreate() {
         Stack<String> result = transactions.get();
         if (result == null) {
@@ -110,10 +153,107 @@ public class BHiveTransactions {
      * @return a {@link Transaction} which will cleanup associated resources when closed.
      */
     public Transaction begin() {
+        String txid = open();
+        getOrCreate().push(txid);
+
+        if (log.isTraceEnabled()) {
+            log.trace("Starting transaction {}, current stack: {}", txid, transactions.get(),
+                    new RuntimeException("Starting Transaction"));
+        }
+
+        return () -> {
+            detach(txid);
+            end(txid);
+        };
+    }
+
+    /**
+     * Begins or continues the transaction shared by all callers using the same key, e.g. all streams of a single push, which
+     * may run in parallel or one after each other.
+     * <p>
+     * Objects inserted while any caller is associated with the shared transaction stay protected after closing the returned
+     * {@link Transaction}, until the shared transaction is released using {@link #releaseShared(String)}. Shared transactions
+     * which are not used for an hour are considered abandoned and are released automatically.
+     *
+     * @param key the key identifying the shared transaction.
+     * @return a {@link Transaction} which detaches the current thread from the shared transaction when closed.
+     */
+    public Transaction beginShared(String key) {
+        expireShared();
+
+        SharedTransaction tx;
+        synchronized (shared) {
+            tx = shared.computeIfAbsent(key, k -> new SharedTransaction(open()));
+            tx.users++;
+            tx.lastUse = System.currentTimeMillis();
+        }
+        getOrCreate().push(tx.txid);
+
+        if (log.isTraceEnabled()) {
+            log.trace("Continuing shared transaction {} ({}), current stack: {}", tx.txid, key, transactions.get());
+        }
+
+        return () -> {
+            detach(tx.txid);
+
+            synchronized (shared) {
+                tx.users--;
+                tx.lastUse = System.currentTimeMillis();
+                if (!tx.released || tx.users > 0) {
+                    return;
+                }
+            }
+            end(tx.txid);
+        };
+    }
+
+    /**
+     * Releases the shared transaction with the given key, see {@link #beginShared(String)}. In case callers are still
+     * associated with the transaction, it ends once the last one is detached.
+     *
+     * @param key the key identifying the shared transaction.
+     */
+    public void releaseShared(String key) {
+        SharedTransaction tx;
+        synchronized (shared) {
+            tx = shared.remove(key);
+            if (tx == null) {
+                return;
+            }
+            tx.released = true;
+            if (tx.users > 0) {
+                return;
+            }
+        }
+        end(tx.txid);
+    }
+
+    private void expireShared() {
+        long expired = System.currentTimeMillis() - SHARED_TX_EXPIRY_MILLIS;
+        List<String> abandoned = new ArrayList<>();
+        synchronized (shared) {
+            shared.forEach((key, tx) -> {
+                if (tx.users == 0 && tx.lastUse < expired) {
+                    abandoned.add(key);
+                }
+            });
+        }
+
+        for (String key : abandoned) {
+            log.warn("Releasing abandoned shared transaction {}", key);
+            releaseShared(key);
+        }
+    }
+
+    /**
+     * Creates the marker database of a new transaction.
+     *
+     * @return the id of the transaction.
+     */
+    private String open() {
         hive.execute(new DirectoryAwaitOperation().setDirectory(markerRoot));
 
         String txid = UuidHelper.randomId();
-        getOrCreate().push(txid);
         Path mdbPath = markerRoot.resolve(txid);
         dbs.put(txid, new MarkerDatabase(mdbPath, reporter));
 
@@ -128,52 +268,60 @@ public class BHiveTransactions {
             }
         }
 
-        if (log.isTraceEnabled()) {
-            log.trace("Starting transaction {}, current stack: {}", txid, transactions.get(),
-                    new RuntimeException("Starting Transaction"));
-        }
+        return txid;
+    }
 
-        return () -> {
-            hive.execute(new DirectoryAwaitOperation().setDirectory(markerRoot));
+    /**
+     * Removes the given transaction from the transactions of the current thread.
+     */
+    private void detach(String txid) {
+        hive.execute(new DirectoryAwaitOperation().setDirectory(markerRoot));
 
-            Stack<String> stack = transactions.get();
-            if (stack == null || stack.isEmpty()) {
-                throw new IllegalStateException("No transaction has been started on this thread!");
-            }
+        Stack<String> stack = transactions.get();
+        if (stack == null || stack.isEmpty()) {
+            throw new IllegalStateException("No transaction has been started on this thread!");
+        }
 
-            String top = stack.peek();
-            if (!top.equals(txid)) {
-                log.warn("Out-of-order transaction found: {}, expected: {}", top, txid);
-            }
+        String top = stack.peek();
+        if (!top.equals(txid)) {
+            log.warn("Out-of-order transaction found: {}, expected: {}", top, txid);
+        }
 
-            if (log.isTraceEnabled()) {
-                log.trace("Ending transaction {}", txid, new RuntimeException("Ending Transaction"));
-            }
+        stack.remove(txid);
+        if (stack.isEmpty()) {
+            transactions.remove();
+        }
+    }
 
-            stack.remove(txid);
-            dbs.remove(txid);
+    /**
+     * Ends the given transaction, removing its marker database. Objects inserted in the transaction are no longer protected.
+     */
+    private void end(String txid) {
+        if (log.isTraceEnabled()) {
+            log.trace("Ending transaction {}", txid, new RuntimeException("Ending Transaction"));
+        }
 
-            if (stack.isEmpty()) {
-                transactions.remove();
-            }
+        MarkerDatabase txdb = dbs.remove(txid);
+        if (txdb != null) {
+            txdb.close();
+        }
 
-            Path mdb = mdbPath;
-            if (!Files.isDirectory(mdb)) {
-                return; // nothing to clean.
-            }
+        Path mdb = markerRoot.resolve(txid);
+        if (!Files.isDirectory(mdb)) {
+            return; // nothing to clean.
+        }
 
-            // any exception in here will simply disappear into nirvana, as we're calling
-            // in here from a try-with-resources. In case no other exception happens, this
-            // will simply be ignored - so at least log it.
-            try {
-                if (log.isTraceEnabled()) {
-                    log.trace("Removing transaction DB {}", txid);
-                }
-                PathHelper.deleteRecursiveRetry(mdb);
-            } catch (Exception e) {
-                log.warn("Cannot remove transaction {}", txid, e);
+        // any exception in here will simply disappear into nirvana, as we're calling
+        // in here from a try-with-resources. In case no other exception happens, this
+        // will simply be ignored - so at least log it.
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace("Removing transaction DB {}", txid);
             }
-        };
+            PathHelper.deleteRecursiveRetry(mdb);
+        } catch (Exception e) {
+            log.warn("Cannot remove transaction {}", txid, e);
+        }
     }
 
     /**
@@ -227,6 +375,21 @@ public class BHiveTransactions {
         return amount.sum();
     }
 
+    /**
+     * A transaction which is shared by multiple callers, see {@link #beginShared(String)}.
+     */
+    private static final class SharedTransaction {
+
+        private final String txid;
+        private int users;
+        private long lastUse;
+        private boolean released;
+
+        private SharedTransaction(String txid) {
+            this.txid = txid;
+        }
+    }
+
     /**
      * Represents a writing transaction in the BHive.
      */
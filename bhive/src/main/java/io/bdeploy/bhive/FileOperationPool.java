@@ -0,0 +1,157 @@
+package io.bdeploy.bhive;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+
+/**
+ * The threads performing parallel-capable file operations of all {@link BHive.Operation}s on a single {@link BHive}.
+ * <p>
+ * Operations are nested frequently (e.g. an import inserts a manifest, which in turn loads other manifests), and a task may
+ * execute operations itself. Tasks submitted from a thread of this pool run directly on the submitting thread, so a task never
+ * waits for other tasks queued behind it, and the amount of threads can be bounded safely. Idle threads are stopped after a
+ * while, so idle {@link BHive}s do not keep any threads.
+ * <p>
+ * Tasks run with the transactions of the thread submitting them, just like threads started by the submitting thread would.
+ */
+final class FileOperationPool {
+
+    private static final AtomicInteger poolNum = new AtomicInteger(0);
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadLocal<Boolean> worker = new ThreadLocal<>();
+    private final BHiveTransactions transactions;
+    private final ThreadPoolExecutor executor;
+
+    FileOperationPool(BHiveTransactions transactions, int parallelism) {
+        this.transactions = transactions;
+
+        int pool = poolNum.incrementAndGet();
+        AtomicInteger threadNum = new AtomicInteger(0);
+        ThreadFactory factory = new NamedDaemonThreadFactory(() -> "File-OPS-" + pool + "-" + threadNum.incrementAndGet());
+
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> factory.newThread(() -> {
+                    // never keep the transactions inherited from whichever thread happened to start this one.
+                    transactions.detachThread();
+                    worker.set(Boolean.TRUE);
+                    r.run();
+                }));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param parallelism the maximum amount of threads to use.
+     */
+    synchronized void setParallelism(int parallelism) {
+        // the core size may never exceed the maximum size, so the order matters.
+        if (parallelism > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(parallelism);
+            executor.setCorePoolSize(parallelism);
+        } else {
+            executor.setCorePoolSize(parallelism);
+            executor.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    /**
+     * @return an {@link ExecutorService} for a single operation, which can be shut down without affecting other operations.
+     */
+    ExecutorService forOperation() {
+        return new OperationExecutor();
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submits to the pool, keeping track of the tasks of a single operation. Shutting it down cancels all pending tasks of the
+     * operation.
+     */
+    private final class OperationExecutor extends AbstractExecutorService {
+
+        private final Set<Runnable> pending = ConcurrentHashMap.newKeySet();
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Operation has already finished");
+            }
+
+            if (Boolean.TRUE.equals(worker.get())) {
+                // nested submission, never wait for another thread of the pool.
+                command.run();
+                return;
+            }
+
+            Stack<String> submitter = transactions.getCurrentTransactions();
+            pending.add(command);
+            try {
+                executor.execute(() -> {
+                    try {
+                        transactions.runAttached(submitter, command);
+                    } finally {
+                        pending.remove(command);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.remove(command);
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            for (Runnable command : pending) {
+                if (command instanceof Future) {
+                    ((Future<?>) command).cancel(true);
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && pending.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            return true;
+        }
+    }
+
+}
@@ -27,6 +27,18 @@ public class AuditParameterExtractor {
 
     private static final Logger log = LoggerFactory.getLogger(AuditParameterExtractor.class);
 
+    /**
+     * The audited fields per {@link Operation} class. Determined once per class, as each audited operation would otherwise
+     * scan all fields and annotations using reflection over and over again.
+     */
+    private static final ClassValue<List<AuditedField>> auditedFields = new ClassValue<>() {
+
+        @Override
+        protected List<AuditedField> computeValue(Class<?> type) {
+            return findAuditedFields(type);
+        }
+    };
+
     /**
      * Prevents auditing of the given Field.
      */
@@ -89,9 +101,25 @@ public class AuditParameterExtractor {
      * @see NoAudit
      */
     public Map<String, String> extract(BHive.Operation<?> op) {
-        Class<?> clazz = op.getClass();
         Map<String, String> result = new TreeMap<>();
 
+        for (AuditedField audited : auditedFields.get(op.getClass())) {
+            try {
+                Object fieldValue = audited.field.get(op);
+                if (fieldValue != null) {
+                    result.put(audited.field.getName(), audited.converter.apply(fieldValue));
+                }
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                log.debug("Cannot read value of {}", audited.field, e);
+            }
+        }
+
+        return result;
+    }
+
+    private static List<AuditedField> findAuditedFields(Class<?> clazz) {
+        List<AuditedField> result = new ArrayList<>();
+
         for (Field field : clazz.getDeclaredFields()) {
             AuditParameterExtractor.NoAudit na = field.getAnnotation(AuditParameterExtractor.NoAudit.class);
             if (na != null || Modifier.isStatic(field.getModifiers())) {
@@ -107,20 +135,25 @@ public class AuditParameterExtractor {
                 strategy = with.value();
             }
 
-            Function<Object, String> converter = strategy.converter;
-
             field.setAccessible(true);
-            try {
-                Object fieldValue = field.get(op);
-                if (fieldValue != null) {
-                    result.put(field.getName(), converter.apply(fieldValue));
-                }
-            } catch (IllegalArgumentException | IllegalAccessException e) {
-                log.debug("Cannot read value of {}", field, e);
-            }
+            result.add(new AuditedField(field, strategy.converter));
         }
 
         return result;
     }
 
+    /**
+     * A field of an {@link Operation} which is audited, along with the converter of the chosen {@link AuditStrategy}.
+     */
+    private static final class AuditedField {
+
+        private final Field field;
+        private final Function<Object, String> converter;
+
+        private AuditedField(Field field, Function<Object, String> converter) {
+            this.field = field;
+            this.converter = converter;
+        }
+    }
+
 }
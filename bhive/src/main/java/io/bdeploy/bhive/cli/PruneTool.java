@@ -9,6 +9,7 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.cli.PruneTool.PruneConfig;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.op.PruneOperation;
+import io.bdeploy.bhive.op.RepackOperation;
 import io.bdeploy.common.cfg.Configuration.EnvironmentFallback;
 import io.bdeploy.common.cfg.Configuration.Help;
 import io.bdeploy.common.cfg.Configuration.Validator;
@@ -39,6 +40,13 @@ public class PruneTool extends ConfiguredCliTool<PruneConfig> {
 
         @Help(value = "List details about removed objects", arg = false)
         boolean verbose() default false;
+
+        @Help(value = "Compact remaining small loose objects into a pack file after pruning", arg = false)
+        boolean repack() default false;
+
+        @Help(value = "Only check objects of manifests deleted since the last prune. Falls back to a full sweep if required.",
+              arg = false)
+        boolean incremental() default false;
     }
 
     public PruneTool() {
@@ -52,7 +60,7 @@ public class PruneTool extends ConfiguredCliTool<PruneConfig> {
         Path path = Paths.get(config.hive());
 
         try (BHive hive = new BHive(path.toUri(), getAuditorFactory().apply(path), getActivityReporter())) {
-            SortedMap<ObjectId, Long> result = hive.execute(new PruneOperation());
+            SortedMap<ObjectId, Long> result = hive.execute(new PruneOperation().setIncremental(config.incremental()));
 
             DataResult r = createSuccess();
             if (config.verbose()) {
@@ -62,6 +70,10 @@ public class PruneTool extends ConfiguredCliTool<PruneConfig> {
             r.addField("Sum Objects Removed", Integer.toString(result.size()));
             r.addField("Sum Bytes Freed", FormatHelper.formatFileSize(sum));
 
+            if (config.repack()) {
+                r.addField("Objects Packed", Long.toString(hive.execute(new RepackOperation())));
+            }
+
             return r;
         }
     }
@@ -0,0 +1,332 @@
+package io.bdeploy.bhive.meta;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.BHiveExecution;
+import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.model.Tree.EntryType;
+import io.bdeploy.bhive.objects.EventLogDatabase;
+import io.bdeploy.bhive.objects.EventLogDatabase.Record;
+import io.bdeploy.bhive.op.EventLogAppendOperation;
+import io.bdeploy.bhive.op.EventLogDeleteOperation;
+import io.bdeploy.bhive.op.EventLogReadOperation;
+import io.bdeploy.bhive.op.EventLogRemoveOperation;
+import io.bdeploy.bhive.op.ImportObjectOperation;
+import io.bdeploy.bhive.op.InsertArtificialTreeOperation;
+import io.bdeploy.bhive.op.InsertManifestOperation;
+import io.bdeploy.bhive.op.ManifestDeleteOldByIdOperation;
+import io.bdeploy.bhive.op.ManifestLoadOperation;
+import io.bdeploy.bhive.op.ManifestMaxIdOperation;
+import io.bdeploy.bhive.op.ObjectLoadOperation;
+import io.bdeploy.bhive.op.TreeLoadOperation;
+import io.bdeploy.bhive.util.StorageHelper;
+
+/**
+ * A {@link MetaEventLog} allows to record an ever growing list of records (events) associated with a given {@link Manifest}.
+ * <p>
+ * Unlike a {@link MetaManifest}, recording an event does not rewrite all previously recorded events. Events are appended to a
+ * local {@link EventLogDatabase} first. Once enough events are pending, they are compacted into an immutable segment in the
+ * {@link Manifest} tree of the log. Each segment is named after its id and the time range it covers, which allows to read only
+ * the segments required to satisfy a query, see {@link #read(BHiveExecution, long, int)}.
+ * <p>
+ * {@link Manifest}s of a {@link MetaEventLog} are named like those of a {@link MetaManifest}, thus they share the same
+ * lifecycle.
+ */
+public class MetaEventLog<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaEventLog.class);
+
+    private static final String LOG_SUFFIX = ".log";
+
+    private final String metaName;
+    private final Class<T> recordClazz;
+    private final int compactThreshold;
+
+    /**
+     * Create a {@link MetaEventLog} for the given {@link Manifest.Key}.
+     *
+     * @param parent the parent {@link Manifest}s key.
+     * @param useParentTag whether the log is tag specific or valid for any tag of the given {@link Manifest}, see
+     *            {@link MetaManifest#MetaManifest(Manifest.Key, boolean, Class)}.
+     * @param recordClazz the {@link Class} of the records to store. This {@link Class} must be serializable by the
+     *            {@link StorageHelper}.
+     * @param compactThreshold the amount of pending records which triggers compaction into the BHive. Records which are not
+     *            compacted yet are only visible locally, thus use 1 for logs which need to be available to other parties
+     *            which synchronize {@link Manifest}s right away.
+     */
+    public MetaEventLog(Manifest.Key parent, boolean useParentTag, Class<T> recordClazz, int compactThreshold) {
+        this.metaName = MetaManifest.META_PREFIX + parent.getName() + "/" + recordClazz.getSimpleName() + LOG_SUFFIX
+                + (useParentTag ? ("/" + parent.getTag()) : MetaManifest.META_DEFTAG);
+        this.recordClazz = recordClazz;
+        this.compactThreshold = Math.max(1, compactThreshold);
+    }
+
+    /**
+     * Appends a record to the log.
+     *
+     * @param target the target {@link BHiveExecution}
+     * @param timestamp the timestamp of the record, used to look up records by time.
+     * @param rec the record to append.
+     */
+    public void append(BHiveExecution target, long timestamp, T rec) {
+        byte[] data = StorageHelper.toRawBytes(rec);
+        int pending = target.execute(new EventLogAppendOperation().setLogName(metaName).setRecord(timestamp, data));
+
+        if (pending < 0) {
+            // no local event log available, store a segment with just this record right away.
+            synchronized (target.getSynchronizationObject(metaName)) {
+                SortedMap<Long, Segment> existing = getSegments(target);
+                long segmentId = Math.max(System.currentTimeMillis(), existing.isEmpty() ? 0 : existing.lastKey() + 1);
+
+                SortedMap<Long, List<Record>> segment = new TreeMap<>();
+                segment.put(segmentId, Collections.singletonList(new Record(timestamp, data)));
+                store(target, segment);
+            }
+        } else if (pending >= compactThreshold) {
+            compact(target);
+        }
+    }
+
+    /**
+     * Moves all pending records from the local event log into the BHive.
+     *
+     * @param target the target {@link BHiveExecution}
+     */
+    public void compact(BHiveExecution target) {
+        synchronized (target.getSynchronizationObject(metaName)) {
+            SortedMap<Long, List<Record>> local = target.execute(new EventLogReadOperation().setLogName(metaName).setSeal(true));
+            if (local.isEmpty()) {
+                return;
+            }
+
+            // the segments remain in the local log until they are safely stored. already stored ones are skipped.
+            store(target, local);
+            target.execute(new EventLogRemoveOperation().setLogName(metaName).addSegments(local.keySet()));
+        }
+    }
+
+    /**
+     * @param source the source {@link BHiveExecution}
+     * @return all records of the log, oldest first.
+     */
+    public List<T> read(BHiveExecution source) {
+        List<T> result = new ArrayList<>();
+        for (Segment segment : getSegments(source).values()) {
+            for (Record rec : segment.load(source)) {
+                result.add(StorageHelper.fromRawBytes(rec.getData(), recordClazz));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the most recent records before a given point in time. Only segments which can contain matching records are read.
+     *
+     * @param source the source {@link BHiveExecution}
+     * @param before only records with a timestamp before the given timestamp are returned.
+     * @param max the maximum amount of records to return.
+     * @return the matching records, newest first.
+     */
+    public List<T> read(BHiveExecution source, long before, int max) {
+        List<T> result = new ArrayList<>();
+        List<Segment> segments = new ArrayList<>(getSegments(source).values());
+        Collections.reverse(segments);
+        for (Segment segment : segments) {
+            if (result.size() >= max) {
+                break;
+            }
+            if (segment.first >= before) {
+                continue;
+            }
+
+            List<Record> records = new ArrayList<>(segment.load(source));
+            Collections.reverse(records);
+            for (Record rec : records) {
+                if (rec.getTimestamp() < before && result.size() < max) {
+                    result.add(StorageHelper.fromRawBytes(rec.getData(), recordClazz));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return all segments of the log, compacted and local ones, ordered by their id.
+     */
+    private SortedMap<Long, Segment> getSegments(BHiveExecution source) {
+        SortedMap<Long, Segment> result = new TreeMap<>();
+        Tree tree = loadTree(source);
+        if (tree != null) {
+            for (Map.Entry<Tree.Key, ObjectId> entry : tree.getChildren().entrySet()) {
+                Segment segment = Segment.parse(entry.getKey().getName(), entry.getValue());
+                if (segment != null) {
+                    result.put(segment.id, segment);
+                }
+            }
+        }
+
+        SortedMap<Long, List<Record>> local = source.execute(new EventLogReadOperation().setLogName(metaName));
+        for (Map.Entry<Long, List<Record>> entry : local.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                // segments which are both compacted and local are about to be removed locally.
+                result.putIfAbsent(entry.getKey(), new Segment(entry.getKey(), entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private Tree loadTree(BHiveExecution source) {
+        Manifest mf = null;
+        int retries = 0;
+
+        while (mf == null && retries++ < 10) {
+            Optional<Long> id = source.execute(new ManifestMaxIdOperation().setManifestName(metaName));
+            if (!id.isPresent()) {
+                return null;
+            }
+
+            mf = source.execute(new ManifestLoadOperation().setManifest(new Manifest.Key(metaName, id.get().toString()))
+                    .setNullOnError(true));
+        }
+
+        if (mf == null) {
+            throw new IllegalStateException("Could not load " + metaName + ", retries exceeded");
+        }
+
+        return source.execute(new TreeLoadOperation().setTree(mf.getRoot()));
+    }
+
+    /**
+     * Stores the given segments in a new version of the log {@link Manifest}. Segments which are present already are skipped.
+     */
+    private void store(BHiveExecution target, SortedMap<Long, List<Record>> segments) {
+        Tree oldTree = loadTree(target);
+        SortedMap<Long, Segment> existing = new TreeMap<>();
+        Tree.Builder newTree = new Tree.Builder();
+        if (oldTree != null) {
+            for (Map.Entry<Tree.Key, ObjectId> entry : oldTree.getChildren().entrySet()) {
+                Segment segment = Segment.parse(entry.getKey().getName(), entry.getValue());
+                if (segment != null) {
+                    existing.put(segment.id, segment);
+                }
+                newTree.add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Optional<Long> id = target.execute(new ManifestMaxIdOperation().setManifestName(metaName));
+        Manifest.Key targetKey = new Manifest.Key(metaName, Long.toString(id.isPresent() ? id.get() + 1 : 1));
+
+        try (Transaction t = target.getTransactions().begin()) {
+            boolean changed = false;
+            for (Map.Entry<Long, List<Record>> entry : segments.entrySet()) {
+                List<Record> records = entry.getValue();
+                if (records.isEmpty() || existing.containsKey(entry.getKey())) {
+                    continue;
+                }
+
+                ObjectId oid = target.execute(new ImportObjectOperation().setData(EventLogDatabase.toBytes(records)));
+                Segment segment = new Segment(entry.getKey(), records);
+                newTree.add(new Tree.Key(segment.getName(), EntryType.BLOB), oid);
+                changed = true;
+            }
+
+            if (!changed) {
+                return;
+            }
+
+            ObjectId newTreeId = target.execute(new InsertArtificialTreeOperation().setTree(newTree));
+            target.execute(
+                    new InsertManifestOperation().addManifest(new Manifest.Builder(targetKey).setRoot(newTreeId).build(target)));
+        }
+
+        target.execute(new ManifestDeleteOldByIdOperation().setAmountToKeep(MetaManifest.META_HIST_SIZE).setToDelete(metaName));
+    }
+
+    public String getMetaName() {
+        return metaName;
+    }
+
+    /**
+     * Removes the local event logs of all {@link Manifest}s with the given name or below, including records which have not been
+     * compacted yet. Compacted segments are removed along with their {@link Manifest}s, like any other meta data.
+     *
+     * @param target the target {@link BHiveExecution}
+     * @param name the name of the parent {@link Manifest}s, or a common prefix of their names which ends at a '/'.
+     */
+    public static void deleteLocal(BHiveExecution target, String name) {
+        target.execute(new EventLogDeleteOperation().setLogDirectory(MetaManifest.META_PREFIX + name));
+    }
+
+    /**
+     * A segment of the log, either compacted into the BHive or still pending locally.
+     */
+    private static final class Segment {
+
+        private final long id;
+        private final long first;
+        private final ObjectId object;
+        private final List<Record> records;
+        private final long last;
+
+        private Segment(long id, List<Record> records) {
+            this.id = id;
+            this.object = null;
+            this.records = records;
+            this.first = records.stream().mapToLong(Record::getTimestamp).min().orElse(0);
+            this.last = records.stream().mapToLong(Record::getTimestamp).max().orElse(0);
+        }
+
+        private Segment(long id, long first, long last, ObjectId object) {
+            this.id = id;
+            this.first = first;
+            this.last = last;
+            this.object = object;
+            this.records = null;
+        }
+
+        /**
+         * @return the segment described by the given tree entry name, <code>null</code> if the name is not a segment name.
+         */
+        static Segment parse(String name, ObjectId object) {
+            String[] parts = name.split("-");
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]), object);
+            } catch (NumberFormatException e) {
+                log.debug("Unexpected segment name: {}", name, e);
+                return null;
+            }
+        }
+
+        String getName() {
+            return id + "-" + first + "-" + last;
+        }
+
+        List<Record> load(BHiveExecution source) {
+            if (records != null) {
+                return records;
+            }
+            try (InputStream is = source.execute(new ObjectLoadOperation().setObject(object))) {
+                return EventLogDatabase.fromStream(is);
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot load event log segment " + getName(), e);
+            }
+        }
+    }
+
+}
@@ -41,7 +41,7 @@ public class MetaManifest<T> {
 
     public static final String META_PREFIX = "._meta/";
     public static final int META_HIST_SIZE = 2;
-    private static final String META_DEFTAG = "/._meta";
+    static final String META_DEFTAG = "/._meta";
 
     private final Key parent;
     private final String metaName;
@@ -12,39 +12,108 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.regex.Pattern;
-
-import javax.annotation.Generated;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
-import io.bdeploy.common.util.Hex;
 
 /**
  * Uniquely identifies a certain object. That is (typically) the content of an
  * arbitrary file which has been imported into the hive or a {@link Tree}.
+ * <p>
+ * The 20 byte SHA-1 checksum is kept in binary form (two longs and an int). The hexadecimal {@link String} representation is
+ * only calculated when required (on the wire and on disc), see {@link #getId()}.
  */
-public class ObjectId implements Serializable, Comparable<ObjectId> {
+public final class ObjectId implements Serializable, Comparable<ObjectId> {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private static final int BUFFER_SIZE = 8192;
-    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{40}");
+    private static final int HEX_LENGTH = 40;
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+    private static final Interner<ObjectId> INTERNER = Interners.newWeakInterner();
+
+    /**
+     * The length of the binary representation of an {@link ObjectId}.
+     */
+    public static final int LENGTH = 20;
 
-    private final String id;
+    private final long high;
+    private final long mid;
+    private final int low;
 
     /**
-     * Create an {@link ObjectId} from a pre-existing ID (e.g. stored on disc).
+     * Create an {@link ObjectId} from its binary representation.
      */
-    private ObjectId(String id) {
-        this.id = id;
+    ObjectId(long high, long mid, int low) {
+        this.high = high;
+        this.mid = mid;
+        this.low = low;
     }
 
     /**
      * @return the {@link String} representation of this ID.
      */
     public String getId() {
-        return id;
+        char[] chars = new char[HEX_LENGTH];
+        writeHex(high, chars, 0, 16);
+        writeHex(mid, chars, 16, 16);
+        writeHex(low & 0xFFFFFFFFL, chars, 32, 8);
+        return new String(chars);
+    }
+
+    private static void writeHex(long value, char[] target, int offset, int digits) {
+        for (int i = digits - 1; i >= 0; --i) {
+            target[offset + i] = HEX_CHARS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * @return the binary representation of this ID.
+     */
+    public byte[] toBytes() {
+        byte[] result = new byte[LENGTH];
+        writeBytes(result, 0);
+        return result;
+    }
+
+    /**
+     * Writes the binary representation of this ID to the given array.
+     *
+     * @param target the target array, must have room for {@link #LENGTH} bytes at the given offset.
+     * @param offset the offset in the target array.
+     */
+    public void writeBytes(byte[] target, int offset) {
+        for (int i = 0; i < 8; ++i) {
+            target[offset + i] = (byte) (high >>> (56 - i * 8));
+            target[offset + 8 + i] = (byte) (mid >>> (56 - i * 8));
+        }
+        for (int i = 0; i < 4; ++i) {
+            target[offset + 16 + i] = (byte) (low >>> (24 - i * 8));
+        }
+    }
+
+    /**
+     * @return the first (most significant) eight bytes of the ID.
+     */
+    long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return the second eight bytes of the ID.
+     */
+    long getMid() {
+        return mid;
+    }
+
+    /**
+     * @return the last (least significant) four bytes of the ID.
+     */
+    int getLow() {
+        return low;
     }
 
     /**
@@ -57,11 +126,65 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
     @JsonCreator
     public static ObjectId parse(@JsonProperty("id") String id) {
         // sanity check if id is a valid ObjectId.
-        if (ID_PATTERN.matcher(id).matches()) {
-            return new ObjectId(id);
+        if (id == null || id.length() != HEX_LENGTH) {
+            return null;
         }
 
-        return null;
+        for (int i = 0; i < HEX_LENGTH; ++i) {
+            if (digit(id.charAt(i)) < 0) {
+                return null;
+            }
+        }
+
+        return new ObjectId(parseHex(id, 0, 16), parseHex(id, 16, 16), (int) parseHex(id, 32, 8));
+    }
+
+    private static long parseHex(String id, int offset, int digits) {
+        long result = 0;
+        for (int i = 0; i < digits; ++i) {
+            result = (result << 4) | digit(id.charAt(offset + i));
+        }
+        return result;
+    }
+
+    /**
+     * @return the value of the given lower-case hex digit, or -1 if it is not a valid digit.
+     */
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Create an {@link ObjectId} from its binary representation.
+     *
+     * @param bytes the array containing the binary representation
+     * @param offset the offset of the {@link #LENGTH} bytes in the array.
+     */
+    public static ObjectId fromBytes(byte[] bytes, int offset) {
+        long h = 0;
+        long m = 0;
+        int l = 0;
+        for (int i = 0; i < 8; ++i) {
+            h = (h << 8) | (bytes[offset + i] & 0xFF);
+            m = (m << 8) | (bytes[offset + 8 + i] & 0xFF);
+        }
+        for (int i = 0; i < 4; ++i) {
+            l = (l << 8) | (bytes[offset + 16 + i] & 0xFF);
+        }
+        return new ObjectId(h, m, l);
+    }
+
+    /**
+     * Returns a canonical instance for this {@link ObjectId}. Can be used for {@link ObjectId}s which are kept in memory
+     * for a longer time and are likely to be duplicated (e.g. entries in cached {@link Tree}s).
+     */
+    public ObjectId intern() {
+        return INTERNER.intern(this);
     }
 
     /**
@@ -70,7 +193,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
     public static ObjectId create(byte[] data, int offset, int len) {
         MessageDigest digest = createDigest();
         digest.update(data, offset, len);
-        return new ObjectId(Hex.bytesToHex(digest.digest()));
+        return fromBytes(digest.digest(), 0);
     }
 
     /**
@@ -95,7 +218,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
             // here. We can later on detect problems easily as long as the meta-data
             // is written sync (manifests, etc.).
         }
-        return new ObjectId(Hex.bytesToHex(digest.digest()));
+        return fromBytes(digest.digest(), 0);
     }
 
     /**
@@ -114,7 +237,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
             while ((read = source.read(buf)) > 0) {
                 digest.update(buf, 0, read);
             }
-            return new ObjectId(Hex.bytesToHex(digest.digest()));
+            return fromBytes(digest.digest(), 0);
         } catch (IOException e) {
             throw new IllegalStateException("Cannot calculate checksum of object from stream", e);
         }
@@ -122,7 +245,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
 
     @Override
     public String toString() {
-        return id;
+        return getId();
     }
 
     private static MessageDigest createDigest() {
@@ -135,39 +258,34 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
 
     @Override
     public int compareTo(ObjectId o) {
-        return id.compareTo(o.id);
+        // unsigned comparison yields the same order as comparing the hex representation.
+        int result = Long.compareUnsigned(high, o.high);
+        if (result != 0) {
+            return result;
+        }
+        result = Long.compareUnsigned(mid, o.mid);
+        if (result != 0) {
+            return result;
+        }
+        return Integer.compareUnsigned(low, o.low);
     }
 
-    @Generated("Eclipse")
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((id == null) ? 0 : id.hashCode());
-        return result;
+        // the content is a cryptographic hash, so any part of it is well distributed.
+        return (int) (high ^ (high >>> 32));
     }
 
-    @Generated("Eclipse")
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
             return true;
         }
-        if (obj == null) {
-            return false;
-        }
-        if (getClass() != obj.getClass()) {
+        if (!(obj instanceof ObjectId)) {
             return false;
         }
         ObjectId other = (ObjectId) obj;
-        if (id == null) {
-            if (other.id != null) {
-                return false;
-            }
-        } else if (!id.equals(other.id)) {
-            return false;
-        }
-        return true;
+        return high == other.high && mid == other.mid && low == other.low;
     }
 
 }
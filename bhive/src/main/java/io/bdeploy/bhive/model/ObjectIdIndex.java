@@ -0,0 +1,238 @@
+package io.bdeploy.bhive.model;
+
+import java.util.BitSet;
+
+/**
+ * The storage behind {@link ObjectIdSet} and {@link ObjectIdMap}.
+ * <p>
+ * {@link ObjectId}s are stored unboxed in dense, insertion ordered primitive arrays. An open addressing hash table (linear
+ * probing) of indices into those arrays allows lookup. Removal leaves a hole in the dense arrays and a tombstone in the hash
+ * table, both are compacted on the next re-hash.
+ */
+final class ObjectIdIndex {
+
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private final boolean withValues;
+
+    private long[] highs;
+    private long[] mids;
+    private int[] lows;
+    private Object[] values;
+    private final BitSet removed = new BitSet();
+
+    /** holds (dense index + 1), {@link #EMPTY} or {@link #TOMBSTONE} */
+    private int[] table;
+
+    private int size;
+    private int used;
+    private int tombstones;
+    private int modCount;
+
+    ObjectIdIndex(int expected, boolean withValues) {
+        this.withValues = withValues;
+        allocate(Math.max(MIN_CAPACITY, expected));
+        this.table = new int[tableCapacityFor(expected)];
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        mids = new long[capacity];
+        lows = new int[capacity];
+        values = withValues ? new Object[capacity] : null;
+    }
+
+    private static int tableCapacityFor(int entries) {
+        int cap = MIN_CAPACITY;
+        while (cap < (entries + 1) * 4) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    private static int hash(long high) {
+        // ObjectIds are cryptographic hashes, no need for further mixing.
+        return (int) (high ^ (high >>> 32));
+    }
+
+    private boolean matches(int index, ObjectId id) {
+        return highs[index] == id.getHigh() && mids[index] == id.getMid() && lows[index] == id.getLow();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the upper bound (exclusive) for dense indices, see {@link #isLive(int)}.
+     */
+    int used() {
+        return used;
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
+    boolean isLive(int index) {
+        return index < used && !removed.get(index);
+    }
+
+    ObjectId get(int index) {
+        return new ObjectId(highs[index], mids[index], lows[index]);
+    }
+
+    Object getValue(int index) {
+        return values[index];
+    }
+
+    void setValue(int index, Object value) {
+        values[index] = value;
+    }
+
+    /**
+     * @return the dense index of the given {@link ObjectId}, or -1 if not contained.
+     */
+    int indexOf(ObjectId id) {
+        int mask = table.length - 1;
+        int slot = hash(id.getHigh()) & mask;
+        while (true) {
+            int e = table[slot];
+            if (e == EMPTY) {
+                return -1;
+            }
+            if (e != TOMBSTONE && matches(e - 1, id)) {
+                return e - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the dense index of the newly inserted {@link ObjectId}, or <code>-(index + 1)</code> if it was already contained.
+     */
+    int add(ObjectId id) {
+        if ((size + tombstones + 1) * 2 > table.length || used == highs.length) {
+            rehash();
+        }
+
+        int mask = table.length - 1;
+        int slot = hash(id.getHigh()) & mask;
+        int firstTombstone = -1;
+        while (true) {
+            int e = table[slot];
+            if (e == EMPTY) {
+                break;
+            }
+            if (e == TOMBSTONE) {
+                if (firstTombstone < 0) {
+                    firstTombstone = slot;
+                }
+            } else if (matches(e - 1, id)) {
+                return -e;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (firstTombstone >= 0) {
+            slot = firstTombstone;
+            tombstones--;
+        }
+
+        int index = used++;
+        highs[index] = id.getHigh();
+        mids[index] = id.getMid();
+        lows[index] = id.getLow();
+        table[slot] = index + 1;
+        size++;
+        modCount++;
+        return index;
+    }
+
+    /**
+     * @return the dense index the {@link ObjectId} had before removal, or -1 if it was not contained.
+     */
+    int remove(ObjectId id) {
+        int mask = table.length - 1;
+        int slot = hash(id.getHigh()) & mask;
+        while (true) {
+            int e = table[slot];
+            if (e == EMPTY) {
+                return -1;
+            }
+            if (e != TOMBSTONE && matches(e - 1, id)) {
+                table[slot] = TOMBSTONE;
+                removed.set(e - 1);
+                if (withValues) {
+                    values[e - 1] = null;
+                }
+                tombstones++;
+                size--;
+                modCount++;
+                return e - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void clear() {
+        allocate(MIN_CAPACITY);
+        table = new int[tableCapacityFor(0)];
+        removed.clear();
+        size = 0;
+        used = 0;
+        tombstones = 0;
+        modCount++;
+    }
+
+    /**
+     * Compacts the dense arrays (dropping removed entries) and rebuilds the hash table with enough room for growth.
+     */
+    private void rehash() {
+        int denseCapacity = Math.max(MIN_CAPACITY, size * 2);
+        long[] oldHighs = highs;
+        long[] oldMids = mids;
+        int[] oldLows = lows;
+        Object[] oldValues = values;
+        int oldUsed = used;
+
+        if (used == highs.length || !removed.isEmpty()) {
+            allocate(denseCapacity);
+            int target = 0;
+            for (int i = 0; i < oldUsed; ++i) {
+                if (removed.get(i)) {
+                    continue;
+                }
+                highs[target] = oldHighs[i];
+                mids[target] = oldMids[i];
+                lows[target] = oldLows[i];
+                if (withValues) {
+                    values[target] = oldValues[i];
+                }
+                target++;
+            }
+            used = target;
+            removed.clear();
+        }
+
+        table = new int[tableCapacityFor(size)];
+        int mask = table.length - 1;
+        for (int i = 0; i < used; ++i) {
+            int slot = hash(highs[i]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        tombstones = 0;
+        modCount++;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectIdIndex[size=" + size + ", used=" + used + ", table=" + table.length + ", dense=" + highs.length + "]";
+    }
+
+}
@@ -0,0 +1,145 @@
+package io.bdeploy.bhive.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A memory efficient map from {@link ObjectId} to arbitrary values, the counterpart of {@link ObjectIdSet}.
+ * <p>
+ * Keys are stored unboxed, iteration order is insertion order. Only the subset of {@link java.util.Map} operations required
+ * by hive operations is provided. This class is not thread-safe.
+ */
+public final class ObjectIdMap<V> {
+
+    private final ObjectIdIndex index;
+
+    public ObjectIdMap() {
+        this(0);
+    }
+
+    /**
+     * @param expected the expected amount of entries.
+     */
+    public ObjectIdMap(int expected) {
+        this.index = new ObjectIdIndex(expected, true);
+    }
+
+    /**
+     * @return the value associated with the given key, or <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(ObjectId key) {
+        int pos = index.indexOf(key);
+        return pos < 0 ? null : (V) index.getValue(pos);
+    }
+
+    /**
+     * @return whether the given key is contained in the map.
+     */
+    public boolean containsKey(ObjectId key) {
+        return index.indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates the given value with the given key.
+     *
+     * @return the previous value associated with the key, or <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(ObjectId key, V value) {
+        int pos = index.add(key);
+        if (pos < 0) {
+            pos = -(pos + 1);
+            V previous = (V) index.getValue(pos);
+            index.setValue(pos, value);
+            return previous;
+        }
+        index.setValue(pos, value);
+        return null;
+    }
+
+    /**
+     * @return the existing value for the key, or the newly computed and associated one.
+     */
+    public V computeIfAbsent(ObjectId key, Function<ObjectId, V> mapping) {
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+        V value = mapping.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes the mapping for the given key.
+     *
+     * @return the previous value associated with the key, or <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(ObjectId key) {
+        int pos = index.indexOf(key);
+        if (pos < 0) {
+            return null;
+        }
+        V previous = (V) index.getValue(pos);
+        index.remove(key);
+        return previous;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public boolean isEmpty() {
+        return index.size() == 0;
+    }
+
+    public void clear() {
+        index.clear();
+    }
+
+    /**
+     * @return a snapshot of all keys in insertion order.
+     */
+    public ObjectIdSet keySet() {
+        ObjectIdSet result = new ObjectIdSet(size());
+        for (int i = 0; i < index.used(); ++i) {
+            if (index.isLive(i)) {
+                result.add(index.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a snapshot of all values in insertion order of their keys.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size());
+        for (int i = 0; i < index.used(); ++i) {
+            if (index.isLive(i)) {
+                result.add((V) index.getValue(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Performs the given action on each entry in insertion order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<ObjectId, V> action) {
+        for (int i = 0; i < index.used(); ++i) {
+            if (index.isLive(i)) {
+                action.accept(index.get(i), (V) index.getValue(i));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package io.bdeploy.bhive.model;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A memory efficient {@link java.util.Set} of {@link ObjectId}s.
+ * <p>
+ * {@link ObjectId}s are stored unboxed in primitive arrays using open addressing, which requires roughly 30 bytes per entry
+ * compared to more than 150 bytes for a {@link java.util.LinkedHashSet} holding {@link ObjectId} instances. Iteration order is
+ * insertion order, the same as with {@link java.util.LinkedHashSet}, which is required when transferring objects (trees must be
+ * processed in a well-defined order).
+ * <p>
+ * Iteration creates a new {@link ObjectId} instance for each element. This class is not thread-safe.
+ */
+public final class ObjectIdSet extends AbstractSet<ObjectId> {
+
+    private final ObjectIdIndex index;
+
+    public ObjectIdSet() {
+        this(0);
+    }
+
+    /**
+     * @param expected the expected amount of elements.
+     */
+    public ObjectIdSet(int expected) {
+        this.index = new ObjectIdIndex(expected, false);
+    }
+
+    /**
+     * @param source the initial elements.
+     */
+    public ObjectIdSet(Collection<ObjectId> source) {
+        this(source.size());
+        addAll(source);
+    }
+
+    @Override
+    public boolean add(ObjectId e) {
+        return index.add(e) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof ObjectId && index.indexOf((ObjectId) o) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof ObjectId && index.remove((ObjectId) o) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+    }
+
+    /**
+     * Positions are assigned densely in insertion order. As long as no element is removed from the set, positions range from
+     * zero to {@link #size()} (exclusive) and can be used to index external structures like bitmaps.
+     * <p>
+     * Lookup of positions is safe from multiple threads as long as the set is not modified concurrently.
+     *
+     * @param id the {@link ObjectId} to look up.
+     * @return the position of the given {@link ObjectId}, or -1 if it is not contained.
+     */
+    public int indexOf(ObjectId id) {
+        return index.indexOf(id);
+    }
+
+    /**
+     * @param position a position as returned by {@link #indexOf(ObjectId)}.
+     * @return the {@link ObjectId} at the given position.
+     */
+    public ObjectId get(int position) {
+        if (!index.isLive(position)) {
+            throw new IndexOutOfBoundsException("No element at position " + position);
+        }
+        return index.get(position);
+    }
+
+    @Override
+    public Iterator<ObjectId> iterator() {
+        return new IndexIterator<ObjectId>(index) {
+
+            @Override
+            protected ObjectId get(int pos) {
+                return index.get(pos);
+            }
+        };
+    }
+
+    /**
+     * Iterates over all live entries of an {@link ObjectIdIndex} in insertion order.
+     */
+    abstract static class IndexIterator<T> implements Iterator<T> {
+
+        private final ObjectIdIndex index;
+        private int expectedModCount;
+        private int next;
+        private int last = -1;
+
+        IndexIterator(ObjectIdIndex index) {
+            this.index = index;
+            this.expectedModCount = index.modCount();
+            this.next = advance(0);
+        }
+
+        private int advance(int from) {
+            int pos = from;
+            while (pos < index.used() && !index.isLive(pos)) {
+                pos++;
+            }
+            return pos;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < index.used();
+        }
+
+        @Override
+        public T next() {
+            if (index.modCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return get(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (index.modCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            index.remove(index.get(last));
+            expectedModCount = index.modCount();
+            last = -1;
+        }
+
+        protected abstract T get(int pos);
+    }
+
+}
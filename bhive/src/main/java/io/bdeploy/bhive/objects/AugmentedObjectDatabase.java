@@ -35,6 +35,19 @@ public class AugmentedObjectDatabase extends ObjectDatabase {
         return super.getObjectFile(id);
     }
 
+    @Override
+    public Path getLooseObjectFile(ObjectId id) {
+        if (augment != null && augment.hasObject(id)) {
+            return augment.getLooseObjectFile(id);
+        }
+        return super.getLooseObjectFile(id);
+    }
+
+    @Override
+    public boolean hasObject(ObjectId id) {
+        return (augment != null && augment.hasObject(id)) || super.hasObject(id);
+    }
+
     @Override
     public InputStream getStream(ObjectId id) throws IOException {
         if (augment != null && augment.hasObject(id)) {
@@ -43,4 +56,20 @@ public class AugmentedObjectDatabase extends ObjectDatabase {
         return super.getStream(id);
     }
 
+    @Override
+    public long getObjectSize(ObjectId id) throws IOException {
+        if (augment != null && augment.hasObject(id)) {
+            return augment.getObjectSize(id);
+        }
+        return super.getObjectSize(id);
+    }
+
+    @Override
+    public void close() {
+        if (augment != null) {
+            augment.close();
+        }
+        super.close();
+    }
+
 }
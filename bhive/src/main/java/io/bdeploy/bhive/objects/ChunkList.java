@@ -0,0 +1,104 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+
+import io.bdeploy.bhive.model.ObjectId;
+
+/**
+ * Describes an object which is stored as a sequence of chunk objects, see {@link ObjectDatabase#setChunkThreshold(long)}.
+ * <p>
+ * The binary format consists of a version, the total length of the object, the number of chunks and the binary
+ * {@link ObjectId} of each chunk.
+ */
+final class ChunkList {
+
+    private static final int VERSION = 1;
+
+    private final long length;
+    private final List<ObjectId> chunks;
+
+    ChunkList(long length, List<ObjectId> chunks) {
+        this.length = length;
+        this.chunks = Collections.unmodifiableList(chunks);
+    }
+
+    /**
+     * @return the length of the reassembled object.
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the chunks of the object, in order.
+     */
+    List<ObjectId> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @param db the database to read chunks from.
+     * @return a stream which reassembles the object, opening each chunk only once it is reached.
+     */
+    InputStream open(ObjectDatabase db) {
+        Iterator<ObjectId> it = chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+
+            @Override
+            public boolean hasMoreElements() {
+                return it.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return db.getStream(it.next());
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot read chunk", e);
+                }
+            }
+        });
+    }
+
+    static ChunkList read(Path file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(Files.newInputStream(file))) {
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported chunk list version " + version + ": " + file);
+            }
+            long length = dis.readLong();
+            int count = dis.readInt();
+            List<ObjectId> chunks = new ArrayList<>(count);
+            byte[] id = new byte[ObjectId.LENGTH];
+            for (int i = 0; i < count; ++i) {
+                dis.readFully(id);
+                chunks.add(ObjectId.fromBytes(id, 0));
+            }
+            return new ChunkList(length, chunks);
+        }
+    }
+
+    void write(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(VERSION);
+        dos.writeLong(length);
+        dos.writeInt(chunks.size());
+        for (ObjectId chunk : chunks) {
+            dos.write(chunk.toBytes());
+        }
+        dos.flush();
+    }
+
+}
@@ -3,6 +3,7 @@ package io.bdeploy.bhive.objects;
 import java.nio.file.Path;
 
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree.Key;
 
 /**
@@ -11,14 +12,24 @@ import io.bdeploy.bhive.model.Tree.Key;
 public class DefaultReferenceHandler implements ReferenceHandler {
 
     private final ObjectManager om;
+    private final boolean link;
 
     public DefaultReferenceHandler(ObjectManager om) {
+        this(om, false);
+    }
+
+    /**
+     * @param om the {@link ObjectManager} to export with.
+     * @param link whether to hard link objects, see {@link ObjectManager#exportTree(ObjectId, Path, ReferenceHandler, boolean)}.
+     */
+    public DefaultReferenceHandler(ObjectManager om, boolean link) {
         this.om = om;
+        this.link = link;
     }
 
     @Override
     public void onReference(Path location, Key key, Manifest referenced) {
-        om.exportTree(referenced.getRoot(), location.resolve(key.getName()), this);
+        om.exportTree(referenced.getRoot(), location.resolve(key.getName()), this, link);
     }
 
 }
@@ -0,0 +1,274 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * An append-only store for small, timestamped records, organized in named logs.
+ * <p>
+ * Each log is a directory containing segment files. A segment is named by its id, which is derived from the time it has been
+ * started, thus segments are ordered in time. Each record in a segment consists of its timestamp, the length of its data and
+ * the data itself. A partially written last record (interrupted write) is ignored when reading.
+ * <p>
+ * Records are only ever appended to the current segment of a log. Segments are closed (sealed) once they reach
+ * {@link #SEGMENT_RECORDS} records, on request (see {@link #read(String, boolean)}) and whenever the process is restarted, so
+ * closed segments can be moved elsewhere and removed safely.
+ */
+public class EventLogDatabase {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLogDatabase.class);
+
+    /** The maximum amount of records in a single segment. */
+    public static final int SEGMENT_RECORDS = 1_000;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path root;
+    private final Map<String, LogState> states = new ConcurrentHashMap<>();
+
+    /**
+     * @param root the directory where logs are stored. Created on demand.
+     */
+    public EventLogDatabase(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Appends a record to the given log.
+     *
+     * @param name the name of the log.
+     * @param timestamp the timestamp of the record.
+     * @param data the data of the record.
+     * @return the amount of records in the log which have not been removed yet.
+     */
+    public int append(String name, long timestamp, byte[] data) {
+        LogState state = getState(name);
+        synchronized (state) {
+            if (state.current == 0 || state.currentRecords >= SEGMENT_RECORDS) {
+                state.current = Math.max(state.last + 1, System.currentTimeMillis());
+                state.last = state.current;
+                state.currentRecords = 0;
+            }
+
+            Path segment = getLogDir(name).resolve(state.current + SEGMENT_SUFFIX);
+            try {
+                PathHelper.mkdirs(segment.getParent());
+                try (OutputStream os = Files.newOutputStream(segment, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    os.write(toBytes(List.of(new Record(timestamp, data))));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot append to event log " + name, e);
+            }
+
+            state.currentRecords++;
+            return ++state.records;
+        }
+    }
+
+    /**
+     * @param name the name of the log.
+     * @param seal whether to close the current segment, so that all returned segments can be removed once processed.
+     * @return all segments of the log by their id, each with all of its records.
+     */
+    public SortedMap<Long, List<Record>> read(String name, boolean seal) {
+        LogState state = getState(name);
+        synchronized (state) {
+            SortedMap<Long, List<Record>> result = new TreeMap<>();
+            for (Long segment : listSegments(name)) {
+                result.put(segment, readSegment(name, segment));
+            }
+            if (seal) {
+                state.current = 0;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Removes the given segments from the log.
+     *
+     * @param name the name of the log.
+     * @param segments the ids of the segments to remove.
+     */
+    public void remove(String name, Collection<Long> segments) {
+        LogState state = getState(name);
+        synchronized (state) {
+            for (Long segment : segments) {
+                if (segment == state.current) {
+                    state.current = 0;
+                }
+                PathHelper.deleteIfExistsRetry(getLogDir(name).resolve(segment + SEGMENT_SUFFIX));
+            }
+            state.records = 0;
+            for (Long segment : listSegments(name)) {
+                state.records += readSegment(name, segment).size();
+            }
+        }
+    }
+
+    /**
+     * Removes all logs within the given directory, including all of their segments.
+     *
+     * @param dir the common directory of the logs, i.e. a prefix of their names which ends at a '/'.
+     */
+    public void removeAll(String dir) {
+        String prefix = dir.endsWith("/") ? dir : (dir + "/");
+        for (Map.Entry<String, LogState> entry : states.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                synchronized (entry.getValue()) {
+                    states.remove(entry.getKey());
+                }
+            }
+        }
+        PathHelper.deleteRecursiveRetry(getLogDir(prefix));
+    }
+
+    private LogState getState(String name) {
+        return states.computeIfAbsent(name, k -> {
+            // existing segments are never appended to, as they might be in the process of being moved elsewhere.
+            LogState state = new LogState();
+            for (Long segment : listSegments(k)) {
+                state.last = Math.max(state.last, segment);
+                state.records += readSegment(k, segment).size();
+            }
+            return state;
+        });
+    }
+
+    private List<Long> listSegments(String name) {
+        List<Long> result = new ArrayList<>();
+        Path dir = getLogDir(name);
+        if (!PathHelper.exists(dir)) {
+            return result;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                try {
+                    result.add(Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Unexpected file in event log {}: {}", name, path);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot list segments of event log " + name, e);
+        }
+        result.sort(null);
+        return result;
+    }
+
+    private List<Record> readSegment(String name, long segment) {
+        try (InputStream is = Files.newInputStream(getLogDir(name).resolve(segment + SEGMENT_SUFFIX))) {
+            return fromStream(is);
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read segment " + segment + " of event log " + name, e);
+        }
+    }
+
+    private Path getLogDir(String name) {
+        return root.resolve(name);
+    }
+
+    /**
+     * @param records the records to serialize.
+     * @return the serialized form of the records, as used in segment files.
+     */
+    public static byte[] toBytes(List<Record> records) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            for (Record rec : records) {
+                dos.writeLong(rec.timestamp);
+                dos.writeInt(rec.data.length);
+                dos.write(rec.data);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize event log records", e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * @param is a stream of records, see {@link #toBytes(List)}.
+     * @return all complete records read from the stream.
+     */
+    public static List<Record> fromStream(InputStream is) throws IOException {
+        byte[] data = is.readAllBytes();
+        List<Record> result = new ArrayList<>();
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data))) {
+            while (dis.available() > 0) {
+                long timestamp = dis.readLong();
+                int length = dis.readInt();
+                if (length < 0 || length > dis.available()) {
+                    throw new EOFException("Incomplete record of length " + length);
+                }
+                byte[] content = new byte[length];
+                dis.readFully(content);
+                result.add(new Record(timestamp, content));
+            }
+        } catch (EOFException e) {
+            log.debug("Ignoring incomplete event log record", e);
+        }
+        return result;
+    }
+
+    /**
+     * A single record in an event log.
+     */
+    public static final class Record {
+
+        private final long timestamp;
+        private final byte[] data;
+
+        public Record(long timestamp, byte[] data) {
+            this.timestamp = timestamp;
+            this.data = data;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private static final class LogState {
+
+        /** The segment currently appended to, 0 if a new segment must be started. */
+        private long current;
+
+        /** The highest segment id used so far. */
+        private long last;
+
+        private int currentRecords;
+        private int records;
+    }
+
+}
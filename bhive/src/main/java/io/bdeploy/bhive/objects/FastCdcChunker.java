@@ -0,0 +1,125 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content defined chunking based on FastCDC (gear hash with normalized chunking).
+ * <p>
+ * Chunk boundaries depend only on the content in front of them, so an insertion or modification only affects the chunks
+ * around the change. This allows to share chunks between successive versions of large files.
+ * <p>
+ * ATTENTION: the gear table and parameters define where chunks are cut. Changing them means that new chunks do no longer match
+ * chunks created before.
+ */
+final class FastCdcChunker {
+
+    /** Minimum chunk size, no boundaries are searched before. */
+    static final int MIN_SIZE = 256 * 1024;
+
+    /** Average (normal) chunk size. */
+    static final int AVG_SIZE = 1024 * 1024;
+
+    /** Maximum chunk size, chunks are forcibly cut there. */
+    static final int MAX_SIZE = 4 * 1024 * 1024;
+
+    /** Mask used below the normal size - more bits than the average size requires, makes cuts less likely. */
+    private static final long MASK_S = topBits(22);
+
+    /** Mask used above the normal size - less bits than the average size requires, makes cuts more likely. */
+    private static final long MASK_L = topBits(18);
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // splitmix64 with a fixed seed - must never change.
+        long state = 0x6244_6570_6c6f_7921L;
+        for (int i = 0; i < GEAR.length; ++i) {
+            state += 0x9E37_79B9_7F4A_7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Receives chunks from {@link FastCdcChunker#split(InputStream, ChunkConsumer)}.
+     */
+    @FunctionalInterface
+    interface ChunkConsumer {
+
+        /**
+         * @param buffer the buffer containing the chunk. The buffer is reused once this method returns.
+         * @param offset the offset of the chunk in the buffer
+         * @param length the length of the chunk.
+         */
+        void accept(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private FastCdcChunker() {
+    }
+
+    /**
+     * Splits the content of the given stream into chunks.
+     */
+    static void split(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[MAX_SIZE];
+        int filled = 0;
+        boolean eof = false;
+        while (true) {
+            while (!eof && filled < buffer.length) {
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    filled += read;
+                }
+            }
+
+            if (filled == 0) {
+                return;
+            }
+
+            int cut = cut(buffer, filled);
+            consumer.accept(buffer, 0, cut);
+            System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+            filled -= cut;
+        }
+    }
+
+    /**
+     * @return the length of the next chunk at the start of the given buffer.
+     */
+    static int cut(byte[] buffer, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+
+        int end = Math.min(length, MAX_SIZE);
+        int normal = Math.min(AVG_SIZE, end);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; ++i) {
+            fp = (fp << 1) + GEAR[buffer[i] & 0xFF];
+            if ((fp & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; ++i) {
+            fp = (fp << 1) + GEAR[buffer[i] & 0xFF];
+            if ((fp & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * The gear hash shifts left, so the highest bits depend on the largest window of preceding bytes.
+     */
+    private static long topBits(int count) {
+        return ((1L << count) - 1) << (Long.SIZE - count);
+    }
+
+}
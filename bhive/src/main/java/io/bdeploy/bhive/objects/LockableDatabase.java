@@ -6,6 +6,11 @@ import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.util.concurrent.Striped;
 
 /**
  * Base class for a database which requires locked modifications for
@@ -13,7 +18,14 @@ import java.nio.file.Path;
  */
 public abstract class LockableDatabase {
 
+    /**
+     * The amount of in-process locks available to {@link #lockedStriped(Object, LockedOperation)}.
+     */
+    private static final int STRIPES = 256;
+
     private final File lockFile;
+    private final ReadWriteLock processLock = new ReentrantReadWriteLock();
+    private final Striped<Lock> stripes = Striped.lock(STRIPES);
 
     /**
      * @param root the root directory of the database. If the underlying filesystem
@@ -37,7 +49,8 @@ public abstract class LockableDatabase {
     /**
      * @param toLock a database-modifying operation (insertion, deletion, ...).
      */
-    protected synchronized void locked(LockedOperation toLock) {
+    protected void locked(LockedOperation toLock) {
+        processLock.writeLock().lock();
         try {
             // happens for ZIP files and others (?) which don't support Path.toFile().
             if (lockFile == null) {
@@ -60,7 +73,7 @@ public abstract class LockableDatabase {
                     // especially not if we do not want to dramatically increase lock contention in the whole process. This means
                     // we go for a quick'n'dirty approach and simply retry in this case.
                     if ("Resource deadlock avoided".equals(ioe.getMessage()) && xctpCount++ <= 10) {
-                        wait(5);
+                        Thread.sleep(5);
                         continue;
                     }
                     throw ioe;
@@ -71,9 +84,49 @@ public abstract class LockableDatabase {
             throw new IllegalStateException("locked execution interrupted", e);
         } catch (Exception e) {
             throw new IllegalStateException("locked execution failed", e);
+        } finally {
+            processLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Performs a modification which only needs to be exclusive to other modifications using the same key within this process,
+     * e.g. moving a content addressed object into its (fan-out) directory. Such modifications run in parallel to each other as
+     * long as they use different keys, but never in parallel to modifications done through {@link #locked(LockedOperation)}.
+     * <p>
+     * Other processes are <b>not</b> excluded. Databases which cannot be locked across processes (e.g. ZIP files) are always
+     * locked exclusively.
+     *
+     * @param key the key determining the lock to use.
+     * @param toLock a database-modifying operation which must not call {@link #locked(LockedOperation)}.
+     */
+    protected void lockedStriped(Object key, LockedOperation toLock) {
+        if (lockFile == null) {
+            locked(toLock);
+            return;
+        }
+
+        Lock stripe = stripes.get(key);
+        processLock.readLock().lock();
+        stripe.lock();
+        try {
+            toLock.run();
+        } catch (Exception e) {
+            throw new IllegalStateException("locked execution failed", e);
+        } finally {
+            stripe.unlock();
+            processLock.readLock().unlock();
         }
     }
 
+    /**
+     * @return whether the database supports locking across processes. If not, it is assumed that only a single process accesses
+     *         the database.
+     */
+    protected boolean isProcessShared() {
+        return lockFile != null;
+    }
+
     /**
      * Interface for operations that need to lock the database (basically every
      * writing operation).
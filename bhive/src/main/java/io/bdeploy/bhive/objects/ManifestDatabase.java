@@ -5,15 +5,13 @@ package io.bdeploy.bhive.objects;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Optional;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
@@ -22,8 +20,6 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Consumer;
-import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,8 +58,7 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
      * Assuming a max object size of ~4K (manifest includes cached references), this cache would grow to ~10MB.
      */
     private final Cache<Manifest.Key, Manifest> manifestCache = CacheBuilder.newBuilder().maximumSize(2_500).build();
-    private final Cache<Path, Set<Manifest.Key>> manifestListCache = CacheBuilder.newBuilder()
-            .expireAfterWrite(10, TimeUnit.MINUTES).build();
+    private final ManifestIndex index;
 
     /**
      * @param root the root path of the database, created empty if it does not yet
@@ -81,6 +76,8 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
         if (!PathHelper.exists(tmp)) {
             PathHelper.mkdirs(tmp);
         }
+
+        this.index = new ManifestIndex(root, tmp);
     }
 
     @Override
@@ -203,7 +200,7 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
                 }
             }
             manifestCache.put(manifest.getKey(), manifest);
-            updateListCaches(manifest.getKey(), c -> c.add(manifest.getKey()));
+            index.added(manifest.getKey());
             scheduleNotify(manifest.getKey());
         });
         return addedBool.get();
@@ -220,95 +217,25 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
         locked(() -> {
             PathHelper.deleteIfExistsRetry(getPathForKey(key));
             manifestCache.invalidate(key);
-            updateListCaches(key, c -> c.remove(key));
+            index.removed(key);
         });
     }
 
     /**
-     * Allows manipulation of all list cache segments which may contain the given key.
+     * @return all {@link Key}s found in the database.
      */
-    private void updateListCaches(Manifest.Key key, Consumer<Set<Manifest.Key>> manipulator) {
-        Path resolved = root.resolve(key.getName()).normalize();
-
-        synchronized (manifestListCache) {
-            for (Path p : manifestListCache.asMap().keySet()) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Path check {} vs. {}", resolved, p);
-                }
-                if (resolved.startsWith(p)) {
-                    Set<Manifest.Key> segment = manifestListCache.getIfPresent(p);
-                    if (segment != null) {
-                        if (log.isTraceEnabled()) {
-                            log.trace("Update cache for path {}, manipulate {}", p, key);
-                        }
-                        manipulator.accept(segment);
-                    }
-                }
-            }
-        }
+    public SortedSet<Manifest.Key> getAllManifests() {
+        return currentIndex().getAll();
     }
 
     /**
-     * @return all {@link Key}s found in the database's filesystem.
+     * @return the {@link ManifestIndex}, updated with changes from other processes if required.
      */
-    public SortedSet<Manifest.Key> getAllManifests() {
-        // structure is dir:root/dir:name/dir:name/file:tag
-        return collectManifestsCached(root);
-    }
-
-    private SortedSet<Manifest.Key> collectManifestsCached(Path r) {
-        Path normalized = r.normalize();
-        try {
-            synchronized (manifestListCache) {
-                // need to copy the internal list cache, as this will be updated over time.
-                return new TreeSet<>(manifestListCache.get(normalized, () -> collectManifests(normalized)));
-            }
-        } catch (ExecutionException e) {
-            log.warn("Cannot fetch manifest list cache", e);
-            return collectManifests(normalized); // fallback.
-        }
-    }
-
-    private SortedSet<Manifest.Key> collectManifests(Path scanRoot) {
-        SortedSet<Manifest.Key> result = new TreeSet<>();
-        try {
-            long xctpCount = 0;
-            do {
-                if (!Files.isDirectory(scanRoot)) {
-                    // none exist in the given namespace.
-                    return result;
-                }
-
-                try (Stream<Path> walk = Files.walk(scanRoot)) {
-                    walk.filter(Files::isRegularFile).forEach(f -> {
-                        if (f.startsWith(this.tmp)) {
-                            return;
-                        }
-
-                        Path rel = root.relativize(f);
-
-                        if (rel.getParent() == null) {
-                            // file in the db-root, cannot be a manifest.
-                            return;
-                        }
-
-                        // windows paths contain '\' - replace it to get proper names.
-                        String manifestName = rel.getParent().toString().replace('\\', '/');
-                        String manifestTag = rel.getFileName().toString();
-
-                        result.add(new Manifest.Key(manifestName, manifestTag));
-                    });
-                    return result;
-                } catch (UncheckedIOException | NoSuchFileException e) {
-                    // something was removed in the middle of the walk... retry.
-                    if (!(e instanceof NoSuchFileException || e.getCause() instanceof NoSuchFileException || xctpCount++ > 10)) {
-                        throw e;
-                    }
-                }
-            } while (true);
-        } catch (IOException e) {
-            throw new IllegalStateException("Error reading manifest database", e);
+    private ManifestIndex currentIndex() {
+        if (!index.isCurrent()) {
+            locked(index::refresh);
         }
+        return index;
     }
 
     /**
@@ -327,8 +254,15 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
             }
             return result;
         }
-        Path namedRoot = root.resolve(name);
-        return collectManifestsCached(namedRoot);
+        return currentIndex().getAllForName(name);
+    }
+
+    /**
+     * @param name the name to calculate the highest numeric tag for. Matching works like {@link #getAllForName(String)}.
+     * @return the highest tag of all matching manifests, or empty if there are none or any of them has a non-numeric tag.
+     */
+    public Optional<Long> getMaxNumericTag(String name) {
+        return currentIndex().getMaxNumericTag(name);
     }
 
     /**
@@ -353,13 +287,20 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
     }
 
     /**
-     * Invalidates all cached data.
+     * Invalidates all cached data. The manifest index is brought up to date with changes done by other processes.
      */
     public void invalidateCaches() {
         this.manifestCache.invalidateAll();
-        synchronized (manifestListCache) {
-            this.manifestListCache.invalidateAll();
-        }
+        locked(index::refresh);
+    }
+
+    /**
+     * Invalidates all cached data and re-builds the manifest index from a full scan of the database. This makes sure that
+     * modifications bypassing the index (e.g. by older software versions) are picked up, but is expensive on large databases.
+     */
+    public void rebuildIndex() {
+        this.manifestCache.invalidateAll();
+        locked(index::rebuild);
     }
 
 }
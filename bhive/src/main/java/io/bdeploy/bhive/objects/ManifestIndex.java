@@ -0,0 +1,530 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * A persistent index of all {@link Manifest.Key}s in a {@link ManifestDatabase}.
+ * <p>
+ * The index consists of two files in the root of the database (files in the root are never manifests):
+ * <ul>
+ * <li><code>.mfindex</code> - a checkpoint containing all keys, sorted, one per line.</li>
+ * <li><code>.mfindex.log</code> - an append-only log of additions (<code>+key</code>) and removals (<code>-key</code>) since
+ * the checkpoint.</li>
+ * </ul>
+ * Both files start with a generation header. The checkpoint is rewritten (atomically) once the log grows too large, after
+ * which a fresh log with the new generation replaces the old one. All modifications happen while holding the database lock.
+ * Changes done by other processes are picked up by replaying the part of the log which has not been seen yet. A new
+ * checkpoint written by another process is detected by the identity of the log file (or its generation header, if the file
+ * system has no file identities), even if the new log happens to have the same size.
+ * <p>
+ * A full scan of the database happens only if the index does not exist, is corrupted, or is explicitly rebuilt.
+ */
+class ManifestIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ManifestIndex.class);
+
+    private static final String CHECKPOINT_NAME = ".mfindex";
+    private static final String LOG_NAME = ".mfindex.log";
+    private static final String HEADER_PREFIX = "#mfindex-v1 ";
+    private static final int MAX_LOG_RECORDS = 10_000;
+
+    private final Path root;
+    private final Path tmp;
+    private final Path checkpoint;
+    private final Path logFile;
+    private final boolean persistent;
+
+    /** Manifest name to tags, guarded by 'this' */
+    private final NavigableMap<String, NavigableSet<String>> keys = new TreeMap<>();
+
+    private boolean loaded;
+    private long generation;
+    private long logOffset;
+    private long logSize;
+    private Object logKey;
+    private int logRecords;
+
+    /**
+     * @param root the root of the {@link ManifestDatabase}.
+     * @param tmp the temporary directory of the {@link ManifestDatabase} which is excluded from scanning.
+     */
+    ManifestIndex(Path root, Path tmp) {
+        this.root = root;
+        this.tmp = tmp;
+        this.checkpoint = root.resolve(CHECKPOINT_NAME);
+        this.logFile = root.resolve(LOG_NAME);
+
+        // ZIP files and similar are typically short lived and written once, keep the index in memory only.
+        this.persistent = root.getFileSystem() == FileSystems.getDefault() && Files.isWritable(root);
+    }
+
+    /**
+     * @return all keys in the index.
+     */
+    synchronized SortedSet<Manifest.Key> getAll() {
+        SortedSet<Manifest.Key> result = new TreeSet<>();
+        keys.forEach((name, tags) -> addAll(result, name, tags));
+        return result;
+    }
+
+    /**
+     * @param name a name consisting of any number of complete name segments.
+     * @return all keys with the exact given name or any name nested below it.
+     */
+    synchronized SortedSet<Manifest.Key> getAllForName(String name) {
+        SortedSet<Manifest.Key> result = new TreeSet<>();
+        forEachNested(name, (n, tags) -> addAll(result, n, tags));
+        return result;
+    }
+
+    /**
+     * @param name a name consisting of any number of complete name segments.
+     * @return the highest numeric tag of all keys matching the name just like {@link #getAllForName(String)}. Empty if there is
+     *         no such key, or any of the matching keys has a non-numeric tag.
+     */
+    synchronized Optional<Long> getMaxNumericTag(String name) {
+        long[] max = { Long.MIN_VALUE };
+        boolean[] found = { false };
+        try {
+            forEachNested(name, (n, tags) -> {
+                for (String tag : tags) {
+                    max[0] = Math.max(max[0], Long.parseLong(tag));
+                    found[0] = true;
+                }
+            });
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        return found[0] ? Optional.of(max[0]) : Optional.empty();
+    }
+
+    private void forEachNested(String name, BiConsumer<String, NavigableSet<String>> consumer) {
+        String normalized = name;
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+
+        if (normalized.isEmpty()) {
+            keys.forEach(consumer);
+            return;
+        }
+
+        NavigableSet<String> exact = keys.get(normalized);
+        if (exact != null) {
+            consumer.accept(normalized, exact);
+        }
+
+        // all names starting with "name/" sort between "name/" (inclusive) and "name0" (exclusive), as '0' follows '/'.
+        keys.subMap(normalized + "/", true, normalized + "0", false).forEach(consumer);
+    }
+
+    private static void addAll(SortedSet<Manifest.Key> target, String name, NavigableSet<String> tags) {
+        for (String tag : tags) {
+            target.add(new Manifest.Key(name, tag));
+        }
+    }
+
+    /**
+     * Brings the in-memory state up to date with the persistent index, loading (or building) it if required.
+     * <p>
+     * The caller must hold the database lock if the index might need to be loaded or replayed, see {@link #isCurrent()}.
+     */
+    synchronized void refresh() {
+        if (!loaded) {
+            load();
+            return;
+        }
+
+        if (!persistent) {
+            return;
+        }
+
+        try {
+            LogContent content = readLog();
+            if (content == null || content.generation != generation || content.validLength < logOffset) {
+                // another process wrote a new checkpoint, or the log vanished.
+                load();
+                return;
+            }
+            replay(content);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Manifest index of {} is corrupt, rebuilding", root, e);
+            rebuild();
+        }
+    }
+
+    /**
+     * @return whether the in-memory state is known to be current. Cheap enough to be called on every read.
+     */
+    synchronized boolean isCurrent() {
+        if (!loaded) {
+            return false;
+        }
+        if (!persistent) {
+            return true;
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(logFile, BasicFileAttributes.class);
+            if (attrs.size() != logSize) {
+                return false;
+            }
+            if (attrs.fileKey() != null) {
+                // the log is replaced by a new one (with a new identity) whenever a checkpoint is written.
+                return attrs.fileKey().equals(logKey);
+            }
+            return readGeneration() == generation;
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records the addition of a manifest. The caller must hold the database lock.
+     */
+    synchronized void added(Manifest.Key key) {
+        if (!isCurrent()) {
+            refresh();
+        }
+        if (keys.computeIfAbsent(key.getName(), k -> new TreeSet<>()).add(key.getTag())) {
+            append('+', key);
+        }
+    }
+
+    /**
+     * Records the removal of a manifest. The caller must hold the database lock.
+     */
+    synchronized void removed(Manifest.Key key) {
+        if (!isCurrent()) {
+            refresh();
+        }
+        NavigableSet<String> tags = keys.get(key.getName());
+        if (tags != null && tags.remove(key.getTag())) {
+            if (tags.isEmpty()) {
+                keys.remove(key.getName());
+            }
+            append('-', key);
+        }
+    }
+
+    /**
+     * Re-creates the index from a full scan of the database. The caller must hold the database lock.
+     */
+    synchronized void rebuild() {
+        keys.clear();
+        scan();
+        loaded = true;
+
+        if (persistent) {
+            try {
+                writeCheckpoint(nextGeneration());
+            } catch (IOException e) {
+                log.warn("Cannot write manifest index checkpoint for {}", root, e);
+            }
+        }
+    }
+
+    private void load() {
+        if (!persistent || !PathHelper.exists(checkpoint)) {
+            rebuild();
+            return;
+        }
+
+        try {
+            keys.clear();
+            long cpGeneration;
+            try (BufferedReader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+                cpGeneration = parseHeader(reader.readLine());
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        Manifest.Key key = Manifest.Key.parse(line);
+                        keys.computeIfAbsent(key.getName(), k -> new TreeSet<>()).add(key.getTag());
+                    }
+                }
+            }
+
+            LogContent content = readLog();
+            if (content == null || content.generation != cpGeneration) {
+                // crash between writing the checkpoint and replacing the log, the checkpoint is complete.
+                generation = cpGeneration;
+                resetLog();
+                loaded = true;
+                return;
+            }
+
+            generation = cpGeneration;
+            logOffset = 0;
+            logRecords = 0;
+            replay(content);
+            loaded = true;
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Cannot load manifest index of {}, rebuilding", root, e);
+            rebuild();
+        }
+    }
+
+    private void replay(LogContent content) {
+        int pos = (int) Math.max(logOffset, content.headerLength);
+        int end = content.validLength;
+        while (pos < end) {
+            int nl = indexOf(content.data, (byte) '\n', pos, end);
+            String line = new String(content.data, pos, nl - pos, StandardCharsets.UTF_8);
+            pos = nl + 1;
+
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            Manifest.Key key = Manifest.Key.parse(line.substring(1));
+            switch (line.charAt(0)) {
+                case '+':
+                    keys.computeIfAbsent(key.getName(), k -> new TreeSet<>()).add(key.getTag());
+                    break;
+                case '-':
+                    NavigableSet<String> tags = keys.get(key.getName());
+                    if (tags != null) {
+                        tags.remove(key.getTag());
+                        if (tags.isEmpty()) {
+                            keys.remove(key.getName());
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid manifest index record: " + line);
+            }
+            logRecords++;
+        }
+        logOffset = end;
+        logSize = content.data.length;
+        logKey = content.fileKey;
+    }
+
+    private void append(char op, Manifest.Key key) {
+        if (!persistent) {
+            return;
+        }
+
+        try {
+            if (logRecords >= MAX_LOG_RECORDS) {
+                writeCheckpoint(nextGeneration());
+                return;
+            }
+
+            byte[] record = (op + key.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+            try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                // drop a partially written record left over from a crash.
+                if (ch.size() > logOffset) {
+                    ch.truncate(logOffset);
+                }
+                ByteBuffer buf = ByteBuffer.wrap(record);
+                long position = logOffset;
+                while (buf.hasRemaining()) {
+                    position += ch.write(buf, position);
+                }
+                ch.force(false);
+                logOffset = position;
+                logSize = position;
+                logRecords++;
+            }
+        } catch (IOException e) {
+            // the manifest itself is stored already, the index is re-built from scratch on next load.
+            log.warn("Cannot update manifest index of {}", root, e);
+            PathHelper.deleteIfExistsRetry(checkpoint);
+            loaded = false;
+        }
+    }
+
+    private void writeCheckpoint(long newGeneration) throws IOException {
+        PathHelper.mkdirs(tmp);
+
+        Path tmpCheckpoint = Files.createTempFile(tmp, "mfi-", ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmpCheckpoint, StandardOpenOption.WRITE)) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                baos.write(header(newGeneration));
+                for (Map.Entry<String, NavigableSet<String>> entry : keys.entrySet()) {
+                    for (String tag : entry.getValue()) {
+                        baos.write((entry.getKey() + ":" + tag + "\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                ByteBuffer buf = ByteBuffer.wrap(baos.toByteArray());
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+                ch.force(true);
+            }
+            PathHelper.moveRetry(tmpCheckpoint, checkpoint, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            PathHelper.deleteIfExistsRetry(tmpCheckpoint);
+            throw e;
+        }
+
+        generation = newGeneration;
+        resetLog();
+    }
+
+    private void resetLog() throws IOException {
+        PathHelper.mkdirs(tmp);
+
+        byte[] header = header(generation);
+        Path tmpLog = Files.createTempFile(tmp, "mfl-", ".tmp");
+        try {
+            Files.write(tmpLog, header, StandardOpenOption.SYNC, StandardOpenOption.TRUNCATE_EXISTING);
+            PathHelper.moveRetry(tmpLog, logFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            PathHelper.deleteIfExistsRetry(tmpLog);
+            throw e;
+        }
+
+        logOffset = header.length;
+        logSize = header.length;
+        logKey = Files.readAttributes(logFile, BasicFileAttributes.class).fileKey();
+        logRecords = 0;
+    }
+
+    private LogContent readLog() throws IOException {
+        byte[] data;
+        Object fileKey;
+        try (InputStream is = Files.newInputStream(logFile)) {
+            // determined before reading, so a concurrent replacement is detected later on.
+            fileKey = Files.readAttributes(logFile, BasicFileAttributes.class).fileKey();
+            data = is.readAllBytes();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        int headerEnd = indexOf(data, (byte) '\n', 0, data.length);
+        if (headerEnd >= data.length) {
+            throw new IllegalArgumentException("Incomplete manifest index log header");
+        }
+
+        long logGeneration = parseHeader(new String(data, 0, headerEnd, StandardCharsets.UTF_8));
+
+        // only complete records count, a partial last record is the result of an interrupted write.
+        int validLength = data.length;
+        while (validLength > headerEnd + 1 && data[validLength - 1] != '\n') {
+            validLength--;
+        }
+
+        return new LogContent(logGeneration, data, headerEnd + 1, validLength, fileKey);
+    }
+
+    /**
+     * @return the generation in the header of the log file, without reading the rest of it.
+     */
+    private long readGeneration() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            return parseHeader(reader.readLine());
+        }
+    }
+
+    private void scan() {
+        long xctpCount = 0;
+        do {
+            keys.clear();
+            if (!Files.isDirectory(root)) {
+                return;
+            }
+
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.filter(Files::isRegularFile).forEach(f -> {
+                    if (f.startsWith(tmp)) {
+                        return;
+                    }
+
+                    Path rel = root.relativize(f);
+                    if (rel.getParent() == null) {
+                        // file in the db-root, cannot be a manifest.
+                        return;
+                    }
+
+                    // windows paths contain '\' - replace it to get proper names.
+                    String manifestName = rel.getParent().toString().replace('\\', '/');
+                    String manifestTag = rel.getFileName().toString();
+
+                    keys.computeIfAbsent(manifestName, k -> new TreeSet<>()).add(manifestTag);
+                });
+                return;
+            } catch (UncheckedIOException | IOException e) {
+                // something was removed in the middle of the walk... retry.
+                if (!(e instanceof NoSuchFileException || e.getCause() instanceof NoSuchFileException) || xctpCount++ > 10) {
+                    throw new IllegalStateException("Error reading manifest database", e);
+                }
+            }
+        } while (true);
+    }
+
+    /**
+     * Generations need to be unique across processes, as a rebuild does not know the generation other processes have seen.
+     */
+    private long nextGeneration() {
+        return Math.max(generation + 1, System.currentTimeMillis());
+    }
+
+    private static byte[] header(long generation) {
+        return (HEADER_PREFIX + generation + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long parseHeader(String line) {
+        if (line == null || !line.startsWith(HEADER_PREFIX)) {
+            throw new IllegalArgumentException("Invalid manifest index header: " + line);
+        }
+        return Long.parseLong(line.substring(HEADER_PREFIX.length()).trim());
+    }
+
+    private static int indexOf(byte[] data, byte b, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static final class LogContent {
+
+        final long generation;
+        final byte[] data;
+        final int headerLength;
+        final int validLength;
+        final Object fileKey;
+
+        LogContent(long generation, byte[] data, int headerLength, int validLength, Object fileKey) {
+            this.generation = generation;
+            this.data = data;
+            this.headerLength = headerLength;
+            this.validLength = validLength;
+            this.fileKey = fileKey;
+        }
+    }
+
+}
@@ -1,15 +1,28 @@
 package io.bdeploy.bhive.objects;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
 import io.bdeploy.bhive.BHiveTransactions;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.op.PruneOperation;
 import io.bdeploy.common.ActivityReporter;
-import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.UuidHelper;
 
 /**
  * A marker database acts as temporary synchronization and locking over threads and even JVMs.
@@ -17,35 +30,115 @@ import io.bdeploy.common.util.PathHelper;
  * An example are {@link BHiveTransactions}. They use a {@link MarkerDatabase} to "mark" each object written. As long as there is
  * not manifest inserted in the BHive, these objects would be dangling, and subject to removal by prune. The
  * {@link PruneOperation} takes into account any marked object by any transaction and does not touch them.
+ * <p>
+ * Markers are kept in memory and appended to a segment file owned by this instance, one line per {@link ObjectId}. A marker
+ * is written to the segment before {@link #addMarker(ObjectId)} returns, so it is visible to other JVMs right away. Syncing
+ * the segment to disk is done in batches.
  */
 public class MarkerDatabase extends ObjectDatabase {
 
+    private static final String SEGMENT_SUFFIX = ".markers";
+
+    /**
+     * The amount of markers written to a segment before it is synced to disk.
+     */
+    private static final int SYNC_BATCH_SIZE = 256;
+
+    private final Path root;
+    private final Set<ObjectId> marked = ConcurrentHashMap.newKeySet();
+
+    private FileChannel segment;
+    private int unsynced;
+
     public MarkerDatabase(Path root, ActivityReporter reporter) {
-        super(root, root.resolve("tmp"), reporter, null);
+        super(root, null, reporter, null);
+        this.root = root;
     }
 
     /**
-     * Marks the given {@link ObjectId}. The operation is thread-safe, but only if called with different {@link ObjectId}.
-     * <p>
-     * The caller(s) must make sure to call this method only once with any given {@link ObjectId}.
+     * Marks the given {@link ObjectId}. The operation is thread-safe, marking the same {@link ObjectId} again has no effect.
      */
     public void addMarker(ObjectId id) {
-        if (hasObject(id)) {
+        if (marked.contains(id)) {
             return;
         }
 
-        locked(() -> {
-            if (hasObject(id)) {
+        byte[] record = (id.getId() + '\n').getBytes(StandardCharsets.US_ASCII);
+        synchronized (this) {
+            // only remembered once written, so nobody can see the marker before it is visible to other JVMs as well.
+            if (marked.contains(id)) {
                 return;
             }
-            Path markerFile = getObjectFile(id);
-            PathHelper.mkdirs(markerFile.getParent());
+
             try {
-                Files.createFile(markerFile);
+                if (segment == null) {
+                    Path file = root.resolve(UuidHelper.randomId() + SEGMENT_SUFFIX);
+                    segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    segment.write(buffer);
+                }
+
+                if (++unsynced >= SYNC_BATCH_SIZE) {
+                    segment.force(false);
+                    unsynced = 0;
+                }
             } catch (IOException e) {
                 throw new IllegalStateException("Cannot add marker for " + id, e);
             }
-        });
+
+            marked.add(id);
+        }
+    }
+
+    /**
+     * @return whether the given {@link ObjectId} has been marked using this instance.
+     */
+    @Override
+    public boolean hasObject(ObjectId id) {
+        return marked.contains(id);
+    }
+
+    /**
+     * Reports all markers of all segments in this database, regardless of which instance (or JVM) has written them.
+     */
+    @Override
+    public void walkAllObjects(Consumer<ObjectId> consumer) {
+        // markers written as individual files by previous versions.
+        super.walkAllObjects(consumer);
+
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(root, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : segments) {
+                readSegment(file, consumer);
+            }
+        } catch (NoSuchFileException e) {
+            // no markers at all.
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot list marker segments in " + root, e);
+        }
+    }
+
+    @Override
+    public void walkAllObjects(Consumer<ObjectId> consumer, ExecutorService executor) {
+        walkAllObjects(consumer);
+    }
+
+    private static void readSegment(Path file, Consumer<ObjectId> consumer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // the last line may be incomplete if the segment is written concurrently.
+                ObjectId id = ObjectId.parse(line);
+                if (id != null) {
+                    consumer.accept(id);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // transaction finished concurrently.
+        }
     }
 
     @Override
@@ -63,4 +156,28 @@ public class MarkerDatabase extends ObjectDatabase {
         throw new UnsupportedOperationException("Marker-only Database");
     }
 
+    @Override
+    public SortedMap<ObjectId, Long> removeObjects(Collection<ObjectId> ids, ExecutorService executor) {
+        throw new UnsupportedOperationException("Marker-only Database");
+    }
+
+    /**
+     * Closes the segment written by this instance. The markers stay in place until the database is removed.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (segment != null) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot close marker segment in " + root, e);
+                } finally {
+                    segment = null;
+                }
+            }
+        }
+        super.close();
+    }
+
 }
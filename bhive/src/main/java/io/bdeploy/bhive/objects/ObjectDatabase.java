@@ -3,25 +3,51 @@
  */
 package io.bdeploy.bhive.objects;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingInputStream;
+
 import io.bdeploy.bhive.BHiveTransactions;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.ActivityReporter.Activity;
+import io.bdeploy.common.util.FutureHelper;
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.common.util.Threads;
 
@@ -35,6 +61,20 @@ import io.bdeploy.common.util.Threads;
  * to determine the target directory. Two levels of directories are used. The first level is based on the first two characters and
  * the second level on the next two characters.
  * </p>
+ * <p>
+ * Additionally, objects can be compacted into pack files using {@link #repack(long)}. Packed objects are read from a memory
+ * mapped index which is a lot cheaper than a file per object, both in terms of inodes and in terms of listing all objects.
+ * Newly added objects are always stored as single files ("loose") until the next repack.
+ * </p>
+ * <p>
+ * Optionally, large objects can be split into content defined chunks (see {@link #setChunkThreshold(long)}). Each chunk is
+ * stored as a separate object, and a chunk list describes how to reassemble the original object. Successive versions of large
+ * files share most of their chunks, and only missing chunks need to be transferred.
+ * </p>
+ * <p>
+ * Also optionally, objects can be stored compressed (see {@link #setAtRestCompression(int)}). Compressed objects are still
+ * identified by the {@link ObjectId} of their uncompressed content.
+ * </p>
  */
 public class ObjectDatabase extends LockableDatabase {
 
@@ -47,10 +87,53 @@ public class ObjectDatabase extends LockableDatabase {
      */
     static final long MAX_BUFFER_SIZE = 10L * 1024 * 1024; // 10M
 
+    /**
+     * The amount of objects removed by a single task in {@link #removeObjects(Collection, ExecutorService)}.
+     */
+    private static final int REMOVE_BATCH_SIZE = 1_000;
+
+    /**
+     * Name of the directory in the database root which holds pack files.
+     */
+    private static final String PACKS_DIR = "packs";
+
+    /**
+     * Name of the directory in the database root which holds chunk lists of chunked objects.
+     */
+    private static final String CHUNKED_DIR = "chunked";
+
+    /**
+     * Name of the directory in the database root which holds compressed objects.
+     */
+    private static final String COMPRESSED_DIR = "compressed";
+
+    /**
+     * Objects below this size are never compressed at rest, the savings are not worth the overhead.
+     */
+    private static final long MIN_COMPRESS_SIZE = 4 * 1024L;
+
+    /**
+     * Compressed objects are only kept if they are at most this fraction of the original size.
+     */
+    private static final double MAX_COMPRESSED_RATIO = 0.9;
+
+    /**
+     * Alternative storage directories which do not exist are not checked again for this long.
+     */
+    private static final long STORE_RECHECK_MILLIS = 2_000;
+
     private final Path root;
     private final Path tmp;
     private final ActivityReporter reporter;
     private final BHiveTransactions transactions;
+    private final PackStore packs;
+    private final Path chunked;
+    private final Path compressed;
+    private final StoreDirectory chunkedStore;
+    private final StoreDirectory compressedStore;
+
+    private long chunkThreshold = 0;
+    private int compressionLevel = 0;
 
     /**
      * Create a new {@link ObjectDatabase} at the given root. The database is not
@@ -67,6 +150,11 @@ public class ObjectDatabase extends LockableDatabase {
         this.tmp = tmp;
         this.reporter = reporter;
         this.transactions = transactions;
+        this.packs = new PackStore(root.resolve(PACKS_DIR));
+        this.chunked = root.resolve(CHUNKED_DIR);
+        this.compressed = root.resolve(COMPRESSED_DIR);
+        this.chunkedStore = new StoreDirectory(chunked);
+        this.compressedStore = new StoreDirectory(compressed);
 
         if (!PathHelper.exists(root)) {
             PathHelper.mkdirs(root);
@@ -86,10 +174,38 @@ public class ObjectDatabase extends LockableDatabase {
      * @throws IOException in case of an error.
      */
     public InputStream getStream(ObjectId id) throws IOException {
-        if (!hasObject(id)) {
-            throw new IllegalStateException("Missing object: " + id);
+        try {
+            return Files.newInputStream(getObjectFileLocal(id));
+        } catch (NoSuchFileException e) {
+            // not loose, try packs below.
+        }
+
+        PackStore.Located packed = packs.find(id);
+        if (packed != null) {
+            return packed.open();
         }
-        return Files.newInputStream(getObjectFile(id));
+
+        ChunkList chunks = readChunkList(id);
+        if (chunks != null) {
+            return chunks.open(this);
+        }
+
+        try {
+            return openCompressed(id);
+        } catch (NoSuchFileException e) {
+            throw new IllegalStateException("Missing object: " + id, e);
+        }
+    }
+
+    private InputStream openCompressed(ObjectId id) throws IOException {
+        DataInputStream dis = new DataInputStream(Files.newInputStream(getStoredFile(compressed, id)));
+        try {
+            dis.readLong(); // uncompressed size.
+        } catch (IOException e) {
+            dis.close();
+            throw e;
+        }
+        return TransferCodec.inflating(dis);
     }
 
     /**
@@ -100,7 +216,70 @@ public class ObjectDatabase extends LockableDatabase {
      * @return <code>true</code> if it exists, <code>false</code> otherwise.
      */
     public boolean hasObject(ObjectId id) {
-        return PathHelper.exists(getObjectFile(id));
+        // chunking and compression are optional, most databases never need to look there.
+        return PathHelper.exists(getObjectFileLocal(id)) || packs.find(id) != null
+                || (chunkedStore.mayContainObjects() && PathHelper.exists(getStoredFile(chunked, id)))
+                || (compressedStore.mayContainObjects() && PathHelper.exists(getStoredFile(compressed, id)));
+    }
+
+    /**
+     * Enables compression of objects at rest. Objects which are added from now on are stored compressed, unless they are very
+     * small, are compressed already (e.g. ZIP files) or compression does not save enough space.
+     *
+     * @param level the ZLIB compression level (1-9), 0 to disable compression.
+     */
+    public void setAtRestCompression(int level) {
+        this.compressionLevel = Math.max(0, Math.min(level, Deflater.BEST_COMPRESSION));
+    }
+
+    /**
+     * Enables chunking of large objects. Objects of at least the given size which are added from now on are split into
+     * content defined chunks, see {@link FastCdcChunker}.
+     *
+     * @param threshold the minimum size of objects to chunk, 0 to disable chunking. Values below the maximum chunk size are
+     *            raised to it.
+     */
+    public void setChunkThreshold(long threshold) {
+        this.chunkThreshold = threshold <= 0 ? 0 : Math.max(threshold, FastCdcChunker.MAX_SIZE + 1L);
+    }
+
+    /**
+     * @param id the object to look up.
+     * @return the chunks the object is stored as, or <code>null</code> if the object is not stored as chunks in this
+     *         database.
+     */
+    public List<ObjectId> getChunks(ObjectId id) {
+        ChunkList chunks = readChunkList(id);
+        return chunks == null ? null : chunks.getChunks();
+    }
+
+    /**
+     * Adds an object which is reassembled from the given chunks. The chunks must exist in the database already.
+     * <p>
+     * The object is stored as chunk list referring to the given chunks, regardless of the chunk threshold, so the content is
+     * never duplicated. The content is read once to calculate the {@link ObjectId}.
+     *
+     * @param chunks the chunks to reassemble.
+     * @return the {@link ObjectId} of the reassembled object.
+     */
+    public ObjectId addObject(List<ObjectId> chunks) throws IOException {
+        ObjectId id;
+        long size;
+        try (CountingInputStream is = new CountingInputStream(new ChunkList(-1, chunks).open(this))) {
+            id = ObjectId.createFromStreamNoCopy(is);
+            size = is.getCount();
+        }
+
+        // the chunks may have existed before, unprotected by the current transaction.
+        if (transactions != null) {
+            chunks.forEach(transactions::touchObject);
+            transactions.touchObject(id);
+        }
+
+        if (!hasObject(id)) {
+            storeChunkList(id, new ChunkList(size, chunks));
+        }
+        return id;
     }
 
     /**
@@ -167,6 +346,15 @@ public class ObjectDatabase extends LockableDatabase {
         Path tmpFile = Files.createTempFile(this.tmp, "obj", ".tmp");
         try {
             ObjectId id = writer.write(tmpFile);
+            long size = Files.size(tmpFile);
+            if (chunkThreshold > 0 && size >= chunkThreshold) {
+                addChunked(id, tmpFile);
+                return id;
+            }
+            if (compressionLevel > 0 && size >= MIN_COMPRESS_SIZE && addCompressed(id, tmpFile, size)) {
+                return id;
+            }
+
             Path target = getObjectFileLocal(id);
 
             // Done outside the lock and before the existence check. This is to make sure
@@ -177,14 +365,7 @@ public class ObjectDatabase extends LockableDatabase {
                 transactions.touchObject(id);
             }
 
-            locked(() -> {
-                if (hasObject(id)) {
-                    return;
-                }
-
-                PathHelper.mkdirs(target.getParent());
-                PathHelper.moveRetry(tmpFile, target);
-            });
+            store(id, tmpFile, target);
             return id;
         } finally {
             try {
@@ -195,6 +376,120 @@ public class ObjectDatabase extends LockableDatabase {
         }
     }
 
+    /**
+     * Moves a completely written temporary file to its final location in the database, unless the object exists already.
+     * <p>
+     * The existence check and the move are done while holding the lock for the target (fan-out) directory, so an object
+     * cannot be removed (e.g. by a prune) between finding it and relying on it. As objects are content addressed, concurrent
+     * writers of the same object in other processes always write the same content. Thus an atomic move, which replaces an
+     * existing file with identical content at worst, needs no cross-process lock.
+     */
+    private void store(ObjectId id, Path source, Path target) {
+        lockedStriped(target.getParent(), () -> {
+            if (hasObject(id)) {
+                return;
+            }
+
+            PathHelper.mkdirs(target.getParent());
+            if (isProcessShared()) {
+                try {
+                    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                    return;
+                } catch (FileAlreadyExistsException e) {
+                    return; // written concurrently by another process.
+                } catch (IOException e) {
+                    log.debug("Cannot atomically move {} to {}", source, target, e);
+                }
+            }
+
+            PathHelper.moveRetry(source, target);
+        });
+    }
+
+    /**
+     * Stores the given (complete) file as chunks along with a chunk list for the object.
+     */
+    private void addChunked(ObjectId id, Path file) throws IOException {
+        if (transactions != null) {
+            transactions.touchObject(id);
+        }
+
+        if (hasObject(id)) {
+            return;
+        }
+
+        List<ObjectId> chunks = new ArrayList<>();
+        try (InputStream is = Files.newInputStream(file)) {
+            FastCdcChunker.split(is, (buffer, offset, length) -> chunks
+                    .add(addObject(Arrays.copyOfRange(buffer, offset, offset + length))));
+        }
+
+        storeChunkList(id, new ChunkList(Files.size(file), chunks));
+    }
+
+    /**
+     * Stores the chunk list of the given object. The chunks must exist already.
+     */
+    private void storeChunkList(ObjectId id, ChunkList list) throws IOException {
+        Path tmpList = Files.createTempFile(this.tmp, "chk", ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmpList)) {
+                list.write(os);
+            }
+
+            store(id, tmpList, getStoredFile(chunked, id));
+            chunkedStore.setInUse();
+        } finally {
+            PathHelper.deleteIfExistsRetry(tmpList);
+        }
+    }
+
+    /**
+     * Stores the given (complete) file compressed.
+     *
+     * @return whether the object has been stored, <code>false</code> if compression is not worth it.
+     */
+    private boolean addCompressed(ObjectId id, Path file, long size) throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            byte[] head = is.readNBytes(TransferCodec.SNIFF_LENGTH);
+            if (TransferCodec.isCompressed(head, head.length)) {
+                return false;
+            }
+        }
+
+        if (transactions != null) {
+            transactions.touchObject(id);
+        }
+
+        if (hasObject(id)) {
+            return true;
+        }
+
+        Path tmpCompressed = Files.createTempFile(this.tmp, "cmp", ".tmp");
+        try {
+            Deflater deflater = new Deflater(compressionLevel);
+            try (OutputStream os = Files.newOutputStream(tmpCompressed)) {
+                DataOutputStream dos = new DataOutputStream(os);
+                dos.writeLong(size);
+                try (DeflaterOutputStream zos = new DeflaterOutputStream(dos, deflater, 8192)) {
+                    Files.copy(file, zos);
+                }
+            } finally {
+                deflater.end();
+            }
+
+            if (Files.size(tmpCompressed) > size * MAX_COMPRESSED_RATIO) {
+                return false;
+            }
+
+            store(id, tmpCompressed, getStoredFile(compressed, id));
+            compressedStore.setInUse();
+            return true;
+        } finally {
+            PathHelper.deleteIfExistsRetry(tmpCompressed);
+        }
+    }
+
     /**
      * Verifies that a given {@link ObjectId}s backing file still hashes to the
      * given {@link ObjectId}. This can be used to detect corruption of objects.
@@ -218,20 +513,136 @@ public class ObjectDatabase extends LockableDatabase {
      */
     public void removeObject(ObjectId id) {
         Path file = getObjectFileLocal(id);
-        if (!PathHelper.exists(file)) {
+        Path chunkList = getStoredFile(chunked, id);
+        Path compressedFile = getStoredFile(compressed, id);
+        boolean loose = PathHelper.exists(file);
+        boolean packed = packs.find(id) != null;
+        boolean chunks = PathHelper.exists(chunkList);
+        boolean isCompressed = PathHelper.exists(compressedFile);
+        if (!loose && !packed && !chunks && !isCompressed) {
             return; // not there at all.
         }
-        locked(() -> PathHelper.deleteIfExistsRetry(file));
+        locked(() -> {
+            PathHelper.deleteIfExistsRetry(file);
+            PathHelper.deleteIfExistsRetry(chunkList);
+            PathHelper.deleteIfExistsRetry(compressedFile);
+            packs.remove(id);
+        });
+    }
+
+    /**
+     * Removes multiple objects from the database at once. The database is locked only once for all objects, and loose files
+     * are deleted in parallel batches using the given {@link ExecutorService}.
+     *
+     * @param ids the objects to remove.
+     * @param executor used to parallelize file deletion.
+     * @return the size of each removed object. Objects which did not exist are not contained.
+     */
+    public SortedMap<ObjectId, Long> removeObjects(Collection<ObjectId> ids, ExecutorService executor) {
+        SortedMap<ObjectId, Long> result = new TreeMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        List<ObjectId> packed = new ArrayList<>();
+        locked(() -> {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (List<ObjectId> batch : Lists.partition(new ArrayList<>(ids), REMOVE_BATCH_SIZE)) {
+                tasks.add(executor.submit(() -> {
+                    Map<ObjectId, Long> removed = new HashMap<>();
+                    List<ObjectId> inPack = new ArrayList<>();
+                    for (ObjectId id : batch) {
+                        PackStore.Located located = packs.find(id);
+                        if (located != null) {
+                            inPack.add(id);
+                            removed.put(id, located.getLength());
+                        }
+
+                        Path file = getObjectFileLocal(id);
+                        try {
+                            removed.put(id, Files.size(file));
+                            PathHelper.deleteIfExistsRetry(file);
+                        } catch (NoSuchFileException e) {
+                            // not loose (anymore).
+                        }
+
+                        // the chunks themselves are separate objects which are removed once unreferenced.
+                        Path chunkList = getStoredFile(chunked, id);
+                        try {
+                            removed.putIfAbsent(id, Files.size(chunkList));
+                            PathHelper.deleteIfExistsRetry(chunkList);
+                        } catch (NoSuchFileException e) {
+                            // not chunked.
+                        }
+
+                        Path compressedFile = getStoredFile(compressed, id);
+                        try {
+                            removed.putIfAbsent(id, Files.size(compressedFile));
+                            PathHelper.deleteIfExistsRetry(compressedFile);
+                        } catch (NoSuchFileException e) {
+                            // not compressed.
+                        }
+                    }
+                    synchronized (result) {
+                        result.putAll(removed);
+                        packed.addAll(inPack);
+                    }
+                    return null;
+                }));
+            }
+            FutureHelper.awaitAll(tasks);
+            packs.remove(packed);
+        });
+        return result;
     }
 
     /**
      * Calculate the {@link Path} where a certain {@link ObjectId} can be found in
      * the database. Use with caution. This can be overridden by implementations to enable pooling.
+     * <p>
+     * Objects which are packed, chunked or compressed are not stored at this location, use {@link #openObjectFile(ObjectId)}
+     * in case a plain file is required.
      */
     public Path getObjectFile(ObjectId id) {
         return getObjectFileLocal(id);
     }
 
+    /**
+     * Provides the content of an object as a plain file, for callers which cannot work with {@link #getStream(ObjectId)}.
+     * <p>
+     * In case the object is packed, chunked or compressed, its content is extracted to a temporary file, which is removed
+     * when the returned {@link ObjectFile} is closed. The database itself is never modified.
+     *
+     * @param id the object to look up.
+     * @return the file holding the content of the object, which must be closed by the caller.
+     * @throws IOException in case of an error.
+     */
+    public ObjectFile openObjectFile(ObjectId id) throws IOException {
+        Path file = getLooseObjectFile(id);
+        if (file != null) {
+            return new ObjectFile(file, false);
+        }
+
+        Path tmpFile = Files.createTempFile(this.tmp != null ? this.tmp : root, "obj", ".tmp");
+        try (InputStream is = getStream(id)) {
+            Files.copy(is, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            return new ObjectFile(tmpFile, true);
+        } catch (IOException | RuntimeException e) {
+            PathHelper.deleteIfExistsRetry(tmpFile);
+            throw e;
+        }
+    }
+
+    /**
+     * @param id the object to look up.
+     * @return the plain file holding the content of the object, or <code>null</code> if the object is not stored as a plain
+     *         file (e.g. packed, chunked or compressed).
+     */
+    public Path getLooseObjectFile(ObjectId id) {
+        Path file = getObjectFileLocal(id);
+        return PathHelper.exists(file) ? file : null;
+    }
+
     /**
      * Calculate the {@link Path} where a certain {@link ObjectId} can be found in
      * the database. Use with caution.
@@ -243,11 +654,55 @@ public class ObjectDatabase extends LockableDatabase {
         return root.resolve(root.getFileSystem().getPath(l1, l2, rawId));
     }
 
+    /**
+     * @return the location of an object in one of the alternative storage directories (chunk lists, compressed objects).
+     */
+    private static Path getStoredFile(Path dir, ObjectId id) {
+        String rawId = id.getId();
+        return dir.resolve(dir.getFileSystem().getPath(rawId.substring(0, 2), rawId.substring(2, 4), rawId));
+    }
+
+    /**
+     * @return the chunk list of the given object, or <code>null</code> if the object is not chunked.
+     */
+    private ChunkList readChunkList(ObjectId id) {
+        if (!chunkedStore.mayContainObjects()) {
+            return null;
+        }
+        Path file = getStoredFile(chunked, id);
+        if (!PathHelper.exists(file)) {
+            return null;
+        }
+        try {
+            return ChunkList.read(file);
+        } catch (NoSuchFileException e) {
+            return null; // removed concurrently.
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read chunk list of " + id, e);
+        }
+    }
+
     /**
      * Retrieve the file size for the file backing {@link ObjectId}.
      */
     public long getObjectSize(ObjectId id) throws IOException {
-        return Files.size(getObjectFile(id));
+        try {
+            return Files.size(getObjectFileLocal(id));
+        } catch (NoSuchFileException e) {
+            PackStore.Located packed = packs.find(id);
+            if (packed != null) {
+                return packed.getLength();
+            }
+            ChunkList chunks = readChunkList(id);
+            if (chunks != null) {
+                return chunks.getLength();
+            }
+            try (DataInputStream dis = new DataInputStream(Files.newInputStream(getStoredFile(compressed, id)))) {
+                return dis.readLong();
+            } catch (NoSuchFileException nsfe) {
+                throw e;
+            }
+        }
     }
 
     /**
@@ -257,43 +712,219 @@ public class ObjectDatabase extends LockableDatabase {
      * The consumer will be notified for each {@link ObjectId} which is <b>directly</b>
      * present in this {@link ObjectDatabase}. {@link AugmentedObjectDatabase} will not
      * contribute augmented objects.
+     * <p>
+     * Packed objects are listed from the pack indices after all loose objects. An object which is both loose and packed at
+     * the same time (e.g. while being repacked) is reported twice. Chunked and
+     * compressed objects are reported last, the chunks of chunked objects are reported as individual objects.
      */
     public void walkAllObjects(Consumer<ObjectId> consumer) {
+        walkLooseObjects(consumer);
+        packs.walk(consumer);
+        walkLooseObjects(chunked, consumer);
+        walkLooseObjects(compressed, consumer);
+    }
+
+    /**
+     * Same as {@link #walkAllObjects(Consumer)}, but sweeps the fan-out directories of loose objects concurrently using the
+     * given {@link ExecutorService}. The consumer is never called concurrently, but not necessarily on the calling thread.
+     */
+    public void walkAllObjects(Consumer<ObjectId> consumer, ExecutorService executor) {
+        List<Path> buckets = new ArrayList<>();
+        try (DirectoryStream<Path> list = Files.newDirectoryStream(root)) {
+            for (Path p : list) {
+                if (p.equals(packs.getDirectory()) || p.equals(chunked) || p.equals(compressed)) {
+                    continue;
+                }
+                if (Files.isDirectory(p)) {
+                    buckets.add(p);
+                } else {
+                    ObjectId id = ObjectId.parse(p.getFileName().toString());
+                    if (id != null) {
+                        consumer.accept(id);
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // no objects at all.
+            return;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot list objects", e);
+        }
+
         try (Activity scan = reporter.start("Listing Objects", 0)) {
-            long xctpCount = 0;
-            do {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Path bucket : buckets) {
+                tasks.add(executor.submit(() -> {
+                    List<ObjectId> found = new ArrayList<>();
+                    walkLooseObjects(bucket, found::add);
+                    synchronized (consumer) {
+                        found.forEach(consumer);
+                        scan.workAndCancelIfRequested(found.size());
+                    }
+                }));
+            }
+            FutureHelper.awaitAll(tasks);
+        }
+
+        synchronized (consumer) {
+            packs.walk(consumer);
+            walkLooseObjects(chunked, consumer);
+            walkLooseObjects(compressed, consumer);
+        }
+    }
+
+    private void walkLooseObjects(Consumer<ObjectId> consumer) {
+        try (Activity scan = reporter.start("Listing Objects", 0)) {
+            walkLooseObjects(root, id -> {
+                scan.workAndCancelIfRequested(1);
+                consumer.accept(id);
+            });
+        }
+    }
+
+    private void walkLooseObjects(Path dir, Consumer<ObjectId> consumer) {
+        long xctpCount = 0;
+        do {
+            try {
+                try (Stream<Path> walk = Files.walk(dir)) {
+                    walk.filter(p -> !p.startsWith(packs.getDirectory()))//
+                            .filter(p -> dir.startsWith(chunked) || !p.startsWith(chunked))//
+                            .filter(p -> dir.startsWith(compressed) || !p.startsWith(compressed))//
+                            .filter(Files::isRegularFile)//
+                            .map(Path::getFileName)//
+                            .map(Object::toString)//
+                            .map(ObjectId::parse).filter(Objects::nonNull)//
+                            .forEach(consumer);
+
+                    // done. explicit return to escape the exception handling retry loop :)
+                    return;
+                } catch (UncheckedIOException e) {
+                    // something was removed in the middle of the walk... retry.
+                    if (!(e.getCause() instanceof NoSuchFileException) || xctpCount++ > 20) {
+                        throw e;
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // this happens if the path does not exist at all anymore, so there are zero objects.
+                if (log.isDebugEnabled()) {
+                    log.debug("Path to walk not found", e);
+                }
+                return;
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot walk objects", e);
+            }
+
+            // Delay the loop a little
+            Threads.sleep(50);
+        } while (true);
+    }
+
+    /**
+     * Compacts all loose objects up to the given size into a new pack, and rewrites all packs which contain removed objects.
+     * <p>
+     * The new pack is written without holding the database lock. Only publishing the pack and removing the now packed loose
+     * objects is done while locked, which keeps concurrent inserts going. Objects which are removed concurrently while the
+     * pack is written are recorded as removed in the new pack right away.
+     *
+     * @param maxObjectSize the maximum size of a loose object to be considered for packing. Larger objects are kept as loose
+     *            objects, so they can be streamed directly from their file.
+     * @return the number of objects written to the new pack.
+     */
+    public long repack(long maxObjectSize) {
+        packs.cleanup();
+
+        List<ObjectId> loose = new ArrayList<>();
+        walkLooseObjects(id -> {
+            try {
+                if (Files.size(getObjectFileLocal(id)) <= maxObjectSize) {
+                    loose.add(id);
+                }
+            } catch (IOException e) {
+                log.debug("Cannot determine size of {}, not packing", id, e);
+            }
+        });
+
+        List<PackFile> rewrite = packs.getPacksWithRemovals();
+        Set<ObjectId> toPack = new LinkedHashSet<>(loose);
+        for (PackFile pack : rewrite) {
+            pack.walk(e -> toPack.add(e.getId()));
+        }
+
+        if (loose.isEmpty() && rewrite.isEmpty()) {
+            return 0;
+        }
+
+        try (Activity activity = reporter.start("Packing Objects", toPack.size())) {
+            PackStore.PendingPack pending = packs.write(toPack, id -> {
+                activity.workAndCancelIfRequested(1);
                 try {
-                    try (Stream<Path> walk = Files.walk(root)) {
-                        walk.filter(Files::isRegularFile)//
-                                .map(Path::getFileName)//
-                                .map(Object::toString)//
-                                .map(ObjectId::parse).filter(Objects::nonNull)//
-                                .forEach(e -> {
-                                    scan.workAndCancelIfRequested(1);
-                                    consumer.accept(e);
-                                });
-
-                        // done. explicit return to escape the exception handling retry loop :)
-                        return;
-                    } catch (UncheckedIOException e) {
-                        // something was removed in the middle of the walk... retry.
-                        if (!(e.getCause() instanceof NoSuchFileException) || xctpCount++ > 20) {
-                            throw e;
-                        }
+                    return getStream(id);
+                } catch (IllegalStateException e) {
+                    return null; // removed in the meantime.
+                }
+            });
+
+            locked(() -> {
+                // everything which vanished while writing is recorded as removed right away.
+                Set<ObjectId> removed = new HashSet<>();
+                for (ObjectId id : pending.written) {
+                    if (!PathHelper.exists(getObjectFileLocal(id)) && packs.find(id) == null) {
+                        removed.add(id);
                     }
-                } catch (NoSuchFileException e) {
-                    // this happens if the path does not exist at all anymore, so there are zero objects.
-                    if (log.isDebugEnabled()) {
-                        log.debug("Path to walk not found", e);
+                }
+
+                packs.publish(pending, removed, rewrite);
+
+                for (ObjectId id : loose) {
+                    if (pending.written.contains(id)) {
+                        PathHelper.deleteIfExistsRetry(getObjectFileLocal(id));
                     }
-                    return;
-                } catch (IOException e) {
-                    throw new IllegalStateException("Cannot walk objects", e);
                 }
+            });
+
+            return pending.written.size();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot repack objects", e);
+        }
+    }
 
-                // Delay the loop a little
-                Threads.sleep(50);
-            } while (true);
+    /**
+     * Releases all resources held by the database.
+     */
+    public void close() {
+        packs.close();
+    }
+
+    /**
+     * Remembers whether an alternative storage directory exists at all. Once it exists, it is never checked again. Directories
+     * created by other processes are noticed after a short while.
+     */
+    private static final class StoreDirectory {
+
+        private final Path dir;
+        private volatile boolean inUse;
+        private volatile long lastCheck = Long.MIN_VALUE;
+
+        StoreDirectory(Path dir) {
+            this.dir = dir;
+        }
+
+        boolean mayContainObjects() {
+            if (inUse) {
+                return true;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastCheck > STORE_RECHECK_MILLIS) {
+                inUse = PathHelper.exists(dir);
+                lastCheck = now;
+            }
+            return inUse;
+        }
+
+        void setInUse() {
+            inUse = true;
         }
     }
+
 }
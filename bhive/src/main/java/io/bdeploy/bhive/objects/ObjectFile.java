@@ -0,0 +1,49 @@
+package io.bdeploy.bhive.objects;
+
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.common.NoThrowAutoCloseable;
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * A plain file holding the content of an object, see {@link ObjectDatabase#openObjectFile(io.bdeploy.bhive.model.ObjectId)}.
+ * <p>
+ * For objects which are not stored as plain file (packed, chunked or compressed) this is a temporary copy, which is removed
+ * once closed. The file must never be modified.
+ */
+public class ObjectFile implements NoThrowAutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ObjectFile.class);
+
+    private final Path path;
+    private final boolean temporary;
+
+    ObjectFile(Path path, boolean temporary) {
+        this.path = path;
+        this.temporary = temporary;
+    }
+
+    /**
+     * @return the file holding the content of the object.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() {
+        if (!temporary) {
+            return;
+        }
+
+        try {
+            PathHelper.deleteIfExistsRetry(path);
+        } catch (Exception e) {
+            log.warn("Cannot remove temporary object file {}", path, e);
+        }
+    }
+
+}
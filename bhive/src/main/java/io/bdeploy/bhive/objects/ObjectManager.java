@@ -9,6 +9,7 @@ import static io.bdeploy.common.util.RuntimeAssert.assertTrue;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -17,16 +18,21 @@ import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -64,21 +70,16 @@ public class ObjectManager {
 
     private static final Logger log = LoggerFactory.getLogger(ObjectManager.class);
 
+    /** Permissions removed from objects before hard linking them. */
+    private static final Set<PosixFilePermission> WRITE_PERMISSIONS = EnumSet.of(PosixFilePermission.OWNER_WRITE,
+            PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+
     private final ObjectDatabase db;
     private final ManifestDatabase mdb;
     private final ActivityReporter reporter;
     private final ExecutorService fileOps;
-
-    /**
-     * A cache for Tree and ManifestRef objects which need to actually be loaded from disk for correct tree traversal.
-     * <p>
-     * Assuming a max object size of ~1K, this cache would grow to ~10MB. The average object size is assumed to be less,
-     * but the calculation is defensive.
-     * <p>
-     * For instance a TREE object contains approx. 70 bytes per entry. This means that a 1K tree can hold ~15 entries.
-     * The average for a representative large-scale sample application is ~7.
-     */
-    private final Cache<ObjectId, Object> objectCache = CacheBuilder.newBuilder().maximumSize(10_000).build();
+    private final Cache<ObjectId, Object> objectCache;
+    private final Cache<ObjectId, Boolean> executableCache;
 
     /**
      * Creates a new {@link ObjectManager}. The manager itself has no state. It only
@@ -91,10 +92,47 @@ public class ObjectManager {
      * @param fileOps used to parallelize file operations.
      */
     public ObjectManager(ObjectDatabase db, ManifestDatabase mdb, ActivityReporter reporter, ExecutorService fileOps) {
+        this(db, mdb, reporter, fileOps, new Caches());
+    }
+
+    /**
+     * Creates a new {@link ObjectManager} using the given {@link Caches}, which may be shared with other {@link ObjectManager}s
+     * on the same {@link ObjectDatabase}.
+     *
+     * @see #ObjectManager(ObjectDatabase, ManifestDatabase, ActivityReporter, ExecutorService)
+     */
+    public ObjectManager(ObjectDatabase db, ManifestDatabase mdb, ActivityReporter reporter, ExecutorService fileOps,
+            Caches caches) {
         this.db = db;
         this.mdb = mdb;
         this.reporter = reporter;
         this.fileOps = fileOps;
+        this.objectCache = caches.objectCache;
+        this.executableCache = caches.executableCache;
+    }
+
+    /**
+     * Objects decoded from the {@link ObjectDatabase} and decisions derived from their content. As objects never change, these
+     * can be shared by all {@link ObjectManager}s on the same {@link ObjectDatabase}.
+     */
+    public static final class Caches {
+
+        /**
+         * A cache for Tree and ManifestRef objects which need to actually be loaded from disk for correct tree traversal.
+         * <p>
+         * Assuming a max object size of ~1K, this cache would grow to ~10MB. The average object size is assumed to be less,
+         * but the calculation is defensive.
+         * <p>
+         * For instance a TREE object contains approx. 70 bytes per entry. This means that a 1K tree can hold ~15 entries.
+         * The average for a representative large-scale sample application is ~7.
+         */
+        private final Cache<ObjectId, Object> objectCache = CacheBuilder.newBuilder().maximumSize(10_000).build();
+
+        /**
+         * Caches whether a BLOB needs to be executable once exported. The decision requires content type detection on the start
+         * of the file, which is wasted effort when exporting the same objects over and over again.
+         */
+        private final Cache<ObjectId, Boolean> executableCache = CacheBuilder.newBuilder().maximumSize(50_000).build();
     }
 
     /**
@@ -189,8 +227,28 @@ public class ObjectManager {
      *            export of manifest reference in place).
      */
     public void exportTree(ObjectId tree, Path location, ReferenceHandler handler) {
+        exportTree(tree, location, handler, false);
+    }
+
+    /**
+     * Exports a given tree (by {@link ObjectId}) to the given location, which must
+     * not exist yet.
+     * <p>
+     * If linking is requested, BLOBs are exported as hard links to the objects in the {@link ObjectDatabase} where possible,
+     * which avoids copying and re-hashing their content. The exported files share their content and permissions with the
+     * objects in the database, thus linked objects are made read-only first, and permissions of linked files are never changed
+     * afterwards. Objects which are not stored as plain files (packed, chunked, compressed), reside on a different or non-POSIX
+     * file system, or are linked already with different permissions are copied as usual.
+     *
+     * @param tree the {@link ObjectId} of the {@link Tree} to write
+     * @param location the target {@link Path} to create
+     * @param handler a custom reference handler which takes care of references. If not set, the default will be used (inline
+     *            export of manifest reference in place).
+     * @param link whether to hard link objects instead of copying them.
+     */
+    public void exportTree(ObjectId tree, Path location, ReferenceHandler handler, boolean link) {
         if (handler == null) {
-            handler = new DefaultReferenceHandler(this);
+            handler = new DefaultReferenceHandler(this, link);
         }
         try {
             if (PathHelper.exists(location)) {
@@ -226,7 +284,7 @@ public class ObjectManager {
 
             Activity exporting = reporter.start("Exporting Files", fileCount.get());
             try {
-                internalExportTree(tree, tempLocation, tree, tempLocation, exporting, handler);
+                internalExportTree(tree, tempLocation, tree, tempLocation, exporting, handler, new AtomicBoolean(link));
                 PathHelper.moveRetry(tempLocation, location, StandardCopyOption.ATOMIC_MOVE);
             } catch (Throwable t) {
                 try {
@@ -249,7 +307,7 @@ public class ObjectManager {
      * Recursively export tree to target location.
      */
     private void internalExportTree(ObjectId tree, Path topLevel, ObjectId topLevelTree, Path location, Activity exporting,
-            ReferenceHandler handler) throws IOException {
+            ReferenceHandler handler, AtomicBoolean link) throws IOException {
         PathHelper.mkdirs(location);
 
         Tree t;
@@ -269,7 +327,9 @@ public class ObjectManager {
                 case BLOB:
                     filesOnLevel.add(fileOps.submit(() -> {
                         try {
-                            internalExportBlobByCopy(obj, child);
+                            if (!link.get() || !internalExportBlobByLink(obj, child, link)) {
+                                internalExportBlobByCopy(obj, child);
+                            }
                         } catch (Exception e) {
                             throw new IllegalStateException("Cannot export BLOB to " + child, e);
                         } finally {
@@ -282,7 +342,7 @@ public class ObjectManager {
                     exporting.workAndCancelIfRequested(1);
                     break;
                 case TREE:
-                    internalExportTree(obj, topLevel, topLevelTree, child, exporting, handler);
+                    internalExportTree(obj, topLevel, topLevelTree, child, exporting, handler, link);
                     exporting.workAndCancelIfRequested(1);
                     break;
                 default:
@@ -297,6 +357,56 @@ public class ObjectManager {
         exporting.workAndCancelIfRequested(1);
     }
 
+    /**
+     * Hard links an object into the target location. The object is trusted as is, its content is not verified.
+     * <p>
+     * The object file is made read-only (and executable if required) before linking it, so the link cannot be used to modify
+     * the object. This is only done while the object file is not linked anywhere yet. Permissions of a file which is linked
+     * already are never changed, as this would affect all other links as well.
+     *
+     * @return whether the object could be linked. If not, the caller needs to fall back to copying.
+     */
+    private boolean internalExportBlobByLink(ObjectId obj, Path child, AtomicBoolean link) throws IOException {
+        Path source = db.getLooseObjectFile(obj);
+        if (source == null || !source.getFileSystem().equals(child.getFileSystem())) {
+            return false;
+        }
+
+        PosixFileAttributeView view = PathHelper.getPosixView(source);
+        if (view == null) {
+            // cannot make sure that the link is read-only.
+            link.set(false);
+            return false;
+        }
+
+        try {
+            Set<PosixFilePermission> perms = view.readAttributes().permissions();
+            Set<PosixFilePermission> required = EnumSet.noneOf(PosixFilePermission.class);
+            required.addAll(perms);
+            required.removeAll(WRITE_PERMISSIONS);
+            if (isExecutable(obj, source, null)) {
+                required.add(PosixFilePermission.OWNER_EXECUTE);
+                required.add(PosixFilePermission.GROUP_EXECUTE);
+            }
+
+            if (!required.equals(perms)) {
+                if (((Number) Files.getAttribute(source, "unix:nlink")).intValue() > 1) {
+                    return false; // linked already using other permissions.
+                }
+                view.setPermissions(required);
+            }
+
+            Files.createLink(child, source);
+        } catch (FileSystemException | UnsupportedOperationException | IllegalArgumentException e) {
+            // different file stores, no support for links, etc. no use in trying again for the rest of the export.
+            log.debug("Cannot link {} to {}, falling back to copy", source, child, e);
+            link.set(false);
+            return false;
+        }
+
+        return true;
+    }
+
     private void internalExportBlobByCopy(ObjectId obj, Path child) {
         // fallback only: create copy of file. determine content type as we go.
         try (ContentInfoInputStreamWrapper is = new ContentInfoInputStreamWrapper(db.getStream(obj),
@@ -306,7 +416,7 @@ public class ObjectManager {
                 // not good - object in DB seems corrupt.
                 throw new IOException("BLOB corruption: " + obj + " (is " + finalId + "), run FSCK");
             }
-            setExecutable(child, is.findMatch());
+            setExecutable(obj, child, is.findMatch());
         } catch (IOException ioe) {
             throw new IllegalStateException("Cannot export " + obj + " to " + child, ioe);
         }
@@ -315,26 +425,37 @@ public class ObjectManager {
     /**
      * Sets attributes to make a file executable if required.
      *
+     * @param obj the {@link ObjectId} of the file, used to cache the decision.
      * @param child {@link Path} to the file to check
      * @param hint a potential pre-calculated {@link ContentInfo}
      */
-    private static void setExecutable(Path child, ContentInfo hint) throws IOException {
+    private void setExecutable(ObjectId obj, Path child, ContentInfo hint) throws IOException {
         PosixFileAttributeView view = PathHelper.getPosixView(child);
         if (view != null) {
-            hint = PathHelper.getContentInfo(child, hint);
-            if (hint == null) {
-                return;
-            }
-
-            if (PathHelper.isExecutable(hint)) {
+            if (isExecutable(obj, child, hint)) {
                 Set<PosixFilePermission> perms = view.readAttributes().permissions();
-                perms.add(PosixFilePermission.OWNER_EXECUTE);
-                perms.add(PosixFilePermission.GROUP_EXECUTE);
-                view.setPermissions(perms);
+                if (perms.add(PosixFilePermission.OWNER_EXECUTE) | perms.add(PosixFilePermission.GROUP_EXECUTE)) {
+                    view.setPermissions(perms);
+                }
             }
         }
     }
 
+    /**
+     * @param obj the {@link ObjectId} of the file, used to cache the decision.
+     * @param file {@link Path} to a file holding the content of the object.
+     * @param hint a potential pre-calculated {@link ContentInfo}
+     * @return whether the object should be executable when exported.
+     */
+    private boolean isExecutable(ObjectId obj, Path file, ContentInfo hint) throws IOException {
+        Boolean executable = executableCache.getIfPresent(obj);
+        if (executable == null) {
+            executable = PathHelper.isExecutable(PathHelper.getContentInfo(file, hint));
+            executableCache.put(obj, executable);
+        }
+        return executable;
+    }
+
     /**
      * Create a traversable snapshot of the given {@link Tree} state up to a given maximum depth.
      * <p>
@@ -544,6 +665,26 @@ public class ObjectManager {
         }
     }
 
+    /**
+     * Lists all objects directly contained in the underlying database, sweeping the object directories in parallel.
+     *
+     * @param consumer notified for each object. Never called concurrently.
+     * @see ObjectDatabase#walkAllObjects(Consumer, ExecutorService)
+     */
+    public void walkAllObjects(Consumer<ObjectId> consumer) {
+        db.walkAllObjects(consumer, fileOps);
+    }
+
+    /**
+     * Removes the given objects from the underlying database in parallel batches.
+     *
+     * @return the size of each removed object.
+     * @see ObjectDatabase#removeObjects(Collection, ExecutorService)
+     */
+    public SortedMap<ObjectId, Long> removeObjects(Collection<ObjectId> ids) {
+        return db.removeObjects(ids, fileOps);
+    }
+
     /**
      * Perform an operation on the actual underlying object database.
      */
@@ -5,9 +5,12 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 
@@ -80,4 +83,9 @@ public class ObjectReferenceDatabase extends ObjectDatabase {
         throw new UnsupportedOperationException("Reference-only Database");
     }
 
+    @Override
+    public SortedMap<ObjectId, Long> removeObjects(Collection<ObjectId> ids, ExecutorService executor) {
+        throw new UnsupportedOperationException("Reference-only Database");
+    }
+
 }
@@ -0,0 +1,402 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * A single immutable pack of objects.
+ * <p>
+ * A pack consists of three files sharing the same base name:
+ * <ul>
+ * <li><code>.pack</code> - the raw content of all objects, concatenated.</li>
+ * <li><code>.idx</code> - a sorted index of all {@link ObjectId}s in the pack along with offset and length of the content in the
+ * pack. The index is memory mapped, lookups are a binary search in the range given by a 256 entry fan-out table on the first
+ * byte of the {@link ObjectId}.</li>
+ * <li><code>.del</code> - an optional, append-only list of {@link ObjectId}s which have been removed from the pack. They are
+ * physically removed on the next repack.</li>
+ * </ul>
+ * The <code>.idx</code> file is always written last (atomically). A <code>.pack</code> without <code>.idx</code> is incomplete
+ * and ignored.
+ */
+class PackFile {
+
+    private static final Logger log = LoggerFactory.getLogger(PackFile.class);
+
+    static final String PACK_EXT = ".pack";
+    static final String INDEX_EXT = ".idx";
+    static final String DELETED_EXT = ".del";
+
+    private static final int INDEX_MAGIC = 0x42484958; // BHIX
+    private static final int INDEX_VERSION = 1;
+    private static final int ID_LENGTH = 20;
+    private static final int ENTRY_LENGTH = ID_LENGTH + Long.BYTES + Long.BYTES;
+    private static final int FANOUT_OFFSET = 3 * Integer.BYTES;
+    private static final int ENTRIES_OFFSET = FANOUT_OFFSET + 256 * Integer.BYTES;
+
+    private final String name;
+    private final Path pack;
+    private final Path index;
+    private final Path deleted;
+    private final MappedByteBuffer mapped;
+    private final int count;
+    private final Set<ObjectId> removed = ConcurrentHashMap.newKeySet();
+
+    private FileChannel data;
+
+    private PackFile(Path dir, String name) throws IOException {
+        this.name = name;
+        this.pack = dir.resolve(name + PACK_EXT);
+        this.index = dir.resolve(name + INDEX_EXT);
+        this.deleted = dir.resolve(name + DELETED_EXT);
+
+        try (FileChannel ch = FileChannel.open(index, StandardOpenOption.READ)) {
+            this.mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+
+        if (mapped.capacity() < ENTRIES_OFFSET || mapped.getInt(0) != INDEX_MAGIC || mapped.getInt(4) != INDEX_VERSION) {
+            throw new IOException("Invalid pack index " + index);
+        }
+
+        this.count = mapped.getInt(8);
+        if (mapped.capacity() != ENTRIES_OFFSET + (long) count * ENTRY_LENGTH) {
+            throw new IOException("Truncated pack index " + index);
+        }
+
+        if (PathHelper.exists(deleted)) {
+            for (String line : Files.readAllLines(deleted, StandardCharsets.UTF_8)) {
+                ObjectId id = ObjectId.parse(line.trim());
+                if (id != null) {
+                    removed.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens an existing pack with the given name in the given directory.
+     */
+    static PackFile open(Path dir, String name) throws IOException {
+        return new PackFile(dir, name);
+    }
+
+    /**
+     * Writes the index for a pack which has been written completely, and returns the opened {@link PackFile}.
+     * <p>
+     * The index is written to a temporary file first, and then moved in place atomically. Any previously removed
+     * {@link ObjectId}s are recorded before the index becomes visible.
+     *
+     * @param dir the directory to create the pack in.
+     * @param name the base name of the pack, the <code>.pack</code> file must already exist.
+     * @param entries all entries in the pack, in any order.
+     * @param removedIds {@link ObjectId}s which should be marked as removed right away.
+     */
+    static PackFile publish(Path dir, String name, List<Entry> entries, Set<ObjectId> removedIds) throws IOException {
+        entries.sort((a, b) -> compare(a.raw, b.raw));
+
+        int[] fanout = new int[256];
+        for (Entry e : entries) {
+            fanout[e.raw[0] & 0xFF]++;
+        }
+        for (int i = 1; i < fanout.length; ++i) {
+            fanout[i] += fanout[i - 1];
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(ENTRIES_OFFSET + entries.size() * ENTRY_LENGTH);
+        buf.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(entries.size());
+        for (int f : fanout) {
+            buf.putInt(f);
+        }
+        for (Entry e : entries) {
+            buf.put(e.raw).putLong(e.offset).putLong(e.length);
+        }
+        buf.flip();
+
+        if (!removedIds.isEmpty()) {
+            appendRemoved(dir.resolve(name + DELETED_EXT), removedIds);
+        }
+
+        Path tmpIndex = dir.resolve(name + INDEX_EXT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmpIndex, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        PathHelper.moveRetry(tmpIndex, dir.resolve(name + INDEX_EXT), StandardCopyOption.ATOMIC_MOVE);
+
+        return open(dir, name);
+    }
+
+    /**
+     * @return the base name of the pack.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the amount of objects in the pack, including removed ones.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return whether any object in this pack has been removed, which makes the pack a candidate for rewriting.
+     */
+    boolean hasRemoved() {
+        return !removed.isEmpty();
+    }
+
+    /**
+     * @param id the {@link ObjectId} to check
+     * @return whether the given {@link ObjectId} has been removed from the pack.
+     */
+    boolean isRemoved(ObjectId id) {
+        return removed.contains(id);
+    }
+
+    /**
+     * Looks up the given {@link ObjectId} in the index.
+     *
+     * @return the {@link Entry} or <code>null</code> if the object is not contained or has been removed.
+     */
+    Entry find(ObjectId id) {
+        byte[] raw = id.toBytes();
+        int first = raw[0] & 0xFF;
+        int low = first == 0 ? 0 : mapped.getInt(FANOUT_OFFSET + (first - 1) * Integer.BYTES);
+        int high = mapped.getInt(FANOUT_OFFSET + first * Integer.BYTES) - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int pos = ENTRIES_OFFSET + mid * ENTRY_LENGTH;
+            int cmp = compareAt(pos, raw);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                if (!removed.isEmpty() && removed.contains(id)) {
+                    return null;
+                }
+                return new Entry(raw, mapped.getLong(pos + ID_LENGTH), mapped.getLong(pos + ID_LENGTH + Long.BYTES));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Notifies the consumer about each {@link Entry} in the pack which has not been removed.
+     */
+    void walk(Consumer<Entry> consumer) {
+        byte[] raw = new byte[ID_LENGTH];
+        for (int i = 0; i < count; ++i) {
+            int pos = ENTRIES_OFFSET + i * ENTRY_LENGTH;
+            for (int b = 0; b < ID_LENGTH; ++b) {
+                raw[b] = mapped.get(pos + b);
+            }
+            Entry e = new Entry(raw.clone(), mapped.getLong(pos + ID_LENGTH), mapped.getLong(pos + ID_LENGTH + Long.BYTES));
+            if (!removed.isEmpty() && removed.contains(e.getId())) {
+                continue;
+            }
+            consumer.accept(e);
+        }
+    }
+
+    /**
+     * Opens a stream to the content of the given {@link Entry}, which must have been retrieved from this pack.
+     */
+    InputStream open(Entry entry) throws IOException {
+        return new PackEntryInputStream(getDataChannel(), entry.offset, entry.length);
+    }
+
+    /**
+     * Marks the given {@link ObjectId} as removed. The caller is responsible for locking.
+     */
+    void remove(ObjectId id) throws IOException {
+        if (removed.add(id)) {
+            appendRemoved(deleted, Set.of(id));
+        }
+    }
+
+    /**
+     * Marks all given {@link ObjectId}s as removed. The caller is responsible for locking.
+     */
+    void remove(Collection<ObjectId> ids) throws IOException {
+        List<ObjectId> added = new ArrayList<>();
+        for (ObjectId id : ids) {
+            if (removed.add(id)) {
+                added.add(id);
+            }
+        }
+        if (!added.isEmpty()) {
+            appendRemoved(deleted, added);
+        }
+    }
+
+    /**
+     * Closes all resources and deletes all files belonging to this pack.
+     */
+    void delete() {
+        close();
+
+        // index first - this makes the pack invisible to others.
+        PathHelper.deleteIfExistsRetry(index);
+        PathHelper.deleteIfExistsRetry(deleted);
+        PathHelper.deleteIfExistsRetry(pack);
+    }
+
+    synchronized void close() {
+        if (data != null) {
+            try {
+                data.close();
+            } catch (IOException e) {
+                log.debug("Cannot close pack {}", pack, e);
+            }
+            data = null;
+        }
+    }
+
+    private synchronized FileChannel getDataChannel() throws IOException {
+        if (data == null || !data.isOpen()) {
+            data = FileChannel.open(pack, StandardOpenOption.READ);
+        }
+        return data;
+    }
+
+    private int compareAt(int pos, byte[] raw) {
+        for (int i = 0; i < ID_LENGTH; ++i) {
+            int cmp = Integer.compare(mapped.get(pos + i) & 0xFF, raw[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < ID_LENGTH; ++i) {
+            int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static void appendRemoved(Path file, Collection<ObjectId> ids) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (ObjectId id : ids) {
+                writer.write(id.getId());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * A single object in a pack.
+     */
+    static final class Entry {
+
+        private final byte[] raw;
+        private final long offset;
+        private final long length;
+
+        Entry(byte[] raw, long offset, long length) {
+            this.raw = raw;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        ObjectId getId() {
+            return ObjectId.fromBytes(raw, 0);
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Reads a range of a pack using positional reads, which allows concurrent readers on the same {@link FileChannel}.
+     */
+    private static final class PackEntryInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        PackEntryInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int num = read(single, 0, 1);
+            return num == -1 ? -1 : (single[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            int toRead = (int) Math.min(len, remaining);
+            int num = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (num < 0) {
+                throw new IOException("Unexpected end of pack at " + position);
+            }
+            position += num;
+            remaining -= num;
+            return num;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+    }
+
+}
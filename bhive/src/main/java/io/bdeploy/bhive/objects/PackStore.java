@@ -0,0 +1,430 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.StreamHelper;
+import io.bdeploy.common.util.UuidHelper;
+
+/**
+ * Manages all {@link PackFile}s of an {@link ObjectDatabase}.
+ * <p>
+ * The set of packs is re-read from disc whenever a lookup misses and the pack directory changed since the last scan. This
+ * makes packs written by other processes visible without explicit synchronization. Lookups only need to synchronize in case
+ * the packs are actually re-read.
+ */
+class PackStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PackStore.class);
+    private static final String PACK_PREFIX = "pack-";
+    private static final long MODIFICATION_GRACE_MILLIS = 2_000;
+
+    private final Path dir;
+
+    private volatile List<PackFile> packs = Collections.emptyList();
+    private volatile long lastScanModified = Long.MIN_VALUE;
+    private volatile long lastScanTime = Long.MIN_VALUE;
+
+    PackStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the {@link Path} containing all pack files.
+     */
+    Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Finds the given {@link ObjectId} in any of the packs.
+     *
+     * @return a {@link Located} object or <code>null</code> if no pack contains the object.
+     */
+    Located find(ObjectId id) {
+        Located result = findIn(packs, id);
+        if (result == null && refresh(false)) {
+            result = findIn(packs, id);
+        }
+        return result;
+    }
+
+    private static Located findIn(List<PackFile> current, ObjectId id) {
+        for (PackFile pack : current) {
+            PackFile.Entry entry = pack.find(id);
+            if (entry != null) {
+                return new Located(pack, entry);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Notifies the given consumer about every object in every pack which has not been removed.
+     */
+    void walk(Consumer<ObjectId> consumer) {
+        refresh(false);
+        for (PackFile pack : packs) {
+            pack.walk(e -> consumer.accept(e.getId()));
+        }
+    }
+
+    /**
+     * Marks the given {@link ObjectId} as removed in all packs containing it. The caller must hold the database lock.
+     */
+    void remove(ObjectId id) throws IOException {
+        for (PackFile pack : packs) {
+            if (pack.find(id) != null) {
+                pack.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Marks all given {@link ObjectId}s as removed in all packs containing them. The caller must hold the database lock.
+     */
+    void remove(Collection<ObjectId> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (PackFile pack : packs) {
+            List<ObjectId> contained = new ArrayList<>();
+            for (ObjectId id : ids) {
+                if (pack.find(id) != null) {
+                    contained.add(id);
+                }
+            }
+            pack.remove(contained);
+        }
+    }
+
+    /**
+     * @return all current packs which contain removed objects and should be rewritten.
+     */
+    List<PackFile> getPacksWithRemovals() {
+        refresh(false);
+        List<PackFile> result = new ArrayList<>();
+        for (PackFile pack : packs) {
+            if (pack.hasRemoved()) {
+                result.add(pack);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Re-reads the list of available packs from disc.
+     *
+     * @param force whether to re-read even if the directory did not change.
+     * @return whether the list of packs has been re-read.
+     */
+    boolean refresh(boolean force) {
+        if (!force && isCurrent(getLastModified())) {
+            return false;
+        }
+        return doRefresh(force);
+    }
+
+    /**
+     * @param modified the current modification time of the pack directory.
+     * @return whether the last scan is known to reflect the current state of the pack directory.
+     */
+    private boolean isCurrent(long modified) {
+        // the modification time might be coarse, so changes shortly after a scan might go unnoticed. to be safe
+        // we keep re-scanning until the last modification is long enough in the past.
+        return modified == lastScanModified && (lastScanTime - modified) > MODIFICATION_GRACE_MILLIS;
+    }
+
+    private synchronized boolean doRefresh(boolean force) {
+        long modified = getLastModified();
+        if (!force && isCurrent(modified)) {
+            // refreshed concurrently.
+            return false;
+        }
+        long scanTime = System.currentTimeMillis();
+
+        if (!PathHelper.exists(dir)) {
+            // no packs at all, remember so lookups do not need to check again until the directory is created.
+            lastScanModified = modified;
+            lastScanTime = scanTime;
+            return false;
+        }
+
+        List<PackFile> current = packs;
+        List<PackFile> result = new ArrayList<>();
+        try (DirectoryStream<Path> list = Files.newDirectoryStream(dir, PACK_PREFIX + "*" + PackFile.INDEX_EXT)) {
+            for (Path idx : list) {
+                String fn = idx.getFileName().toString();
+                String name = fn.substring(0, fn.length() - PackFile.INDEX_EXT.length());
+
+                PackFile existing = current.stream().filter(p -> p.getName().equals(name)).findAny().orElse(null);
+                if (existing != null) {
+                    result.add(existing);
+                    continue;
+                }
+
+                try {
+                    result.add(PackFile.open(dir, name));
+                } catch (IOException e) {
+                    log.warn("Cannot open pack {}", idx, e);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot list packs in {}", dir, e);
+            return false;
+        }
+
+        for (PackFile old : current) {
+            if (!result.contains(old)) {
+                old.close();
+            }
+        }
+
+        packs = Collections.unmodifiableList(result);
+        lastScanModified = modified;
+        lastScanTime = scanTime;
+        return true;
+    }
+
+    private long getLastModified() {
+        if (dir.getFileSystem() == FileSystems.getDefault()) {
+            return dir.toFile().lastModified();
+        }
+
+        try {
+            return Files.getLastModifiedTime(dir).toMillis();
+        } catch (IOException e) {
+            // just like File.lastModified() for missing directories.
+            return 0;
+        }
+    }
+
+    /**
+     * Writes a new pack containing all the given objects. Each object is re-hashed while writing, objects which do not match
+     * their {@link ObjectId} are skipped.
+     * <p>
+     * The pack is written completely and synced to disc, but not yet visible to anybody. It must be published using
+     * {@link #publish(PendingPack, Set, Collection)}.
+     *
+     * @param ids the objects to write
+     * @param source provides the content of each object.
+     * @return the written but not yet published pack.
+     */
+    PendingPack write(Collection<ObjectId> ids, ContentSource source) throws IOException {
+        PathHelper.mkdirs(dir);
+
+        String name = PACK_PREFIX + UuidHelper.randomId();
+        Path packFile = dir.resolve(name + PackFile.PACK_EXT);
+
+        List<PackFile.Entry> entries = new ArrayList<>();
+        Set<ObjectId> written = new HashSet<>();
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[StreamHelper.BUFFER_SIZE];
+
+        try (FileChannel channel = FileChannel.open(packFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                CountingOutputStream cos = new CountingOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            for (ObjectId id : ids) {
+                long offset = cos.count;
+                digest.reset();
+                try (InputStream is = source.open(id)) {
+                    if (is == null) {
+                        continue;
+                    }
+                    int read;
+                    while ((read = is.read(buffer)) > 0) {
+                        digest.update(buffer, 0, read);
+                        cos.write(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    // bytes written so far stay in the pack as unreferenced garbage.
+                    log.warn("Cannot read {} for packing, skipping", id, e);
+                    continue;
+                }
+
+                byte[] raw = digest.digest();
+                if (!ObjectId.fromBytes(raw, 0).equals(id)) {
+                    // damaged objects are rare, so the wasted space in the pack is acceptable.
+                    log.warn("Object {} is damaged, not packing", id);
+                    continue;
+                }
+
+                entries.add(new PackFile.Entry(raw, offset, cos.count - offset));
+                written.add(id);
+            }
+
+            // the index must never point to data which is not on disc, as the loose objects are removed once published.
+            cos.flush();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            PathHelper.deleteIfExistsRetry(packFile);
+            throw e;
+        }
+
+        return new PendingPack(name, entries, written);
+    }
+
+    /**
+     * Makes a previously written pack visible, and drops the given packs which have been rewritten into the new one.
+     * <p>
+     * The caller must hold the database lock.
+     *
+     * @param pending the pack to publish
+     * @param removed {@link ObjectId}s contained in the pending pack which have been removed in the meantime.
+     * @param replaced packs which are obsolete once the new pack is published.
+     */
+    void publish(PendingPack pending, Set<ObjectId> removed, Collection<PackFile> replaced) throws IOException {
+        PackFile published = PackFile.publish(dir, pending.name, pending.entries, removed);
+
+        List<PackFile> result = new ArrayList<>(packs);
+        result.removeAll(replaced);
+        result.add(published);
+        packs = Collections.unmodifiableList(result);
+
+        for (PackFile old : replaced) {
+            old.delete();
+        }
+    }
+
+    /**
+     * Removes left-overs of interrupted pack writes, i.e. pack files without index.
+     */
+    void cleanup() {
+        if (!PathHelper.exists(dir)) {
+            return;
+        }
+
+        Set<String> known = new TreeSet<>();
+        packs.forEach(p -> known.add(p.getName()));
+
+        try (DirectoryStream<Path> list = Files.newDirectoryStream(dir, PACK_PREFIX + "*")) {
+            for (Path p : list) {
+                String fn = p.getFileName().toString();
+                int dot = fn.indexOf('.');
+                String name = dot > 0 ? fn.substring(0, dot) : fn;
+                if (!known.contains(name) && !PathHelper.exists(dir.resolve(name + PackFile.INDEX_EXT))) {
+                    PathHelper.deleteIfExistsRetry(p);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot clean incomplete packs in {}", dir, e);
+        }
+    }
+
+    /**
+     * Closes all open packs.
+     */
+    void close() {
+        for (PackFile pack : packs) {
+            pack.close();
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 support is required", e);
+        }
+    }
+
+    /**
+     * Provides the content of objects to pack.
+     */
+    @FunctionalInterface
+    interface ContentSource {
+
+        /**
+         * @return the content of the given object, or <code>null</code> if it should be skipped.
+         */
+        InputStream open(ObjectId id) throws IOException;
+    }
+
+    /**
+     * A {@link PackFile.Entry} along with the {@link PackFile} containing it.
+     */
+    static final class Located {
+
+        final PackFile pack;
+        final PackFile.Entry entry;
+
+        Located(PackFile pack, PackFile.Entry entry) {
+            this.pack = pack;
+            this.entry = entry;
+        }
+
+        InputStream open() throws IOException {
+            return pack.open(entry);
+        }
+
+        long getLength() {
+            return entry.getLength();
+        }
+    }
+
+    /**
+     * A pack which has been fully written, but whose index has not yet been published.
+     */
+    static final class PendingPack {
+
+        final String name;
+        final List<PackFile.Entry> entries;
+        final Set<ObjectId> written;
+
+        PendingPack(String name, List<PackFile.Entry> entries, Set<ObjectId> written) {
+            this.name = name;
+            this.entries = entries;
+            this.written = written;
+        }
+    }
+
+    /**
+     * Keeps track of the current write offset in the pack.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
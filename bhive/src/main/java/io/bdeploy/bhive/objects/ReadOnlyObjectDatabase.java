@@ -1,6 +1,9 @@
 package io.bdeploy.bhive.objects;
 
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
 
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.common.ActivityReporter;
@@ -21,4 +24,14 @@ public class ReadOnlyObjectDatabase extends ObjectDatabase {
     public void removeObject(ObjectId id) {
         throw new UnsupportedOperationException("Read-only Database");
     }
+
+    @Override
+    public SortedMap<ObjectId, Long> removeObjects(Collection<ObjectId> ids, ExecutorService executor) {
+        throw new UnsupportedOperationException("Read-only Database");
+    }
+
+    @Override
+    public long repack(long maxObjectSize) {
+        throw new UnsupportedOperationException("Read-only Database");
+    }
 }
@@ -0,0 +1,319 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.UuidHelper;
+
+/**
+ * Keeps track of reference changes in a BHive to allow incremental garbage collection.
+ * <p>
+ * The journal consists of:
+ * <ul>
+ * <li><code>orphans.log</code> - an append-only log of the root trees of deleted manifests. Each record has the form
+ * <code>&lt;root-id&gt; &lt;name&gt;:&lt;tag&gt;</code>.</li>
+ * <li><code>orphans-&lt;millis&gt;.pending</code> - logs which have been taken over by a garbage collection cycle which has not
+ * completed (yet). Those are picked up again by the next cycle.</li>
+ * <li><code>summaries/&lt;name&gt;/&lt;tag&gt;</code> - a compact summary (bloom filter) of all objects referenced by a
+ * manifest, which allows to quickly rule out manifests which cannot reference any of the orphaned objects.</li>
+ * <li><code>lastfull</code> - the timestamp of the last completed full sweep.</li>
+ * </ul>
+ * Summaries never yield false negatives, and are bound to the root tree of the manifest they describe, so a summary of a
+ * manifest which has been re-created with different content is never used.
+ */
+public class ReferenceJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferenceJournal.class);
+
+    private static final String LOG_NAME = "orphans.log";
+    private static final String PENDING_PREFIX = "orphans-";
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final String LAST_FULL_NAME = "lastfull";
+    private static final String SUMMARIES_DIR = "summaries";
+
+    private static final int SUMMARY_VERSION = 1;
+    private static final double SUMMARY_FPP = 0.01;
+
+    private final Path root;
+    private final Path logFile;
+    private final Path summaries;
+
+    /**
+     * @param root the directory where the journal is stored. Created on demand.
+     */
+    public ReferenceJournal(Path root) {
+        this.root = root;
+        this.logFile = root.resolve(LOG_NAME);
+        this.summaries = root.resolve(SUMMARIES_DIR);
+    }
+
+    /**
+     * Records that the given manifest has been removed, leaving the objects reachable from its root tree as candidates for
+     * garbage collection.
+     */
+    public synchronized void orphaned(Manifest.Key key, ObjectId rootTree) {
+        removeSummary(key);
+
+        byte[] record = (rootTree + " " + key + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            PathHelper.mkdirs(root);
+            Files.write(logFile, record, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            // objects will only be found by the next full sweep.
+            log.warn("Cannot record removal of {} in {}", key, root, e);
+        }
+    }
+
+    /**
+     * Starts a new garbage collection cycle. All orphans recorded so far are handed to the cycle, orphans recorded from now on
+     * are handed to the next cycle.
+     *
+     * @return the started {@link Cycle}.
+     */
+    public synchronized Cycle begin() {
+        PathHelper.mkdirs(root);
+
+        Path pending = root.resolve(PENDING_PREFIX + System.currentTimeMillis() + PENDING_SUFFIX);
+        try {
+            if (PathHelper.exists(logFile) && !PathHelper.exists(pending)) {
+                PathHelper.moveRetry(logFile, pending, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (Exception e) {
+            log.warn("Cannot rotate reference journal of {}", root, e);
+        }
+
+        List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, PENDING_PREFIX + "*" + PENDING_SUFFIX)) {
+            stream.forEach(logs::add);
+        } catch (IOException e) {
+            log.warn("Cannot list pending reference journals of {}", root, e);
+            return new Cycle(logs, null);
+        }
+
+        SortedSet<ObjectId> roots = new TreeSet<>();
+        for (Path file : logs) {
+            if (!readLog(file, roots)) {
+                return new Cycle(logs, null);
+            }
+        }
+        return new Cycle(logs, roots);
+    }
+
+    /**
+     * Completes the given cycle, dropping all orphans which have been handed to it.
+     *
+     * @param cycle the cycle to complete
+     * @param fullSweep whether the cycle performed a full sweep.
+     */
+    public synchronized void complete(Cycle cycle, boolean fullSweep) {
+        for (Path file : cycle.logs) {
+            PathHelper.deleteIfExistsRetry(file);
+        }
+
+        if (fullSweep) {
+            try {
+                Files.writeString(root.resolve(LAST_FULL_NAME), Long.toString(cycle.started));
+            } catch (IOException e) {
+                log.warn("Cannot record full sweep in {}", root, e);
+            }
+        }
+    }
+
+    /**
+     * @return the timestamp of the start of the last completed full sweep, or 0 if there never was one.
+     */
+    public long getLastFullSweep() {
+        try {
+            return Long.parseLong(Files.readString(root.resolve(LAST_FULL_NAME)).trim());
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (Exception e) {
+            log.warn("Cannot read last full sweep of {}", root, e);
+            return 0;
+        }
+    }
+
+    /**
+     * @param key the manifest to look up
+     * @param rootTree the root tree of the manifest.
+     * @return the summary of all objects referenced by the manifest, or <code>null</code> if there is no (valid) summary.
+     */
+    public BloomFilter<ObjectId> getSummary(Manifest.Key key, ObjectId rootTree) {
+        Path file = getSummaryPath(key);
+        try (DataInputStream dis = new DataInputStream(Files.newInputStream(file))) {
+            if (dis.readInt() != SUMMARY_VERSION) {
+                return null;
+            }
+            byte[] id = new byte[ObjectId.LENGTH];
+            dis.readFully(id);
+            if (!rootTree.equals(ObjectId.fromBytes(id, 0))) {
+                return null;
+            }
+            return BloomFilter.readFrom(dis, ObjectIdFunnel.INSTANCE);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (Exception e) {
+            log.debug("Cannot read reference summary of {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the summary for the given manifest.
+     */
+    public void putSummary(Manifest.Key key, ObjectId rootTree, BloomFilter<ObjectId> summary) {
+        Path file = getSummaryPath(key);
+        Path tmp = file.resolveSibling(file.getFileName() + "." + UuidHelper.randomId() + ".tmp");
+        try {
+            PathHelper.mkdirs(file.getParent());
+            try (DataOutputStream dos = new DataOutputStream(Files.newOutputStream(tmp))) {
+                dos.writeInt(SUMMARY_VERSION);
+                dos.write(rootTree.toBytes());
+                summary.writeTo(dos);
+            }
+            PathHelper.moveRetry(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            // will be calculated again next time.
+            log.debug("Cannot write reference summary of {}", key, e);
+            PathHelper.deleteIfExistsRetry(tmp);
+        }
+    }
+
+    /**
+     * Removes the summary of the given manifest, if it exists.
+     */
+    public void removeSummary(Manifest.Key key) {
+        PathHelper.deleteIfExistsRetry(getSummaryPath(key));
+    }
+
+    /**
+     * Removes all summaries for manifests which are not in the given set.
+     */
+    public void retainSummaries(Set<Manifest.Key> existing) {
+        if (!PathHelper.exists(summaries)) {
+            return;
+        }
+
+        List<Path> stale = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(summaries)) {
+            walk.filter(Files::isRegularFile).forEach(f -> {
+                Path rel = summaries.relativize(f);
+                if (rel.getParent() == null) {
+                    stale.add(f);
+                    return;
+                }
+                String name = rel.getParent().toString().replace('\\', '/');
+                if (!existing.contains(new Manifest.Key(name, rel.getFileName().toString()))) {
+                    stale.add(f);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Cannot list reference summaries in {}", summaries, e);
+            return;
+        }
+        stale.forEach(PathHelper::deleteIfExistsRetry);
+    }
+
+    /**
+     * @param expectedObjects the amount of objects which will be put into the summary.
+     * @return a new, empty summary.
+     */
+    public static BloomFilter<ObjectId> createSummary(int expectedObjects) {
+        return BloomFilter.create(ObjectIdFunnel.INSTANCE, Math.max(expectedObjects, 1), SUMMARY_FPP);
+    }
+
+    private Path getSummaryPath(Manifest.Key key) {
+        return summaries.resolve(key.getName()).resolve(key.getTag());
+    }
+
+    /**
+     * @return whether the log could be read. A partially written last record (interrupted write) is ignored.
+     */
+    private static boolean readLog(Path file, Set<ObjectId> target) {
+        byte[] data;
+        try (InputStream is = Files.newInputStream(file)) {
+            data = is.readAllBytes();
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            log.warn("Cannot read reference journal {}", file, e);
+            return false;
+        }
+
+        String content = new String(data, StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n');
+        for (String line : content.substring(0, end + 1).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            ObjectId id = space > 0 ? ObjectId.parse(line.substring(0, space)) : null;
+            if (id == null) {
+                log.warn("Invalid record in reference journal {}: {}", file, line);
+                return false;
+            }
+            target.add(id);
+        }
+        return true;
+    }
+
+    /**
+     * A single garbage collection cycle, see {@link ReferenceJournal#begin()}.
+     */
+    public static final class Cycle {
+
+        private final long started = System.currentTimeMillis();
+        private final List<Path> logs;
+        private final SortedSet<ObjectId> orphanedRoots;
+
+        private Cycle(List<Path> logs, SortedSet<ObjectId> orphanedRoots) {
+            this.logs = logs;
+            this.orphanedRoots = orphanedRoots;
+        }
+
+        /**
+         * @return the root trees of all manifests removed before the cycle started, or <code>null</code> if the journal is
+         *         damaged and only a full sweep can find orphaned objects.
+         */
+        public SortedSet<ObjectId> getOrphanedRoots() {
+            return orphanedRoots == null ? null : Collections.unmodifiableSortedSet(orphanedRoots);
+        }
+    }
+
+    private enum ObjectIdFunnel implements Funnel<ObjectId> {
+
+        INSTANCE;
+
+        @Override
+        public void funnel(ObjectId from, PrimitiveSink into) {
+            into.putBytes(from.toBytes());
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -18,6 +19,7 @@ import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.NoAudit;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.objects.ManifestDatabase;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.common.ActivityReporter.Activity;
@@ -32,7 +34,7 @@ import io.bdeploy.common.ActivityReporter.Activity;
 public class CopyOperation extends BHive.Operation<TransferStatistics> {
 
     @AuditWith(AuditStrategy.COLLECTION_SIZE)
-    private final SortedSet<ObjectId> objects = new TreeSet<>();
+    private final Set<ObjectId> objects = new ObjectIdSet();
 
     @AuditWith(AuditStrategy.COLLECTION_PEEK)
     private final SortedSet<Manifest.Key> manifests = new TreeSet<>();
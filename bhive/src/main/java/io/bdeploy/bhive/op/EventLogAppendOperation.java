@@ -0,0 +1,53 @@
+package io.bdeploy.bhive.op;
+
+import static io.bdeploy.common.util.RuntimeAssert.assertNotNull;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.audit.AuditParameterExtractor.NoAudit;
+import io.bdeploy.bhive.objects.EventLogDatabase;
+
+/**
+ * Appends a single record to an event log in the {@link EventLogDatabase} of the {@link BHive}.
+ * <p>
+ * Returns the amount of records in the event log which have not been removed yet, or -1 if the {@link BHive} does not support
+ * event logs (e.g. ZIP BHives). In the latter case, nothing is written.
+ */
+public class EventLogAppendOperation extends BHive.Operation<Integer> {
+
+    private String name;
+    private long timestamp;
+
+    @NoAudit
+    private byte[] data;
+
+    @Override
+    public Integer call() {
+        assertNotNull(name, "Event log not set");
+        assertNotNull(data, "Data not set");
+
+        EventLogDatabase db = getEventLogDatabase();
+        if (db == null) {
+            return -1;
+        }
+        return db.append(name, timestamp, data);
+    }
+
+    /**
+     * @param name the name of the event log to append to.
+     */
+    public EventLogAppendOperation setLogName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @param timestamp the timestamp of the record.
+     * @param data the data of the record.
+     */
+    public EventLogAppendOperation setRecord(long timestamp, byte[] data) {
+        this.timestamp = timestamp;
+        this.data = data;
+        return this;
+    }
+
+}
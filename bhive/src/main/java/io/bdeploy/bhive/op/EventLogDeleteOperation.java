@@ -0,0 +1,35 @@
+package io.bdeploy.bhive.op;
+
+import static io.bdeploy.common.util.RuntimeAssert.assertNotNull;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.objects.EventLogDatabase;
+
+/**
+ * Removes all event logs within a directory from the {@link EventLogDatabase} of the {@link BHive}, including records which
+ * have not been compacted yet.
+ */
+public class EventLogDeleteOperation extends BHive.Operation<Void> {
+
+    private String dir;
+
+    @Override
+    public Void call() {
+        assertNotNull(dir, "Event log directory not set");
+
+        EventLogDatabase db = getEventLogDatabase();
+        if (db != null) {
+            db.removeAll(dir);
+        }
+        return null;
+    }
+
+    /**
+     * @param dir the common directory of the event logs to remove, i.e. a prefix of their names which ends at a '/'.
+     */
+    public EventLogDeleteOperation setLogDirectory(String dir) {
+        this.dir = dir;
+        return this;
+    }
+
+}
@@ -0,0 +1,50 @@
+package io.bdeploy.bhive.op;
+
+import static io.bdeploy.common.util.RuntimeAssert.assertNotNull;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.ReadOnlyOperation;
+import io.bdeploy.bhive.objects.EventLogDatabase;
+import io.bdeploy.bhive.objects.EventLogDatabase.Record;
+
+/**
+ * Reads all segments of an event log from the {@link EventLogDatabase} of the {@link BHive}, ordered by their id.
+ */
+@ReadOnlyOperation
+public class EventLogReadOperation extends BHive.Operation<SortedMap<Long, List<Record>>> {
+
+    private String name;
+    private boolean seal;
+
+    @Override
+    public SortedMap<Long, List<Record>> call() {
+        assertNotNull(name, "Event log not set");
+
+        EventLogDatabase db = getEventLogDatabase();
+        if (db == null) {
+            return new TreeMap<>();
+        }
+        return db.read(name, seal);
+    }
+
+    /**
+     * @param name the name of the event log to read.
+     */
+    public EventLogReadOperation setLogName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @param seal whether to close the current segment, so that all read segments can be removed once processed.
+     */
+    public EventLogReadOperation setSeal(boolean seal) {
+        this.seal = seal;
+        return this;
+    }
+
+}
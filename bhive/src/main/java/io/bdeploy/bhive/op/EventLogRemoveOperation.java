@@ -0,0 +1,51 @@
+package io.bdeploy.bhive.op;
+
+import static io.bdeploy.common.util.RuntimeAssert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditStrategy;
+import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
+import io.bdeploy.bhive.objects.EventLogDatabase;
+
+/**
+ * Removes segments of an event log from the {@link EventLogDatabase} of the {@link BHive}.
+ */
+public class EventLogRemoveOperation extends BHive.Operation<Void> {
+
+    private String name;
+
+    @AuditWith(AuditStrategy.COLLECTION_SIZE)
+    private final List<Long> segments = new ArrayList<>();
+
+    @Override
+    public Void call() {
+        assertNotNull(name, "Event log not set");
+
+        EventLogDatabase db = getEventLogDatabase();
+        if (db != null) {
+            db.remove(name, segments);
+        }
+        return null;
+    }
+
+    /**
+     * @param name the name of the event log to remove segments from.
+     */
+    public EventLogRemoveOperation setLogName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @param segments the ids of the segments to remove.
+     */
+    public EventLogRemoveOperation addSegments(Collection<Long> segments) {
+        this.segments.addAll(segments);
+        return this;
+    }
+
+}
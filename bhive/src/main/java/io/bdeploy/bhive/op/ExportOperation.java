@@ -20,6 +20,7 @@ public class ExportOperation extends BHive.Operation<Manifest.Key> {
     private Manifest.Key manifest;
     private Path target;
     private ReferenceHandler refHandler;
+    private boolean link;
 
     @Override
     public Manifest.Key call() throws Exception {
@@ -32,7 +33,7 @@ public class ExportOperation extends BHive.Operation<Manifest.Key> {
         }
 
         Manifest mf = getManifestDatabase().getManifest(manifest);
-        getObjectManager().exportTree(mf.getRoot(), target, refHandler);
+        getObjectManager().exportTree(mf.getRoot(), target, refHandler, link);
 
         return manifest;
     }
@@ -61,4 +62,13 @@ public class ExportOperation extends BHive.Operation<Manifest.Key> {
         return this;
     }
 
+    /**
+     * Hard link objects into the target instead of copying them where possible. The result shares its content with the
+     * {@link BHive} and <b>must not</b> be modified.
+     */
+    public ExportOperation setLinkObjects(boolean link) {
+        this.link = link;
+        return this;
+    }
+
 }
@@ -19,13 +19,14 @@ public class ExportTreeOperation extends BHive.Operation<Void> {
     private Path target;
     private ObjectId treeId;
     private ReferenceHandler refHandler;
+    private boolean link;
 
     @Override
     public Void call() {
         assertNotNull(target, "Target path not set");
         assertNotNull(treeId, "Source tree not set");
 
-        getObjectManager().exportTree(treeId, target, refHandler);
+        getObjectManager().exportTree(treeId, target, refHandler, link);
 
         return null;
     }
@@ -52,4 +53,13 @@ public class ExportTreeOperation extends BHive.Operation<Void> {
         return this;
     }
 
+    /**
+     * Hard link objects into the target instead of copying them where possible. The result shares its content with the
+     * {@link BHive} and <b>must not</b> be modified.
+     */
+    public ExportTreeOperation setLinkObjects(boolean link) {
+        this.link = link;
+        return this;
+    }
+
 }
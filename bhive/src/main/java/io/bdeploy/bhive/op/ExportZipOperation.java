@@ -0,0 +1,169 @@
+package io.bdeploy.bhive.op;
+
+import static io.bdeploy.common.util.RuntimeAssert.assertNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import com.j256.simplemagic.ContentInfoUtil;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.ReadOnlyOperation;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.util.StorageHelper;
+import io.bdeploy.bhive.util.TransferCodec;
+import io.bdeploy.common.ActivityReporter.Activity;
+import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.ZipStreamWriter;
+
+/**
+ * Writes a {@link Tree} recursively as ZIP to a stream. Entries are written while traversing the {@link Tree}, so there is no
+ * need for a temporary export of the {@link Tree}.
+ * <p>
+ * Referenced {@link Manifest}s are written inline in the referencing location, just like an export does by default. Objects
+ * which are compressed already (archives, images, ...) are stored as is, all other objects are compressed.
+ */
+@ReadOnlyOperation
+public class ExportZipOperation extends BHive.Operation<Long> {
+
+    /** The amount of bytes required to determine whether an object is executable */
+    private static final int HEAD_LENGTH = ContentInfoUtil.DEFAULT_READ_SIZE;
+
+    private ObjectId treeId;
+    private Manifest.Key manifest;
+    private String prefix;
+    private OutputStream output;
+
+    /**
+     * @return the amount of files written.
+     */
+    @Override
+    public Long call() throws Exception {
+        assertNotNull(output, "Output not set");
+
+        if (manifest != null) {
+            treeId = execute(new ManifestLoadOperation().setManifest(manifest)).getRoot();
+        }
+        assertNotNull(treeId, "Source tree not set");
+
+        Activity zipping = getActivityReporter().start("Zipping Files", -1);
+        try (ZipStreamWriter zip = new ZipStreamWriter(output)) {
+            String location = "";
+            if (prefix != null && !prefix.isEmpty()) {
+                location = prefix + "/";
+                zip.addDirectory(location);
+            }
+            return internalZipTree(zip, treeId, location, zipping);
+        } finally {
+            zipping.done();
+        }
+    }
+
+    private long internalZipTree(ZipStreamWriter zip, ObjectId tree, String location, Activity zipping) throws IOException {
+        Tree t = execute(new TreeLoadOperation().setTree(tree));
+
+        long files = 0;
+        for (Map.Entry<Tree.Key, ObjectId> entry : t.getChildren().entrySet()) {
+            ObjectId obj = entry.getValue();
+            String child = location + entry.getKey().getName();
+
+            switch (entry.getKey().getType()) {
+                case BLOB:
+                    internalZipBlob(zip, obj, child);
+                    files++;
+                    break;
+                case MANIFEST:
+                    zip.addDirectory(child);
+                    files += internalZipTree(zip, lookupManifestRef(obj).getRoot(), child + "/", zipping);
+                    break;
+                case TREE:
+                    zip.addDirectory(child);
+                    files += internalZipTree(zip, obj, child + "/", zipping);
+                    break;
+                default:
+                    break;
+            }
+            zipping.workAndCancelIfRequested(1);
+        }
+        return files;
+    }
+
+    private void internalZipBlob(ZipStreamWriter zip, ObjectId obj, String name) throws IOException {
+        try (BufferedInputStream is = new BufferedInputStream(openObject(obj), HEAD_LENGTH)) {
+            is.mark(HEAD_LENGTH);
+            byte[] head = is.readNBytes(HEAD_LENGTH);
+            is.reset();
+
+            boolean executable = PathHelper.isExecutable(PathHelper.getContentInfoUtil().findMatch(head));
+            if (!TransferCodec.isCompressed(head, head.length)) {
+                zip.addFile(name, executable, getObjectManager().db(x -> x.getObjectSize(obj)), is);
+                return;
+            }
+
+            // storing requires size and checksum before the content, so compressed objects are read twice.
+            CRC32 crc = new CRC32();
+            long size;
+            try (CheckedInputStream checked = new CheckedInputStream(is, crc)) {
+                size = checked.transferTo(OutputStream.nullOutputStream());
+            }
+            try (InputStream content = openObject(obj)) {
+                zip.addStoredFile(name, executable, size, crc.getValue(), content);
+            }
+        }
+    }
+
+    private InputStream openObject(ObjectId obj) {
+        return getObjectManager().db(x -> x.getStream(obj));
+    }
+
+    private Manifest lookupManifestRef(ObjectId ref) throws IOException {
+        Manifest.Key key;
+        try (InputStream is = openObject(ref)) {
+            key = StorageHelper.fromStream(is, Manifest.Key.class);
+        }
+        Manifest mf = execute(new ManifestLoadOperation().setManifest(key));
+        assertNotNull(mf, "Referenced manifest not found: " + key);
+        return mf;
+    }
+
+    /**
+     * Set the {@link Tree} to write.
+     */
+    public ExportZipOperation setSourceTree(ObjectId treeId) {
+        this.treeId = treeId;
+        return this;
+    }
+
+    /**
+     * Set the {@link Manifest} to write. Writes the {@link Manifest}s root tree.
+     */
+    public ExportZipOperation setManifest(Manifest.Key manifest) {
+        this.manifest = manifest;
+        return this;
+    }
+
+    /**
+     * Set the name of a directory within the ZIP which contains all the content. By default, the content is written to the root
+     * of the ZIP.
+     */
+    public ExportZipOperation setPrefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * Set the stream to write the ZIP to. The stream is not closed once done.
+     */
+    public ExportZipOperation setOutput(OutputStream output) {
+        this.output = output;
+        return this;
+    }
+
+}
@@ -27,7 +27,7 @@ public class FsckOperation extends BHive.Operation<Set<ElementView>> {
     @Override
     public Set<ElementView> call() {
         getObjectManager().invalidateCaches();
-        getManifestDatabase().invalidateCaches();
+        getManifestDatabase().rebuildIndex();
 
         try (Activity activity = getActivityReporter().start("Checking", -1)) {
             if (manifests.isEmpty()) {
@@ -70,6 +70,13 @@ public class ManifestConsistencyCheckOperation extends BHive.Operation<Set<Eleme
         return this;
     }
 
+    /**
+     * @return whether any {@link Manifest} to check has been added.
+     */
+    public boolean hasRoots() {
+        return !manifests.isEmpty();
+    }
+
     public ManifestConsistencyCheckOperation setDryRun(boolean dry) {
         this.dryRun = dry;
         return this;
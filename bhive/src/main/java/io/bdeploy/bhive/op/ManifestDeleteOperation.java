@@ -4,15 +4,19 @@ import static io.bdeploy.common.util.RuntimeAssert.assertNotNull;
 
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.objects.ManifestDatabase;
 import io.bdeploy.bhive.objects.ObjectDatabase;
+import io.bdeploy.bhive.objects.ReferenceJournal;
 
 /**
  * Operation to delete a single manifest from the {@link ManifestDatabase} of
  * the {@link BHive}.
  * <p>
  * Note that underlying recursively required objects are NOT deleted from the
- * {@link ObjectDatabase}. See {@link PruneOperation}.
+ * {@link ObjectDatabase}. See {@link PruneOperation}. The root tree of the
+ * {@link Manifest} is recorded in the {@link ReferenceJournal} instead, so an
+ * incremental {@link PruneOperation} can find them.
  */
 public class ManifestDeleteOperation extends BHive.Operation<Manifest.Key> {
 
@@ -22,7 +26,17 @@ public class ManifestDeleteOperation extends BHive.Operation<Manifest.Key> {
     public Manifest.Key call() {
         assertNotNull(toDelete, "Manifest to delete not set");
 
+        ReferenceJournal journal = getReferenceJournal();
+        ObjectId root = null;
+        if (journal != null && getManifestDatabase().hasManifest(toDelete)) {
+            root = getManifestDatabase().getManifest(toDelete).getRoot();
+        }
+
         getManifestDatabase().removeManifest(toDelete);
+
+        if (root != null) {
+            journal.orphaned(toDelete, root);
+        }
         return toDelete;
     }
 
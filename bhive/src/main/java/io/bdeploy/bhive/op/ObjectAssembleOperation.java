@@ -0,0 +1,53 @@
+package io.bdeploy.bhive.op;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.audit.AuditParameterExtractor.NoAudit;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.ActivityReporter.Activity;
+
+/**
+ * Reassembles objects from their chunks, which must already exist in the {@link BHive}. Each reassembled object is verified
+ * to match the expected {@link ObjectId}.
+ */
+public class ObjectAssembleOperation extends BHive.TransactedOperation<Void> {
+
+    @NoAudit
+    private final SortedMap<ObjectId, List<ObjectId>> objects = new TreeMap<>();
+
+    @Override
+    protected Void callTransacted() {
+        try (Activity activity = getActivityReporter().start("Assembling Objects", objects.size())) {
+            for (Map.Entry<ObjectId, List<ObjectId>> entry : objects.entrySet()) {
+                getObjectManager().db(db -> {
+                    if (db.hasObject(entry.getKey())) {
+                        return null;
+                    }
+
+                    ObjectId assembled = db.addObject(entry.getValue());
+                    if (!assembled.equals(entry.getKey())) {
+                        // the wrongly assembled object is unreferenced and removed by the next prune.
+                        throw new IllegalStateException(
+                                "Chunks of " + entry.getKey() + " assemble to a different object: " + assembled);
+                    }
+                    return null;
+                });
+                activity.workAndCancelIfRequested(1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add objects to assemble along with their chunks.
+     */
+    public ObjectAssembleOperation addAll(Map<ObjectId, List<ObjectId>> objs) {
+        objects.putAll(objs);
+        return this;
+    }
+
+}
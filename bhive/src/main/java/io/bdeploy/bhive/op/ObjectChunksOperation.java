@@ -0,0 +1,46 @@
+package io.bdeploy.bhive.op;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.ReadOnlyOperation;
+import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditStrategy;
+import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
+
+/**
+ * Looks up which of the given {@link ObjectId}s are stored as chunks in the {@link BHive}, and returns the chunks for each
+ * of them. Objects which are not stored as chunks (or do not exist) are not contained in the result.
+ */
+@ReadOnlyOperation
+public class ObjectChunksOperation extends BHive.Operation<SortedMap<ObjectId, List<ObjectId>>> {
+
+    @AuditWith(AuditStrategy.COLLECTION_SIZE)
+    private final Set<ObjectId> objects = new ObjectIdSet();
+
+    @Override
+    public SortedMap<ObjectId, List<ObjectId>> call() {
+        SortedMap<ObjectId, List<ObjectId>> result = new TreeMap<>();
+        for (ObjectId o : objects) {
+            List<ObjectId> chunks = getObjectManager().db(x -> x.getChunks(o));
+            if (chunks != null) {
+                result.put(o, chunks);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add all {@link ObjectId}s to look up.
+     */
+    public ObjectChunksOperation addAll(Collection<ObjectId> objs) {
+        objects.addAll(objs);
+        return this;
+    }
+
+}
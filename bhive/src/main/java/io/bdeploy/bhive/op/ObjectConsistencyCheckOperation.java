@@ -69,6 +69,7 @@ public class ObjectConsistencyCheckOperation extends BHive.Operation<Set<Element
             }
         } finally {
             scanning.done();
+            markerDb.close();
             PathHelper.deleteRecursiveRetry(markerPath);
         }
 
@@ -1,7 +1,6 @@
 package io.bdeploy.bhive.op;
 
 import java.util.Collection;
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 import io.bdeploy.bhive.BHive;
@@ -9,6 +8,7 @@ import io.bdeploy.bhive.ReadOnlyOperation;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditStrategy;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.op.ObjectExistsOperation.Result;
 import io.bdeploy.common.ActivityReporter.Activity;
 
@@ -19,7 +19,7 @@ import io.bdeploy.common.ActivityReporter.Activity;
 public class ObjectExistsOperation extends BHive.Operation<Result> {
 
     @AuditWith(AuditStrategy.COLLECTION_SIZE)
-    private final Set<ObjectId> objects = new LinkedHashSet<>();
+    private final Set<ObjectId> objects = new ObjectIdSet();
 
     @Override
     public Result call() {
@@ -61,12 +61,12 @@ public class ObjectExistsOperation extends BHive.Operation<Result> {
         /**
          * Objects that are existing
          */
-        public final Set<ObjectId> existing = new LinkedHashSet<>();
+        public final Set<ObjectId> existing = new ObjectIdSet();
 
         /**
          * Objects that are missing
          */
-        public final Set<ObjectId> missing = new LinkedHashSet<>();
+        public final Set<ObjectId> missing = new ObjectIdSet();
 
         /**
          * Returns whether the given objects is existing.
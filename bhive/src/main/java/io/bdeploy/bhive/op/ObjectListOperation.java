@@ -3,10 +3,8 @@ package io.bdeploy.bhive.op;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -18,6 +16,8 @@ import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditStrategy;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdMap;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.objects.view.BlobView;
 import io.bdeploy.bhive.objects.view.ElementView;
@@ -43,10 +43,10 @@ public class ObjectListOperation extends BHive.Operation<Set<ObjectId>> {
     private final Set<Manifest.Key> manifests = new LinkedHashSet<>();
 
     @AuditWith(AuditStrategy.COLLECTION_SIZE)
-    private final Set<ObjectId> trees = new LinkedHashSet<>();
+    private final Set<ObjectId> trees = new ObjectIdSet();
 
     @AuditWith(AuditStrategy.COLLECTION_SIZE)
-    private final Set<ObjectId> treeExcludes = new LinkedHashSet<>();
+    private final Set<ObjectId> treeExcludes = new ObjectIdSet();
 
     private boolean ignoreMissingManifest = false;
 
@@ -73,7 +73,7 @@ public class ObjectListOperation extends BHive.Operation<Set<ObjectId>> {
 
             // Collect all (sub)-trees based on he provided root trees
             // The result is ordered: First the parent tree then it's children
-            Map<ObjectId, List<ObjectId>> object2Tree = new LinkedHashMap<>();
+            ObjectIdMap<List<ObjectId>> object2Tree = new ObjectIdMap<>();
             for (ObjectId tree : trees) {
                 TreeView treeView = execute(new ScanOperation().setTree(tree));
                 if (treeView.getElementId() == null) {
@@ -101,7 +101,7 @@ public class ObjectListOperation extends BHive.Operation<Set<ObjectId>> {
             // Collect all objects referring to the tree
             // First we add the children then we add the parent tree
             // We intentionally do not use a visitor here as we just need the direct children
-            Set<ObjectId> result = new LinkedHashSet<>();
+            Set<ObjectId> result = new ObjectIdSet();
             for (List<ObjectId> flatTree : allTrees) {
                 result.addAll(flatTree);
             }
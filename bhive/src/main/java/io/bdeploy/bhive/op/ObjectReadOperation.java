@@ -2,39 +2,62 @@ package io.bdeploy.bhive.op;
 
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.InputStream;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import com.google.common.io.CountingInputStream;
 
 import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.BHiveTransactions;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.NoAudit;
 import io.bdeploy.bhive.model.Manifest;
-import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.SortManifestsByReferences;
 import io.bdeploy.bhive.objects.view.ElementView;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.bhive.util.StorageHelper;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.util.FixedLengthStream;
+import io.bdeploy.common.util.FutureHelper;
 import io.bdeploy.common.util.ReportingInputStream;
 import io.bdeploy.common.util.RuntimeAssert;
 import io.bdeploy.common.util.StreamHelper;
 
 /**
  * Reads one or more objects from a stream and inserts them into the local hive.
+ * <p>
+ * Small objects are buffered in memory and inserted in parallel, so that receiving and decompressing the stream overlaps with
+ * hashing and writing objects to disc. The amount of buffered data is bounded.
+ * <p>
+ * The compression of the stream is detected automatically, see {@link TransferCodec#decode(BufferedInputStream)}.
+ * <p>
+ * A push may consist of multiple streams containing only objects, followed by a last stream containing the manifests. Such
+ * streams share a transaction identified by the push id, see {@link BHiveTransactions#beginShared(String)}, which is released
+ * once the manifests have been inserted.
  */
 public class ObjectReadOperation extends BHive.TransactedOperation<TransferStatistics> {
 
+    /** Objects up to this size are buffered and inserted in parallel, larger ones are streamed directly. */
+    private static final int MAX_BUFFERED_OBJECT_SIZE = 1024 * 1024;
+
+    /** The maximum amount of bytes which are buffered and not yet inserted. */
+    private static final int MAX_BUFFERED_BYTES = 32 * 1024 * 1024;
+
     @NoAudit
     private InputStream input;
 
+    private String pushId;
+
     @Override
     public TransferStatistics callTransacted() throws Exception {
         TransferStatistics result = new TransferStatistics();
@@ -42,8 +65,8 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
         RuntimeAssert.assertNotNull(input);
         try (CountingInputStream countingIn = new CountingInputStream(input);
                 BufferedInputStream buffIn = new BufferedInputStream(countingIn, ObjectWriteOperation.BUFFER_SIZE * 2);
-                GZIPInputStream zipIn = new GZIPInputStream(buffIn, ObjectWriteOperation.BUFFER_SIZE);
-                DataInputStream dataIn = new DataInputStream(zipIn)) {
+                InputStream decodedIn = TransferCodec.decode(buffIn);
+                DataInputStream dataIn = new DataInputStream(decodedIn)) {
             long totalSize = dataIn.readLong();
 
             String baseActivity = "Receiving";
@@ -63,9 +86,34 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
 
                 // Read all objects from the stream
                 counter = dataIn.readLong();
-                for (int i = 0; i < counter; i++) {
-                    long size = dataIn.readLong();
-                    getObjectManager().db(db -> db.addObject(new FixedLengthStream(reportingIn, size)));
+                Semaphore buffered = new Semaphore(MAX_BUFFERED_BYTES);
+                List<Future<?>> inserts = new ArrayList<>();
+                try {
+                    for (int i = 0; i < counter; i++) {
+                        long size = dataIn.readLong();
+                        if (size > MAX_BUFFERED_OBJECT_SIZE) {
+                            getObjectManager().db(db -> db.addObject(new FixedLengthStream(reportingIn, size)));
+                            continue;
+                        }
+
+                        int length = (int) size;
+                        buffered.acquire(length);
+                        byte[] data = new byte[length];
+                        if (reportingIn.readNBytes(data, 0, length) != length) {
+                            throw new EOFException("Unexpected end of stream while reading object");
+                        }
+                        inserts.add(submitFileOperation(() -> {
+                            try {
+                                getObjectManager().db(db -> db.addObject(data));
+                            } finally {
+                                buffered.release(length);
+                            }
+                        }));
+                    }
+                    FutureHelper.awaitAll(inserts);
+                } finally {
+                    // inserts must never outlive the transaction, even if reading the stream failed.
+                    FutureHelper.cancelAll(inserts);
                 }
                 result.sumMissingObjects = counter;
 
@@ -78,15 +126,17 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
 
                 result.duration = Duration.between(start, Instant.now()).toMillis();
             }
-            // Check manifests for consistency and remove invalid ones
-            Set<ElementView> damaged = execute(checkOp.setDryRun(false));
+            // Check manifests for consistency and remove invalid ones. Streams may contain objects only.
+            Set<ElementView> damaged = checkOp.hasRoots() ? execute(checkOp.setDryRun(false)) : Collections.emptySet();
             if (!damaged.isEmpty()) {
-                // in case the damaged manifests where removed, we also want to remove
-                // all the associated objects.
-                SortedMap<ObjectId, Long> pruned = execute(new PruneOperation());
-
-                throw new IllegalStateException("Failed to stream all required objects. Removed " + damaged.size()
-                        + " missing/damaged elements, pruned " + pruned.size() + " objects.");
+                // only the damaged manifests have been removed. objects are left alone, as other streams of the same push or
+                // concurrent pushes may still need them - unreferenced ones are removed by the next regular prune.
+                throw new IllegalStateException("Failed to stream all required objects. Removed manifests with " + damaged.size()
+                        + " missing/damaged elements.");
+            }
+            if (pushId != null && checkOp.hasRoots()) {
+                // the manifests have been committed, the objects of the push are no longer required to be protected.
+                getTransactions().releaseShared(pushId);
             }
             result.transferSize = countingIn.getCount();
         } finally {
@@ -107,4 +157,13 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
         return this;
     }
 
+    /**
+     * The push the stream belongs to, if any. The caller is expected to run the operation in the shared transaction of the push,
+     * which is released once a stream containing manifests has been read successfully.
+     */
+    public ObjectReadOperation setPushId(String pushId) {
+        this.pushId = pushId;
+        return this;
+    }
+
 }
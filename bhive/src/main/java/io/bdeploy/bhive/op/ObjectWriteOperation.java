@@ -4,14 +4,17 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,12 +29,18 @@ import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.util.StorageHelper;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.util.RuntimeAssert;
 import io.bdeploy.common.util.StreamHelper;
 
 /**
  * Writes one or more objects to a stream.
+ * <p>
+ * Small objects are read ahead in parallel while previous objects are being compressed and sent.
+ * <p>
+ * The stream is compressed using {@link TransferCodec#GZIP} unless another codec is set, which must be supported by the
+ * receiving side.
  */
 @ReadOnlyOperation
 public class ObjectWriteOperation extends BHive.Operation<Long> {
@@ -39,6 +48,12 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
     private static final Logger log = LoggerFactory.getLogger(ObjectWriteOperation.class);
     public static final int BUFFER_SIZE = 8192;
 
+    /** Objects up to this size are read ahead into memory, larger ones are streamed directly when it is their turn. */
+    private static final long MAX_READ_AHEAD_OBJECT_SIZE = 1024 * 1024L;
+
+    /** The maximum number of objects which are read ahead. */
+    private static final int READ_AHEAD = 32;
+
     @AuditWith(AuditStrategy.COLLECTION_PEEK)
     private final Set<ObjectId> objects = new LinkedHashSet<>();
 
@@ -46,6 +61,9 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
 
     private OutputStream output;
 
+    private TransferCodec codec = TransferCodec.GZIP;
+    private int level = TransferCodec.DEFAULT_LEVEL;
+
     @Override
     public Long call() throws Exception {
         RuntimeAssert.assertNotNull(output);
@@ -80,9 +98,8 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
 
         try (Activity activity = getActivityReporter().start("Sending", totalSize);
                 CountingOutputStream countingOut = new CountingOutputStream(output);
-                GZIPOutputStream zipOut = new GZIPOutputStream(countingOut, BUFFER_SIZE);
-                BufferedOutputStream buffOut = new BufferedOutputStream(zipOut, BUFFER_SIZE * 2);
-                DataOutputStream dataOut = new DataOutputStream(zipOut)) {
+                TransferCodec.Encoder encoder = codec.encode(new BufferedOutputStream(countingOut, BUFFER_SIZE * 2), level);
+                DataOutputStream dataOut = new DataOutputStream(encoder)) {
 
             // First we send the total size so that the client can display a progress bar
             dataOut.writeLong(totalSize);
@@ -98,16 +115,32 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
 
             // Stream all objects
             dataOut.writeLong(objects.size());
-            for (Map.Entry<ObjectId, Long> entry : object2FileSize.entrySet()) {
+            List<Map.Entry<ObjectId, Long>> entries = new ArrayList<>(object2FileSize.entrySet());
+            Deque<CompletableFuture<byte[]>> readAhead = new ArrayDeque<>();
+            int next = 0;
+            for (Map.Entry<ObjectId, Long> entry : entries) {
+                while (next < entries.size() && readAhead.size() < READ_AHEAD) {
+                    readAhead.add(readAhead(entries.get(next++)));
+                }
+
                 ObjectId objectId = entry.getKey();
                 long size = entry.getValue();
-                getObjectManager().db(db -> {
-                    dataOut.writeLong(size);
-                    try (InputStream input = db.getStream(objectId)) {
-                        StreamHelper.copy(input, dataOut);
-                    }
-                    return null;
-                });
+                byte[] data = readAhead.poll().get();
+                dataOut.writeLong(size);
+                if (data != null) {
+                    encoder.nextObject(data, data.length);
+                    dataOut.write(data);
+                } else {
+                    getObjectManager().db(db -> {
+                        try (InputStream input = db.getStream(objectId)) {
+                            byte[] head = input.readNBytes(TransferCodec.SNIFF_LENGTH);
+                            encoder.nextObject(head, head.length);
+                            dataOut.write(head);
+                            StreamHelper.copy(input, dataOut);
+                        }
+                        return null;
+                    });
+                }
                 activity.worked(size);
             }
             return countingOut.getCount();
@@ -116,6 +149,31 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
         }
     }
 
+    /**
+     * Reads the given object into memory in the background if it is small enough.
+     *
+     * @return a future which yields the content of the object, or <code>null</code> if the object needs to be streamed.
+     */
+    private CompletableFuture<byte[]> readAhead(Map.Entry<ObjectId, Long> entry) {
+        if (entry.getValue() > MAX_READ_AHEAD_OBJECT_SIZE) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        submitFileOperation(() -> {
+            try {
+                result.complete(getObjectManager().db(db -> {
+                    try (InputStream input = db.getStream(entry.getKey())) {
+                        return input.readAllBytes();
+                    }
+                }));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
     /**
      * The stream to write the objects to
      */
@@ -124,6 +182,18 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
         return this;
     }
 
+    /**
+     * The codec used to compress the stream. The receiving side must support the codec.
+     *
+     * @param codec the codec to use
+     * @param level the compression level, only used by codecs which support it.
+     */
+    public ObjectWriteOperation codec(TransferCodec codec, int level) {
+        this.codec = codec;
+        this.level = level;
+        return this;
+    }
+
     /**
      * The {@link ObjectId object} to fetch
      */
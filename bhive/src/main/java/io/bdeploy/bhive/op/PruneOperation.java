@@ -1,34 +1,62 @@
 package io.bdeploy.bhive.op;
 
+import java.io.InputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.hash.BloomFilter;
+
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
+import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.objects.ManifestDatabase;
 import io.bdeploy.bhive.objects.MarkerDatabase;
 import io.bdeploy.bhive.objects.ObjectDatabase;
+import io.bdeploy.bhive.objects.ReferenceJournal;
+import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.audit.AuditRecord;
 import io.bdeploy.common.audit.AuditRecord.Severity;
+import io.bdeploy.common.metrics.Metrics;
+import io.bdeploy.common.metrics.Metrics.MetricGroup;
+import io.bdeploy.common.util.FutureHelper;
 
 /**
  * Removes dangling (unreferenced) objects from the {@link ObjectDatabase}.
  * <p>
+ * Reachability is calculated in two phases. First, without holding any lock, all objects are listed and everything reachable
+ * from existing manifests is marked in a bitmap. Second, while holding the marker root lock, only manifests which appeared in
+ * the meantime as well as existing marker databases are marked, and all remaining unmarked objects are removed.
+ * <p>
+ * In incremental mode, only objects reachable from manifests deleted since the last prune (as recorded in the
+ * {@link ReferenceJournal}) are candidates, and only manifests whose reference summary may contain any of the candidates are
+ * traversed. Objects which became unreferenced in any other way (e.g. aborted transfers) are only found by a full sweep, which
+ * is performed instead if the journal is not available or damaged, or if the last full sweep is too long ago.
+ * <p>
  * Returns a map of removed {@link ObjectId}s along with the size of the removed
  * underlying file.
  */
@@ -36,14 +64,52 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
 
     private static final Logger log = LoggerFactory.getLogger(PruneOperation.class);
 
+    /** Maximum time between full sweeps, an incremental prune turns into a full sweep after this time. */
+    private static final long FULL_SWEEP_INTERVAL = TimeUnit.DAYS.toMillis(7);
+
+    private boolean incremental;
+
     @Override
     public SortedMap<ObjectId, Long> call() throws Exception {
-        SortedMap<ObjectId, Long> result = new TreeMap<>();
+        SortedMap<ObjectId, Long> result;
+
+        ReferenceJournal journal = getReferenceJournal();
+        ReferenceJournal.Cycle cycle = journal == null ? null : journal.begin();
+        boolean full = !incremental || cycle == null || cycle.getOrphanedRoots() == null
+                || System.currentTimeMillis() - journal.getLastFullSweep() > FULL_SWEEP_INTERVAL;
 
         AtomicLong max = new AtomicLong(-1);
         LongAdder current = new LongAdder();
 
         try (Activity activity = getActivityReporter().start("Prune (calculating)", max::get, current::sum)) {
+            long startTime = System.currentTimeMillis();
+
+            // collect all the objects directly contained. objects added later on are never candidates for removal.
+            // ATTENTION: this includes only objects which are DIRECTLY in the BHive, which is exactly what we want :)
+            // (i.e. objects which reside in a pool (see AugmentedObjectDatabase) will not be included in the list.
+            ObjectIdSet candidates = new ObjectIdSet();
+            if (full) {
+                getObjectManager().walkAllObjects(candidates::add);
+            } else {
+                // only objects which were reachable from deleted manifests can have become unreferenced.
+                getObjectManager().db(db -> {
+                    cycle.getOrphanedRoots().forEach(root -> collect(db, root, candidates));
+                    return null;
+                });
+            }
+            long scanTime = System.currentTimeMillis();
+
+            // mark everything reachable from currently existing manifests. manifests are immutable, so the marks stay valid.
+            Reachability reachability = new Reachability(candidates);
+            SortedSet<Manifest.Key> manifests = getManifestDatabase().getAllManifests();
+            max.set(manifests.size());
+            if (full) {
+                mark(reachability, manifests, current);
+            } else {
+                markSummarized(reachability, manifests, journal, current);
+            }
+            long markTime = System.currentTimeMillis();
+
             // Wait for other operations locking the marker root (e.g. another prune).
             // The CreateObjectMarkersOperation and ClearObjectMarkersOperation will hold
             // off until the root is unlocked again, so:
@@ -51,6 +117,7 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
             //  2) Existing transactions will be allowed to continue using their existing marker databases.
             //  3) Upon completion, existing transactions will block removal of the markers until the root is unlocked.
             DirectoryLockOperation.LockHandle lck = execute(new DirectoryLockOperation().setDirectory(getMarkerRoot()));
+            long lockTime = System.currentTimeMillis();
 
             try {
                 // need to cleanup all marker databases that are left over...
@@ -62,71 +129,55 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
                 // make sure there is no outdated information
                 getManifestDatabase().invalidateCaches();
 
-                SortedSet<ObjectId> all;
-
-                // read existing manifests also inside the lock, so we are sure that the existing
-                // manifests and objects are in a consistent state.
-                Set<Manifest.Key> manifests = execute(new ManifestListOperation());
-                Set<ObjectId> referenced;
-                if (!manifests.isEmpty()) {
-                    // we list all object, ignoring manifests which disappeared in the meantime (since the list call).
-                    referenced = execute(new ObjectListOperation().addManifest(manifests).ignoreMissingManifest(true));
-                } else {
-                    referenced = new TreeSet<>();
-                }
+                // read existing manifests again inside the lock, so we are sure that the existing
+                // manifests and objects are in a consistent state. only new ones need to be marked.
+                SortedSet<Manifest.Key> added = getManifestDatabase().getAllManifests();
+                added.removeAll(manifests);
+                mark(reachability, added, current);
 
-                // collect all the objects directly contained which are not referenced
-                all = new TreeSet<>();
-                getObjectManager().db(db -> {
-                    // ATTENTION: this includes only objects which are DIRECTLY in the BHive, which is exactly what we want :)
-                    // (i.e. objects which reside in a pool (see AugmentedObjectDatabase) will not be included in the list.
-                    db.walkAllObjects(o -> {
-                        if (!referenced.contains(o)) {
-                            all.add(o);
-                        }
-                    });
-                    return null;
-                });
-
-                // read all existing marker databases and regard any existing object as referenced.
+                // read all existing marker databases and regard any existing object as referenced. a marked object
+                // which already existed as chunks protects its chunks as well.
                 try (DirectoryStream<Path> markerDbs = Files.newDirectoryStream(getMarkerRoot())) {
                     for (Path markerDb : markerDbs) {
                         if (Files.isDirectory(markerDb)) {
                             MarkerDatabase mdb = new MarkerDatabase(markerDb, getActivityReporter());
-                            mdb.walkAllObjects(all::remove);
+                            getObjectManager().db(db -> {
+                                mdb.walkAllObjects(id -> reachability.markBlob(db, id));
+                                return null;
+                            });
                         }
                     }
                 }
 
-                List<ObjectId> auditList = new ArrayList<>();
+                List<ObjectId> unreferenced = reachability.getUnmarked();
 
                 activity.activity("Prune (cleaning)");
-                max.set(all.size());
+                max.set(unreferenced.size());
+                current.reset();
 
                 // delete within the lock, just to be sure that nobody "re-needs" one of the objects.
-                for (ObjectId unreferenced : all) {
-                    result.put(unreferenced, getObjectManager().db(x -> {
-                        try {
-                            long sz = x.getObjectSize(unreferenced);
-                            x.removeObject(unreferenced);
-                            if (auditList.size() < 50) {
-                                auditList.add(unreferenced);
-                            }
-                            return sz;
-                        } catch (NoSuchFileException e) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("To-be-removed object is no longer existing: {}", unreferenced, e);
-                            }
-                            return Long.valueOf(0);
-                        }
-                    }));
+                result = getObjectManager().removeObjects(unreferenced);
+                current.add(unreferenced.size());
 
-                    current.increment();
+                List<ObjectId> auditList = new ArrayList<>();
+                for (ObjectId removed : result.keySet()) {
+                    if (auditList.size() >= 50) {
+                        break;
+                    }
+                    auditList.add(removed);
                 }
 
                 getAuditor().audit(AuditRecord.Builder.fromSystem().setSeverity(Severity.NORMAL)
                         .setWhat(PruneOperation.class.getName()).setMessage("Removed " + result.size() + " Objects ")
                         .addParameter("removed", auditList.toString()).build());
+
+                if (cycle != null) {
+                    journal.complete(cycle, full);
+                    if (full) {
+                        added.addAll(manifests);
+                        journal.retainSummaries(added);
+                    }
+                }
             } finally {
                 // Unlocking the root will allow:
                 //  1) Ongoing operations to continue clearing their markers
@@ -134,8 +185,322 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
                 lck.unlock();
             }
 
+            long endTime = System.currentTimeMillis();
+            report(full, candidates.size(), manifests.size(), result, startTime, scanTime, markTime, lockTime, endTime);
+
             return result;
         }
     }
 
+    /**
+     * Marks all objects reachable from the given manifests in parallel, one task per manifest.
+     */
+    private void mark(Reachability reachability, Collection<Manifest.Key> keys, LongAdder progress) {
+        ManifestDatabase mdb = getManifestDatabase();
+        getObjectManager().db(db -> {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Manifest.Key key : keys) {
+                tasks.add(submitFileOperation(() -> {
+                    Manifest mf = loadManifest(mdb, key);
+                    if (mf == null) {
+                        return;
+                    }
+                    reachability.markTree(db, mdb, mf.getRoot());
+                    progress.increment();
+                }));
+            }
+            FutureHelper.awaitAll(tasks);
+            return null;
+        });
+    }
+
+    /**
+     * Marks all candidates referenced by the given manifests in parallel, one task per manifest. Manifests are skipped if their
+     * reference summary rules out all candidates which are not marked yet. Missing summaries are calculated and stored.
+     */
+    private void markSummarized(Reachability reachability, Collection<Manifest.Key> keys, ReferenceJournal journal,
+            LongAdder progress) {
+        ManifestDatabase mdb = getManifestDatabase();
+        getObjectManager().db(db -> {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Manifest.Key key : keys) {
+                tasks.add(submitFileOperation(() -> {
+                    progress.increment();
+                    if (reachability.isComplete()) {
+                        // all candidates are referenced, nothing to find.
+                        return;
+                    }
+
+                    Manifest mf = loadManifest(mdb, key);
+                    if (mf == null) {
+                        return;
+                    }
+
+                    BloomFilter<ObjectId> summary = journal.getSummary(key, mf.getRoot());
+                    if (summary == null) {
+                        // referenced manifests are not included, they are existing manifests and marked on their own.
+                        ObjectIdSet referenced = new ObjectIdSet();
+                        collect(db, mf.getRoot(), referenced);
+
+                        summary = ReferenceJournal.createSummary(referenced.size());
+                        referenced.forEach(summary::put);
+                        journal.putSummary(key, mf.getRoot(), summary);
+
+                        referenced.forEach(reachability::mark);
+                    } else if (reachability.isAnyUnmarked(summary::mightContain)) {
+                        reachability.markTree(db, mdb, mf.getRoot());
+                    }
+                }));
+            }
+            FutureHelper.awaitAll(tasks);
+            return null;
+        });
+    }
+
+    private static Manifest loadManifest(ManifestDatabase mdb, Manifest.Key key) {
+        try {
+            return mdb.getManifest(key);
+        } catch (Exception e) {
+            if (!mdb.hasManifest(key)) {
+                // no longer exists, just go on.
+                return null;
+            }
+            throw new IllegalStateException("Cannot read manifest even though it exists: " + key, e);
+        }
+    }
+
+    /**
+     * Collects the given tree and all objects reachable from it (including chunks of chunked objects) into the target.
+     * Referenced manifests are not followed.
+     */
+    private static void collect(ObjectDatabase db, ObjectId root, Set<ObjectId> target) {
+        Deque<ObjectId> queue = new ArrayDeque<>();
+        queue.add(root);
+
+        while (!queue.isEmpty()) {
+            ObjectId treeId = queue.poll();
+            if (!target.add(treeId)) {
+                continue;
+            }
+
+            Tree tree = loadTree(db, treeId);
+            if (tree == null) {
+                continue;
+            }
+
+            for (Map.Entry<Tree.Key, ObjectId> entry : tree.getChildren().entrySet()) {
+                if (entry.getKey().getType() == Tree.EntryType.TREE) {
+                    queue.add(entry.getValue());
+                } else if (target.add(entry.getValue())) {
+                    List<ObjectId> chunks = db.getChunks(entry.getValue());
+                    if (chunks != null) {
+                        target.addAll(chunks);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Tree loadTree(ObjectDatabase db, ObjectId id) {
+        if (!db.hasObject(id)) {
+            log.warn("Skipping missing tree: {}", id);
+            return null;
+        }
+        try (InputStream is = db.getStream(id)) {
+            return StorageHelper.fromStream(is, Tree.class);
+        } catch (Exception e) {
+            log.warn("Skipping damaged tree: {}", id, e);
+            return null;
+        }
+    }
+
+    private static void report(boolean full, int scanned, int manifests, Map<ObjectId, Long> removed, long startTime,
+            long scanTime, long markTime, long lockTime, long endTime) {
+        long bytes = removed.values().stream().mapToLong(Long::longValue).sum();
+
+        MetricRegistry metrics = Metrics.getMetric(MetricGroup.HIVE);
+        metrics.meter("PruneOperation.ObjectsScanned").mark(scanned);
+        metrics.meter("PruneOperation.ObjectsRemoved").mark(removed.size());
+        metrics.meter("PruneOperation.BytesRemoved").mark(bytes);
+        metrics.timer("PruneOperation.Scan").update(scanTime - startTime, TimeUnit.MILLISECONDS);
+        metrics.timer("PruneOperation.Mark").update(markTime - scanTime, TimeUnit.MILLISECONDS);
+        metrics.timer("PruneOperation.LockHeld").update(endTime - lockTime, TimeUnit.MILLISECONDS);
+
+        if (log.isInfoEnabled()) {
+            log.info("Prune ({}) scanned {} objects in {}ms ({}/s), marked {} manifests in {}ms, removed {} objects ({} bytes), "
+                    + "lock held for {}ms", full ? "full" : "incremental", scanned, scanTime - startTime,
+                    perSecond(scanned, scanTime - startTime), manifests, markTime - scanTime, removed.size(), bytes,
+                    endTime - lockTime);
+        }
+    }
+
+    private static long perSecond(long amount, long millis) {
+        return millis <= 0 ? amount : (amount * 1000 / millis);
+    }
+
+    /**
+     * @param incremental whether to only consider objects of manifests deleted since the last prune. A full sweep is performed
+     *            regardless if required, see {@link PruneOperation}.
+     * @return this for chaining.
+     */
+    public PruneOperation setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * Tracks reachability of a fixed set of candidate objects in a bitmap indexed by the position of the object in the
+     * candidate set. Safe for concurrent marking.
+     */
+    private static final class Reachability {
+
+        private final ObjectIdSet candidates;
+        private final AtomicLongArray bits;
+        private final AtomicInteger marked = new AtomicInteger();
+
+        /** Trees which are not candidates themselves (e.g. pooled), tracked to avoid traversing them more than once. */
+        private final Set<ObjectId> otherTrees = ConcurrentHashMap.newKeySet();
+
+        Reachability(ObjectIdSet candidates) {
+            this.candidates = candidates;
+            this.bits = new AtomicLongArray((candidates.size() + 63) / 64);
+        }
+
+        /**
+         * @return whether the object was marked by this call, i.e. has not been marked before. Objects which are not
+         *         candidates are never marked.
+         */
+        boolean mark(ObjectId id) {
+            int pos = candidates.indexOf(id);
+            if (pos < 0) {
+                return false;
+            }
+
+            int word = pos >>> 6;
+            long bit = 1L << (pos & 63);
+            while (true) {
+                long value = bits.get(word);
+                if ((value & bit) != 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(word, value, value | bit)) {
+                    marked.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        private boolean visit(ObjectId tree) {
+            if (candidates.indexOf(tree) < 0) {
+                return otherTrees.add(tree);
+            }
+            return mark(tree);
+        }
+
+        /**
+         * Marks the given tree and everything reachable from it. Trees which have been visited before are not traversed again.
+         */
+        void markTree(ObjectDatabase db, ManifestDatabase mdb, ObjectId root) {
+            Deque<ObjectId> queue = new ArrayDeque<>();
+            queue.add(root);
+
+            while (!queue.isEmpty()) {
+                ObjectId treeId = queue.poll();
+                if (!visit(treeId)) {
+                    continue;
+                }
+
+                Tree tree = loadTree(db, treeId);
+                if (tree == null) {
+                    continue;
+                }
+
+                for (Map.Entry<Tree.Key, ObjectId> entry : tree.getChildren().entrySet()) {
+                    ObjectId child = entry.getValue();
+                    switch (entry.getKey().getType()) {
+                        case BLOB:
+                            markBlob(db, child);
+                            break;
+                        case TREE:
+                            queue.add(child);
+                            break;
+                        case MANIFEST:
+                            mark(child);
+                            ObjectId refRoot = lookupManifestRoot(db, mdb, child);
+                            if (refRoot != null) {
+                                queue.add(refRoot);
+                            }
+                            break;
+                        default:
+                            throw new IllegalStateException("Unsupported object type: " + entry.getKey().getType());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Marks the given blob, and all its chunks in case it is stored as chunks.
+         */
+        void markBlob(ObjectDatabase db, ObjectId blob) {
+            if (!mark(blob)) {
+                return;
+            }
+
+            List<ObjectId> chunks = db.getChunks(blob);
+            if (chunks != null) {
+                chunks.forEach(this::mark);
+            }
+        }
+
+        /**
+         * @return whether all candidates have been marked.
+         */
+        boolean isComplete() {
+            return marked.get() >= candidates.size();
+        }
+
+        /**
+         * @return whether any of the candidates which have not been marked matches the given {@link Predicate}.
+         */
+        boolean isAnyUnmarked(Predicate<ObjectId> predicate) {
+            int size = candidates.size();
+            for (int pos = 0; pos < size; ++pos) {
+                if ((bits.get(pos >>> 6) & (1L << (pos & 63))) == 0 && predicate.test(candidates.get(pos))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return all candidates which have not been marked.
+         */
+        List<ObjectId> getUnmarked() {
+            List<ObjectId> result = new ArrayList<>();
+            int size = candidates.size();
+            for (int pos = 0; pos < size; ++pos) {
+                if ((bits.get(pos >>> 6) & (1L << (pos & 63))) == 0) {
+                    result.add(candidates.get(pos));
+                }
+            }
+            return result;
+        }
+
+        private static ObjectId lookupManifestRoot(ObjectDatabase db, ManifestDatabase mdb, ObjectId ref) {
+            if (!db.hasObject(ref)) {
+                return null;
+            }
+            try (InputStream is = db.getStream(ref)) {
+                Manifest.Key key = StorageHelper.fromStream(is, Manifest.Key.class);
+                if (!mdb.hasManifest(key)) {
+                    return null;
+                }
+                return mdb.getManifest(key).getRoot();
+            } catch (Exception e) {
+                log.warn("Cannot resolve manifest reference {}", ref, e);
+                return null;
+            }
+        }
+    }
+
 }
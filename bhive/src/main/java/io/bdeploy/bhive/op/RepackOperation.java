@@ -0,0 +1,37 @@
+package io.bdeploy.bhive.op;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.objects.ObjectDatabase;
+import io.bdeploy.common.util.RuntimeAssert;
+
+/**
+ * Compacts loose objects in the {@link ObjectDatabase} into a pack file, see {@link ObjectDatabase#repack(long)}.
+ * <p>
+ * Returns the number of objects written to the new pack.
+ */
+public class RepackOperation extends BHive.Operation<Long> {
+
+    /**
+     * By default only objects up to this size are packed. Larger objects are typically few, and are better kept as separate
+     * file, which allows streaming them directly.
+     */
+    public static final long DEFAULT_MAX_OBJECT_SIZE = 1024L * 1024; // 1M
+
+    private long maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
+
+    @Override
+    public Long call() {
+        RuntimeAssert.assertTrue(maxObjectSize > 0, "Maximum object size must be positive");
+
+        return getObjectManager().db(db -> db.repack(maxObjectSize));
+    }
+
+    /**
+     * @param maxObjectSize the maximum size of objects to pack.
+     */
+    public RepackOperation setMaxObjectSize(long maxObjectSize) {
+        this.maxObjectSize = maxObjectSize;
+        return this;
+    }
+
+}
@@ -8,8 +8,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -22,11 +25,14 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.op.CopyOperation;
+import io.bdeploy.bhive.op.ObjectAssembleOperation;
 import io.bdeploy.bhive.op.ObjectExistsOperation;
 import io.bdeploy.bhive.op.ObjectExistsOperation.Result;
 import io.bdeploy.bhive.op.ObjectReadOperation;
 import io.bdeploy.bhive.remote.RemoteBHive;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.util.PathHelper;
 import jakarta.ws.rs.core.UriBuilder;
@@ -41,6 +47,12 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
 
     private final SortedSet<Manifest.Key> manifests = new TreeSet<>();
     private String hiveName;
+    private int streams = TransferChunks.DEFAULT_STREAMS;
+    private TransferCodec codec = TransferCodec.DEFLATE;
+    private int level = TransferCodec.DEFAULT_LEVEL;
+
+    /** The codec actually used, depends on the capabilities of the remote. */
+    private TransferCodec streamCodec = TransferCodec.GZIP;
 
     @Override
     public TransferStatistics callTransacted() throws Exception {
@@ -75,15 +87,21 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
                     return stats;
                 }
 
+                int protocol = rh.getProtocolVersion();
+
                 // STEP 1: Figure out required trees for the roots to fetch
-                Set<ObjectId> requiredTrees = new LinkedHashSet<>();
-                toFetchRootTrees.forEach(t -> requiredTrees.addAll(rh.getRequiredTrees(t)));
+                Set<ObjectId> requiredTrees = new ObjectIdSet();
+                if (protocol >= 2) {
+                    requiredTrees.addAll(rh.getRequiredTrees(toFetchRootTrees));
+                } else {
+                    toFetchRootTrees.forEach(t -> requiredTrees.addAll(rh.getRequiredTrees(t)));
+                }
 
                 // STEP 2: Figure out which trees we already have locally.
                 Result treeResult = execute(new ObjectExistsOperation().addAll(requiredTrees));
 
                 // STEP 3: Find objects for all missing objects, filtering trees we have.
-                Set<ObjectId> requiredObjects = new LinkedHashSet<>();
+                Set<ObjectId> requiredObjects = new ObjectIdSet();
                 if (!treeResult.missing.isEmpty()) {
                     requiredObjects = rh.getRequiredObjects(treeResult.missing, treeResult.existing);
                 }
@@ -92,7 +110,7 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
                 Result objectResult = execute(new ObjectExistsOperation().addAll(requiredObjects));
 
                 // STEP 5: Fetch from the remote all required objects and manifests.
-                TransferStatistics fetchStats = fetch(rh, objectResult.missing, requiredManifests);
+                TransferStatistics fetchStats = fetch(rh, protocol, objectResult.missing, requiredManifests);
 
                 // Update statistics with some new knowledge. the fetch call can only know a few numbers,
                 // as for instance the number of trees is irrelevant during actual operation.
@@ -123,12 +141,38 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
         return this;
     }
 
+    /**
+     * @param streams the maximum amount of parallel streams to use if supported by the remote.
+     */
+    public FetchOperation setStreams(int streams) {
+        this.streams = streams;
+        return this;
+    }
+
+    /**
+     * @param codec the codec to request from the remote if supported, GZIP otherwise.
+     * @param level the compression level, only used by codecs which support it.
+     */
+    public FetchOperation setCodec(TransferCodec codec, int level) {
+        this.codec = codec;
+        this.level = level;
+        return this;
+    }
+
     public SortedSet<Manifest.Key> getManifests() {
         return manifests;
     }
 
-    private TransferStatistics fetch(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) throws IOException {
+    private TransferStatistics fetch(RemoteBHive rh, int protocol, Set<ObjectId> objects, Set<Key> manifests)
+            throws IOException {
+        streamCodec = TransferChunks.selectCodec(rh, protocol, codec);
         try {
+            if (protocol >= 3) {
+                return fetchAsStreams(rh, objects, manifests, rh.getChunks(objects));
+            }
+            if (protocol >= 2) {
+                return fetchAsStreams(rh, objects, manifests, Collections.emptyMap());
+            }
             return fetchAsStream(rh, objects, manifests);
         } catch (UnsupportedOperationException ex) {
             return fetchAsZip(rh, objects, manifests);
@@ -151,8 +195,68 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
     }
 
     private TransferStatistics fetchAsStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) {
-        InputStream stream = rh.fetchAsStream(objects, manifests);
+        InputStream stream = rh.fetchAsStream(objects, manifests, streamCodec, level);
         return execute(new ObjectReadOperation().stream(stream));
     }
 
+    /**
+     * Fetches objects in chunks using multiple parallel streams, followed by a last stream containing only the manifests. Each
+     * chunk is retried on failure, fetching only objects which did not yet arrive.
+     * <p>
+     * Objects which are stored as chunks on the remote are not fetched as a whole. Instead, only chunks which do not exist
+     * locally are fetched, and the objects are reassembled locally. Chunks which arrived in an earlier, failed attempt are
+     * not fetched again.
+     */
+    private TransferStatistics fetchAsStreams(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests,
+            Map<ObjectId, List<ObjectId>> chunked) {
+        TransferStatistics result = new TransferStatistics();
+
+        Set<ObjectId> transfer = new ObjectIdSet();
+        Set<ObjectId> chunks = new ObjectIdSet();
+        for (ObjectId id : objects) {
+            List<ObjectId> objectChunks = chunked.get(id);
+            if (objectChunks == null) {
+                transfer.add(id);
+            } else {
+                chunks.addAll(objectChunks);
+            }
+        }
+        if (!chunks.isEmpty()) {
+            transfer.addAll(execute(new ObjectExistsOperation().addAll(chunks)).missing);
+        }
+
+        List<Runnable> transfers = new ArrayList<>();
+        for (Set<ObjectId> chunk : TransferChunks.partition(transfer, streams)) {
+            transfers.add(() -> TransferChunks.merge(result, fetchChunk(rh, chunk)));
+        }
+        TransferChunks.runStreams(transfers, streams);
+
+        if (!chunked.isEmpty()) {
+            execute(new ObjectAssembleOperation().addAll(chunked));
+        }
+
+        // objects are protected by the current transaction until the manifests arrive.
+        TransferChunks.merge(result, fetchAsStream(rh, Collections.emptySet(), manifests));
+        return result;
+    }
+
+    private TransferStatistics fetchChunk(RemoteBHive rh, Set<ObjectId> chunk) {
+        Set<ObjectId> remaining = chunk;
+        for (int attempt = 1;; ++attempt) {
+            try {
+                return fetchAsStream(rh, remaining, Collections.emptySet());
+            } catch (Exception e) {
+                if (attempt >= TransferChunks.MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                remaining = execute(new ObjectExistsOperation().addAll(remaining)).missing;
+                log.warn("Fetching {} objects failed (attempt {}), resuming with {} missing objects: {}", chunk.size(), attempt,
+                        remaining.size(), e.toString());
+                if (remaining.isEmpty()) {
+                    return new TransferStatistics();
+                }
+            }
+        }
+    }
+
 }
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
@@ -27,6 +28,7 @@ import io.bdeploy.bhive.ReadOnlyOperation;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.objects.view.BlobView;
 import io.bdeploy.bhive.objects.view.ElementView;
 import io.bdeploy.bhive.objects.view.ManifestRefView;
@@ -35,11 +37,14 @@ import io.bdeploy.bhive.objects.view.scanner.TreeVisitor;
 import io.bdeploy.bhive.op.CopyOperation;
 import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.op.ManifestRefScanOperation;
+import io.bdeploy.bhive.op.ObjectChunksOperation;
 import io.bdeploy.bhive.op.ObjectWriteOperation;
 import io.bdeploy.bhive.op.ScanOperation;
 import io.bdeploy.bhive.remote.RemoteBHive;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.UuidHelper;
 import jakarta.ws.rs.core.UriBuilder;
 
 /**
@@ -53,6 +58,12 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
 
     private final Set<Manifest.Key> manifests = new LinkedHashSet<>();
     private String hiveName;
+    private int streams = TransferChunks.DEFAULT_STREAMS;
+    private TransferCodec codec = TransferCodec.DEFLATE;
+    private int level = TransferCodec.DEFAULT_LEVEL;
+
+    /** The codec actually used, depends on the capabilities of the remote. */
+    private TransferCodec streamCodec = TransferCodec.GZIP;
 
     @Override
     public TransferStatistics call() throws Exception {
@@ -102,7 +113,7 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
                 Set<ObjectId> missingObjects = rh.getMissingObjects(requiredObjects);
 
                 // STEP 6: copy objects and manifests
-                TransferStatistics pushStats = push(rh, missingObjects, allManifests);
+                TransferStatistics pushStats = push(rh, rh.getProtocolVersion(), missingObjects, allManifests);
 
                 // Update statistics with some new knowledge.
                 stats.sumTrees = allTrees.size();
@@ -169,9 +180,35 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
         return this;
     }
 
-    private TransferStatistics push(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) throws IOException {
+    /**
+     * @param streams the maximum amount of parallel streams to use if supported by the remote.
+     */
+    public PushOperation setStreams(int streams) {
+        this.streams = streams;
+        return this;
+    }
+
+    /**
+     * @param codec the codec to use if supported by the remote, GZIP otherwise.
+     * @param level the compression level, only used by codecs which support it.
+     */
+    public PushOperation setCodec(TransferCodec codec, int level) {
+        this.codec = codec;
+        this.level = level;
+        return this;
+    }
+
+    private TransferStatistics push(RemoteBHive rh, int protocol, Set<ObjectId> objects, Set<Key> manifests)
+            throws IOException {
+        streamCodec = TransferChunks.selectCodec(rh, protocol, codec);
         try {
-            return pushAsStream(rh, objects, manifests);
+            if (protocol >= 3) {
+                return pushAsStreams(rh, objects, manifests, execute(new ObjectChunksOperation().addAll(objects)));
+            }
+            if (protocol >= 2) {
+                return pushAsStreams(rh, objects, manifests, Collections.emptyMap());
+            }
+            return pushAsStream(rh, objects, manifests, null);
         } catch (UnsupportedOperationException ex) {
             if (log.isDebugEnabled()) {
                 log.debug("Stream pushing not supported by target server", ex);
@@ -206,14 +243,15 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
         }
     }
 
-    private TransferStatistics pushAsStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) {
+    private TransferStatistics pushAsStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests, String pushId) {
         PipedInputStream input = new PipedInputStream();
         CompletableFuture<Void> barrier = new CompletableFuture<>();
 
         Thread thread = new Thread(() -> {
             try (PipedOutputStream output = new PipedOutputStream(input)) {
                 barrier.complete(null);
-                execute(new ObjectWriteOperation().stream(output).manifests(manifests).objects(objects));
+                execute(new ObjectWriteOperation().stream(output).codec(streamCodec, level).manifests(manifests)
+                        .objects(objects));
             } catch (Exception e) {
                 log.warn("Cannot fully push content via stream", e);
             }
@@ -223,7 +261,95 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
         thread.start();
 
         barrier.join();
-        return rh.pushAsStream(input);
+        return rh.pushAsStream(input, pushId);
+    }
+
+    /**
+     * Pushes objects in chunks using multiple parallel streams, followed by a last stream containing only the manifests. Each
+     * chunk is retried on failure, pushing only objects which did not yet arrive.
+     * <p>
+     * All streams carry the same push id, so the remote protects the pushed objects until the manifests arrived.
+     */
+    private TransferStatistics pushAsStreams(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests,
+            Map<ObjectId, List<ObjectId>> chunked) {
+        TransferStatistics result = new TransferStatistics();
+        String pushId = UuidHelper.randomId();
+        pushObjects(rh, objects, chunked, pushId, result);
+
+        // remotes before protocol version 5 do not protect objects pushed in separate streams until the manifests arrive. in
+        // case objects vanished in the meantime (e.g. prune), the remote rejects the manifests and missing objects are pushed
+        // again.
+        for (int attempt = 1;; ++attempt) {
+            try {
+                TransferChunks.merge(result, pushAsStream(rh, Collections.emptySet(), manifests, pushId));
+                return result;
+            } catch (Exception e) {
+                if (attempt >= TransferChunks.MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                Set<ObjectId> missing = rh.getMissingObjects(objects);
+                log.warn("Pushing manifests failed (attempt {}), re-pushing {} missing objects: {}", attempt, missing.size(),
+                        e.toString());
+                if (!missing.isEmpty()) {
+                    pushObjects(rh, missing, chunked, pushId, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes the given objects using multiple parallel streams.
+     * <p>
+     * Objects which are stored as chunks locally are not pushed as a whole. Instead, only chunks which are missing on the
+     * remote are pushed, and the remote reassembles the objects. Chunks which arrived in an earlier, failed attempt are not
+     * pushed again.
+     */
+    private void pushObjects(RemoteBHive rh, Set<ObjectId> objects, Map<ObjectId, List<ObjectId>> chunked, String pushId,
+            TransferStatistics result) {
+        Set<ObjectId> transfer = new ObjectIdSet();
+        Set<ObjectId> chunks = new ObjectIdSet();
+        Map<ObjectId, List<ObjectId>> assemble = new TreeMap<>();
+        for (ObjectId id : objects) {
+            List<ObjectId> objectChunks = chunked.get(id);
+            if (objectChunks == null) {
+                transfer.add(id);
+            } else {
+                chunks.addAll(objectChunks);
+                assemble.put(id, objectChunks);
+            }
+        }
+        if (!chunks.isEmpty()) {
+            transfer.addAll(rh.getMissingObjects(chunks));
+        }
+
+        List<Runnable> transfers = new ArrayList<>();
+        for (Set<ObjectId> chunk : TransferChunks.partition(transfer, streams)) {
+            transfers.add(() -> TransferChunks.merge(result, pushChunk(rh, chunk, pushId)));
+        }
+        TransferChunks.runStreams(transfers, streams);
+
+        if (!assemble.isEmpty()) {
+            rh.assembleObjects(assemble, pushId);
+        }
+    }
+
+    private TransferStatistics pushChunk(RemoteBHive rh, Set<ObjectId> chunk, String pushId) {
+        Set<ObjectId> remaining = chunk;
+        for (int attempt = 1;; ++attempt) {
+            try {
+                return pushAsStream(rh, remaining, Collections.emptySet(), pushId);
+            } catch (Exception e) {
+                if (attempt >= TransferChunks.MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                remaining = rh.getMissingObjects(remaining);
+                log.warn("Pushing {} objects failed (attempt {}), resuming with {} missing objects: {}", chunk.size(), attempt,
+                        remaining.size(), e.toString());
+                if (remaining.isEmpty()) {
+                    return new TransferStatistics();
+                }
+            }
+        }
     }
 
 }
@@ -0,0 +1,114 @@
+package io.bdeploy.bhive.op.remote;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
+import io.bdeploy.bhive.remote.LocalBHiveAdapter;
+import io.bdeploy.bhive.remote.RemoteBHive;
+import io.bdeploy.bhive.util.TransferCodec;
+import io.bdeploy.common.util.FutureHelper;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+
+/**
+ * Helpers for stream based object transfers, see {@link FetchOperation} and {@link PushOperation}.
+ */
+final class TransferChunks {
+
+    /** The default amount of parallel streams used for a transfer. */
+    static final int DEFAULT_STREAMS = 4;
+
+    /** The number of times a single chunk is retried before the transfer fails. */
+    static final int MAX_CHUNK_ATTEMPTS = 3;
+
+    /** Chunks per stream. Multiple smaller chunks balance load between streams and limit the work lost on a broken stream. */
+    private static final int CHUNKS_PER_STREAM = 4;
+
+    /** Transfers below this amount of objects per chunk are not split. */
+    private static final int MIN_CHUNK_OBJECTS = 256;
+
+    private static final AtomicInteger streamNum = new AtomicInteger(0);
+
+    private TransferChunks() {
+    }
+
+    /**
+     * @param objects the objects to split into chunks, order is preserved.
+     * @param streams the amount of parallel streams which will transfer the chunks.
+     * @return the chunks to transfer, possibly only a single one.
+     */
+    static List<Set<ObjectId>> partition(Collection<ObjectId> objects, int streams) {
+        int chunks = Math.max(1, streams) * CHUNKS_PER_STREAM;
+        int chunkSize = Math.max(MIN_CHUNK_OBJECTS, (objects.size() + chunks - 1) / chunks);
+
+        List<Set<ObjectId>> result = new ArrayList<>();
+        Set<ObjectId> current = null;
+        for (ObjectId id : objects) {
+            if (current == null || current.size() >= chunkSize) {
+                current = new ObjectIdSet();
+                result.add(current);
+            }
+            current.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the given chunk transfers using up to the given amount of parallel streams, and waits for all of them.
+     * <p>
+     * Streams do not run on the file operation pool of the {@link io.bdeploy.bhive.BHive}: receiving a stream inserts objects
+     * using that pool, which would otherwise happen inline on a stream occupying a pool thread, so that receiving and inserting
+     * objects no longer overlap. The stream threads are started by the calling thread and thus inherit its transactions.
+     */
+    static void runStreams(List<Runnable> transfers, int streams) {
+        int threads = Math.max(1, Math.min(streams, transfers.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new NamedDaemonThreadFactory(() -> "Transfer-Stream-" + streamNum.incrementAndGet()));
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (Runnable transfer : transfers) {
+                tasks.add(executor.submit(transfer));
+            }
+            FutureHelper.awaitAll(tasks);
+        } finally {
+            FutureHelper.cancelAll(tasks);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @param rh the remote which takes part in the transfer
+     * @param protocol the protocol version of the remote
+     * @param requested the codec requested by the user.
+     * @return the codec to use for streams exchanged with the remote.
+     */
+    static TransferCodec selectCodec(RemoteBHive rh, int protocol, TransferCodec requested) {
+        if (protocol < 4) {
+            return TransferCodec.GZIP;
+        }
+        if (rh instanceof LocalBHiveAdapter) {
+            // both hives are on the same machine, compression would only cost CPU time.
+            return TransferCodec.NONE;
+        }
+        return requested;
+    }
+
+    /**
+     * Adds the numbers of a single chunk transfer to the overall statistics.
+     */
+    static void merge(TransferStatistics target, TransferStatistics chunk) {
+        synchronized (target) {
+            target.sumManifests += chunk.sumManifests;
+            target.sumMissingObjects += chunk.sumMissingObjects;
+            target.transferSize += chunk.transferSize;
+        }
+    }
+
+}
@@ -6,6 +6,8 @@ import java.io.PipedOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -17,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.BHiveTransactions;
 import io.bdeploy.bhive.BHiveTransactions.Transaction;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
@@ -27,6 +30,8 @@ import io.bdeploy.bhive.op.CopyOperation;
 import io.bdeploy.bhive.op.ManifestDeleteOperation;
 import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.op.ManifestLoadOperation;
+import io.bdeploy.bhive.op.ObjectAssembleOperation;
+import io.bdeploy.bhive.op.ObjectChunksOperation;
 import io.bdeploy.bhive.op.ObjectExistsOperation;
 import io.bdeploy.bhive.op.ObjectListOperation;
 import io.bdeploy.bhive.op.ObjectReadOperation;
@@ -34,6 +39,7 @@ import io.bdeploy.bhive.op.ObjectWriteOperation;
 import io.bdeploy.bhive.op.PruneOperation;
 import io.bdeploy.bhive.op.ScanOperation;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.util.PathHelper;
 import jakarta.ws.rs.core.UriBuilder;
@@ -55,11 +61,29 @@ public class LocalBHiveAdapter implements RemoteBHive {
         this.hive = hive;
     }
 
+    @Override
+    public int getProtocolVersion() {
+        return PROTOCOL_VERSION;
+    }
+
     @Override
     public Set<ObjectId> getMissingObjects(Set<ObjectId> all) {
         return hive.execute(new ObjectExistsOperation().addAll(all)).missing;
     }
 
+    @Override
+    public Map<ObjectId, List<ObjectId>> getChunks(Set<ObjectId> objects) {
+        return hive.execute(new ObjectChunksOperation().addAll(objects));
+    }
+
+    @Override
+    public void assembleObjects(Map<ObjectId, List<ObjectId>> objects, String pushId) {
+        BHiveTransactions transactions = hive.getTransactions();
+        try (Transaction t = pushId == null ? transactions.begin() : transactions.beginShared(pushId)) {
+            hive.execute(new ObjectAssembleOperation().addAll(objects));
+        }
+    }
+
     @Override
     public Set<ObjectId> getRequiredObjects(Set<ObjectId> trees, Set<ObjectId> excludeTrees) {
         return hive.execute(new ObjectListOperation().addTree(trees).excludeTree(excludeTrees));
@@ -75,6 +99,17 @@ public class LocalBHiveAdapter implements RemoteBHive {
         return treeIds;
     }
 
+    @Override
+    public Set<ObjectId> getRequiredTrees(Set<ObjectId> trees) {
+        Set<ObjectId> treeIds = new LinkedHashSet<>();
+        for (ObjectId tree : trees) {
+            if (!treeIds.contains(tree)) {
+                treeIds.addAll(getRequiredTrees(tree));
+            }
+        }
+        return treeIds;
+    }
+
     @Override
     public SortedMap<Manifest.Key, ObjectId> getManifestInventory(String... names) {
         SortedSet<Manifest.Key> mfs = new TreeSet<>();
@@ -123,9 +158,10 @@ public class LocalBHiveAdapter implements RemoteBHive {
     }
 
     @Override
-    public TransferStatistics pushAsStream(InputStream in) {
-        try (Transaction t = hive.getTransactions().begin()) {
-            return hive.execute(new ObjectReadOperation().stream(in));
+    public TransferStatistics pushAsStream(InputStream in, String pushId) {
+        BHiveTransactions transactions = hive.getTransactions();
+        try (Transaction t = pushId == null ? transactions.begin() : transactions.beginShared(pushId)) {
+            return hive.execute(new ObjectReadOperation().stream(in).setPushId(pushId));
         }
     }
 
@@ -153,14 +189,14 @@ public class LocalBHiveAdapter implements RemoteBHive {
     }
 
     @Override
-    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Manifest.Key> manifests) {
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Manifest.Key> manifests, TransferCodec codec, int level) {
         PipedInputStream input = new PipedInputStream();
         CompletableFuture<Void> barrier = new CompletableFuture<>();
 
         Thread thread = new Thread(() -> {
             try (PipedOutputStream output = new PipedOutputStream(input)) {
                 barrier.complete(null);
-                hive.execute(new ObjectWriteOperation().stream(output).manifests(manifests).objects(objects));
+                hive.execute(new ObjectWriteOperation().stream(output).codec(codec, level).manifests(manifests).objects(objects));
             } catch (Exception e) {
                 log.warn("Cannot fully send content to fetching client via stream", e);
             }
@@ -3,6 +3,8 @@ package io.bdeploy.bhive.remote;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 
@@ -13,6 +15,7 @@ import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.bhive.remote.jersey.JerseyRemoteBHive;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.cfg.ExistingPathValidator;
 import io.bdeploy.common.cfg.PathOwnershipValidator;
@@ -29,12 +32,48 @@ import io.bdeploy.common.util.ZipHelper;
  */
 public interface RemoteBHive extends AutoCloseable {
 
+    /**
+     * The current transfer protocol version.
+     * <ul>
+     * <li>1 - Single stream transfers, trees are resolved one root tree at a time.</li>
+     * <li>2 - Batched tree resolution, objects may be transferred in multiple (parallel) streams which do not contain any
+     * manifests, followed by a final stream containing the manifests.</li>
+     * <li>3 - Large objects which are stored as chunks are transferred as their (missing) chunks, and reassembled on the
+     * receiving side.</li>
+     * <li>4 - Object streams may use any {@link TransferCodec}, not only GZIP.</li>
+     * <li>5 - All streams of a single push carry a push id. The receiving side protects the pushed objects until the manifests
+     * arrived.</li>
+     * </ul>
+     */
+    public static final int PROTOCOL_VERSION = 5;
+
+    /**
+     * @return the transfer protocol version supported by the remote.
+     */
+    public int getProtocolVersion();
+
     /**
      * From the given set, filter all remotely known {@link ObjectId}s and return only {@link ObjectId} which are not yet present
      * on the remote.
      */
     public Set<ObjectId> getMissingObjects(Set<ObjectId> all);
 
+    /**
+     * Retrieve the chunks of all given objects which are stored as chunks on the remote. Requires protocol version 3.
+     *
+     * @return the chunks of each chunked object. Objects which are not chunked are not contained.
+     */
+    public Map<ObjectId, List<ObjectId>> getChunks(Set<ObjectId> objects);
+
+    /**
+     * Reassembles the given objects on the remote from their chunks, which must have been transferred before. Requires
+     * protocol version 3.
+     *
+     * @param pushId the push the chunks have been transferred with, see {@link #pushAsStream(InputStream, String)}. The
+     *            reassembled objects are protected along with the chunks until the manifests of the push arrived.
+     */
+    public void assembleObjects(Map<ObjectId, List<ObjectId>> objects, String pushId);
+
     /**
      * Retrieve all {@link Key}s along with the root tree {@link ObjectId} available
      * to the remote repository.
@@ -65,6 +104,12 @@ public interface RemoteBHive extends AutoCloseable {
      */
     public Set<ObjectId> getRequiredTrees(ObjectId tree);
 
+    /**
+     * Retrieve the {@link ObjectId}s of all required {@link Tree} objects recursively in all the given trees. Requires protocol
+     * version 2.
+     */
+    public Set<ObjectId> getRequiredTrees(Set<ObjectId> trees);
+
     /**
      * Transfer the ZIPed {@link BHive} to the remote and apply all top-level
      * {@link Manifest}s referenced within.
@@ -73,8 +118,12 @@ public interface RemoteBHive extends AutoCloseable {
 
     /**
      * Streams objects directly into the given remote hive.
+     *
+     * @param pushId identifies the push the stream belongs to in case a push consists of multiple streams. Objects of the push
+     *            are protected on the remote until a stream containing the manifests has been received. Ignored by remotes
+     *            before protocol version 5.
      */
-    public TransferStatistics pushAsStream(InputStream in);
+    public TransferStatistics pushAsStream(InputStream in, String pushId);
 
     /**
      * Fetch manifests from the remote as ZIPed {@link BHive}. Only objects in the given requiredObjects are included.
@@ -83,8 +132,12 @@ public interface RemoteBHive extends AutoCloseable {
 
     /**
      * Streams the given objects one after each other to the given output stream.
+     *
+     * @param codec the codec to compress the stream with. Codecs other than {@link TransferCodec#GZIP} require protocol
+     *            version 4.
+     * @param level the compression level, only used by codecs which support it.
      */
-    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests);
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests, TransferCodec codec, int level);
 
     /**
      * Figures out the type of {@link RemoteBHive} required for the given
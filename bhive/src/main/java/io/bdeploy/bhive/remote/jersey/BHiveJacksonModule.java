@@ -16,9 +16,10 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ObjectId;
 
 /**
- * A jackson module which adds logic to (de-) serialize {@link Key}s.
+ * A jackson module which adds logic to (de-) serialize {@link Key}s and {@link ObjectId}s as map keys.
  */
 public class BHiveJacksonModule extends SimpleModule {
 
@@ -27,6 +28,8 @@ public class BHiveJacksonModule extends SimpleModule {
     public BHiveJacksonModule() {
         addKeySerializer(Manifest.Key.class, new MKS());
         addKeyDeserializer(Manifest.Key.class, new MKD());
+        addKeySerializer(ObjectId.class, new OKS());
+        addKeyDeserializer(ObjectId.class, new OKD());
 
         // We absolutely require ordered Sets even over the wire to maintain object orders.
         addAbstractTypeMapping(Set.class, LinkedHashSet.class);
@@ -58,4 +61,20 @@ public class BHiveJacksonModule extends SimpleModule {
         }
     }
 
+    private static class OKS extends JsonSerializer<ObjectId> {
+
+        @Override
+        public void serialize(ObjectId value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeFieldName(value.getId());
+        }
+    }
+
+    private static class OKD extends KeyDeserializer {
+
+        @Override
+        public Object deserializeKey(String key, DeserializationContext ctxt) {
+            return ObjectId.parse(key);
+        }
+    }
+
 }
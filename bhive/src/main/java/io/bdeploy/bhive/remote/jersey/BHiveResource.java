@@ -1,6 +1,8 @@
 package io.bdeploy.bhive.remote.jersey;
 
 import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 
@@ -10,14 +12,18 @@ import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
+import io.bdeploy.bhive.remote.RemoteBHive;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.security.RequiredPermission;
 import io.bdeploy.common.security.ScopedPermission.Permission;
 import io.bdeploy.jersey.JerseyAuthenticationProvider.WeakTokenAllowed;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 
 /**
@@ -28,6 +34,14 @@ import jakarta.ws.rs.core.MediaType;
 @Consumes(MediaType.APPLICATION_JSON)
 public interface BHiveResource {
 
+    /**
+     * @return the transfer protocol version supported by the remote, see {@link RemoteBHive#PROTOCOL_VERSION}.
+     */
+    @GET
+    @WeakTokenAllowed
+    @Path("/protocol")
+    public int getProtocolVersion();
+
     /**
      * Retrieve all {@link Key}s along with the root tree {@link ObjectId} available
      * to the remote repository.
@@ -63,6 +77,28 @@ public interface BHiveResource {
     @Path("/obj_missing")
     public Set<ObjectId> getMissingObjects(Set<ObjectId> all);
 
+    /**
+     * Retrieve the chunks of all given objects which are stored as chunks.
+     * <p>
+     * Supported from protocol version 3.
+     */
+    @POST
+    @WeakTokenAllowed
+    @Path("/obj_chunks")
+    public Map<ObjectId, List<ObjectId>> getChunks(Set<ObjectId> objects);
+
+    /**
+     * Reassembles the given objects from their chunks, which must have been pushed before.
+     * <p>
+     * Supported from protocol version 3.
+     *
+     * @param pushId identifies the push the chunks have been pushed with, supported from protocol version 5.
+     */
+    @POST
+    @Path("/obj_assemble")
+    @RequiredPermission(permission = Permission.WRITE)
+    public void assembleObjects(@QueryParam("push") String pushId, Map<ObjectId, List<ObjectId>> objects);
+
     /**
      * Retrieve the {@link ObjectId} required to satisfy a given tree.
      */
@@ -79,6 +115,16 @@ public interface BHiveResource {
     @Path("/tree_trees")
     public Set<ObjectId> getRequiredTrees(ObjectId tree);
 
+    /**
+     * Retrieve the {@link ObjectId}s of all required {@link Tree} objects recursively in all the given trees.
+     * <p>
+     * Supported from protocol version 2.
+     */
+    @POST
+    @WeakTokenAllowed
+    @Path("/tree_trees_batch")
+    public Set<ObjectId> getRequiredTreesBatch(Set<ObjectId> trees);
+
     /**
      * Transfer the ZIPed {@link BHive} to the remote and apply all top-level
      * {@link Manifest}s referenced within.
@@ -91,13 +137,15 @@ public interface BHiveResource {
 
     /**
      * Streams manifests and objects into the remove hive.
+     *
+     * @param pushId identifies the push in case it consists of multiple streams, supported from protocol version 5.
      */
     @PUT
     @Path("/pushAsStream")
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_OCTET_STREAM)
     @RequiredPermission(permission = Permission.WRITE)
-    public TransferStatistics pushAsStream(InputStream in);
+    public TransferStatistics pushAsStream(@QueryParam("push") String pushId, InputStream in);
 
     /**
      * Fetch manifests from the remote as ZIPed {@link BHive}.
@@ -124,6 +172,10 @@ public interface BHiveResource {
 
         Set<ObjectId> requiredObjects;
         Set<Manifest.Key> manifestsToFetch;
+
+        /** The codec to use for {@link BHiveResource#fetchAsStream(FetchSpec)}, GZIP if not set. */
+        TransferCodec codec;
+        int level;
     }
 
     public static class ObjectListSpec {
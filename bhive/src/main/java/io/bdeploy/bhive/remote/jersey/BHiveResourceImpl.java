@@ -1,6 +1,8 @@
 package io.bdeploy.bhive.remote.jersey;
 
 import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 
@@ -12,6 +14,7 @@ import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.bhive.remote.LocalBHiveAdapter;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.jersey.JerseyPathWriter.DeleteAfterWrite;
 
@@ -25,11 +28,26 @@ public class BHiveResourceImpl implements BHiveResource {
         this.wrapper = new LocalBHiveAdapter(hive);
     }
 
+    @Override
+    public int getProtocolVersion() {
+        return wrapper.getProtocolVersion();
+    }
+
     @Override
     public Set<ObjectId> getMissingObjects(Set<ObjectId> all) {
         return wrapper.getMissingObjects(all);
     }
 
+    @Override
+    public Map<ObjectId, List<ObjectId>> getChunks(Set<ObjectId> objects) {
+        return wrapper.getChunks(objects);
+    }
+
+    @Override
+    public void assembleObjects(String pushId, Map<ObjectId, List<ObjectId>> objects) {
+        wrapper.assembleObjects(objects, pushId);
+    }
+
     @Override
     public SortedMap<Key, ObjectId> getManifestInventory(String... names) {
         return wrapper.getManifestInventory(names);
@@ -55,6 +73,11 @@ public class BHiveResourceImpl implements BHiveResource {
         return wrapper.getRequiredTrees(tree);
     }
 
+    @Override
+    public Set<ObjectId> getRequiredTreesBatch(Set<ObjectId> trees) {
+        return wrapper.getRequiredTrees(trees);
+    }
+
     @Override
     public void push(java.nio.file.Path zipedHive) {
         try {
@@ -72,8 +95,8 @@ public class BHiveResourceImpl implements BHiveResource {
     }
 
     @Override
-    public TransferStatistics pushAsStream(InputStream in) {
-        return wrapper.pushAsStream(in);
+    public TransferStatistics pushAsStream(String pushId, InputStream in) {
+        return wrapper.pushAsStream(in, pushId);
     }
 
     @Override
@@ -84,7 +107,8 @@ public class BHiveResourceImpl implements BHiveResource {
 
     @Override
     public InputStream fetchAsStream(FetchSpec spec) {
-        return wrapper.fetchAsStream(spec.requiredObjects, spec.manifestsToFetch);
+        TransferCodec codec = spec.codec == null ? TransferCodec.GZIP : spec.codec;
+        return wrapper.fetchAsStream(spec.requiredObjects, spec.manifestsToFetch, codec, spec.level);
     }
 
 }
@@ -2,6 +2,8 @@ package io.bdeploy.bhive.remote.jersey;
 
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 
@@ -11,6 +13,7 @@ import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.bhive.remote.RemoteBHive;
 import io.bdeploy.bhive.remote.jersey.BHiveResource.FetchSpec;
 import io.bdeploy.bhive.remote.jersey.BHiveResource.ObjectListSpec;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.security.RemoteService;
 import io.bdeploy.jersey.JerseyClientFactory;
 import jakarta.ws.rs.NotFoundException;
@@ -34,11 +37,31 @@ public class JerseyRemoteBHive implements RemoteBHive {
         this.client = jcf.getProxyClient(BHiveLocator.class).getNamedHive(name == null ? DEFAULT_NAME : name);
     }
 
+    @Override
+    public int getProtocolVersion() {
+        try {
+            return client.getProtocolVersion();
+        } catch (NotFoundException nfe) {
+            // servers which do not know about versions speak the initial protocol.
+            return 1;
+        }
+    }
+
     @Override
     public Set<ObjectId> getMissingObjects(Set<ObjectId> all) {
         return client.getMissingObjects(all);
     }
 
+    @Override
+    public Map<ObjectId, List<ObjectId>> getChunks(Set<ObjectId> objects) {
+        return client.getChunks(objects);
+    }
+
+    @Override
+    public void assembleObjects(Map<ObjectId, List<ObjectId>> objects, String pushId) {
+        client.assembleObjects(pushId, objects);
+    }
+
     @Override
     public SortedMap<Key, ObjectId> getManifestInventory(String... names) {
         return client.getManifestInventory(names);
@@ -67,15 +90,20 @@ public class JerseyRemoteBHive implements RemoteBHive {
         return client.getRequiredTrees(tree);
     }
 
+    @Override
+    public Set<ObjectId> getRequiredTrees(Set<ObjectId> trees) {
+        return client.getRequiredTreesBatch(trees);
+    }
+
     @Override
     public void push(Path zipedHive) {
         client.push(zipedHive);
     }
 
     @Override
-    public TransferStatistics pushAsStream(InputStream in) {
+    public TransferStatistics pushAsStream(InputStream in, String pushId) {
         try {
-            return client.pushAsStream(in);
+            return client.pushAsStream(pushId, in);
         } catch (NotFoundException | ResponseProcessingException nfe) {
             throw new UnsupportedOperationException("Pushing as stream not supported", nfe);
         }
@@ -91,11 +119,16 @@ public class JerseyRemoteBHive implements RemoteBHive {
     }
 
     @Override
-    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests) {
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests, TransferCodec codec, int level) {
         try {
             FetchSpec spec = new FetchSpec();
             spec.requiredObjects = objects;
             spec.manifestsToFetch = manifests;
+            if (codec != TransferCodec.GZIP) {
+                // only sent if requested, older servers do not know about codecs.
+                spec.codec = codec;
+                spec.level = level;
+            }
             return client.fetchAsStream(spec);
         } catch (NotFoundException nfe) {
             throw new UnsupportedOperationException("Fetching as stream not supported", nfe);
@@ -43,7 +43,10 @@ public class SimpleTreeMapper implements CustomMapper {
             String line;
             while ((line = r.readLine()) != null) {
                 List<String> parts = Splitter.on('|').splitToList(line);
-                builder.add(new Tree.Key(parts.get(3), EntryType.valueOf(parts.get(0))), ObjectId.parse(parts.get(1)));
+                ObjectId id = ObjectId.parse(parts.get(1));
+
+                // trees are cached and the same objects are referenced from many trees (e.g. product versions).
+                builder.add(new Tree.Key(parts.get(3), EntryType.valueOf(parts.get(0))), id == null ? null : id.intern());
             }
         } catch (IOException e) {
             throw new IllegalStateException("Cannot read tree", e);
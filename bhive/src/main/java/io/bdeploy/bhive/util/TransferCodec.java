@@ -0,0 +1,200 @@
+package io.bdeploy.bhive.util;
+
+import java.io.BufferedInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import io.bdeploy.bhive.remote.RemoteBHive;
+
+/**
+ * Compression used for object transfer streams.
+ * <p>
+ * {@link #GZIP} streams are plain GZIP streams and understood by every peer. All other codecs start with a short header
+ * identifying the codec and require protocol version 4 (see {@link RemoteBHive#PROTOCOL_VERSION}). The receiving side detects
+ * the codec from the stream itself, see {@link #decode(InputStream)}.
+ */
+public enum TransferCodec {
+
+    /** GZIP at the default level, the only codec supported by older peers. */
+    GZIP(0),
+
+    /**
+     * ZLIB (DEFLATE) at a configurable level. Objects which are already compressed (see
+     * {@link #isCompressed(byte[], int)}) are sent as stored blocks instead of wasting CPU time on compressing them again.
+     */
+    DEFLATE(1),
+
+    /** No compression at all, e.g. for transfers between local hives. */
+    NONE(2);
+
+    /** The default level for {@link #DEFLATE}. Favors CPU time over compression ratio. */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    /** The amount of bytes at the start of an object which is required for {@link #isCompressed(byte[], int)}. */
+    public static final int SNIFF_LENGTH = 8;
+
+    private static final byte[] MAGIC = { 'B', 'H', 'T' };
+
+    private static final byte[][] COMPRESSED_SIGNATURES = { //
+            { 0x1f, (byte) 0x8b }, // gzip
+            { 'P', 'K', 0x03, 0x04 }, // zip, jar, docx, ...
+            { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd }, // zstd
+            { (byte) 0xfd, '7', 'z', 'X', 'Z', 0x00 }, // xz
+            { 'B', 'Z', 'h' }, // bzip2
+            { '7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c }, // 7z
+            { 0x04, 0x22, 0x4d, 0x18 }, // lz4
+            { 'R', 'a', 'r', '!' }, // rar
+            { (byte) 0x89, 'P', 'N', 'G' }, // png
+            { (byte) 0xff, (byte) 0xd8, (byte) 0xff }, // jpeg
+    };
+
+    private final byte id;
+
+    private TransferCodec(int id) {
+        this.id = (byte) id;
+    }
+
+    /**
+     * @param out the stream to write compressed data to.
+     * @param level the compression level, only used by {@link #DEFLATE}.
+     * @return an {@link Encoder} writing to the given stream. Closing the {@link Encoder} closes the given stream.
+     */
+    public Encoder encode(OutputStream out, int level) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new Encoder(new GZIPOutputStream(out, 8192), null, 0);
+            case DEFLATE:
+                writeHeader(out);
+                Deflater deflater = new Deflater(level);
+                return new Encoder(new DeflaterOutputStream(out, deflater, 8192), deflater, level);
+            case NONE:
+                writeHeader(out);
+                return new Encoder(out, null, 0);
+            default:
+                throw new IllegalStateException("Unsupported codec: " + this);
+        }
+    }
+
+    private void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(id);
+    }
+
+    /**
+     * Detects the codec used for the given stream and wraps it to decompress the data.
+     *
+     * @param in the stream to read from, must support {@link InputStream#mark(int)}.
+     * @return the decompressing stream. Closing it closes the given stream.
+     */
+    public static InputStream decode(BufferedInputStream in) throws IOException {
+        in.mark(MAGIC.length + 1);
+        byte[] header = in.readNBytes(MAGIC.length + 1);
+        if (header.length == MAGIC.length + 1 && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            switch (header[MAGIC.length]) {
+                case 1:
+                    return inflating(in);
+                case 2:
+                    return in;
+                default:
+                    throw new IOException("Unsupported transfer codec: " + header[MAGIC.length]);
+            }
+        }
+
+        in.reset();
+        return new GZIPInputStream(in, 8192);
+    }
+
+    /**
+     * @return an {@link InflaterInputStream} which releases its {@link Inflater} when closed.
+     */
+    public static InputStream inflating(InputStream in) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, 8192) {
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param head the first bytes of an object.
+     * @param length the amount of valid bytes in head.
+     * @return whether the object starts with the signature of a well known compressed format.
+     */
+    public static boolean isCompressed(byte[] head, int length) {
+        for (byte[] signature : COMPRESSED_SIGNATURES) {
+            if (length >= signature.length && Arrays.equals(head, 0, signature.length, signature, 0, signature.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A compressing stream created by {@link TransferCodec#encode(OutputStream, int)}.
+     */
+    public static final class Encoder extends FilterOutputStream {
+
+        private final Deflater deflater;
+        private final int level;
+        private boolean stored;
+
+        private Encoder(OutputStream out, Deflater deflater, int level) {
+            super(out);
+            this.deflater = deflater;
+            this.level = level;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        /**
+         * Announces the next object to be written. In case the codec supports it, already compressed objects are not compressed
+         * again.
+         *
+         * @param head the first bytes of the next object
+         * @param length the amount of valid bytes in head.
+         */
+        public void nextObject(byte[] head, int length) {
+            if (deflater == null) {
+                return;
+            }
+
+            boolean compressed = isCompressed(head, length);
+            if (compressed != stored) {
+                // takes effect with the next chunk of data passed to the deflater.
+                deflater.setLevel(compressed ? Deflater.NO_COMPRESSION : level);
+                stored = compressed;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+        }
+    }
+
+}
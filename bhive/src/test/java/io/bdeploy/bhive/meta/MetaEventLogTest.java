@@ -0,0 +1,104 @@
+package io.bdeploy.bhive.meta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.TestHive;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.op.ManifestMaxIdOperation;
+
+@ExtendWith(TestHive.class)
+class MetaEventLogTest {
+
+    private static final class MyEvent {
+
+        public long timestamp;
+        public String value;
+    }
+
+    private static MyEvent event(long timestamp) {
+        MyEvent result = new MyEvent();
+        result.timestamp = timestamp;
+        result.value = "event " + timestamp;
+        return result;
+    }
+
+    @Test
+    void testAppendAndCompact(BHive hive) {
+        Manifest.Key parent = new Manifest.Key("my/test", "v1");
+        MetaEventLog<MyEvent> events = new MetaEventLog<>(parent, true, MyEvent.class, 10);
+
+        for (int i = 1; i <= 25; ++i) {
+            events.append(hive, i, event(i));
+        }
+
+        // two compactions happened, the rest is pending locally.
+        Optional<Long> id = hive.execute(new ManifestMaxIdOperation().setManifestName(events.getMetaName()));
+        assertEquals(2L, id.get());
+
+        List<MyEvent> all = events.read(hive);
+        assertEquals(25, all.size());
+        for (int i = 0; i < all.size(); ++i) {
+            assertEquals(i + 1L, all.get(i).timestamp);
+        }
+
+        events.compact(hive);
+        assertEquals(3L, hive.execute(new ManifestMaxIdOperation().setManifestName(events.getMetaName())).get());
+        assertEquals(25, events.read(hive).size());
+
+        // compacting with nothing pending does not create a new version.
+        events.compact(hive);
+        assertEquals(3L, hive.execute(new ManifestMaxIdOperation().setManifestName(events.getMetaName())).get());
+    }
+
+    @Test
+    void testReadByTime(BHive hive) {
+        Manifest.Key parent = new Manifest.Key("my/test", "v1");
+        MetaEventLog<MyEvent> events = new MetaEventLog<>(parent, false, MyEvent.class, 5);
+
+        for (int i = 1; i <= 23; ++i) {
+            events.append(hive, i * 10L, event(i * 10L));
+        }
+
+        List<MyEvent> newest = events.read(hive, Long.MAX_VALUE, 3);
+        assertEquals(3, newest.size());
+        assertEquals(230, newest.get(0).timestamp);
+        assertEquals(210, newest.get(2).timestamp);
+
+        List<MyEvent> page = events.read(hive, 105, 4);
+        assertEquals(4, page.size());
+        assertEquals(100, page.get(0).timestamp);
+        assertEquals(70, page.get(3).timestamp);
+
+        List<MyEvent> last = events.read(hive, 25, 10);
+        assertEquals(2, last.size());
+        assertTrue(last.get(0).timestamp > last.get(1).timestamp);
+    }
+
+    @Test
+    void testDeleteLocal(BHive hive) {
+        MetaEventLog<MyEvent> events = new MetaEventLog<>(new Manifest.Key("my/test", "v1"), true, MyEvent.class, 10);
+        MetaEventLog<MyEvent> other = new MetaEventLog<>(new Manifest.Key("my/other", "v1"), true, MyEvent.class, 10);
+        for (int i = 1; i <= 15; ++i) {
+            events.append(hive, i, event(i));
+            other.append(hive, i, event(i));
+        }
+
+        // only the compacted records remain.
+        MetaEventLog.deleteLocal(hive, "my/test");
+        assertEquals(10, events.read(hive).size());
+        assertEquals(15, other.read(hive).size());
+
+        // appending starts a new local log.
+        events.append(hive, 16, event(16));
+        assertEquals(11, events.read(hive).size());
+    }
+
+}
@@ -1,10 +1,13 @@
 package io.bdeploy.bhive.misc;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,7 +19,11 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.BHiveTransactions.Transaction;
 import io.bdeploy.bhive.TestHive;
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.op.ImportObjectOperation;
 import io.bdeploy.bhive.op.ImportOperation;
+import io.bdeploy.bhive.op.ObjectExistsOperation;
+import io.bdeploy.bhive.op.PruneOperation;
 
 @ExtendWith(TestHive.class)
 class MarkerConcurrencyTest {
@@ -47,6 +54,45 @@ class MarkerConcurrencyTest {
         log.info("Importing took {}ms", (System.currentTimeMillis() - start));
     }
 
+    @Test
+    void testMarkerFiles(BHive hive, @TempDir Path tmp) throws Exception {
+        Path source = tmp.resolve("source");
+        Files.createDirectories(source);
+
+        int count = 5000;
+        for (int i = 0; i < count; ++i) {
+            Path x = source.resolve("file" + i);
+            Files.write(x, Collections.singletonList("This is the content " + i));
+        }
+
+        Path markerRoot = hive.execute(new MarkerRootOperation());
+        hive.setParallelism(4);
+        try (Transaction t = hive.getTransactions().begin()) {
+            long start = System.nanoTime();
+            hive.execute(new ImportOperation().setSourcePath(source).setManifest(new Manifest.Key("test", "1.0")));
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            // markers are appended to segment files instead of creating a file (and directories) per object.
+            long files;
+            try (Stream<Path> all = Files.walk(markerRoot)) {
+                files = all.count();
+            }
+            assertTrue(files < 10, "Too many marker files and directories: " + files);
+            log.info("Importing {} objects took {}ms ({} objects/s), {} marker files and directories", count, millis,
+                    count * 1000L / Math.max(1, millis), files);
+        }
+    }
+
+    @Test
+    void testPruneKeepsMarked(BHive hive) {
+        try (Transaction t = hive.getTransactions().begin()) {
+            // not referenced by any manifest, thus only protected by the marker of the transaction.
+            ObjectId id = hive.execute(new ImportObjectOperation().setData("marked".getBytes(StandardCharsets.UTF_8)));
+            hive.execute(new PruneOperation());
+            assertTrue(hive.execute(new ObjectExistsOperation().addObject(id)).isExisting(id));
+        }
+    }
+
     @Test
     void testConcurrentMarks(BHive hive, @TempDir Path tmp) throws Exception {
         Path source = tmp.resolve("source");
@@ -65,4 +111,12 @@ class MarkerConcurrencyTest {
         });
     }
 
+    private static final class MarkerRootOperation extends BHive.Operation<Path> {
+
+        @Override
+        public Path call() {
+            return getMarkerRoot();
+        }
+    }
+
 }
@@ -0,0 +1,137 @@
+package io.bdeploy.bhive.misc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.TestHive;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.objects.view.TreeView;
+import io.bdeploy.bhive.op.ImportOperation;
+import io.bdeploy.bhive.op.ScanOperation;
+import io.bdeploy.common.util.FutureHelper;
+
+@ExtendWith(TestHive.class)
+class SharedFileOperationsTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedFileOperationsTest.class);
+
+    @Test
+    void testNestedOperations(BHive hive) {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        // with a single thread, any nested operation waiting for the pool would never finish.
+        hive.setParallelism(1);
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> hive.execute(new NestingOperation(3, threads)));
+        assertEquals(1, threads.size());
+
+        // all operations share the threads of the hive, no matter how many operations are executed.
+        threads.clear();
+        hive.setParallelism(2);
+        for (int i = 0; i < 10; ++i) {
+            hive.execute(new NestingOperation(2, threads));
+        }
+        assertTrue(threads.size() <= 2, "Too many threads used: " + threads);
+        assertTrue(threads.stream().allMatch(t -> t.getName().startsWith("File-OPS-")), "Not executed by the pool: " + threads);
+    }
+
+    @Test
+    void testTransactionsOnPool(BHive hive, @TempDir Path tmp) throws Exception {
+        Path source = createSource(tmp, 5, 20);
+
+        // the pool is started outside of any transaction, tasks must still be associated with the transaction of the operation.
+        hive.setParallelism(2);
+        hive.execute(new NestingOperation(1, ConcurrentHashMap.newKeySet()));
+
+        for (int i = 0; i < 3; ++i) {
+            Manifest.Key key = new Manifest.Key("test", String.valueOf(i));
+            try (Transaction t = hive.getTransactions().begin()) {
+                hive.execute(new ImportOperation().setSourcePath(source).setManifest(key));
+            }
+            assertEquals(5, hive.execute(new ScanOperation().setManifest(key)).getChildren().size());
+        }
+    }
+
+    @Test
+    void testRepeatedScans(BHive hive, @TempDir Path tmp) throws Exception {
+        Path source = createSource(tmp, 50, 20);
+
+        Manifest.Key key = new Manifest.Key("test", "1.0");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setSourcePath(source).setManifest(key));
+        }
+
+        long start = System.nanoTime();
+        TreeView first = hive.execute(new ScanOperation().setManifest(key));
+        long firstScan = System.nanoTime() - start;
+
+        int repetitions = 20;
+        start = System.nanoTime();
+        for (int i = 0; i < repetitions; ++i) {
+            TreeView repeated = hive.execute(new ScanOperation().setManifest(key));
+            assertEquals(first.getChildren().keySet(), repeated.getChildren().keySet());
+        }
+        long repeatedScans = (System.nanoTime() - start) / repetitions;
+
+        log.info("First scan took {}µs, repeated scans took {}µs on average", firstScan / 1000, repeatedScans / 1000);
+    }
+
+    private static Path createSource(Path tmp, int dirs, int files) throws Exception {
+        Path source = tmp.resolve("source");
+        for (int i = 0; i < dirs; ++i) {
+            Path dir = Files.createDirectories(source.resolve("dir" + i));
+            for (int j = 0; j < files; ++j) {
+                Files.write(dir.resolve("file" + j), Collections.singletonList("This is the content " + i + "/" + j));
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Submits file operations which in turn execute nested operations.
+     */
+    private static final class NestingOperation extends BHive.Operation<Void> {
+
+        private final int depth;
+        private final Set<Thread> threads;
+
+        private NestingOperation(int depth, Set<Thread> threads) {
+            this.depth = depth;
+            this.threads = threads;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                tasks.add(submitFileOperation(() -> {
+                    threads.add(Thread.currentThread());
+                    if (depth > 1) {
+                        execute(new NestingOperation(depth - 1, threads));
+                    }
+                }));
+            }
+            FutureHelper.awaitAll(tasks);
+            return null;
+        }
+    }
+
+}
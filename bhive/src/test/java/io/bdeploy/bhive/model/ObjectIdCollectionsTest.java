@@ -0,0 +1,90 @@
+package io.bdeploy.bhive.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import io.bdeploy.common.util.Hex;
+
+class ObjectIdCollectionsTest {
+
+    @Test
+    void testBinaryRoundTrip() {
+        ObjectId id = ObjectId.create("hello".getBytes(StandardCharsets.UTF_8), 0, 5);
+        assertEquals("aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d", id.getId());
+        assertEquals(id, ObjectId.parse(id.getId()));
+        assertArrayEquals(Hex.hexToBytes(id.getId()), id.toBytes());
+        assertEquals(id, ObjectId.fromBytes(id.toBytes(), 0));
+
+        assertNull(ObjectId.parse("not-an-id"));
+        assertNull(ObjectId.parse("AAF4C61DDCC5E8A2DABEDE0F3B482CD9AEA9434D"));
+
+        // ordering must match the previous (hex string based) ordering.
+        ObjectId low = ObjectId.parse("0fffffffffffffffffffffffffffffffffffffff");
+        ObjectId high = ObjectId.parse("f000000000000000000000000000000000000000");
+        assertTrue(low.compareTo(high) < 0);
+        assertTrue(low.getId().compareTo(high.getId()) < 0);
+
+        assertSame(id.intern(), ObjectId.parse(id.getId()).intern());
+    }
+
+    @Test
+    void testSet() {
+        List<ObjectId> ids = createIds(1000);
+        Set<ObjectId> set = new ObjectIdSet();
+        ids.forEach(set::add);
+        assertFalse(set.add(ids.get(0)));
+        assertEquals(1000, set.size());
+
+        for (int i = 0; i < ids.size(); i += 2) {
+            assertTrue(set.remove(ids.get(i)));
+        }
+        assertEquals(500, set.size());
+
+        // insertion order is kept, even across removals and growth.
+        Iterator<ObjectId> it = set.iterator();
+        for (int i = 1; i < ids.size(); i += 2) {
+            assertEquals(ids.get(i), it.next());
+        }
+        assertFalse(it.hasNext());
+
+        ids.forEach(set::add);
+        assertEquals(1000, set.size());
+        assertTrue(set.containsAll(ids));
+    }
+
+    @Test
+    void testMap() {
+        List<ObjectId> ids = createIds(100);
+        ObjectIdMap<Integer> map = new ObjectIdMap<>();
+        for (int i = 0; i < ids.size(); ++i) {
+            assertNull(map.put(ids.get(i), i));
+        }
+        assertEquals(100, map.size());
+        assertEquals(Integer.valueOf(42), map.get(ids.get(42)));
+        assertEquals(Integer.valueOf(42), map.remove(ids.get(42)));
+        assertFalse(map.containsKey(ids.get(42)));
+        assertEquals(Integer.valueOf(7), map.computeIfAbsent(ids.get(42), k -> 7));
+        assertEquals(100, map.values().size());
+    }
+
+    private static List<ObjectId> createIds(int count) {
+        List<ObjectId> result = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            result.add(ObjectId.create(("content-" + i).getBytes(StandardCharsets.UTF_8), 0, ("content-" + i).length()));
+        }
+        return result;
+    }
+
+}
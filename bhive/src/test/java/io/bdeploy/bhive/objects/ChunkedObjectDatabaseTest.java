@@ -0,0 +1,118 @@
+package io.bdeploy.bhive.objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.StreamHelper;
+
+class ChunkedObjectDatabaseTest extends DbTestBase {
+
+    @Test
+    void testChunkedObject() throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+        db.setChunkThreshold(1);
+
+        byte[] content = new byte[12 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        ObjectId id = db.addObject(content);
+
+        assertEquals(ObjectId.create(content, 0, content.length), id);
+        assertTrue(db.hasObject(id));
+        assertTrue(db.checkObject(id));
+        assertEquals(content.length, db.getObjectSize(id));
+        try (InputStream is = db.getStream(id)) {
+            assertArrayEquals(content, StreamHelper.read(is));
+        }
+
+        List<ObjectId> chunks = db.getChunks(id);
+        assertNotNull(chunks);
+        assertTrue(chunks.size() >= 3);
+        chunks.forEach(c -> assertTrue(db.hasObject(c)));
+        assertNull(db.getChunks(chunks.get(0)));
+
+        Set<ObjectId> walked = new TreeSet<>();
+        db.walkAllObjects(walked::add);
+        assertTrue(walked.contains(id));
+        assertTrue(walked.containsAll(chunks));
+        assertEquals(chunks.size() + 1, walked.size());
+
+        // materializing yields the complete content.
+        try (ObjectFile file = db.openObjectFile(id)) {
+            assertArrayEquals(content, Files.readAllBytes(file.getPath()));
+        }
+        assertNull(db.getLooseObjectFile(id));
+
+        // removing the object leaves the chunks, which are objects of their own.
+        db.removeObject(id);
+        assertFalse(db.hasObject(id));
+        chunks.forEach(c -> assertTrue(db.hasObject(c)));
+
+        // the same content is reassembled from the chunks. this records the chunk list only, even if chunking is disabled.
+        db.setChunkThreshold(0);
+        assertEquals(id, db.addObject(chunks));
+        assertTrue(db.checkObject(id));
+        assertEquals(chunks, db.getChunks(id));
+        assertEquals(content.length, db.getObjectSize(id));
+        assertNull(db.getLooseObjectFile(id));
+    }
+
+    @Test
+    void testModifiedContentSharesChunks() throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+        db.setChunkThreshold(1);
+
+        byte[] content = new byte[16 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        ObjectId original = db.addObject(content);
+
+        // insert some bytes in the middle, shifting all following content.
+        int pos = content.length / 2;
+        byte[] modified = new byte[content.length + 100];
+        System.arraycopy(content, 0, modified, 0, pos);
+        System.arraycopy(content, pos, modified, pos + 100, content.length - pos);
+        ObjectId changed = db.addObject(modified);
+
+        List<ObjectId> before = db.getChunks(original);
+        List<ObjectId> after = new ArrayList<>(db.getChunks(changed));
+        after.removeAll(before);
+
+        // only the chunk(s) around the modification differ.
+        assertTrue(after.size() <= 2, "Unexpected amount of new chunks: " + after.size());
+    }
+
+    @Test
+    void testChunkingIsDeterministic() throws IOException {
+        byte[] content = new byte[10 * 1024 * 1024];
+        new Random(1).nextBytes(content);
+
+        List<Integer> first = new ArrayList<>();
+        List<Integer> second = new ArrayList<>();
+        FastCdcChunker.split(new ByteArrayInputStream(content), (b, o, l) -> first.add(l));
+        FastCdcChunker.split(new ByteArrayInputStream(content), (b, o, l) -> second.add(l));
+
+        assertEquals(first, second);
+        assertEquals(content.length, first.stream().mapToInt(Integer::intValue).sum());
+        for (int i = 0; i < first.size() - 1; ++i) {
+            assertTrue(first.get(i) >= FastCdcChunker.MIN_SIZE);
+            assertTrue(first.get(i) <= FastCdcChunker.MAX_SIZE);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package io.bdeploy.bhive.objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.StreamHelper;
+
+class CompressedObjectDatabaseTest extends DbTestBase {
+
+    @Test
+    void testCompressedObject() throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+        db.setAtRestCompression(6);
+
+        byte[] content = "Some very compressible content\n".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        ObjectId id = db.addObject(content);
+
+        // identified by the uncompressed content, but not stored as loose object.
+        assertEquals(ObjectId.create(content, 0, content.length), id);
+        assertFalse(Files.exists(getObjectDatabasePath().resolve(id.getId().substring(0, 2))));
+        assertTrue(db.hasObject(id));
+        assertTrue(db.checkObject(id));
+        assertEquals(content.length, db.getObjectSize(id));
+        try (InputStream is = db.getStream(id)) {
+            assertArrayEquals(content, StreamHelper.read(is));
+        }
+
+        Set<ObjectId> walked = new TreeSet<>();
+        db.walkAllObjects(walked::add);
+        assertEquals(Set.of(id), walked);
+
+        // materializing yields the uncompressed content.
+        try (ObjectFile file = db.openObjectFile(id)) {
+            assertArrayEquals(content, Files.readAllBytes(file.getPath()));
+        }
+        assertNull(db.getLooseObjectFile(id));
+
+        db.removeObject(id);
+        assertFalse(db.hasObject(id));
+    }
+
+    @Test
+    void testIncompressibleObjectsStayLoose() throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+        db.setAtRestCompression(6);
+
+        // already compressed.
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            gzip.write("Some very compressible content\n".repeat(10_000).getBytes(StandardCharsets.UTF_8));
+        }
+        ObjectId gz = db.addObject(baos.toByteArray());
+
+        // too small to be worth it.
+        ObjectId small = db.addObject("small".getBytes(StandardCharsets.UTF_8));
+
+        Path compressed = getObjectDatabasePath().resolve("compressed");
+        assertFalse(Files.exists(compressed));
+        assertTrue(db.hasObject(gz));
+        assertTrue(db.hasObject(small));
+    }
+
+}
@@ -6,17 +6,21 @@ package io.bdeploy.bhive.objects;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
 
 class ManifestDatabaseTest extends DbTestBase {
 
@@ -50,4 +54,57 @@ class ManifestDatabaseTest extends DbTestBase {
             assertFalse(db.hasManifest(key));
         }
     }
+
+    @Test
+    void testIndexAcrossInstances(@TempDir Path tmp) {
+        Path dbDir = tmp.resolve("manifests");
+        ObjectId ojectId = ObjectId.parse("000fb6b1d68b158a996dc17fa3e137a5f2751757");
+
+        try (ManifestDatabase db1 = new ManifestDatabase(dbDir); ManifestDatabase db2 = new ManifestDatabase(dbDir)) {
+            for (int i = 1; i <= 12; ++i) {
+                db1.addManifest(new Manifest.Builder(new Manifest.Key("test/counter", String.valueOf(i))).setRoot(ojectId)
+                        .build(null), false);
+            }
+
+            // the second instance picks up changes from the index log without scanning.
+            assertEquals(12, db2.getAllForName("test/counter").size());
+            assertEquals(Optional.of(12L), db2.getMaxNumericTag("test/counter"));
+
+            db2.removeManifest(new Manifest.Key("test/counter", "12"));
+            assertEquals(Optional.of(11L), db1.getMaxNumericTag("test/counter"));
+
+            db1.addManifest(new Manifest.Builder(new Manifest.Key("test/counter", "latest")).setRoot(ojectId).build(null), false);
+            assertEquals(Optional.empty(), db2.getMaxNumericTag("test/counter"));
+            assertEquals(Optional.empty(), db2.getMaxNumericTag("test/other"));
+        }
+
+        // a modification bypassing the index is detected by re-building the index.
+        try (ManifestDatabase db = new ManifestDatabase(dbDir)) {
+            assertEquals(12, db.getAllManifests().size());
+            PathHelper.deleteIfExistsRetry(dbDir.resolve("test/counter/latest"));
+            assertEquals(12, db.getAllManifests().size());
+            db.invalidateCaches();
+            assertEquals(12, db.getAllManifests().size());
+            db.rebuildIndex();
+            assertEquals(11, db.getAllManifests().size());
+        }
+    }
+
+    @Test
+    void testRebuildByOtherInstance(@TempDir Path tmp) throws Exception {
+        Path dbDir = tmp.resolve("manifests");
+        ObjectId ojectId = ObjectId.parse("000fb6b1d68b158a996dc17fa3e137a5f2751757");
+
+        try (ManifestDatabase db1 = new ManifestDatabase(dbDir); ManifestDatabase db2 = new ManifestDatabase(dbDir)) {
+            db1.addManifest(new Manifest.Builder(new Manifest.Key("test/app", "1")).setRoot(ojectId).build(null), false);
+            db1.rebuildIndex();
+            assertEquals(1, db2.getAllManifests().size());
+
+            // the rebuild writes a new checkpoint and an empty log, which has the very same size as the previous one.
+            Files.copy(dbDir.resolve("test/app/1"), dbDir.resolve("test/app/2"));
+            Thread.sleep(5); // make sure the generation changes.
+            db2.rebuildIndex();
+            assertEquals(2, db1.getAllManifests().size());
+        }
+    }
 }
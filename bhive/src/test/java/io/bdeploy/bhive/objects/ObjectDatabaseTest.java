@@ -9,11 +9,17 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -50,6 +56,32 @@ class ObjectDatabaseTest extends DbTestBase {
         testWithContent(builder.toString(), tmp, r);
     }
 
+    @Test
+    void testConcurrentInsert() throws Exception {
+        ObjectDatabase db = getObjectDatabase();
+        ExecutorService s = Executors.newFixedThreadPool(8);
+        try {
+            // many threads inserting the same (and different) content must all end up with the same objects.
+            List<Future<ObjectId>> results = new ArrayList<>();
+            for (int i = 0; i < 400; ++i) {
+                byte[] content = ("Content " + (i % 20)).getBytes(StandardCharsets.UTF_8);
+                results.add(s.submit(() -> db.addObject(content)));
+            }
+
+            Set<ObjectId> ids = new TreeSet<>();
+            for (Future<ObjectId> result : results) {
+                ids.add(result.get());
+            }
+
+            assertThat(ids.size(), is(20));
+            for (ObjectId id : ids) {
+                assertTrue(db.checkObject(id));
+            }
+        } finally {
+            s.shutdownNow();
+        }
+    }
+
     private void testWithContent(String content, Path tmp, ActivityReporter r) throws IOException {
         Path fileToAdd = tmp.resolve("obj.tmp");
         ObjectId id;
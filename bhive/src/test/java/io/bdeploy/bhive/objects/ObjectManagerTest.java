@@ -5,7 +5,9 @@ package io.bdeploy.bhive.objects;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -15,10 +17,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -41,6 +46,8 @@ import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.ContentHelper;
 import io.bdeploy.common.SlowTest;
 import io.bdeploy.common.TestActivityReporter;
+import io.bdeploy.common.util.OsHelper;
+import io.bdeploy.common.util.OsHelper.OperatingSystem;
 import io.bdeploy.common.util.PathHelper;
 
 @ExtendWith(TestActivityReporter.class)
@@ -86,6 +93,58 @@ class ObjectManagerTest extends DbTestBase {
 
     }
 
+    @Test
+    void testExportByLink(@TempDir Path tmp, ActivityReporter r) throws IOException {
+        Path mySource = ContentHelper.genSimpleTestTree(tmp, "source");
+        Path linked = tmp.resolve("linked");
+        Path copied = tmp.resolve("copied");
+
+        ExecutorService s = Executors.newFixedThreadPool(1);
+        try {
+            ObjectManager mgr = new ObjectManager(getObjectDatabase(), null, r, s);
+            ObjectId tree = mgr.importTree(mySource, false);
+
+            mgr.exportTree(tree, linked, null, true);
+            mgr.exportTree(tree, copied, null, false);
+
+            Path l1 = linked.resolve(Paths.get("dir", "file.txt"));
+            Path c1 = copied.resolve(Paths.get("dir", "file.txt"));
+            ObjectId id = ObjectId.create(Files.readAllBytes(c1), 0, (int) Files.size(c1));
+
+            assertArrayEquals(Files.readAllBytes(c1), Files.readAllBytes(l1));
+            assertFalse(Files.isSameFile(c1, getObjectDatabase().getLooseObjectFile(id)));
+            if (OsHelper.getRunningOs() == OperatingSystem.WINDOWS) {
+                // links cannot be made read-only, objects are copied.
+                assertFalse(Files.isSameFile(l1, getObjectDatabase().getLooseObjectFile(id)));
+                return;
+            }
+
+            // the object has been made read-only before linking it, the copy is writable as usual.
+            assertTrue(Files.isSameFile(l1, getObjectDatabase().getLooseObjectFile(id)));
+            assertFalse(Files.getPosixFilePermissions(l1).contains(PosixFilePermission.OWNER_WRITE));
+            assertTrue(Files.getPosixFilePermissions(c1).contains(PosixFilePermission.OWNER_WRITE));
+
+            // objects which are linked already are never changed, they are copied if different permissions are required.
+            Path script = tmp.resolve("script").resolve("run.sh");
+            Files.createDirectories(script.getParent());
+            Files.writeString(script, "#!/bin/sh\necho test\n");
+            ObjectId scriptTree = mgr.importTree(script.getParent(), false);
+            ObjectId scriptId = ObjectId.create(Files.readAllBytes(script), 0, (int) Files.size(script));
+            Path scriptObject = getObjectDatabase().getLooseObjectFile(scriptId);
+            Files.createLink(tmp.resolve("foreign-link"), scriptObject);
+            Set<PosixFilePermission> before = Files.getPosixFilePermissions(scriptObject);
+
+            Path scriptExport = tmp.resolve("script-export");
+            mgr.exportTree(scriptTree, scriptExport, null, true);
+            Path exported = scriptExport.resolve("run.sh");
+            assertFalse(Files.isSameFile(exported, scriptObject));
+            assertTrue(Files.getPosixFilePermissions(exported).contains(PosixFilePermission.OWNER_EXECUTE));
+            assertEquals(before, Files.getPosixFilePermissions(scriptObject));
+        } finally {
+            s.shutdownNow();
+        }
+    }
+
     @SlowTest
     @Test
     void testImportLarge(@TempDir Path tmp, ActivityReporter r) throws IOException {
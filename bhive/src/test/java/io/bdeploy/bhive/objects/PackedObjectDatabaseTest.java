@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) SSI Schaefer IT Solutions GmbH
+ */
+package io.bdeploy.bhive.objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.ActivityReporter;
+import io.bdeploy.common.TestActivityReporter;
+import io.bdeploy.common.util.StreamHelper;
+
+@ExtendWith(TestActivityReporter.class)
+class PackedObjectDatabaseTest extends DbTestBase {
+
+    @Test
+    void testRepackAndRead(ActivityReporter r) throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            ids.add(db.addObject(("Object content " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        byte[] large = new byte[4096];
+        ObjectId largeId = db.addObject(large);
+
+        assertEquals(100, db.repack(1024));
+
+        // loose files of packed objects are gone, large object is still loose.
+        for (ObjectId id : ids) {
+            assertFalse(Files.exists(getLoosePath(id)));
+        }
+        assertTrue(Files.exists(getLoosePath(largeId)));
+
+        // a fresh database on the same root sees the pack as well.
+        ObjectDatabase other = new ObjectDatabase(getObjectDatabasePath(), getObjectDatabasePath().resolve("tmp"), r, null);
+        for (int i = 0; i < ids.size(); ++i) {
+            ObjectId id = ids.get(i);
+            byte[] expected = ("Object content " + i).getBytes(StandardCharsets.UTF_8);
+
+            assertTrue(other.hasObject(id));
+            assertTrue(other.checkObject(id));
+            assertEquals(expected.length, other.getObjectSize(id));
+            try (InputStream is = other.getStream(id)) {
+                assertArrayEquals(expected, StreamHelper.read(is));
+            }
+        }
+
+        Set<ObjectId> walked = new TreeSet<>();
+        other.walkAllObjects(walked::add);
+        assertEquals(101, walked.size());
+        assertTrue(walked.containsAll(ids));
+
+        // nothing new to pack.
+        assertEquals(0, db.repack(1024));
+        other.close();
+    }
+
+    @Test
+    void testRemoveAndRewrite() throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            ids.add(db.addObject(("Removable " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        assertEquals(10, db.repack(1024));
+
+        ObjectId removed = ids.get(3);
+        db.removeObject(removed);
+        assertFalse(db.hasObject(removed));
+
+        // re-adding a removed object makes it available again (loose).
+        ObjectId readded = db.addObject("Removable 3".getBytes(StandardCharsets.UTF_8));
+        assertEquals(removed, readded);
+        assertTrue(db.hasObject(removed));
+
+        db.removeObject(ids.get(5));
+
+        // rewriting the pack drops the removed object physically, and packs the re-added one.
+        assertEquals(9, db.repack(1024));
+        assertTrue(db.hasObject(removed));
+        assertFalse(db.hasObject(ids.get(5)));
+        assertFalse(Files.exists(getLoosePath(removed)));
+
+        Set<ObjectId> walked = new TreeSet<>();
+        db.walkAllObjects(walked::add);
+        assertEquals(9, walked.size());
+    }
+
+    @Test
+    void testExtractPackedObject() throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+        ObjectId id = db.addObject("Extract me".getBytes(StandardCharsets.UTF_8));
+        db.repack(1024);
+
+        Path file;
+        try (ObjectFile extracted = db.openObjectFile(id)) {
+            file = extracted.getPath();
+            assertEquals("Extract me", Files.readString(file));
+        }
+
+        // the object is extracted to a temporary file only, the database is not modified.
+        assertFalse(Files.exists(file));
+        assertNull(db.getLooseObjectFile(id));
+        assertTrue(db.checkObject(id));
+    }
+
+    private Path getLoosePath(ObjectId id) {
+        String raw = id.getId();
+        return getObjectDatabasePath().resolve(raw.substring(0, 2)).resolve(raw.substring(2, 4)).resolve(raw);
+    }
+
+}
@@ -0,0 +1,175 @@
+package io.bdeploy.bhive.op;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.TestHive;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.model.Tree.EntryType;
+import io.bdeploy.common.ContentHelper;
+import io.bdeploy.common.util.OsHelper;
+import io.bdeploy.common.util.OsHelper.OperatingSystem;
+import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.ZipHelper;
+
+@ExtendWith(TestHive.class)
+class ExportZipOperationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportZipOperationTest.class);
+
+    @Test
+    void testZipContent(BHive hive, @TempDir Path tmp) throws IOException {
+        Path src = ContentHelper.genSimpleTestTree(tmp, "src");
+        Files.write(src.resolve("run.sh"), "#!/bin/sh\necho hello\n".getBytes(StandardCharsets.UTF_8));
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(src.resolve("nested.zip")))) {
+            zos.putNextEntry(new ZipEntry("content.txt"));
+            zos.write(ContentHelper.randomString(1024).getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        Manifest.Key nested = new Manifest.Key("nested", "v1");
+        Manifest.Key root = new Manifest.Key("root", "v1");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(nested).setSourcePath(src));
+
+            ObjectId ref = hive.execute(new InsertManifestRefOperation().setManifest(nested));
+            Manifest.Builder mb = new Manifest.Builder(root);
+            mb.setRoot(hive.execute(new InsertArtificialTreeOperation()
+                    .setTree(new Tree.Builder().add(new Tree.Key("nested", EntryType.MANIFEST), ref))));
+            hive.execute(new InsertManifestOperation().addManifest(mb.build(hive)));
+        }
+
+        Path zip = tmp.resolve("root.zip");
+        try (OutputStream os = Files.newOutputStream(zip)) {
+            long files = hive.execute(new ExportZipOperation().setManifest(root).setPrefix("root").setOutput(os));
+            assertEquals(5, files);
+        }
+
+        // the ZIP must contain exactly what an export would write.
+        Path exported = tmp.resolve("exp");
+        Path unzipped = tmp.resolve("unzip");
+        hive.execute(new ExportOperation().setManifest(root).setTarget(exported.resolve("root")));
+        ZipHelper.unzip(zip, unzipped);
+        ContentHelper.checkDirsEqual(exported, unzipped);
+
+        try (ZipFile zf = new ZipFile(zip.toFile())) {
+            ZipEntry compressed = zf.getEntry("root/nested/nested.zip");
+            assertNotNull(compressed);
+            assertEquals(ZipEntry.STORED, compressed.getMethod());
+            assertEquals(ZipEntry.DEFLATED, zf.getEntry("root/nested/test.txt").getMethod());
+        }
+
+        if (OsHelper.getRunningOs() != OperatingSystem.WINDOWS) {
+            assertTrue(Files.isExecutable(unzipped.resolve("root/nested/run.sh")));
+        }
+    }
+
+    @Test
+    void testTimeToFirstByte(BHive hive, @TempDir Path tmp) throws IOException {
+        Path src = tmp.resolve("src");
+        ContentHelper.genTestTree(src, 500, 100, 10, 0, 0, 0);
+
+        Manifest.Key key = new Manifest.Key("test", "v1");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+        }
+
+        // previously: export to a temporary directory, ZIP it, and only then start to serve the result.
+        Path work = Files.createDirectories(tmp.resolve("work"));
+        long start = System.nanoTime();
+        hive.execute(new ExportOperation().setManifest(key).setTarget(work.resolve("export").resolve("test")));
+        ZipHelper.zip(work.resolve("test.zip"), work.resolve("export"));
+        long exportFirstByte = System.nanoTime() - start;
+        long exportDiskUsage = sizeOf(work);
+        PathHelper.deleteRecursiveRetry(work);
+
+        // streaming: the first entry is written right away, and nothing is written to the hive or a temporary location.
+        Path hiveDir = Paths.get(hive.getUri());
+        Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        long diskUsageBefore = sizeOf(hiveDir) + sizeOf(tmpDir);
+
+        FirstByteOutputStream output = new FirstByteOutputStream();
+        start = System.nanoTime();
+        hive.execute(new ExportZipOperation().setManifest(key).setPrefix("test").setOutput(output));
+        long streamTotal = System.nanoTime() - start;
+        long streamFirstByte = output.firstByte - start;
+        long streamDiskUsage = sizeOf(hiveDir) + sizeOf(tmpDir) - diskUsageBefore;
+
+        assertTrue(output.firstByte > 0, "Nothing written");
+        assertTrue(streamFirstByte < streamTotal);
+
+        // other processes might use the temporary directory as well, but nothing near the size of the ZIP.
+        assertTrue(streamDiskUsage < output.written / 2, "Disk usage grew by " + streamDiskUsage + " bytes");
+        assertTrue(streamDiskUsage < exportDiskUsage);
+
+        log.info("Export & ZIP: first byte after {}ms, {}KB on disk.", exportFirstByte / 1_000_000, exportDiskUsage / 1024);
+        log.info("Streaming: first byte after {}ms, done after {}ms, {}KB written, {}KB on disk.", streamFirstByte / 1_000_000,
+                streamTotal / 1_000_000, output.written / 1024, streamDiskUsage / 1024);
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        long[] size = new long[1];
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                size[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // files of others, or removed while walking.
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    /**
+     * Discards all data, remembering when it was written first.
+     */
+    private static final class FirstByteOutputStream extends OutputStream {
+
+        private long firstByte;
+        private long written;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (written == 0) {
+                firstByte = System.nanoTime();
+            }
+            written += len;
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package io.bdeploy.bhive.op;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.TestHive;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.ContentHelper;
+
+@ExtendWith(TestHive.class)
+class PruneOpTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void testPruneKeepsReachable(boolean incremental, BHive hive, @TempDir Path tmp) throws IOException {
+        Path srcA = ContentHelper.genSimpleTestTree(tmp, "srcA");
+        Path srcB = ContentHelper.genSimpleTestTree(tmp, "srcB");
+        Files.write(srcB.resolve("extra.txt"), "Only in B".getBytes(StandardCharsets.UTF_8));
+
+        Manifest.Key keyA = new Manifest.Key("test/a", "1");
+        Manifest.Key keyB = new Manifest.Key("test/b", "1");
+
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(keyA).setSourcePath(srcA));
+            hive.execute(new ImportOperation().setManifest(keyB).setSourcePath(srcB));
+        }
+
+        // nothing to remove while both manifests exist. without a previous full sweep, an incremental prune is a full sweep.
+        assertTrue(hive.execute(new PruneOperation().setIncremental(incremental)).isEmpty());
+
+        ObjectId extra = ObjectId.create("Only in B".getBytes(StandardCharsets.UTF_8), 0, 9);
+        ObjectId rootB = hive.execute(new ManifestLoadOperation().setManifest(keyB)).getRoot();
+        hive.execute(new ManifestDeleteOperation().setToDelete(keyB));
+
+        // only the unique blob and the root tree of B are gone, all shared objects are still referenced by A.
+        SortedMap<ObjectId, Long> removed = hive.execute(new PruneOperation().setIncremental(incremental));
+        assertEquals(2, removed.size());
+        assertTrue(removed.containsKey(extra));
+        assertTrue(removed.containsKey(rootB));
+        assertEquals(Long.valueOf(9), removed.get(extra));
+
+        assertTrue(hive.execute(new FsckOperation().addManifest(keyA)).isEmpty());
+        assertTrue(hive.execute(new PruneOperation().setIncremental(incremental)).isEmpty());
+
+        // once A is gone as well, everything is unreferenced, which the full sweep agrees with.
+        hive.execute(new ManifestDeleteOperation().setToDelete(keyA));
+        assertFalse(hive.execute(new PruneOperation().setIncremental(incremental)).isEmpty());
+        assertTrue(hive.execute(new PruneOperation()).isEmpty());
+    }
+
+}
@@ -1,11 +1,20 @@
 package io.bdeploy.bhive.remote;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,15 +28,21 @@ import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.model.Tree.EntryType;
+import io.bdeploy.bhive.op.FsckOperation;
 import io.bdeploy.bhive.op.ImportOperation;
 import io.bdeploy.bhive.op.InsertArtificialTreeOperation;
 import io.bdeploy.bhive.op.InsertManifestOperation;
 import io.bdeploy.bhive.op.InsertManifestRefOperation;
 import io.bdeploy.bhive.op.ManifestDeleteOperation;
 import io.bdeploy.bhive.op.ManifestListOperation;
+import io.bdeploy.bhive.op.ObjectExistsOperation;
+import io.bdeploy.bhive.op.ObjectListOperation;
+import io.bdeploy.bhive.op.ObjectWriteOperation;
+import io.bdeploy.bhive.op.PruneOperation;
 import io.bdeploy.bhive.op.remote.FetchOperation;
 import io.bdeploy.bhive.op.remote.PushOperation;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
+import io.bdeploy.bhive.util.TransferCodec;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.ContentHelper;
 import io.bdeploy.common.TestActivityReporter;
@@ -325,4 +340,113 @@ class FetchPushTest extends RemoteHiveTestBase {
             // due to the atomicity of the operation.
         }
     }
+
+    @Test
+    void testPushFetchMultipleStreams(@TempDir Path tmp, RemoteService svc, ActivityReporter r) throws IOException {
+        try (BHive local = new BHive(tmp.resolve("h1").toUri(), null, r);
+                BHive fetchHive = new BHive(tmp.resolve("h2").toUri(), null, r)) {
+            // enough objects to be split into multiple chunks.
+            Path src = tmp.resolve("many");
+            for (int i = 0; i < 1000; ++i) {
+                Path file = src.resolve("dir" + (i % 10)).resolve("file" + i + ".txt");
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, "Content of file " + i);
+            }
+
+            Manifest.Key key = new Manifest.Key("many", "v1");
+            try (Transaction t = local.getTransactions().begin()) {
+                local.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+            }
+
+            TransferStatistics s = local.execute(new PushOperation().setRemote(svc).addManifest(key).setStreams(3));
+            assertEquals(1, s.sumManifests);
+            assertEquals(1011, s.sumMissingObjects);
+
+            try (Transaction t = fetchHive.getTransactions().begin()) {
+                s = fetchHive.execute(new FetchOperation().setRemote(svc).addManifest(key).setStreams(3));
+                assertEquals(1, s.sumManifests);
+                assertEquals(11, s.sumTrees);
+                assertEquals(1011, s.sumMissingObjects);
+            }
+
+            assertTrue(fetchHive.execute(new FsckOperation().addManifest(key)).isEmpty());
+        }
+    }
+
+    @Test
+    void testPushFetchCodecs(@TempDir Path tmp, RemoteService svc, ActivityReporter r) throws IOException {
+        Path src = ContentHelper.genSimpleTestTree(tmp, "app");
+
+        // an already compressed file is sent stored by codecs which support it.
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(src.resolve("archive.zip")))) {
+            zos.putNextEntry(new ZipEntry("entry.txt"));
+            zos.write("Some archived content".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (TransferCodec codec : TransferCodec.values()) {
+            try (BHive local = new BHive(tmp.resolve("push-" + codec).toUri(), null, r);
+                    BHive fetchHive = new BHive(tmp.resolve("fetch-" + codec).toUri(), null, r)) {
+                Manifest.Key key = new Manifest.Key("codec-" + codec.name().toLowerCase(), "v1");
+                try (Transaction t = local.getTransactions().begin()) {
+                    local.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+                }
+
+                TransferStatistics s = local.execute(new PushOperation().setRemote(svc).addManifest(key).setCodec(codec, 9));
+                assertEquals(1, s.sumManifests);
+
+                try (Transaction t = fetchHive.getTransactions().begin()) {
+                    s = fetchHive.execute(new FetchOperation().setRemote(svc).addManifest(key).setCodec(codec, 9));
+                    assertEquals(1, s.sumManifests);
+                }
+
+                assertTrue(fetchHive.execute(new FsckOperation().addManifest(key)).isEmpty());
+            }
+        }
+    }
+
+    @Test
+    void testPushStreamsShareTransaction(@TempDir Path tmp, ActivityReporter r) throws IOException {
+        Path src = ContentHelper.genSimpleTestTree(tmp, "app");
+        try (BHive local = new BHive(tmp.resolve("local").toUri(), null, r);
+                BHive target = new BHive(tmp.resolve("target").toUri(), null, r);
+                LocalBHiveAdapter adapter = new LocalBHiveAdapter(target)) {
+            Manifest.Key key = new Manifest.Key("shared", "v1");
+            try (Transaction t = local.getTransactions().begin()) {
+                local.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+            }
+            Set<ObjectId> objects = local.execute(new ObjectListOperation().addManifest(key));
+
+            // objects pushed without manifests are protected by the transaction of the push until the manifests arrive.
+            adapter.pushAsStream(toStream(local, new ObjectWriteOperation().objects(objects)), "push-1");
+            target.execute(new PruneOperation());
+            assertTrue(target.execute(new ObjectExistsOperation().addAll(objects)).missing.isEmpty());
+
+            TransferStatistics s = adapter.pushAsStream(toStream(local, new ObjectWriteOperation().manifest(key)), "push-1");
+            assertEquals(1, s.sumManifests);
+            assertTrue(target.execute(new FsckOperation().addManifest(key)).isEmpty());
+
+            // objects pushed without a push id are not protected once the stream has been received.
+            Path otherSrc = tmp.resolve("other");
+            Files.createDirectories(otherSrc);
+            Files.writeString(otherSrc.resolve("other.txt"), "Content pushed without push id");
+
+            Manifest.Key other = new Manifest.Key("other", "v1");
+            try (Transaction t = local.getTransactions().begin()) {
+                local.execute(new ImportOperation().setManifest(other).setSourcePath(otherSrc));
+            }
+            Set<ObjectId> otherObjects = local.execute(new ObjectListOperation().addManifest(other));
+            otherObjects.removeAll(objects);
+            assertFalse(otherObjects.isEmpty());
+
+            adapter.pushAsStream(toStream(local, new ObjectWriteOperation().objects(otherObjects)), null);
+            target.execute(new PruneOperation());
+            assertTrue(target.execute(new ObjectExistsOperation().addAll(otherObjects)).missing.containsAll(otherObjects));
+        }
+    }
+
+    private static InputStream toStream(BHive hive, ObjectWriteOperation op) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        hive.execute(op.stream(output));
+        return new ByteArrayInputStream(output.toByteArray());
+    }
 }
@@ -11,7 +11,8 @@ public class Metrics {
     public enum MetricGroup {
         HTTP,
         CLI,
-        HIVE
+        HIVE,
+        PROCESS
     }
 
     private Metrics() {
@@ -32,4 +32,25 @@ public class FutureHelper {
             throw ise;
         }
     }
+
+    /**
+     * Cancels all given futures which did not start yet, and waits for the ones already running to finish. Failures are
+     * ignored, as this is meant for cleaning up, e.g. after another failure.
+     */
+    public static void cancelAll(Iterable<Future<?>> futures) {
+        futures.forEach(t -> t.cancel(false));
+
+        for (Future<?> t : futures) {
+            try {
+                if (!t.isCancelled()) {
+                    t.get();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // ignored, see above.
+            }
+        }
+    }
 }
@@ -23,4 +23,26 @@ public class Hex {
         return new String(hexChars);
     }
 
+    /**
+     * Converts a lower- or upper-case hex {@link String} back to its byte[] representation.
+     *
+     * @throws IllegalArgumentException in case the given {@link String} is not valid hex.
+     */
+    public static byte[] hexToBytes(String hex) {
+        int len = hex.length();
+        if (len % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hex string length: " + len);
+        }
+        byte[] result = new byte[len / 2];
+        for (int j = 0; j < result.length; j++) {
+            int hi = Character.digit(hex.charAt(j * 2), 16);
+            int lo = Character.digit(hex.charAt(j * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("Invalid hex string: " + hex);
+            }
+            result[j] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
 }
@@ -7,24 +7,34 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.UnaryOperator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 public class TemplateHelper {
 
     private static final Logger log = LoggerFactory.getLogger(TemplateHelper.class);
 
     private static final String PATTERN_START = "{{";
     private static final String PATTERN_END = "}}";
-    private static final Pattern PATTERN = Pattern.compile(Pattern.quote(PATTERN_START) + "(.*?)" + Pattern.quote(PATTERN_END));
+
+    /**
+     * Parsed templates by their source. The same parameters, command lines and configuration files are processed over and over
+     * again. Weighted by the length of the source, as configuration files can be large.
+     */
+    private static final Cache<String, Template> templates = CacheBuilder.newBuilder()
+            .maximumWeight(2_000_000L).weigher((String k, Template v) -> k.length()).build();
 
     private TemplateHelper() {
     }
@@ -84,10 +94,7 @@ public class TemplateHelper {
      * @return the resolved string
      */
     public static String process(String value, VariableResolver valueResolver, ShouldResolve shouldResolve) {
-        if (value == null || !value.contains(PATTERN_START)) {
-            return value;
-        }
-        return doProcess(value, valueResolver, shouldResolve, null, new ArrayDeque<>());
+        return process(value, valueResolver, shouldResolve, null);
     }
 
     /**
@@ -110,89 +117,177 @@ public class TemplateHelper {
         if (value == null || !value.contains(PATTERN_START)) {
             return value;
         }
-        return doProcess(value, valueResolver, shouldResolve, valueId, new ArrayDeque<>());
+        return new Processor(valueResolver, shouldResolve, valueId).process(value);
     }
 
     /**
-     * Recursively resolves the given input.
+     * Processes each template reference in the given input by calling the given processor.
+     * <p>
+     * Whatever result is returned by the processor will be re-inserted *as template variable* (including
+     * the pattern start and end markers!) in the string.
      */
-    private static String doProcess(String value, VariableResolver valueResolver, ShouldResolve shouldResolve, String valueId,
-            Deque<String> cycleDetector) {
-        if (cycleDetector.contains(value)) {
-            cycleDetector.push(value);
-            String chain = String.join(" -> ", cycleDetector);
-            log.error("Infinite loop detected: {}", chain);
-            throw new IllegalArgumentException("Infinite loop detected: " + chain);
+    public static String updateReferences(String value, UnaryOperator<String> processor) {
+        Template template = getTemplate(value);
+        if (template.variables.length == 0) {
+            return value;
         }
 
-        StringBuilder builder = new StringBuilder();
-        int currentStart = 0;
-
-        Matcher m = PATTERN.matcher(value);
-        while (m.find()) {
-            // Resolve next variable if desired
-            String nextMatch = m.group(1);
-            String resolved = nextMatch;
-            if (shouldResolve != null && shouldResolve.apply(nextMatch)) {
-                resolved = valueResolver.apply(nextMatch);
-                if (resolved == null) {
-                    throw new IllegalArgumentException("Cannot find replacement for variable " + nextMatch + " while processing "
-                            + (valueId == null ? value : valueId));
-                }
-                // Resolve recursive as the replacement can also contains templates
-                cycleDetector.push(value);
-                resolved = doProcess(resolved, valueResolver, shouldResolve, valueId, cycleDetector);
-                cycleDetector.pop();
-            } else {
-                // Keep pattern for the unresolved intact so that we can resolve it later
-                resolved = PATTERN_START + resolved + PATTERN_END;
-            }
-
-            // append string from beginning or previous end to start of variable match
-            // not using appendReplacement and appendTail since they are slow.
-            builder.append(value.substring(currentStart, m.start()));
-            builder.append(resolved);
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < template.variables.length; ++i) {
+            builder.append(template.literals[i]);
 
-            // Update indices for next round
-            currentStart = m.end();
+            // Keep pattern for whatever the processor returned
+            builder.append(PATTERN_START).append(processor.apply(template.variables[i])).append(PATTERN_END);
         }
 
         // Append remaining content of the input
-        builder.append(value.substring(currentStart));
+        builder.append(template.literals[template.variables.length]);
         return builder.toString();
     }
 
+    private static Template getTemplate(String value) {
+        Template template = templates.getIfPresent(value);
+        if (template == null) {
+            template = Template.parse(value);
+            templates.put(value, template);
+        }
+        return template;
+    }
+
     /**
-     * Processes each template reference in the given input by calling the given processor.
+     * A template parsed into the literal text and the names of the variables in between.
      * <p>
-     * Whatever result is returned by the processor will be re-inserted *as template variable* (including
-     * the pattern start and end markers!) in the string.
+     * Matches what the pattern <code>\{\{(.*?)\}\}</code> would match, i.e. a variable reference never spans multiple lines.
      */
-    public static String updateReferences(String value, UnaryOperator<String> processor) {
-        StringBuilder builder = new StringBuilder();
-        int currentStart = 0;
+    private static final class Template {
 
-        Matcher m = PATTERN.matcher(value);
-        while (m.find()) {
-            // Resolve next variable if desired
-            String nextMatch = m.group(1);
-            String resolved = nextMatch;
+        /** The literal text before each variable, plus the text after the last variable */
+        private final String[] literals;
 
-            // Keep pattern for whatever the processor returned
-            resolved = PATTERN_START + processor.apply(resolved) + PATTERN_END;
+        /** The variable names without the pattern start and end markers */
+        private final String[] variables;
+
+        private Template(String[] literals, String[] variables) {
+            this.literals = literals;
+            this.variables = variables;
+        }
+
+        private static Template parse(String value) {
+            List<String> literals = new ArrayList<>();
+            List<String> variables = new ArrayList<>();
+
+            int currentStart = 0;
+            int searchFrom = 0;
+            while (true) {
+                int start = value.indexOf(PATTERN_START, searchFrom);
+                if (start < 0) {
+                    break;
+                }
+                int nameStart = start + PATTERN_START.length();
+                int end = value.indexOf(PATTERN_END, nameStart);
+                if (end < 0) {
+                    break;
+                }
+                if (containsLineTerminator(value, nameStart, end)) {
+                    // not a variable, the next attempt is at the next character just like a regular expression would do.
+                    searchFrom = start + 1;
+                    continue;
+                }
 
-            // append string from beginning or previous end to start of variable match
-            // not using appendReplacement and appendTail since they are slow.
-            builder.append(value.substring(currentStart, m.start()));
-            builder.append(resolved);
+                literals.add(value.substring(currentStart, start));
+                variables.add(value.substring(nameStart, end));
+                currentStart = searchFrom = end + PATTERN_END.length();
+            }
 
-            // Update indices for next round
-            currentStart = m.end();
+            literals.add(value.substring(currentStart));
+            return new Template(literals.toArray(String[]::new), variables.toArray(String[]::new));
         }
 
-        // Append remaining content of the input
-        builder.append(value.substring(currentStart));
-        return builder.toString();
+        private static boolean containsLineTerminator(String value, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                char c = value.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Resolves a single value, including all values referenced from the resolved values.
+     * <p>
+     * Remembers the results of all variables, so a variable which is referenced multiple times is resolved only once.
+     */
+    private static final class Processor {
+
+        private final VariableResolver valueResolver;
+        private final ShouldResolve shouldResolve;
+        private final String valueId;
+
+        private final Map<String, String> resolved = new HashMap<>();
+        private final Deque<String> cycleDetector = new ArrayDeque<>();
+
+        private Processor(VariableResolver valueResolver, ShouldResolve shouldResolve, String valueId) {
+            this.valueResolver = valueResolver;
+            this.shouldResolve = shouldResolve;
+            this.valueId = valueId;
+        }
+
+        /**
+         * Recursively resolves the given input.
+         */
+        private String process(String value) {
+            if (cycleDetector.contains(value)) {
+                cycleDetector.push(value);
+                String chain = String.join(" -> ", cycleDetector);
+                log.error("Infinite loop detected: {}", chain);
+                throw new IllegalArgumentException("Infinite loop detected: " + chain);
+            }
+
+            Template template = getTemplate(value);
+            if (template.variables.length == 0) {
+                return value;
+            }
+
+            StringBuilder builder = new StringBuilder(value.length());
+            for (int i = 0; i < template.variables.length; ++i) {
+                builder.append(template.literals[i]);
+                builder.append(resolve(template.variables[i], value));
+            }
+
+            // Append remaining content of the input
+            builder.append(template.literals[template.variables.length]);
+            return builder.toString();
+        }
+
+        private String resolve(String variable, String value) {
+            String result = resolved.get(variable);
+            if (result != null) {
+                return result;
+            }
+
+            if (shouldResolve != null && shouldResolve.apply(variable)) {
+                result = valueResolver.apply(variable);
+                if (result == null) {
+                    throw new IllegalArgumentException("Cannot find replacement for variable " + variable + " while processing "
+                            + (valueId == null ? value : valueId));
+                }
+
+                // Resolve recursive as the replacement can also contains templates
+                if (result.contains(PATTERN_START)) {
+                    cycleDetector.push(value);
+                    result = process(result);
+                    cycleDetector.pop();
+                }
+            } else {
+                // Keep pattern for the unresolved intact so that we can resolve it later
+                result = PATTERN_START + variable + PATTERN_END;
+            }
+
+            resolved.put(variable, result);
+            return result;
+        }
     }
 
     /**
@@ -21,8 +21,8 @@ import org.apache.commons.compress.archivers.zip.ZipFile;
 
 public class ZipHelper {
 
-    private static final int DEFAULT_NONEXEC_MODE = 0644;
-    private static final int DEFAULT_EXEC_MODE = 0755;
+    static final int DEFAULT_NONEXEC_MODE = 0644;
+    static final int DEFAULT_EXEC_MODE = 0755;
 
     private ZipHelper() {
     }
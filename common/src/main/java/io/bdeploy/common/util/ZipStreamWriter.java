@@ -0,0 +1,124 @@
+package io.bdeploy.common.util;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * Writes a ZIP to a stream entry by entry, without the need to have the content available as files.
+ * <p>
+ * Like {@link ZipHelper}, this marks files as executable in the ZIP if requested, even when run on windows. Entries are added
+ * in the order they are written, so the first bytes are available to the reader of the stream right away.
+ * <p>
+ * Zip64 extensions are only used where required, as not every reader supports them. The stream cannot be updated once an entry
+ * is written, so this must be decided before writing an entry. Entries which are compressed while writing therefore use Zip64
+ * whenever their compressed size might reach 4GB, which is the case for large or unknown sizes.
+ */
+public class ZipStreamWriter implements Closeable {
+
+    /**
+     * Compressed entries with at least this uncompressed size use Zip64. The margin below 4GB covers the overhead of deflating
+     * content which cannot be compressed.
+     */
+    private static final long ZIP64_DEFLATED_THRESHOLD = 0xFFFFFFFFL - (64L * 1024 * 1024);
+
+    private final ZipArchiveOutputStream zaos;
+
+    /**
+     * @param output the stream to write to. It is <b>not</b> closed when closing this writer.
+     */
+    public ZipStreamWriter(OutputStream output) {
+        this.zaos = new ZipArchiveOutputStream(new FilterOutputStream(output) {
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Adds a directory entry.
+     *
+     * @param name the path of the directory within the ZIP, using '/' as separator.
+     */
+    public void addDirectory(String name) throws IOException {
+        zaos.putArchiveEntry(new ZipArchiveEntry(name.endsWith("/") ? name : name + "/"));
+        zaos.closeArchiveEntry();
+    }
+
+    /**
+     * Adds a file which is compressed while writing.
+     *
+     * @param name the path of the file within the ZIP, using '/' as separator.
+     * @param executable whether the file should be marked executable.
+     * @param size the size of the content, or a negative value if unknown.
+     * @param content the content of the file.
+     */
+    public void addFile(String name, boolean executable, long size, InputStream content) throws IOException {
+        ZipArchiveEntry entry = createFileEntry(name, executable);
+        entry.setMethod(ZipEntry.DEFLATED);
+
+        boolean zip64 = size < 0 || size >= ZIP64_DEFLATED_THRESHOLD;
+        zaos.setUseZip64(zip64 ? Zip64Mode.Always : Zip64Mode.AsNeeded);
+        try {
+            zaos.putArchiveEntry(entry);
+            content.transferTo(zaos);
+            zaos.closeArchiveEntry();
+        } finally {
+            zaos.setUseZip64(Zip64Mode.AsNeeded);
+        }
+    }
+
+    /**
+     * Adds a file which is written as is. This is meant for content which is compressed already, where compressing again only
+     * wastes time.
+     * <p>
+     * A stream does not allow to update an entry once written, so size and checksum must be known up front. Zip64 is used if the
+     * size requires it.
+     *
+     * @param name the path of the file within the ZIP, using '/' as separator.
+     * @param executable whether the file should be marked executable.
+     * @param size the exact size of the content.
+     * @param crc the CRC-32 checksum of the content.
+     * @param content the content of the file.
+     */
+    public void addStoredFile(String name, boolean executable, long size, long crc, InputStream content) throws IOException {
+        ZipArchiveEntry entry = createFileEntry(name, executable);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc);
+
+        zaos.putArchiveEntry(entry);
+        content.transferTo(zaos);
+        zaos.closeArchiveEntry();
+    }
+
+    private static ZipArchiveEntry createFileEntry(String name, boolean executable) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setUnixMode(executable ? ZipHelper.DEFAULT_EXEC_MODE : ZipHelper.DEFAULT_NONEXEC_MODE);
+        return entry;
+    }
+
+    /**
+     * Writes the central directory and releases all resources. The underlying stream is flushed, but not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        zaos.close();
+    }
+
+}
@@ -1,10 +1,12 @@
 package io.bdeploy.common.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
@@ -57,5 +59,39 @@ class TemplateHelperTest {
     @Test
     void testNotMatchingPattern() {
         assertEquals("|a|", TemplateHelper.process("|a|", RESOLVER));
+
+        // Patterns never span multiple lines
+        assertEquals("{{a\n}}", TemplateHelper.process("{{a\n}}", RESOLVER));
+        assertEquals("{{\n" + R, TemplateHelper.process("{{\n{{a}}", RESOLVER));
+        assertEquals("{{a", TemplateHelper.process("{{a", RESOLVER));
+    }
+
+    @Test
+    void testResolveRepeatedPatterns() {
+        AtomicInteger calls = new AtomicInteger();
+        VariableResolver counting = v -> {
+            calls.incrementAndGet();
+            return VARS.get(v);
+        };
+
+        assertEquals(R + "-" + R + "-" + R, TemplateHelper.process("{{a}}-{{a}}-{{b}}", counting));
+        assertEquals(2, calls.get());
+
+        // Same template again, must be resolved again
+        assertEquals(R + "-" + R + "-" + R, TemplateHelper.process("{{a}}-{{a}}-{{b}}", counting));
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    void testInfiniteLoop() {
+        Map<String, String> vars = Map.of("x", "{{y}}", "y", "-{{x}}");
+        assertThrows(IllegalArgumentException.class, () -> TemplateHelper.process("{{x}}", vars::get));
+        assertThrows(IllegalArgumentException.class, () -> TemplateHelper.process("{{missing}}", RESOLVER));
+    }
+
+    @Test
+    void testUpdateReferences() {
+        assertEquals("a-{{A}}-{{B}}", TemplateHelper.updateReferences("a-{{a}}-{{b}}", String::toUpperCase));
+        assertEquals("|a|", TemplateHelper.updateReferences("|a|", String::toUpperCase));
     }
 }
@@ -277,7 +277,9 @@ public class InstanceNodeController {
                 result.put(key, target);
 
                 if (!Files.isDirectory(target)) {
-                    syncOps.perform(target, () -> hive.execute(new ExportOperation().setTarget(target).setManifest(key)));
+                    // pooled applications are never modified, so they can share their files with the hive.
+                    syncOps.perform(target, () -> hive
+                            .execute(new ExportOperation().setTarget(target).setManifest(key).setLinkObjects(true)));
                 }
             }
         }
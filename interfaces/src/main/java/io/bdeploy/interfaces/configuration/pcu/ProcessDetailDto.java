@@ -34,4 +34,13 @@ public class ProcessDetailDto {
     /** Details about the last probes against the process */
     public List<ProcessProbeResultDto> lastProbes;
 
+    /** Latency of the probes against the process, recently performed probes weigh more */
+    public List<ProcessProbeLatencyDto> probeLatencies;
+
+    /** Output written by the process in bytes per second, averaged over the last minute */
+    public double outputRate;
+
+    /** The most recent sample of resources used by the process and its children, see {@link ProcessResourceUsageDto} */
+    public ProcessResourceSampleDto resources;
+
 }
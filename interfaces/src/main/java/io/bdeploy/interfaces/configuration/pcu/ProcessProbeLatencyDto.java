@@ -0,0 +1,22 @@
+package io.bdeploy.interfaces.configuration.pcu;
+
+import io.bdeploy.interfaces.configuration.pcu.ProcessProbeResultDto.ProcessProbeType;
+
+/**
+ * Distribution of the time it takes a process to answer a probe, in milliseconds.
+ */
+public class ProcessProbeLatencyDto {
+
+    public ProcessProbeType type;
+
+    /** The amount of probes performed since the process controller has been created */
+    public long count;
+
+    public double min;
+    public double mean;
+    public double median;
+    public double p95th;
+    public double p99th;
+    public double max;
+
+}
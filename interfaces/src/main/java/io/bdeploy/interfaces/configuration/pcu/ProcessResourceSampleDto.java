@@ -0,0 +1,24 @@
+package io.bdeploy.interfaces.configuration.pcu;
+
+/**
+ * Resources used by a process and all its child processes at a certain point in time. Values which cannot be determined on the
+ * operating system of the node are -1.
+ */
+public class ProcessResourceSampleDto {
+
+    /** Time the sample has been taken */
+    public long timestamp;
+
+    /** CPU usage since the previous sample in percent of a single core, may exceed 100 when using multiple cores */
+    public double cpuPercent = -1;
+
+    /** Resident memory in bytes */
+    public long rssBytes = -1;
+
+    /** Number of open file descriptors */
+    public int fileDescriptors = -1;
+
+    /** Number of threads */
+    public int threads = -1;
+
+}
@@ -0,0 +1,17 @@
+package io.bdeploy.interfaces.configuration.pcu;
+
+/**
+ * A series of {@link ProcessResourceSampleDto}s, oldest first. Each array holds one value per sample.
+ */
+public class ProcessResourceSeriesDto {
+
+    /** The time between two samples in milliseconds */
+    public long interval;
+
+    public long[] timestamps = new long[0];
+    public double[] cpuPercent = new double[0];
+    public long[] rssBytes = new long[0];
+    public int[] fileDescriptors = new int[0];
+    public int[] threads = new int[0];
+
+}
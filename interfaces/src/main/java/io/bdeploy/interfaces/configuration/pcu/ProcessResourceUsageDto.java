@@ -0,0 +1,17 @@
+package io.bdeploy.interfaces.configuration.pcu;
+
+/**
+ * History of resources used by a process, kept in memory on the node running the process.
+ */
+public class ProcessResourceUsageDto {
+
+    /** All recent samples */
+    public ProcessResourceSeriesDto recent;
+
+    /**
+     * Samples covering a longer period. Each sample combines multiple recent samples. The CPU usage is averaged, while the other
+     * values are the maximum, so that spikes remain visible.
+     */
+    public ProcessResourceSeriesDto downsampled;
+
+}
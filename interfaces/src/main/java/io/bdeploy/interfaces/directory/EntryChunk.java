@@ -10,6 +10,16 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  */
 public class EntryChunk {
 
+    /**
+     * Header carrying the {@link #startPointer} of a chunk which is streamed as raw content.
+     */
+    public static final String START_POINTER_HDR = "X-Chunk-Start";
+
+    /**
+     * Header carrying the {@link #endPointer} of a chunk which is streamed as raw content.
+     */
+    public static final String END_POINTER_HDR = "X-Chunk-End";
+
     public static final EntryChunk ROLLOVER_CHUNK = new EntryChunk("\n<file truncated>\n".getBytes(StandardCharsets.UTF_8), 0, 0);
 
     /**
@@ -0,0 +1,198 @@
+package io.bdeploy.interfaces.directory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads {@link EntryChunk}s from files using positional reads on a {@link FileChannel}.
+ * <p>
+ * Readers which follow a file (tail, streams) bound their chunks by {@link #MAX_CHUNK_SIZE}, so reading a huge file never
+ * requires to buffer all of it. Callers continue reading at the end pointer of the previous chunk.
+ */
+public class EntryChunkReader {
+
+    /**
+     * The maximum size of a single chunk read by readers which follow a file.
+     */
+    public static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The size of blocks read while scanning a file backwards for line ends.
+     */
+    private static final int TAIL_BLOCK_SIZE = 8 * 1024;
+
+    /**
+     * The maximum size of an array, which bounds the size of a chunk read at once.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private EntryChunkReader() {
+    }
+
+    /**
+     * A range of a file which can be read or transferred, see {@link EntryChunkReader#range(Path, long, long)}.
+     */
+    public static final class Range {
+
+        /** The start offset of the range, inclusive. */
+        public final long start;
+
+        /** The end offset of the range, exclusive. */
+        public final long end;
+
+        /** Whether the file has been truncated since the requested offset has been determined. */
+        public final boolean rollover;
+
+        private Range(long start, long end, boolean rollover) {
+            this.start = start;
+            this.end = end;
+            this.rollover = rollover;
+        }
+
+        public long length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * @param file the file to read
+     * @param offset the offset to start reading at.
+     * @param limit the maximum amount of bytes to read, 0 means no limit.
+     * @return the range of the file which is available for reading.
+     */
+    public static Range range(Path file, long offset, long limit) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return range(channel.size(), offset, limit);
+        }
+    }
+
+    private static Range range(long size, long offset, long limit) {
+        if (size < offset) {
+            return new Range(0, 0, true);
+        }
+
+        long available = size - offset;
+        return new Range(offset, offset + (limit <= 0 ? available : Math.min(available, limit)), false);
+    }
+
+    /**
+     * Reads a chunk of a file.
+     *
+     * @param file the file to read
+     * @param offset the offset to start reading at.
+     * @param limit the maximum amount of bytes to read, 0 means no limit.
+     * @return the chunk, {@link EntryChunk#ROLLOVER_CHUNK} if the file is smaller than the offset, or <code>null</code> if there
+     *         is no content after the offset.
+     */
+    public static EntryChunk read(Path file, long offset, long limit) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Range range = range(channel.size(), offset, limit);
+            if (range.rollover) {
+                return EntryChunk.ROLLOVER_CHUNK;
+            } else if (range.length() == 0) {
+                return null;
+            } else if (range.length() > MAX_ARRAY_SIZE) {
+                throw new IOException("Chunk of " + range.length() + " bytes is too large, read with a limit instead: " + file);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) range.length());
+            long position = range.start;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break; // truncated while reading.
+                }
+                position += read;
+            }
+
+            byte[] content = buffer.array();
+            if (buffer.position() < content.length) {
+                byte[] partial = new byte[buffer.position()];
+                System.arraycopy(content, 0, partial, 0, partial.length);
+                content = partial;
+            }
+            return new EntryChunk(content, range.start, range.start + content.length);
+        }
+    }
+
+    /**
+     * Transfers a range of a file to the given stream, without copying it through the Java heap where the platform supports
+     * it.
+     *
+     * @param file the file to read
+     * @param range the range to transfer
+     * @param out the stream to write to.
+     * @return the amount of bytes transferred.
+     */
+    public static long transfer(Path file, Range range, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = range.start;
+            while (position < range.end) {
+                long transferred = channel.transferTo(position, range.end - position, target);
+                if (transferred <= 0) {
+                    break; // truncated while reading.
+                }
+                position += transferred;
+            }
+            return position - range.start;
+        }
+    }
+
+    /**
+     * Determines the offset of the start of the last lines in a file by scanning it backwards. Scanning stops after
+     * {@link #MAX_CHUNK_SIZE} bytes, so the result might contain less lines if lines are very long.
+     *
+     * @param file the file to scan
+     * @param lines the amount of lines to find.
+     * @return the offset at which the requested amount of lines start.
+     */
+    public static long findTailOffset(Path file, int lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long limit = Math.max(0, size - MAX_CHUNK_SIZE);
+            if (lines <= 0 || size == 0) {
+                return size;
+            }
+
+            // a line end at the very end of the file does not start another line.
+            long end = size;
+            ByteBuffer buffer = ByteBuffer.allocate(TAIL_BLOCK_SIZE);
+            int found = 0;
+            boolean last = true;
+            while (end > limit) {
+                long start = Math.max(limit, end - TAIL_BLOCK_SIZE);
+                buffer.clear().limit((int) (end - start));
+                int read = 0;
+                while (buffer.hasRemaining()) {
+                    int r = channel.read(buffer, start + read);
+                    if (r < 0) {
+                        break;
+                    }
+                    read += r;
+                }
+
+                for (int i = read - 1; i >= 0; --i) {
+                    if (buffer.get(i) == '\n') {
+                        if (last && start + i == size - 1) {
+                            continue;
+                        }
+                        if (++found == lines) {
+                            return start + i + 1;
+                        }
+                    }
+                }
+                last = false;
+                end = start;
+            }
+            return limit;
+        }
+    }
+
+}
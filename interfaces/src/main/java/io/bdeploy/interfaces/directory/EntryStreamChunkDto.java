@@ -0,0 +1,39 @@
+package io.bdeploy.interfaces.directory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A message sent to clients of the entry stream WebSocket for a subscription.
+ * <p>
+ * Chunks are sent in the order they have been written. In case the start pointer of a chunk does not match the end pointer of
+ * the previous one, either the file has been rolled over (start pointer is 0), or output has been dropped because the client
+ * did not keep up. The client can fetch the missing content using
+ * {@link io.bdeploy.interfaces.remote.CommonDirectoryEntryResource#getEntryContent(RemoteDirectoryEntry, long, long)}.
+ */
+public class EntryStreamChunkDto {
+
+    /**
+     * The id of the subscription, see {@link EntryStreamRequestDto#id}.
+     */
+    public String id;
+
+    /**
+     * The chunk of content, <code>null</code> if the subscription failed.
+     */
+    public EntryChunk chunk;
+
+    /**
+     * The reason why the subscription failed, in which case it is terminated.
+     */
+    public String error;
+
+    @JsonCreator
+    public EntryStreamChunkDto(@JsonProperty("id") String id, @JsonProperty("chunk") EntryChunk chunk,
+            @JsonProperty("error") String error) {
+        this.id = id;
+        this.chunk = chunk;
+        this.error = error;
+    }
+
+}
@@ -0,0 +1,40 @@
+package io.bdeploy.interfaces.directory;
+
+/**
+ * A request sent by clients of the entry stream WebSocket to start or stop following a file.
+ */
+public class EntryStreamRequestDto {
+
+    public enum EntryStreamAction {
+        SUBSCRIBE,
+        UNSUBSCRIBE
+    }
+
+    public EntryStreamAction action;
+
+    /**
+     * Identifies the subscription in all messages, chosen by the client. Allows multiple subscriptions per connection.
+     */
+    public String id;
+
+    /**
+     * The instance group the entry belongs to, required to check permissions on the master.
+     */
+    public String group;
+
+    /**
+     * The node to follow the entry on. Only evaluated by the master, which relays the subscription to the node.
+     */
+    public String minion;
+
+    /**
+     * The entry to follow.
+     */
+    public RemoteDirectoryEntry entry;
+
+    /**
+     * The offset to resume following from. Content between this offset and the current end of the file is sent first.
+     */
+    public long offset;
+
+}
@@ -9,6 +9,11 @@ import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.UnaryOperator;
 
 import javax.net.ssl.HostnameVerifier;
@@ -21,6 +26,9 @@ import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
 import com.nimbusds.oauth2.sdk.ClientCredentialsGrant;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.Scope;
@@ -36,6 +44,7 @@ import com.nimbusds.openid.connect.sdk.OIDCTokenResponse;
 import com.nimbusds.openid.connect.sdk.OIDCTokenResponseParser;
 
 import io.bdeploy.common.security.SecurityHelper;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
 import io.bdeploy.common.util.TemplateHelper;
 import io.bdeploy.common.util.VariableResolver;
 import io.bdeploy.interfaces.configuration.dcu.ApplicationConfiguration;
@@ -47,6 +56,7 @@ import io.bdeploy.interfaces.variables.CompositeResolver;
 import io.bdeploy.interfaces.variables.DeploymentPathProvider;
 import io.bdeploy.interfaces.variables.Resolvers;
 import io.bdeploy.jersey.TrustAllServersTrustManager;
+import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.client.Invocation.Builder;
@@ -62,6 +72,22 @@ public class CommonEndpointHelper {
 
     private static final Logger log = LoggerFactory.getLogger(CommonEndpointHelper.class);
 
+    /** Time after which clients removed from the cache are closed. Requests started before removal may still be running. */
+    private static final long CLOSE_DELAY_MINUTES = 5;
+
+    private static final ScheduledExecutorService CLOSER = Executors
+            .newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Endpoint Client Closer"));
+
+    /**
+     * Clients per distinct TLS and authentication setup of endpoints. Sharing clients avoids building a new TLS context for each
+     * request, and allows to re-use connections kept alive by previous requests (e.g. probes).
+     * <p>
+     * Entries expire to pick up changes to trust stores. Removed clients are closed after a delay, as requests might still be in
+     * flight.
+     */
+    private static final Cache<ClientKey, ClientState> CLIENTS = CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(1000).removalListener(CommonEndpointHelper::onClientRemoved).build();
+
     private CommonEndpointHelper() {
         // static helper only.
     }
@@ -97,6 +123,61 @@ public class CommonEndpointHelper {
 
     public static Invocation.Builder createRequestBuilder(HttpEndpoint endpoint, String subPath, Map<String, Object> properties,
             Map<String, List<String>> queryParameters) throws GeneralSecurityException {
+        ClientState state;
+        try {
+            state = CLIENTS.get(new ClientKey(endpoint), () -> createClient(endpoint));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException gse) {
+                throw gse;
+            }
+            throw new IllegalStateException("Cannot create client for endpoint " + endpoint.id, e.getCause());
+        }
+
+        // client is always used locally, so we use localhost as hostname to avoid contacting somebody else unintentionally.
+        WebTarget target = state.client.target(initUri(endpoint, "localhost", subPath));
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            target = target.property(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, List<String>> entry : queryParameters.entrySet()) {
+            target = target.queryParam(entry.getKey(), entry.getValue().toArray());
+        }
+
+        Builder builder = target.request();
+        if (state.authType == HttpAuthenticationType.OIDC) {
+            String tokenUrl = endpoint.tokenUrl.getPreRenderable();
+            String clientId = endpoint.clientId.getPreRenderable();
+            String clientSecret = endpoint.clientSecret.getPreRenderable();
+            try {
+                OIDCTokenResponse tokenResponse = performOIDCTokenRequest(tokenUrl, clientId, clientSecret, state.sslContext,
+                        state.hostnameVerifier);
+                if (tokenResponse != null) {
+                    builder.header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenResponse.getOIDCTokens().getBearerAccessToken());
+                }
+            } catch (ParseException | URISyntaxException e) {
+                log.warn("Failed to parse endpoint data.", e);
+            } catch (IOException e) {
+                log.error("Failed to send HTTP request.", e);
+            }
+        }
+        return builder;
+    }
+
+    private static void onClientRemoved(RemovalNotification<ClientKey, ClientState> notification) {
+        ClientState state = notification.getValue();
+        if (state == null) {
+            return;
+        }
+
+        CLOSER.schedule(() -> {
+            try {
+                state.client.close();
+            } catch (Exception e) {
+                log.debug("Cannot close endpoint client", e);
+            }
+        }, CLOSE_DELAY_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private static ClientState createClient(HttpEndpoint endpoint) throws GeneralSecurityException {
         ClientBuilder client = ClientBuilder.newBuilder();
 
         SSLContext sslContext = null;
@@ -156,32 +237,7 @@ public class CommonEndpointHelper {
                 break;
         }
 
-        // client is always used locally, so we use localhost as hostname to avoid contacting somebody else unintentionally.
-        WebTarget target = client.build().target(initUri(endpoint, "localhost", subPath));
-        for (Map.Entry<String, Object> entry : properties.entrySet()) {
-            target = target.property(entry.getKey(), entry.getValue());
-        }
-        for (Map.Entry<String, List<String>> entry : queryParameters.entrySet()) {
-            target = target.queryParam(entry.getKey(), entry.getValue().toArray());
-        }
-
-        Builder builder = target.request();
-        if (authType == HttpAuthenticationType.OIDC) {
-            String tokenUrl = endpoint.tokenUrl.getPreRenderable();
-            String clientId = endpoint.clientId.getPreRenderable();
-            String clientSecret = endpoint.clientSecret.getPreRenderable();
-            try {
-                OIDCTokenResponse tokenResponse = performOIDCTokenRequest(tokenUrl, clientId, clientSecret, sslContext, hv);
-                if (tokenResponse != null) {
-                    builder.header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenResponse.getOIDCTokens().getBearerAccessToken());
-                }
-            } catch (ParseException | URISyntaxException e) {
-                log.warn("Failed to parse endpoint data.", e);
-            } catch (IOException e) {
-                log.error("Failed to send HTTP request.", e);
-            }
-        }
-        return builder;
+        return new ClientState(client.build(), authType, sslContext, hv);
     }
 
     private static OIDCTokenResponse performOIDCTokenRequest(String tokenUrl, String clientId, String clientSecret,
@@ -270,6 +326,65 @@ public class CommonEndpointHelper {
         return new LinkedValueConfiguration(p.apply(value.getPreRenderable()));
     }
 
+    /**
+     * Identifies all settings of an endpoint which are relevant when creating a {@link Client}.
+     */
+    private static final class ClientKey {
+
+        private final boolean secure;
+        private final boolean trustAll;
+        private final String trustStore;
+        private final String trustStorePass;
+        private final String authType;
+        private final String authUser;
+        private final String authPass;
+
+        private ClientKey(HttpEndpoint endpoint) {
+            this.secure = Boolean.valueOf(endpoint.secure.getPreRenderable()) == Boolean.TRUE;
+            this.trustAll = endpoint.trustAll;
+            this.trustStore = endpoint.trustStore.getPreRenderable();
+            this.trustStorePass = endpoint.trustStorePass.getPreRenderable();
+            this.authType = endpoint.authType.getPreRenderable();
+            this.authUser = endpoint.authUser.getPreRenderable();
+            this.authPass = endpoint.authPass.getPreRenderable();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(secure, trustAll, trustStore, trustStorePass, authType, authUser, authPass);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey other = (ClientKey) obj;
+            return secure == other.secure && trustAll == other.trustAll && Objects.equals(trustStore, other.trustStore)
+                    && Objects.equals(trustStorePass, other.trustStorePass) && Objects.equals(authType, other.authType)
+                    && Objects.equals(authUser, other.authUser) && Objects.equals(authPass, other.authPass);
+        }
+    }
+
+    private static final class ClientState {
+
+        private final Client client;
+        private final HttpAuthenticationType authType;
+        private final SSLContext sslContext;
+        private final HostnameVerifier hostnameVerifier;
+
+        private ClientState(Client client, HttpAuthenticationType authType, SSLContext sslContext,
+                HostnameVerifier hostnameVerifier) {
+            this.client = client;
+            this.authType = authType;
+            this.sslContext = sslContext;
+            this.hostnameVerifier = hostnameVerifier;
+        }
+    }
+
     public static CompositeResolver createEndpoindResolver(InstanceNodeManifest inm, ApplicationConfiguration app,
             DeploymentPathProvider dpp) {
         return Resolvers.forApplication(Resolvers.forInstance(inm, dpp), inm.getConfiguration(), app);
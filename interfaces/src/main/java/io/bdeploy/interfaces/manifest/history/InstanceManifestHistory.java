@@ -1,13 +1,24 @@
 package io.bdeploy.interfaces.manifest.history;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonEnumDefaultValue;
 
 import io.bdeploy.bhive.BHiveExecution;
+import io.bdeploy.bhive.meta.MetaEventLog;
 import io.bdeploy.bhive.meta.MetaManifest;
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
 import io.bdeploy.interfaces.manifest.InstanceManifest;
 
 /**
@@ -31,12 +42,33 @@ public class InstanceManifestHistory {
         UNKNOWN
     }
 
+    private static final Logger log = LoggerFactory.getLogger(InstanceManifestHistory.class);
+
+    /**
+     * Records are compacted into the BHive in batches. Until then, they are visible only locally.
+     */
+    private static final int COMPACT_THRESHOLD = 50;
+
+    /**
+     * Delay after which pending records are compacted in the background, so that they reach servers which synchronize the
+     * instance in time, even if no further actions are recorded.
+     */
+    private static final long COMPACT_DELAY_SECONDS = 10;
+
+    private static final ScheduledExecutorService COMPACTOR = Executors
+            .newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Instance History Compactor"));
+
+    /** Names of logs which have a compaction scheduled already */
+    private static final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
     private final MetaManifest<History> meta;
+    private final MetaEventLog<InstanceManifestHistoryRecord> events;
     private final BHiveExecution hive;
 
     public InstanceManifestHistory(Manifest.Key instanceManifest, BHiveExecution hive) {
         this.hive = hive;
         this.meta = new MetaManifest<>(instanceManifest, true, History.class);
+        this.events = new MetaEventLog<>(instanceManifest, true, InstanceManifestHistoryRecord.class, COMPACT_THRESHOLD);
     }
 
     /**
@@ -45,36 +77,68 @@ public class InstanceManifestHistory {
      * @param action the performed action.
      */
     public void recordAction(Action action, String user, String comment) {
-        store(readOrCreate().append(new InstanceManifestHistoryRecord(action, System.currentTimeMillis(), user, comment)));
+        long timestamp = System.currentTimeMillis();
+        events.append(hive, timestamp, new InstanceManifestHistoryRecord(action, timestamp, user, comment));
+
+        if (scheduled.add(events.getMetaName())) {
+            COMPACTOR.schedule(() -> {
+                scheduled.remove(events.getMetaName());
+                try {
+                    compact();
+                } catch (Exception e) {
+                    log.warn("Cannot compact history of {}", events.getMetaName(), e);
+                }
+            }, COMPACT_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Moves records which are pending locally into the BHive. The history is synchronized along with the instance through its
+     * meta {@link Manifest}s, thus this is required before the instance is transferred to another server.
+     */
+    public void compact() {
+        events.compact(hive);
     }
 
     /**
      * @return all of the history attached to the {@link InstanceManifest}.
      */
     public List<InstanceManifestHistoryRecord> getFullHistory() {
-        return readOrCreate().records;
+        List<InstanceManifestHistoryRecord> result = readLegacy();
+        result.addAll(events.read(hive));
+        return result;
     }
 
-    private History readOrCreate() {
-        History stored = meta.read(hive);
-        if (stored == null) {
-            return new History();
+    /**
+     * @param before only records before the given timestamp are returned.
+     * @param max the maximum amount of records to return.
+     * @return the most recent records in the history attached to the {@link InstanceManifest}, newest first.
+     */
+    public List<InstanceManifestHistoryRecord> getHistory(long before, int max) {
+        List<InstanceManifestHistoryRecord> result = events.read(hive, before, max);
+        if (result.size() < max) {
+            // legacy records are always older than all records in the event log.
+            List<InstanceManifestHistoryRecord> legacy = readLegacy();
+            Collections.reverse(legacy);
+            legacy.stream().filter(r -> r.timestamp < before).limit((long) max - result.size()).forEach(result::add);
         }
-        return stored;
+        return result;
     }
 
-    private void store(History history) {
-        meta.write(hive, history);
+    /**
+     * @return the history recorded before records were recorded in an event log.
+     */
+    private List<InstanceManifestHistoryRecord> readLegacy() {
+        History stored = meta.read(hive);
+        if (stored == null) {
+            return new ArrayList<>();
+        }
+        return stored.records;
     }
 
     private static final class History {
 
         public List<InstanceManifestHistoryRecord> records = new ArrayList<>();
-
-        public History append(InstanceManifestHistoryRecord rec) {
-            this.records.add(rec);
-            return this;
-        }
     }
 
 }
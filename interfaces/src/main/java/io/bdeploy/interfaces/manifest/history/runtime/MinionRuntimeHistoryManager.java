@@ -1,37 +1,54 @@
 package io.bdeploy.interfaces.manifest.history.runtime;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import io.bdeploy.bhive.BHiveExecution;
+import io.bdeploy.bhive.meta.MetaEventLog;
 import io.bdeploy.bhive.meta.MetaManifest;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.interfaces.configuration.pcu.ProcessState;
 
 public class MinionRuntimeHistoryManager {
 
+    /**
+     * Runtime events are only read from the node itself, so they can be kept in the local event log for quite some time.
+     */
+    private static final int COMPACT_THRESHOLD = 500;
+
     private final MetaManifest<MinionRuntimeHistory> meta;
+    private final MetaEventLog<RuntimeEvent> events;
     private final BHiveExecution hive;
 
     public MinionRuntimeHistoryManager(Manifest.Key manifest, BHiveExecution hive) {
         this.meta = new MetaManifest<>(manifest, true, MinionRuntimeHistory.class);
+        this.events = new MetaEventLog<>(manifest, true, RuntimeEvent.class, COMPACT_THRESHOLD);
         this.hive = hive;
     }
 
     public MinionRuntimeHistory getFullHistory() {
-        return readOrCreate();
+        MinionRuntimeHistory history = readOrCreate();
+        for (RuntimeEvent event : events.read(hive)) {
+            history.recordEvent(event.record, event.applicationId);
+        }
+        return history;
     }
 
     /**
      * Records a single state change event.
      * <p>
-     * The method is synchronized, since the same instance of the {@link MinionRuntimeHistoryManager} is used for process
-     * controllers. In case a process crashes and is immediately restarted (for instance) events may occur so fast on different
-     * threads for the same application, that a key conflict can occur during recording.
+     * Events are appended to an event log, thus recording does not need to read or rewrite previously recorded events.
      * </p>
      */
-    public synchronized void recordEvent(long processId, int exitCode, ProcessState action, String applicationId, String user) {
-        store(readOrCreate().recordEvent(
-                new MinionRuntimeHistoryRecord(processId, exitCode, action, user, System.currentTimeMillis()), applicationId));
+    public void recordEvent(long processId, int exitCode, ProcessState action, String applicationId, String user) {
+        long timestamp = System.currentTimeMillis();
+        events.append(hive, timestamp, new RuntimeEvent(applicationId,
+                new MinionRuntimeHistoryRecord(processId, exitCode, action, user, timestamp)));
     }
 
+    /**
+     * @return the history recorded before events were recorded in an event log.
+     */
     private MinionRuntimeHistory readOrCreate() {
         MinionRuntimeHistory stored = meta.read(hive);
         if (stored == null) {
@@ -40,7 +57,16 @@ public class MinionRuntimeHistoryManager {
         return stored;
     }
 
-    private void store(MinionRuntimeHistory history) {
-        meta.write(hive, history);
+    private static final class RuntimeEvent {
+
+        public final String applicationId;
+        public final MinionRuntimeHistoryRecord record;
+
+        @JsonCreator
+        public RuntimeEvent(@JsonProperty("applicationId") String applicationId,
+                @JsonProperty("record") MinionRuntimeHistoryRecord record) {
+            this.applicationId = applicationId;
+            this.record = record;
+        }
     }
 }
@@ -4,6 +4,7 @@ import java.io.InputStream;
 import java.util.List;
 
 import io.bdeploy.interfaces.directory.EntryChunk;
+import io.bdeploy.interfaces.directory.EntryChunkReader;
 import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
@@ -28,6 +29,31 @@ public interface CommonDirectoryEntryResource {
     @Path("/content")
     public EntryChunk getEntryContent(RemoteDirectoryEntry entry, @QueryParam("o") long offset, @QueryParam("l") long limit);
 
+    /**
+     * @param entry the {@link RemoteDirectoryEntry} to fetch content from.
+     * @param lines the amount of lines to return from the end of the file.
+     * @return a chunk containing the last lines of the given entry. Continue reading at its end pointer to follow the file.
+     */
+    @POST
+    @Path("/tail")
+    public EntryChunk getEntryTail(RemoteDirectoryEntry entry, @QueryParam("n") int lines);
+
+    /**
+     * Streams a chunk of the given entry as raw content. The start and end pointer of the chunk are passed in the
+     * {@link EntryChunk#START_POINTER_HDR} and {@link EntryChunk#END_POINTER_HDR} headers, so the response can be relayed
+     * without buffering the content.
+     *
+     * @param entry the {@link RemoteDirectoryEntry} to fetch content from.
+     * @param offset the offset into the underlying file.
+     * @param limit maximum bytes to read. 0 means no limit. A single chunk is bounded by
+     *            {@link EntryChunkReader#MAX_CHUNK_SIZE} in any case, continue reading at the end pointer to read more.
+     * @return the raw content of the chunk, see {@link #getEntryContent(RemoteDirectoryEntry, long, long)}.
+     */
+    @POST
+    @Path("/streamChunk")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response getEntryChunkStream(RemoteDirectoryEntry entry, @QueryParam("o") long offset, @QueryParam("l") long limit);
+
     /**
      * @param entry the entry to stream. The stream will include the complete content of the file.
      * @return an {@link InputStream} that can be used to stream the file.
@@ -134,6 +134,26 @@ public interface MasterNamedResource {
     public EntryChunk getEntryContent(@QueryParam("m") String minion, RemoteDirectoryEntry entry, @QueryParam("o") long offset,
             @QueryParam("l") long limit);
 
+    /**
+     * Delegates to the specified minion to receive the last lines of a file.
+     *
+     * @see CommonDirectoryEntryResource#getEntryTail(RemoteDirectoryEntry, int)
+     */
+    @POST
+    @Path("/dataDir/entryTail")
+    public EntryChunk getEntryTail(@QueryParam("m") String minion, RemoteDirectoryEntry entry, @QueryParam("n") int lines);
+
+    /**
+     * Delegates to the specified minion to stream a chunk of a file. The response of the minion is relayed as is.
+     *
+     * @see CommonDirectoryEntryResource#getEntryChunkStream(RemoteDirectoryEntry, long, long)
+     */
+    @POST
+    @Path("/dataDir/streamEntryChunk")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response getEntryChunkStream(@QueryParam("m") String minion, RemoteDirectoryEntry entry,
+            @QueryParam("o") long offset, @QueryParam("l") long limit);
+
     /**
      * @param minion the minion the entry refers to.
      * @param entry the entry to stream. The stream will include the complete
@@ -1,9 +1,11 @@
 package io.bdeploy.interfaces.remote;
 
 import java.util.List;
+import java.util.Map;
 
 import io.bdeploy.interfaces.configuration.pcu.InstanceNodeStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceUsageDto;
 import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
 import io.bdeploy.interfaces.manifest.history.runtime.MinionRuntimeHistoryDto;
 import jakarta.ws.rs.Consumes;
@@ -104,6 +106,16 @@ public interface NodeProcessResource {
     @Path("/process-status")
     public InstanceNodeStatusDto getStatus(@QueryParam("u") String instanceId);
 
+    /**
+     * Returns status information about all instances on this node at once. Allows to query the status of many instances without
+     * calling {@link #getStatus(String)} for each of them.
+     *
+     * @return the status information of each instance known to the node. Key = InstanceId.
+     */
+    @GET
+    @Path("/process-status-all")
+    public Map<String, InstanceNodeStatusDto> getStatusOfAllInstances();
+
     /**
      * Returns the full status of a single application.
      *
@@ -115,6 +127,18 @@ public interface NodeProcessResource {
     @Path("/process-details")
     public ProcessDetailDto getProcessDetails(@QueryParam("u") String instanceId, @QueryParam("a") String appId);
 
+    /**
+     * Returns the history of resources (CPU, memory, threads, file descriptors) used by a single application and its child
+     * processes.
+     *
+     * @param instanceId the unique id of the instance.
+     * @param appId the application UID to query
+     * @return the resources sampled while the application was running.
+     */
+    @GET
+    @Path("/resource-usage")
+    public ProcessResourceUsageDto getResourceUsage(@QueryParam("u") String instanceId, @QueryParam("a") String appId);
+
     /**
      * @param instanceId the instance ID
      * @param tag the tag for which to retrieve the output file entry.
@@ -1,21 +1,31 @@
 package io.bdeploy.interfaces.variables;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.function.UnaryOperator;
+import java.util.Map;
 
 import io.bdeploy.common.util.VariableResolver;
 
 /**
  * Represents a list of resolvers that are called in the registered order until one can resolve the value.
+ * <p>
+ * A {@link PrefixResolver} can only resolve variables with its own prefix. Thus the resolvers are bound to the prefixes they can
+ * resolve once, and only those are called for a variable.
  */
 public class CompositeResolver implements VariableResolver {
 
     private final List<VariableResolver> resolvers = new ArrayList<>();
 
+    /**
+     * The resolvers to call for each prefix of {@link Variables} in the registered order, and for variables without a known
+     * prefix using an empty prefix. Built when first required.
+     */
+    private volatile Map<String, VariableResolver[]> byPrefix;
+
     @Override
     public String apply(String varName) {
-        for (UnaryOperator<String> resolver : resolvers) {
+        for (VariableResolver resolver : getResolvers(varName)) {
             String v = resolver.apply(varName);
             if (v != null) {
                 return v;
@@ -27,8 +37,39 @@ public class CompositeResolver implements VariableResolver {
     /**
      * Adds an additional resolver to the list of resolvers
      */
-    public void add(VariableResolver resolver) {
+    public synchronized void add(VariableResolver resolver) {
         this.resolvers.add(resolver);
+        this.byPrefix = null;
+    }
+
+    private VariableResolver[] getResolvers(String varName) {
+        Map<String, VariableResolver[]> bound = byPrefix;
+        if (bound == null) {
+            bound = bindResolvers();
+        }
+
+        // all prefixes end with the first colon.
+        int colon = varName.indexOf(':');
+        if (colon >= 0) {
+            VariableResolver[] result = bound.get(varName.substring(0, colon + 1));
+            if (result != null) {
+                return result;
+            }
+        }
+        return bound.get("");
+    }
+
+    private synchronized Map<String, VariableResolver[]> bindResolvers() {
+        Map<String, VariableResolver[]> bound = new HashMap<>();
+        for (Variables variable : Variables.values()) {
+            bound.put(variable.getPrefix(),
+                    resolvers.stream().filter(r -> !(r instanceof PrefixResolver) || ((PrefixResolver) r).prefix == variable)
+                            .toArray(VariableResolver[]::new));
+        }
+        bound.put("", resolvers.stream().filter(r -> !(r instanceof PrefixResolver)).toArray(VariableResolver[]::new));
+
+        byPrefix = bound;
+        return bound;
     }
 
 }
@@ -5,6 +5,8 @@ import io.bdeploy.common.util.VariableResolver;
 /**
  * Base class for all resolvers that replace variables with their actual value. Also handles arithmetic calculations for
  * {@link Variables} which support them.
+ * <p>
+ * A {@link PrefixResolver} never resolves variables not starting with its prefix, which {@link CompositeResolver} relies on.
  */
 public abstract class PrefixResolver implements VariableResolver {
 
@@ -20,7 +22,7 @@ public abstract class PrefixResolver implements VariableResolver {
     }
 
     @Override
-    public String apply(String s) {
+    public final String apply(String s) {
         String prefixString = prefix.getPrefix();
         if (!s.startsWith(prefixString)) {
             return null;
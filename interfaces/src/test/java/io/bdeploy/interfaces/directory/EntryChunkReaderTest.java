@@ -0,0 +1,91 @@
+package io.bdeploy.interfaces.directory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntryChunkReaderTest {
+
+    @Test
+    void testReadChunks(@TempDir Path tmp) throws IOException {
+        Path file = tmp.resolve("test.log");
+        Files.writeString(file, "0123456789");
+
+        EntryChunk all = EntryChunkReader.read(file, 0, 0);
+        assertEquals("0123456789", new String(all.content, StandardCharsets.UTF_8));
+        assertEquals(0, all.startPointer);
+        assertEquals(10, all.endPointer);
+
+        EntryChunk part = EntryChunkReader.read(file, 3, 4);
+        assertEquals("3456", new String(part.content, StandardCharsets.UTF_8));
+        assertEquals(3, part.startPointer);
+        assertEquals(7, part.endPointer);
+
+        assertNull(EntryChunkReader.read(file, 10, 0));
+        assertSame(EntryChunk.ROLLOVER_CHUNK, EntryChunkReader.read(file, 11, 0));
+    }
+
+    @Test
+    void testReadLarge(@TempDir Path tmp) throws IOException {
+        Path file = tmp.resolve("test.log");
+        byte[] content = new byte[EntryChunkReader.MAX_CHUNK_SIZE + 5];
+        content[content.length - 1] = 'x';
+        Files.write(file, content);
+
+        // no limit means no limit, only followers bound their chunks explicitly.
+        EntryChunk all = EntryChunkReader.read(file, 0, 0);
+        assertArrayEquals(content, all.content);
+        assertEquals(content.length, all.endPointer);
+
+        EntryChunk bounded = EntryChunkReader.read(file, 0, EntryChunkReader.MAX_CHUNK_SIZE);
+        assertEquals(EntryChunkReader.MAX_CHUNK_SIZE, bounded.content.length);
+        assertEquals(EntryChunkReader.MAX_CHUNK_SIZE, bounded.endPointer);
+    }
+
+    @Test
+    void testTransfer(@TempDir Path tmp) throws IOException {
+        Path file = tmp.resolve("test.log");
+        Files.writeString(file, "0123456789");
+
+        EntryChunkReader.Range range = EntryChunkReader.range(file, 2, 5);
+        assertEquals(2, range.start);
+        assertEquals(7, range.end);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertEquals(5, EntryChunkReader.transfer(file, range, baos));
+        assertArrayEquals("23456".getBytes(StandardCharsets.UTF_8), baos.toByteArray());
+    }
+
+    @Test
+    void testTail(@TempDir Path tmp) throws IOException {
+        Path file = tmp.resolve("test.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5_000; ++i) {
+            content.append("line ").append(i).append('\n');
+        }
+        Files.writeString(file, content);
+
+        EntryChunk tail = EntryChunkReader.read(file, EntryChunkReader.findTailOffset(file, 3), 0);
+        assertEquals("line 4997\nline 4998\nline 4999\n", new String(tail.content, StandardCharsets.UTF_8));
+        assertEquals(Files.size(file), tail.endPointer);
+
+        // more lines than present returns the whole file.
+        assertEquals(0, EntryChunkReader.findTailOffset(file, 10_000));
+        assertEquals(Files.size(file), EntryChunkReader.findTailOffset(file, 0));
+
+        // no trailing line end.
+        Files.writeString(file, "a\nb\nc");
+        assertEquals(2, EntryChunkReader.findTailOffset(file, 2));
+    }
+
+}
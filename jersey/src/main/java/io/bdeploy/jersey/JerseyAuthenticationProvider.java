@@ -6,6 +6,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 import javax.annotation.Priority;
@@ -13,6 +14,9 @@ import javax.annotation.Priority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import io.bdeploy.common.audit.AuditRecord;
 import io.bdeploy.common.audit.Auditor;
 import io.bdeploy.common.security.ApiAccessToken;
@@ -49,6 +53,13 @@ public class JerseyAuthenticationProvider implements ContainerRequestFilter, Con
     private static final String NO_AUTH = "unsecured";
     private static final String WEAK_AUTH = "weak";
 
+    /**
+     * Tokens which have already been verified. Verifying the signature and decoding the payload of the same token on every
+     * request is expensive, especially with frequent polling.
+     */
+    private static final Cache<String, VerifiedToken> verifiedTokens = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS).maximumSize(1_000).build();
+
     private final KeyStore store;
     private final Predicate<ApiAccessToken> tokenValidator;
     private final JerseySessionManager sessionManager;
@@ -203,16 +214,42 @@ public class JerseyAuthenticationProvider implements ContainerRequestFilter, Con
     }
 
     public static ApiAccessToken validateToken(String tokenValue, KeyStore ks) {
-        try {
-            ApiAccessToken token = SecurityHelper.getInstance().getVerifiedPayload(tokenValue, ApiAccessToken.class, ks);
+        VerifiedToken verified = verifiedTokens.getIfPresent(tokenValue);
+        if (verified == null || verified.store != ks) {
+            ApiAccessToken token;
+            try {
+                token = SecurityHelper.getInstance().getVerifiedPayload(tokenValue, ApiAccessToken.class, ks);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot verify access token.", e);
+            }
 
-            if (token != null && token.isValid()) {
-                return token;
-            } else {
+            if (token == null) {
                 throw new IllegalStateException("Access token is null or no longer valid");
             }
-        } catch (GeneralSecurityException e) {
-            throw new IllegalStateException("Cannot verify access token.", e);
+
+            verified = new VerifiedToken(ks, token);
+            verifiedTokens.put(tokenValue, verified);
+        }
+
+        // expiry must be checked on each use, as the token may have expired since it has been verified.
+        if (!verified.token.isValid()) {
+            verifiedTokens.invalidate(tokenValue);
+            throw new IllegalStateException("Access token is null or no longer valid");
+        }
+        return verified.token;
+    }
+
+    /**
+     * A token which has been verified using the given {@link KeyStore}.
+     */
+    private static final class VerifiedToken {
+
+        private final KeyStore store;
+        private final ApiAccessToken token;
+
+        private VerifiedToken(KeyStore store, ApiAccessToken token) {
+            this.store = store;
+            this.token = token;
         }
     }
 }
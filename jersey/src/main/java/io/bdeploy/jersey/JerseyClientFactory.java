@@ -2,8 +2,11 @@ package io.bdeploy.jersey;
 
 import java.net.URI;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -12,6 +15,7 @@ import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 
+import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.client.proxy.WebResourceFactory;
@@ -56,14 +60,18 @@ public class JerseyClientFactory {
     private static final Logger log = LoggerFactory.getLogger(JerseyClientFactory.class);
     private static final Cache<RemoteService, JerseyClientFactory> factoryCache = CacheBuilder.newBuilder().maximumSize(100)
             .expireAfterAccess(5, TimeUnit.MINUTES).build();
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
 
     private final Set<com.fasterxml.jackson.databind.Module> additionalModules = new HashSet<>();
+    private final Map<Class<?>, Object> cachedProxies = new ConcurrentHashMap<>();
     private final RemoteService svc;
 
     private SSLContext sslContext;
+    private TrustManager[] trustManagers;
     private String bearer;
     private JerseyObjectMapper mapperFeature;
     private WebTarget cachedTarget;
+    private final JerseyHttpConnector connector;
 
     /**
      * @param svc the {@link RemoteService} specification to create clients for.
@@ -76,13 +84,16 @@ public class JerseyClientFactory {
 
             // composite of default trust manager (for official certificates), and the target server's
             // self-signed internal certificate (part of the authentication token).
-            TrustManager[] tm = CompositeX509TrustManager.getTrustManagers(svc.getKeyStore().getStore());
+            trustManagers = CompositeX509TrustManager.getTrustManagers(svc.getKeyStore().getStore());
 
             sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, tm, null);
+            sslContext.init(null, trustManagers, null);
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException("Cannot initialize security", e);
         }
+
+        // all clients share the connector, and thus the connections to the remote.
+        connector = new JerseyHttpConnector(trustManagers, CONNECT_TIMEOUT);
     }
 
     private JerseyClientFactory(RemoteService svc, String bearer) {
@@ -90,9 +101,12 @@ public class JerseyClientFactory {
         this.bearer = bearer;
         try {
             sslContext = SSLContext.getDefault();
+            trustManagers = JerseyHttpConnector.getDefaultTrustManagers();
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException("Cannot initialize security", e);
         }
+
+        connector = new JerseyHttpConnector(trustManagers, CONNECT_TIMEOUT);
     }
 
     public static JerseyClientFactory get(RemoteService svc) {
@@ -122,6 +136,7 @@ public class JerseyClientFactory {
         }
 
         cachedTarget = null;
+        cachedProxies.clear();
         additionalModules.add(o);
 
         // reset.
@@ -138,9 +153,17 @@ public class JerseyClientFactory {
 
     /**
      * @param clazz the type of resource (service interface).
-     * @return A dynamic proxy based client for the given remote service.
+     * @return A dynamic proxy based client for the given remote service. Proxies without additional registrations are cached
+     *         and shared, as they are stateless.
      */
     public <T> T getProxyClient(Class<T> clazz, Object... additionalRegistrations) {
+        if (additionalRegistrations.length == 0) {
+            return clazz.cast(cachedProxies.computeIfAbsent(clazz, c -> createProxyClient(clazz)));
+        }
+        return createProxyClient(clazz, additionalRegistrations);
+    }
+
+    private <T> T createProxyClient(Class<T> clazz, Object... additionalRegistrations) {
         Path path = clazz.getAnnotation(Path.class);
         // Sub-Resources that are provided by another resource have - by convention - no path declared
         // Trying to directly resolve them could lead to troubles that are hard to discover and debug
@@ -161,14 +184,13 @@ public class JerseyClientFactory {
             return cachedTarget;
         }
 
-        ClientBuilder builder = ClientBuilder.newBuilder();
-
-        // for HttpUrlConnection to allow restricted headers, see https://eclipse-ee4j.github.io/jersey.github.io/documentation/latest/client.html#d0e4971
-        System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
+        JerseyHttpConnector shared = connector;
+        ClientBuilder builder = ClientBuilder.newBuilder()
+                .withConfig(new ClientConfig().connectorProvider((client, config) -> shared));
 
         // 30 seconds to connect must be enough. NEVER set ANY read timeout. Otherwise closing bogus HTTPS connections can block
         // ALL other HTTPS connections, see sun.security.ssl.SSLSocketImpl.AppInputStream.readLockedDeplete().
-        builder.connectTimeout(30, TimeUnit.SECONDS);
+        builder.connectTimeout(CONNECT_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
 
         builder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
 
@@ -0,0 +1,566 @@
+package io.bdeploy.jersey;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.message.internal.Statuses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.bdeploy.common.metrics.Metrics;
+import io.bdeploy.common.metrics.Metrics.MetricGroup;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * A Jersey {@link Connector} based on the JDK {@link HttpClient}.
+ * <p>
+ * The {@link HttpClient} keeps connections alive and re-uses them for subsequent requests. A single connector is shared by all
+ * clients created by a {@link JerseyClientFactory}, so all requests to a remote share the same connections. The amount of
+ * concurrent requests (and thus connections) to a remote is bounded, see {@link #MAX_REQUESTS_PROPERTY}. Streamed requests and
+ * responses (e.g. downloads, process output or pushed objects) can take arbitrarily long, thus they do not count against the
+ * limit once the response headers arrived, and streamed request entities never do. Responses which are never closed release
+ * their connection once they are garbage collected.
+ * <p>
+ * Request entities are streamed to the remote while they are written, they are never buffered completely.
+ */
+final class JerseyHttpConnector implements Connector {
+
+    private static final Logger log = LoggerFactory.getLogger(JerseyHttpConnector.class);
+
+    /**
+     * Allows to use HTTP/2 (h2c for plain HTTP), if the remote supports it.
+     */
+    static final String HTTP2_PROPERTY = "bdeploy.client.http2";
+
+    /**
+     * The maximum amount of concurrent requests to a single remote, 32 by default.
+     */
+    static final String MAX_REQUESTS_PROPERTY = "bdeploy.client.maxRequests";
+
+    /**
+     * The maximum time in seconds to wait for a request to be allowed once the limit is reached, 30 by default. Requests
+     * exceed the limit once the time has passed.
+     */
+    static final String MAX_WAIT_PROPERTY = "bdeploy.client.maxWaitSeconds";
+
+    private static final int MAX_CONCURRENT_REQUESTS = Math.max(1, Integer.getInteger(MAX_REQUESTS_PROPERTY, 32));
+    private static final long MAX_WAIT_SECONDS = Math.max(0, Long.getLong(MAX_WAIT_PROPERTY, 30));
+
+    /** Headers which are set by the {@link HttpClient} itself, and cannot be set on requests */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    /** Releases connections of responses which have not been closed by their user */
+    private static final Cleaner CLEANER = Cleaner.create(new NamedDaemonThreadFactory("HTTP Response Cleaner"));
+
+    /** Runs asynchronous requests, which block while sending the request and waiting for the response */
+    private static final ExecutorService ASYNC_EXECUTOR = Executors
+            .newCachedThreadPool(new NamedDaemonThreadFactory("HTTP Async Request"));
+
+    private static final LongAdder activeRequests = new LongAdder();
+    private static final LongAdder waitingRequests = new LongAdder();
+    private static final Meter requests;
+    private static final Counter exhausted;
+
+    static {
+        MetricRegistry registry = Metrics.getMetric(MetricGroup.HTTP);
+        registry.gauge("JerseyHttpConnector.ActiveRequests", () -> activeRequests::sum);
+        registry.gauge("JerseyHttpConnector.WaitingRequests", () -> waitingRequests::sum);
+        requests = registry.meter("JerseyHttpConnector.Requests");
+        exhausted = registry.counter("JerseyHttpConnector.Exhausted");
+    }
+
+    private final HttpClient client;
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+
+    /**
+     * @param trustManagers the {@link TrustManager}s used to validate the certificates of the remote.
+     * @param connectTimeout the maximum time to wait for a connection to be established.
+     */
+    JerseyHttpConnector(TrustManager[] trustManagers, Duration connectTimeout) {
+        this.client = HttpClient.newBuilder().sslContext(createSslContext(trustManagers)).connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .version(Boolean.getBoolean(HTTP2_PROPERTY) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1).build();
+    }
+
+    /**
+     * @return the default {@link TrustManager}s of the JVM.
+     */
+    static TrustManager[] getDefaultTrustManagers() throws GeneralSecurityException {
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init((KeyStore) null);
+        return tmf.getTrustManagers();
+    }
+
+    /**
+     * The {@link HttpClient} always verifies host names, which the other clients created by the {@link JerseyClientFactory}
+     * never do. Trust managers which care about the connection are responsible for host name verification themselves, thus
+     * the given ones are wrapped to only validate certificates.
+     */
+    private static SSLContext createSslContext(TrustManager[] trustManagers) {
+        TrustManager[] wrapped = new TrustManager[trustManagers.length];
+        for (int i = 0; i < trustManagers.length; ++i) {
+            if (trustManagers[i] instanceof X509TrustManager) {
+                wrapped[i] = new CertificateOnlyTrustManager((X509TrustManager) trustManagers[i]);
+            } else {
+                wrapped[i] = trustManagers[i];
+            }
+        }
+
+        try {
+            SSLContext ctx = SSLContext.getInstance("TLS");
+            ctx.init(null, wrapped, null);
+            return ctx;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize security", e);
+        }
+    }
+
+    @Override
+    public ClientResponse apply(ClientRequest request) {
+        Permit permit = isStreaming(request) ? new Permit(false) : acquire();
+        try {
+            requests.mark();
+            HttpResponse<InputStream> response = send(request);
+
+            ClientResponse result = new ClientResponse(Statuses.from(response.statusCode()), request);
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                // skip HTTP/2 pseudo headers like ':status'.
+                if (!header.getKey().startsWith(":")) {
+                    result.getHeaders().addAll(header.getKey(), header.getValue());
+                }
+            }
+            result.setResolvedRequestUri(response.uri());
+            result.setEntityStream(new ReleasingInputStream(response.body(), permit));
+            if (!hasBody(request, response)) {
+                // users often don't bother to close responses without entity.
+                permit.release();
+            } else if (isStreaming(response)) {
+                // the connection is still in use until the response is consumed, but must not block other requests meanwhile.
+                permit.release();
+            }
+            return result;
+        } catch (IOException e) {
+            permit.release();
+            throw new ProcessingException(e);
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                callback.response(apply(request));
+            } catch (Throwable t) {
+                // the callback must be notified about any problem, otherwise the caller waits forever.
+                callback.failure(t);
+            }
+        }, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public String getName() {
+        return "JDK HttpClient";
+    }
+
+    @Override
+    public void close() {
+        // shared by all clients of a JerseyClientFactory. connections are closed once the client is no longer referenced.
+    }
+
+    private Permit acquire() {
+        waitingRequests.increment();
+        try {
+            if (permits.tryAcquire(MAX_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                return new Permit(true);
+            }
+
+            // responses which are never closed keep their permit until garbage collected. never block forever because of that.
+            exhausted.inc();
+            log.warn("No free connection after {} seconds, exceeding the limit of {} concurrent requests, see {}",
+                    MAX_WAIT_SECONDS, MAX_CONCURRENT_REQUESTS, MAX_REQUESTS_PROPERTY);
+            return new Permit(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting for a connection", e);
+        } finally {
+            waitingRequests.decrement();
+        }
+    }
+
+    /**
+     * @return whether the request streams its entity, which might take arbitrarily long.
+     */
+    private static boolean isStreaming(ClientRequest request) {
+        return request.hasEntity() && MediaType.APPLICATION_OCTET_STREAM_TYPE.isCompatible(request.getMediaType());
+    }
+
+    /**
+     * @return whether the response is streamed, i.e. its length is not known up front or it is a raw stream.
+     */
+    private static boolean isStreaming(HttpResponse<InputStream> response) {
+        if (response.headers().firstValueAsLong("content-length").isEmpty()) {
+            return true;
+        }
+        return response.headers().firstValue("content-type")
+                .map(t -> t.toLowerCase().startsWith(MediaType.APPLICATION_OCTET_STREAM)).orElse(false);
+    }
+
+    private static boolean hasBody(ClientRequest request, HttpResponse<InputStream> response) {
+        int status = response.statusCode();
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || status == 204 || status == 304) {
+            return false;
+        }
+        return response.headers().firstValueAsLong("content-length").orElse(-1) != 0;
+    }
+
+    private HttpResponse<InputStream> send(ClientRequest request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri());
+
+        int readTimeout = request.resolveProperty(ClientProperties.READ_TIMEOUT, 0);
+        if (readTimeout > 0) {
+            builder.timeout(Duration.ofMillis(readTimeout));
+        }
+
+        if (!request.hasEntity()) {
+            addHeaders(builder, request);
+            builder.method(request.getMethod(), BodyPublishers.noBody());
+            return await(client.sendAsync(builder.build(), BodyHandlers.ofInputStream()));
+        }
+
+        // the entity is written to the pipe on this thread, while the HttpClient reads from it concurrently.
+        Pipe pipe = Pipe.open();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        AtomicBoolean started = new AtomicBoolean(false);
+        CompletableFuture<HttpResponse<InputStream>> response = new CompletableFuture<>();
+
+        request.setStreamProvider(contentLength -> {
+            // headers are final once the entity stream is requested.
+            started.set(true);
+            addHeaders(builder, request);
+
+            AtomicBoolean opened = new AtomicBoolean(false);
+            BodyPublisher body = BodyPublishers.ofInputStream(() -> {
+                if (opened.getAndSet(true)) {
+                    // e.g. a redirect which requires to send the entity again.
+                    return new RepeatedEntityStream();
+                }
+                return new FailingInputStream(pipe.source(), failure);
+            });
+            if (contentLength > 0) {
+                body = BodyPublishers.fromPublisher(body, contentLength);
+            }
+            builder.method(request.getMethod(), body);
+
+            client.sendAsync(builder.build(), BodyHandlers.ofInputStream()).whenComplete((r, e) -> {
+                if (e != null) {
+                    response.completeExceptionally(e);
+                } else {
+                    response.complete(r);
+                }
+                // the remote might respond before reading the whole entity, make sure writing it does not block forever.
+                closeQuietly(pipe.source());
+            });
+
+            return Channels.newOutputStream(pipe.sink());
+        });
+
+        try {
+            request.writeEntity();
+        } catch (IOException | RuntimeException e) {
+            // make sure the remote does not see a (seemingly complete) partial entity.
+            failure.set(e instanceof IOException ? (IOException) e : new IOException(e));
+            closeQuietly(pipe.sink());
+            if (!started.get()) {
+                closeQuietly(pipe.source());
+            }
+
+            if (response.isDone() && !response.isCompletedExceptionally()) {
+                return response.join();
+            }
+            throw e;
+        }
+
+        if (!started.get()) {
+            closeQuietly(pipe.sink());
+            closeQuietly(pipe.source());
+            throw new ProcessingException("Request entity has not been written");
+        }
+        return await(response);
+    }
+
+    private static HttpResponse<InputStream> await(CompletableFuture<HttpResponse<InputStream>> response) throws IOException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting for a response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new ProcessingException(e.getCause());
+        }
+    }
+
+    private static void addHeaders(HttpRequest.Builder builder, ClientRequest request) {
+        for (Map.Entry<String, List<String>> header : request.getStringHeaders().entrySet()) {
+            if (RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.trace("Cannot close pipe", e);
+        }
+    }
+
+    /**
+     * A permit to run a request, released once the response has been read completely or is closed.
+     */
+    private final class Permit {
+
+        private final boolean acquired;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(boolean acquired) {
+            this.acquired = acquired;
+            activeRequests.increment();
+        }
+
+        boolean isReleased() {
+            return released.get();
+        }
+
+        void release() {
+            if (released.getAndSet(true)) {
+                return;
+            }
+            if (acquired) {
+                permits.release();
+            }
+            activeRequests.decrement();
+        }
+    }
+
+    /**
+     * Releases the {@link Permit} of a request once the response has been consumed, closed, or is no longer referenced.
+     */
+    private static final class ReleasingInputStream extends FilterInputStream {
+
+        private final Permit permit;
+        private final Cleaner.Cleanable cleanable;
+
+        private ReleasingInputStream(InputStream in, Permit permit) {
+            super(in);
+            this.permit = permit;
+            this.cleanable = CLEANER.register(this, new LeakedResponseCleanup(in, permit));
+        }
+
+        @Override
+        public int read() throws IOException {
+            return released(super.read());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return released(super.read(b, off, len));
+        }
+
+        private int released(int result) {
+            if (result < 0) {
+                permit.release();
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release();
+                cleanable.clean();
+            }
+        }
+    }
+
+    /**
+     * Closes the body of a response which has been garbage collected without being consumed or closed. Must not reference the
+     * {@link ReleasingInputStream} itself, otherwise it never becomes unreachable.
+     */
+    private static final class LeakedResponseCleanup implements Runnable {
+
+        private final InputStream body;
+        private final Permit permit;
+
+        private LeakedResponseCleanup(InputStream body, Permit permit) {
+            this.body = body;
+            this.permit = permit;
+        }
+
+        @Override
+        public void run() {
+            if (permit.isReleased()) {
+                return;
+            }
+
+            log.debug("Releasing connection of a response which has not been closed");
+            try {
+                body.close();
+            } catch (IOException e) {
+                log.trace("Cannot close response", e);
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Reads the entity from the pipe, failing instead of reporting the end of the entity if writing it failed.
+     */
+    private static final class FailingInputStream extends FilterInputStream {
+
+        private final AtomicReference<IOException> failure;
+
+        private FailingInputStream(Pipe.SourceChannel source, AtomicReference<IOException> failure) {
+            super(Channels.newInputStream(source));
+            this.failure = failure;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return checked(super.read());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return checked(super.read(b, off, len));
+        }
+
+        private int checked(int result) throws IOException {
+            IOException e = failure.get();
+            if (result < 0 && e != null) {
+                throw new IOException("Writing the request entity failed", e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Fails to read the entity of a request a second time, as it is streamed and not available anymore.
+     */
+    private static final class RepeatedEntityStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("Request entity cannot be sent repeatedly");
+        }
+    }
+
+    /**
+     * Validates certificates using a delegate, but leaves host name verification to the delegate's caller.
+     */
+    private static final class CertificateOnlyTrustManager extends X509ExtendedTrustManager {
+
+        private final X509TrustManager delegate;
+
+        private CertificateOnlyTrustManager(X509TrustManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package io.bdeploy.jersey.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.glassfish.jersey.client.proxy.WebResourceFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+
+import io.bdeploy.common.metrics.Metrics;
+import io.bdeploy.common.metrics.Metrics.MetricGroup;
+import io.bdeploy.common.security.RemoteService;
+import io.bdeploy.common.security.SecurityHelper;
+import io.bdeploy.jersey.ClientSslContextAccessor;
+import io.bdeploy.jersey.JerseyClientFactory;
+import io.bdeploy.jersey.JerseyOnBehalfOfFilter;
+import io.bdeploy.jersey.TestServer;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.WebTarget;
+
+class ConnectorTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectorTest.class);
+    private static final int REQUESTS = 500;
+
+    @RegisterExtension
+    private final TestServer srv = new TestServer(ConnectorTestResourceImpl.class);
+
+    @Test
+    void testCachedProxies(JerseyClientFactory f) {
+        ConnectorTestResource rs = f.getProxyClient(ConnectorTestResource.class);
+        assertSame(rs, f.getProxyClient(ConnectorTestResource.class));
+
+        // additional registrations are specific to the caller.
+        assertNotSame(rs, f.getProxyClient(ConnectorTestResource.class, new JerseyOnBehalfOfFilter(null)));
+    }
+
+    @Test
+    void testManySmallRequests(JerseyClientFactory f, RemoteService svc) throws Exception {
+        ConnectorTestResource rs = f.getProxyClient(ConnectorTestResource.class);
+        assertEquals("pong", rs.ping()); // warm up
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; ++i) {
+            assertEquals("pong", rs.ping());
+        }
+        long pooled = System.nanoTime() - start;
+
+        // the same using Jersey's default connector, creating the proxy on every call as before.
+        String token = SecurityHelper.getInstance().getSignedToken(svc.getKeyStore().getStore(), svc.getKeyStore().getPass());
+        ClientRequestFilter bearer = ctx -> ctx.getHeaders().add("Authorization", "Bearer " + token);
+        WebTarget target = ClientBuilder.newBuilder().sslContext(ClientSslContextAccessor.get(f)).hostnameVerifier((h, s) -> true)
+                .register(bearer).build().target(svc.getUri());
+        assertEquals("pong", target.path("/connector").request().get(String.class)); // warm up
+
+        start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; ++i) {
+            assertEquals("pong", WebResourceFactory.newResource(ConnectorTestResource.class, target).ping());
+        }
+        long unpooled = System.nanoTime() - start;
+
+        log.info("{} requests: {}µs per request pooled, {}µs per request using the default connector", REQUESTS,
+                pooled / REQUESTS / 1000, unpooled / REQUESTS / 1000);
+    }
+
+    @Test
+    void testConcurrentRequests(ConnectorTestResource rs) throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(64);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; ++i) {
+                String value = "Value " + i;
+                results.add(es.submit(() -> rs.echo(value)));
+            }
+            for (int i = 0; i < REQUESTS; ++i) {
+                assertEquals("Value " + i, results.get(i).get());
+            }
+        } finally {
+            es.shutdownNow();
+        }
+
+        // all responses have been consumed, so no request may hold on to a connection.
+        assertEquals(0L, getActiveRequests());
+    }
+
+    @Test
+    void testResponsesWithoutEntity(ConnectorTestResource rs) {
+        // nobody closes the responses of void methods, which must not keep the connection until the limit is reached.
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            for (int i = 0; i < 100; ++i) {
+                rs.discard("Value " + i);
+            }
+        });
+        assertEquals(0L, getActiveRequests());
+    }
+
+    @Test
+    void testStreamsDoNotBlock(ConnectorTestResource rs) throws Exception {
+        List<InputStream> streams = new ArrayList<>();
+        try {
+            // streams which are read slowly (or not at all) must not block other requests until the limit is reached.
+            assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+                for (int i = 0; i < 64; ++i) {
+                    streams.add(rs.stream());
+                }
+                assertEquals("pong", rs.ping());
+            });
+        } finally {
+            for (InputStream stream : streams) {
+                stream.close();
+            }
+        }
+    }
+
+    private static Object getActiveRequests() {
+        Gauge<?> active = Metrics.getMetric(MetricGroup.HTTP).getGauges().get("JerseyHttpConnector.ActiveRequests");
+        return active.getValue();
+    }
+
+}
@@ -0,0 +1,29 @@
+package io.bdeploy.jersey.connector;
+
+import java.io.InputStream;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/connector")
+public interface ConnectorTestResource {
+
+    @GET
+    public String ping();
+
+    @POST
+    public String echo(String value);
+
+    @POST
+    @Path("/discard")
+    public void discard(String value);
+
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public InputStream stream();
+
+}
@@ -0,0 +1,28 @@
+package io.bdeploy.jersey.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+public class ConnectorTestResourceImpl implements ConnectorTestResource {
+
+    @Override
+    public String ping() {
+        return "pong";
+    }
+
+    @Override
+    public String echo(String value) {
+        return value;
+    }
+
+    @Override
+    public void discard(String value) {
+        // nothing to do.
+    }
+
+    @Override
+    public InputStream stream() {
+        return new ByteArrayInputStream(new byte[1024 * 1024]);
+    }
+
+}
@@ -1,6 +1,13 @@
 package io.bdeploy.logging.audit;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.zip.Deflater;
 
@@ -19,11 +26,16 @@ import org.slf4j.LoggerFactory;
 import io.bdeploy.common.audit.AuditRecord;
 import io.bdeploy.common.audit.Auditor;
 import io.bdeploy.common.audit.NullAuditor;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
 import io.bdeploy.common.util.ZipHelper;
 
 /**
  * The {@link RollingFileAuditor} logs audit records to a rolling log file. It must
  * be closed when it is not needed any more to release file locks.
+ * <p>
+ * Records are queued and written in batches on a background thread shared by all instances, so callers do not wait for the
+ * file system. If the queue is full, callers wait until there is space again, so no record is ever dropped. Closing the
+ * auditor writes all pending records.
  */
 public class RollingFileAuditor implements Auditor {
 
@@ -34,8 +46,15 @@ public class RollingFileAuditor implements Auditor {
     public static final String LOG_TXT_FILENAME = "audit.log";
     public static final String LOG_TXT_FILEPATTERN = "audit-%i.log.gz";
 
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int BATCH_SIZE = 500;
+    private static final ExecutorService writer = Executors
+            .newSingleThreadExecutor(new NamedDaemonThreadFactory("Audit Writer"));
+
     private final Path logDir;
     private final RollingFileAppender logAppender;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
 
     private RollingFileAuditor(Path logDir) {
         this.logDir = logDir;
@@ -72,18 +91,66 @@ public class RollingFileAuditor implements Auditor {
     }
 
     /**
-     * Writes the given audit record to the file-system.
+     * Queues the given audit record to be written to the file-system.
      *
      * @param rec the record to write
      */
     @Override
     public void audit(AuditRecord rec) {
+        if (logAppender.isStopped()) {
+            return;
+        }
+
+        Entry entry = new Entry(rec, System.currentTimeMillis());
+        if (!queue.offer(entry)) {
+            try {
+                // backpressure: wait for the writer to catch up instead of dropping the record.
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                write(List.of(entry));
+                return;
+            }
+        }
+
+        if (scheduled.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                scheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Writes all currently queued records to the file-system.
+     */
+    public void flush() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        synchronized (queue) {
+            while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        for (int i = 0; i < batch.size(); ++i) {
+            // only the last event of a batch flushes the file.
+            write(batch.get(i), i == batch.size() - 1);
+        }
+    }
+
+    private void write(Entry entry, boolean endOfBatch) {
+        AuditRecord rec = entry.rec;
         try {
             if (logAppender.isStopped()) {
                 return;
             }
 
             Log4jLogEvent.Builder builder = Log4jLogEvent.newBuilder();
+            builder.setTimeMillis(entry.timestamp);
+            builder.setEndOfBatch(endOfBatch);
             builder.setMessage(new SimpleMessage(rec.message));
             switch (rec.severity) {
                 case NORMAL:
@@ -114,6 +181,7 @@ public class RollingFileAuditor implements Auditor {
     @Override
     public void close() {
         if (logAppender != null) {
+            flush();
             logAppender.stop();
         }
     }
@@ -137,10 +205,25 @@ public class RollingFileAuditor implements Auditor {
         builder.withFilePattern(logDir.resolve(LOG_TXT_FILEPATTERN).toString());
         builder.withPolicy(SizeBasedTriggeringPolicy.createPolicy("5M"));
         builder.setLayout(PatternLayout.newBuilder().withPattern(LOG_PATTERN).build());
+        builder.setImmediateFlush(false);
         builder.withStrategy(
                 DefaultRolloverStrategy.newBuilder().withCompressionLevelStr(String.valueOf(Deflater.DEFAULT_COMPRESSION))
                         .withMax(Integer.toString(LOG_MAX_INDEX)).withFileIndex("min").build());
         return builder.build();
     }
 
+    /**
+     * A queued {@link AuditRecord} along with the time it has been audited.
+     */
+    private static final class Entry {
+
+        private final AuditRecord rec;
+        private final long timestamp;
+
+        private Entry(AuditRecord rec, long timestamp) {
+            this.rec = rec;
+            this.timestamp = timestamp;
+        }
+    }
+
 }
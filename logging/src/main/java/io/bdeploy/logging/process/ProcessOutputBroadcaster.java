@@ -0,0 +1,296 @@
+package io.bdeploy.logging.process;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.common.NoThrowAutoCloseable;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+
+/**
+ * Distributes process output written by {@link RollingStreamGobbler}s to subscribers as it is written.
+ * <p>
+ * Each output file has a {@link Channel} as long as it is written or subscribed to. Each {@link Subscription} buffers pending
+ * output up to {@link #MAX_PENDING_BYTES} and delivers it to its {@link ProcessOutputListener} on a shared pool of threads. A
+ * slow listener does not block the process. Instead, the oldest pending output is dropped, which shows as a gap between the end
+ * pointer of a delivered chunk and the start pointer of the next one. Listeners can fill such gaps by reading the file.
+ */
+public class ProcessOutputBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessOutputBroadcaster.class);
+
+    private static final ProcessOutputBroadcaster INSTANCE = new ProcessOutputBroadcaster();
+
+    /** The maximum amount of output buffered per subscription before the oldest output is dropped. */
+    public static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    /** The maximum size of multiple consecutive chunks which are merged before delivering them. */
+    private static final int MAX_MERGE_BYTES = 64 * 1024;
+
+    private final ConcurrentMap<Path, Channel> channels = new ConcurrentHashMap<>();
+    private final ExecutorService delivery = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("Process Output"));
+
+    private ProcessOutputBroadcaster() {
+    }
+
+    public static ProcessOutputBroadcaster getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Listens to output written to a file.
+     */
+    @FunctionalInterface
+    public interface ProcessOutputListener {
+
+        /**
+         * Called with output in the order it has been written. Calls for a single {@link Subscription} never overlap, and may
+         * block to slow down delivery.
+         *
+         * @param content the output.
+         * @param start the offset in the file the output starts at.
+         * @param end the offset in the file the output ends at.
+         */
+        public void onOutput(byte[] content, long start, long end);
+    }
+
+    /**
+     * Attaches a writer to the {@link Channel} of the given file. The {@link Channel} is kept until all writers and subscribers
+     * are gone.
+     *
+     * @param file the file written to.
+     * @return the {@link Channel} to publish written output to. Must be detached using {@link #detach(Channel)}.
+     */
+    Channel attach(Path file) {
+        return channels.compute(key(file), (k, c) -> {
+            Channel result = c == null ? new Channel(k) : c;
+            result.writers++;
+            return result;
+        });
+    }
+
+    /**
+     * @param channel a {@link Channel} which is no longer written to.
+     */
+    void detach(Channel channel) {
+        channels.computeIfPresent(channel.file, (k, c) -> {
+            c.writers--;
+            return c.isUnused() ? null : c;
+        });
+    }
+
+    /**
+     * Subscribes to output written to the given file.
+     *
+     * @param file the file to subscribe to
+     * @param listener the listener to deliver output to.
+     * @param catchUp called once with the listener before any live output is delivered, while writing to the file is paused.
+     *            Allows to deliver already present content without missing or duplicating output.
+     * @return the {@link Subscription}, which must be closed once no longer required.
+     */
+    public Subscription subscribe(Path file, ProcessOutputListener listener, Catchup catchUp) {
+        Subscription sub = new Subscription(key(file), listener);
+        Channel channel = channels.compute(sub.file, (k, c) -> {
+            Channel result = c == null ? new Channel(k) : c;
+            result.reserved++;
+            return result;
+        });
+
+        try {
+            synchronized (channel) {
+                catchUp.run(sub::offer);
+                channel.subscriptions.add(sub);
+                sub.channel = channel;
+            }
+        } finally {
+            channels.computeIfPresent(sub.file, (k, c) -> {
+                c.reserved--;
+                return c.isUnused() ? null : c;
+            });
+        }
+        return sub;
+    }
+
+    /**
+     * Delivers content which is already present when subscribing.
+     */
+    @FunctionalInterface
+    public interface Catchup {
+
+        /**
+         * @param target the target to offer the already present content to.
+         */
+        public void run(ProcessOutputListener target);
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * The live output of a single file. Writers synchronize on the {@link Channel} while writing and publishing output.
+     */
+    final class Channel {
+
+        private final Path file;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+        // both guarded by compute calls on the channels map.
+        private int writers;
+        private int reserved;
+
+        private Channel(Path file) {
+            this.file = file;
+        }
+
+        private boolean isUnused() {
+            return writers <= 0 && reserved <= 0 && subscriptions.isEmpty();
+        }
+
+        boolean hasSubscribers() {
+            return !subscriptions.isEmpty();
+        }
+
+        void publish(byte[] content, long start, long end) {
+            for (Subscription sub : subscriptions) {
+                sub.offer(content, start, end);
+            }
+        }
+
+        private void remove(Subscription sub) {
+            subscriptions.remove(sub);
+            channels.computeIfPresent(file, (k, c) -> c.isUnused() ? null : c);
+        }
+    }
+
+    /**
+     * A subscription to the output of a single file.
+     */
+    public final class Subscription implements NoThrowAutoCloseable {
+
+        private final Path file;
+        private final ProcessOutputListener listener;
+
+        private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+        private volatile Channel channel;
+        private long pendingBytes;
+        private boolean delivering;
+        private boolean closed;
+
+        private Subscription(Path file, ProcessOutputListener listener) {
+            this.file = file;
+            this.listener = listener;
+        }
+
+        private synchronized void offer(byte[] content, long start, long end) {
+            if (closed) {
+                return;
+            }
+
+            pending.add(new Pending(content, start, end));
+            pendingBytes += content.length;
+            while (pendingBytes > MAX_PENDING_BYTES && pending.size() > 1) {
+                pendingBytes -= pending.removeFirst().content.length;
+            }
+
+            if (!delivering) {
+                delivering = true;
+                delivery.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            while (true) {
+                Pending next;
+                synchronized (this) {
+                    next = poll();
+                    if (next == null || closed) {
+                        delivering = false;
+                        return;
+                    }
+                }
+
+                try {
+                    listener.onOutput(next.content, next.start, next.end);
+                } catch (Exception e) {
+                    log.warn("Cannot deliver output of {}, closing subscription", file, e);
+                    close();
+                }
+            }
+        }
+
+        /**
+         * @return the next pending output, merged with directly following output, or <code>null</code> if nothing is pending.
+         */
+        private Pending poll() {
+            Pending first = pending.pollFirst();
+            if (first == null) {
+                return null;
+            }
+            pendingBytes -= first.content.length;
+
+            int length = first.content.length;
+            long end = first.end;
+            for (Pending p : pending) {
+                if (p.start != end || length + p.content.length > MAX_MERGE_BYTES) {
+                    break;
+                }
+                length += p.content.length;
+                end = p.end;
+            }
+
+            if (end == first.end) {
+                return first;
+            }
+
+            byte[] merged = new byte[length];
+            System.arraycopy(first.content, 0, merged, 0, first.content.length);
+            int pos = first.content.length;
+            while (pos < length) {
+                Pending p = pending.removeFirst();
+                pendingBytes -= p.content.length;
+                System.arraycopy(p.content, 0, merged, pos, p.content.length);
+                pos += p.content.length;
+            }
+            return new Pending(merged, first.start, end);
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.clear();
+                pendingBytes = 0;
+            }
+
+            if (channel != null) {
+                channel.remove(this);
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        private final byte[] content;
+        private final long start;
+        private final long end;
+
+        private Pending(byte[] content, long start, long end) {
+            this.content = content;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+}
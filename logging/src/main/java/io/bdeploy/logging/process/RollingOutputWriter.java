@@ -0,0 +1,109 @@
+package io.bdeploy.logging.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * Writes process output to a size limited file, keeping a fixed amount of compressed older files.
+ * <p>
+ * The layout on disk matches the previously used log4j rolling file appender: the current output is written to
+ * <code>out.txt</code>, older output is kept in <code>out-1.txt.gz</code> (most recent) up to <code>out-3.txt.gz</code>.
+ */
+class RollingOutputWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(RollingOutputWriter.class);
+
+    private static final long MAX_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_INDEX = 3;
+
+    private final Path dir;
+    private final Path file;
+    private FileChannel channel;
+
+    RollingOutputWriter(Path dir, String fileName) {
+        this.dir = dir;
+        this.file = dir.resolve(fileName);
+    }
+
+    /**
+     * Writes the given data as a whole, rolling over the file beforehand if the data would exceed the maximum size.
+     *
+     * @param data the data to write, from its position to its limit.
+     * @return the size of the file after writing, which is the end offset of the data in the file.
+     */
+    synchronized long write(ByteBuffer data) throws IOException {
+        if (channel == null) {
+            open();
+        }
+
+        long size = channel.size();
+        if (size > 0 && size + data.remaining() > MAX_SIZE) {
+            rollover();
+        }
+
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        return channel.size();
+    }
+
+    synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Cannot close {}", file, e);
+        }
+        channel = null;
+    }
+
+    private void open() throws IOException {
+        PathHelper.mkdirs(dir);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void rollover() throws IOException {
+        close();
+
+        PathHelper.deleteIfExistsRetry(archive(MAX_INDEX));
+        for (int i = MAX_INDEX - 1; i >= 1; --i) {
+            Path source = archive(i);
+            if (Files.exists(source)) {
+                Files.move(source, archive(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        // the current file is compressed and removed, the next write starts a new one.
+        Path target = archive(1);
+        try (InputStream is = Files.newInputStream(file); OutputStream os = new GZIPOutputStream(Files.newOutputStream(target))) {
+            is.transferTo(os);
+        }
+        Files.delete(file);
+
+        open();
+    }
+
+    private Path archive(int index) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        String ext = dot < 0 ? "" : name.substring(dot);
+        return dir.resolve(base + "-" + index + ext + ".gz");
+    }
+
+}
@@ -1,93 +1,145 @@
 package io.bdeploy.logging.process;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.zip.Deflater;
-
-import org.apache.logging.log4j.Level;
-import org.apache.logging.log4j.core.appender.RollingFileAppender;
-import org.apache.logging.log4j.core.appender.rolling.DefaultRolloverStrategy;
-import org.apache.logging.log4j.core.appender.rolling.SizeBasedTriggeringPolicy;
-import org.apache.logging.log4j.core.impl.Log4jLogEvent;
-import org.apache.logging.log4j.core.layout.PatternLayout;
-import org.apache.logging.log4j.message.FormattedMessage;
-import org.apache.logging.log4j.message.Message;
-import org.apache.logging.log4j.message.SimpleMessage;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadFactory;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
 import io.bdeploy.common.NoThrowAutoCloseable;
-import io.bdeploy.common.util.StringHelper;
+import io.bdeploy.common.metrics.Metrics;
+import io.bdeploy.common.metrics.Metrics.MetricGroup;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+import io.bdeploy.logging.process.ProcessOutputBroadcaster.Channel;
 
 /**
  * Processes output of a process and handles logging it to a rolling output file.
+ * <p>
+ * Output is read in blocks, split into lines and written in batches, each line prefixed with the time it has been read. Output is
+ * published to live subscribers through the {@link ProcessOutputBroadcaster} as it is written. The amount of output is tracked
+ * in a {@link Meter} per process, see {@link #getOutputRate()}.
  */
-public class RollingStreamGobbler extends Thread implements NoThrowAutoCloseable {
+public class RollingStreamGobbler implements NoThrowAutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(RollingStreamGobbler.class);
 
     public static final String OUT_TXT = "out.txt";
-    private static final String OUT_TXT_FILEPATTERN = "out-%i.txt.gz";
 
-    private static final String LOG_PATTERN = "%style{%d{dd-HH:mm:ss.SSS} |}{fg_#555555} %msg%n";
-    private static final int LOG_MAX_INDEX = 3;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /** Lines longer than this are split, so a process not writing line ends at all cannot exhaust memory. */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("dd-HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    // same as the previously used log4j pattern "%style{%d{dd-HH:mm:ss.SSS} |}{fg_#555555} %msg%n".
+    private static final byte[] STYLE_START = "\u001b[38;2;85;85;85m".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STYLE_END = "\u001b[m ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LINE_END = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
 
     private final Process process;
-    private RollingFileAppender appender;
+    private final ThreadFactory threadFactory;
+    private final RollingOutputWriter writer;
+    private final Channel output;
+    private final Meter meter = new Meter();
+    private final String metricName;
 
     private final String instance;
     private final String app;
 
+    private Thread capture;
+    private volatile boolean closed;
+
     public RollingStreamGobbler(Path targetDir, Process process, String instance, String app) {
+        this(targetDir, process, instance, app, new NamedDaemonThreadFactory(() -> "Gobbler [" + instance + "/" + app + "]"));
+    }
+
+    /**
+     * @param targetDir the directory to write output to.
+     * @param process the process to capture output from.
+     * @param instance the instance the process belongs to, used for log messages.
+     * @param app the application the process belongs to, used for log messages.
+     * @param threadFactory creates the threads capturing output. Since reading output blocks, virtual threads should be used
+     *            where available.
+     */
+    public RollingStreamGobbler(Path targetDir, Process process, String instance, String app, ThreadFactory threadFactory) {
         this.process = process;
         this.instance = instance;
         this.app = app;
+        this.threadFactory = threadFactory;
+        this.metricName = MetricRegistry.name("Output", instance, app);
 
-        this.appender = createFileAppender(targetDir);
-
-        setName("Gobbler [" + instance + "/" + app + "]");
-        setDaemon(true);
+        this.writer = new RollingOutputWriter(targetDir, OUT_TXT);
+        this.output = ProcessOutputBroadcaster.getInstance().attach(targetDir.resolve(OUT_TXT));
     }
 
-    @Override
-    public void run() {
-
-        // this has an issue; if the inputstream is still open (application still running), this will block *forever*
-        // (java.io is non-blocking and non-interruptible) in case the connected application does not write anything.
+    /**
+     * Starts capturing the output of the process.
+     */
+    public synchronized void start() {
+        if (capture != null) {
+            throw new IllegalStateException("Output capture already started for " + instance + "/" + app);
+        }
 
-        // we just ignore the issue alltogehter, as each stream gobbler can be started only once and is
-        // anyhow "lost" in case it is closed. Worst case is a thread sitting around doing nothing until
-        // the application stops or writes a byte - which will make this thread die since the appender has
-        // been closed on another thread.
+        MetricRegistry registry = Metrics.getMetric(MetricGroup.PROCESS);
+        registry.remove(metricName);
+        registry.register(metricName, meter);
 
-        log(new FormattedMessage(" --- Starting output capture for {}/{}, PID: {}", instance, app, process.pid()), Level.WARN);
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(process.getInputStream(), StringHelper.DEFAULT_CHARSET))) {
-            br.lines().forEach(l -> log(new SimpleMessage(l), Level.INFO));
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.debug("While redirecting process output:", e);
-            }
-        }
+        capture = threadFactory.newThread(() -> {
+            log(" --- Starting output capture for " + instance + "/" + app + ", PID: " + process.pid());
+            capture(process.getInputStream(), null);
+        });
+        capture.start();
     }
 
     @Override
     public synchronized void close() {
-        if (isAlive()) {
-            interrupt();
+        if (closed) {
+            return;
+        }
+
+        // this has an issue; if the inputstream is still open (application still running), the capture thread blocks until
+        // the application writes something or exits. this is cheap when running on a virtual thread, and the thread ends as
+        // soon as it tries to write, since the writer has been closed.
+        if (capture != null && capture.isAlive()) {
+            capture.interrupt();
         }
 
-        log(new FormattedMessage(" --- Stopping output capture for {}/{}, PID: {}", instance, app, process.pid()), Level.WARN);
+        log(" --- Stopping output capture for " + instance + "/" + app + ", PID: " + process.pid());
 
-        stopAppender();
+        stopWriter();
+        Metrics.getMetric(MetricGroup.PROCESS).removeMatching((name, metric) -> metric == meter);
     }
 
-    private void stopAppender() {
-        // need to explicitly close this to free the file handle - appender.stop is *not* enough.
-        appender.getManager().close();
-        appender.stop();
-        appender = null;
+    private void stopWriter() {
+        closed = true;
+        writer.close();
+        ProcessOutputBroadcaster.getInstance().detach(output);
+    }
+
+    /**
+     * @return the rate of output written by the process in bytes per second, averaged over the last minute.
+     */
+    public double getOutputRate() {
+        return meter.getOneMinuteRate();
+    }
+
+    /**
+     * @return the total amount of output in bytes written by the process since capturing has been started.
+     */
+    public long getOutputBytes() {
+        return meter.getCount();
     }
 
     public static void logProcessRecovery(Path targetDir, ProcessHandle handle, String instance, String app) {
@@ -95,23 +147,14 @@ public class RollingStreamGobbler extends Thread implements NoThrowAutoCloseable
         // since we never started one.
         @SuppressWarnings("resource")
         RollingStreamGobbler gobbler = new RollingStreamGobbler(targetDir, null, instance, app);
-        gobbler.log(new FormattedMessage(
-                " --- Cannot resume output capture after recovery for {}/{}, PID: {} - Output will be lost until application restart.",
-                instance, app, handle.pid()), Level.ERROR);
-        gobbler.stopAppender();
+        gobbler.log(" --- Cannot resume output capture after recovery for " + instance + "/" + app + ", PID: " + handle.pid()
+                + " - Output will be lost until application restart.");
+        gobbler.stopWriter();
     }
 
     public NoThrowAutoCloseable attachStopProcess(Process process) {
-        Thread stopGobbler = new Thread(() -> {
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(process.getInputStream(), StringHelper.DEFAULT_CHARSET))) {
-                br.lines().forEach(l -> log(new SimpleMessage("[STOP] " + l), Level.INFO));
-            } catch (Exception e) {
-                if (log.isDebugEnabled()) {
-                    log.debug("While redirecting process output:", e);
-                }
-            }
-        }, "StopGobbler [" + instance + "/" + app + "]");
+        Thread stopGobbler = threadFactory.newThread(() -> capture(process.getInputStream(), "[STOP] "));
+        stopGobbler.setName("StopGobbler [" + instance + "/" + app + "]");
         stopGobbler.start();
 
         return () -> {
@@ -123,38 +166,137 @@ public class RollingStreamGobbler extends Thread implements NoThrowAutoCloseable
         };
     }
 
-    private synchronized void log(Message msg, Level lvl) {
-        if (appender == null || appender.isStopped()) {
-            throw new IllegalStateException("Appender closed");
+    /**
+     * Reads the given stream until it ends, writing each block read in a single batch.
+     */
+    private void capture(InputStream in, String prefix) {
+        byte[] read = new byte[READ_BUFFER_SIZE];
+        LineBatch batch = new LineBatch(prefix);
+        try (InputStream is = in) {
+            int n;
+            while ((n = is.read(read)) != -1) {
+                meter.mark(n);
+                batch.split(read, n);
+                flush(batch);
+            }
+            batch.finish();
+            flush(batch);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("While redirecting process output:", e);
+            }
         }
+    }
 
+    private void log(String message) {
+        LineBatch batch = new LineBatch(null);
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        batch.split(bytes, bytes.length);
+        batch.finish();
         try {
+            flush(batch);
+        } catch (Exception e) {
+            log.error("Cannot write to output log: {}", message, e);
+        }
+    }
 
-            Log4jLogEvent.Builder builder = Log4jLogEvent.newBuilder();
-            builder.setMessage(msg);
-            builder.setLevel(lvl);
+    private void flush(LineBatch batch) throws IOException {
+        if (batch.out.position() == 0) {
+            return;
+        }
 
-            Log4jLogEvent logEvent = builder.build();
-            appender.append(logEvent);
-        } catch (Exception e) {
-            log.error("Cannot write to output log: {}", msg.getFormattedMessage(), e);
+        batch.out.flip();
+        try {
+            synchronized (output) {
+                if (closed) {
+                    throw new IllegalStateException("Output capture closed");
+                }
+
+                int length = batch.out.remaining();
+                long end = writer.write(batch.out.duplicate());
+                if (output.hasSubscribers()) {
+                    byte[] content = new byte[length];
+                    batch.out.get(content);
+                    output.publish(content, end - length, end);
+                }
+            }
+        } finally {
+            batch.out.clear();
         }
     }
 
     /**
-     * Creates a rolling file appender that write audit entries to a human readable log file.
+     * Splits blocks of output into lines, and formats them into a buffer which is written at once.
      */
-    private static synchronized RollingFileAppender createFileAppender(Path logDir) {
-        RollingFileAppender.Builder<?> builder = RollingFileAppender.newBuilder();
-        builder.setName("outLogger[" + logDir + "]");
-        builder.withFileName(logDir.resolve(OUT_TXT).toString());
-        builder.withFilePattern(logDir.resolve(OUT_TXT_FILEPATTERN).toString());
-        builder.withPolicy(SizeBasedTriggeringPolicy.createPolicy("5M"));
-        builder.setLayout(PatternLayout.newBuilder().withPattern(LOG_PATTERN).build());
-        builder.withStrategy(
-                DefaultRolloverStrategy.newBuilder().withCompressionLevelStr(String.valueOf(Deflater.DEFAULT_COMPRESSION))
-                        .withMax(Integer.toString(LOG_MAX_INDEX)).withFileIndex("min").build());
-        return builder.build();
+    private static final class LineBatch {
+
+        private final byte[] prefix;
+        private final byte[] line = new byte[MAX_LINE_LENGTH];
+        private int lineLength;
+        private boolean skipLf;
+        private ByteBuffer out = ByteBuffer.allocate(READ_BUFFER_SIZE * 2);
+        private byte[] timestamp;
+
+        private LineBatch(String prefix) {
+            this.prefix = prefix == null ? new byte[0] : prefix.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Splits the given block into lines. Lines end at CR, LF or CRLF, like with {@link java.io.BufferedReader#readLine()}.
+         * An incomplete last line is kept until the next block or {@link #finish()}.
+         */
+        void split(byte[] data, int length) {
+            // all lines of a block share the time it has been read.
+            timestamp = null;
+
+            for (int i = 0; i < length; ++i) {
+                byte b = data[i];
+                if (skipLf) {
+                    skipLf = false;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+
+                if (b == '\n' || b == '\r') {
+                    skipLf = b == '\r';
+                    appendLine();
+                } else {
+                    if (lineLength == line.length) {
+                        appendLine();
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+
+        /**
+         * Completes an incomplete last line once the stream has ended.
+         */
+        void finish() {
+            if (lineLength > 0) {
+                appendLine();
+            }
+        }
+
+        private void appendLine() {
+            if (timestamp == null) {
+                timestamp = TIMESTAMP.format(Instant.now()).getBytes(StandardCharsets.UTF_8);
+            }
+
+            int required = STYLE_START.length + timestamp.length + 2 + STYLE_END.length + prefix.length + lineLength
+                    + LINE_END.length;
+            if (out.remaining() < required) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + required));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+
+            out.put(STYLE_START).put(timestamp).put((byte) ' ').put((byte) '|').put(STYLE_END);
+            out.put(prefix).put(line, 0, lineLength).put(LINE_END);
+            lineLength = 0;
+        }
     }
 
 }
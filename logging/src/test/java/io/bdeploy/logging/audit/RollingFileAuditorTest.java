@@ -0,0 +1,65 @@
+package io.bdeploy.logging.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.common.audit.AuditRecord;
+
+class RollingFileAuditorTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RollingFileAuditorTest.class);
+
+    @Test
+    void testFlush(@TempDir Path tmp) throws Exception {
+        try (RollingFileAuditor auditor = RollingFileAuditor.getInstance(tmp)) {
+            auditor.audit(AuditRecord.Builder.fromSystem().setWhat("first").setMessage("First record").build());
+            auditor.audit(AuditRecord.Builder.fromSystem().setWhat("second").setMessage("Second record").build());
+            auditor.flush();
+
+            List<String> lines = Files.readAllLines(tmp.resolve(RollingFileAuditor.LOG_TXT_FILENAME));
+            assertEquals(2, lines.size());
+            assertTrue(lines.get(0).contains("First record"));
+            assertTrue(lines.get(1).contains("Second record"));
+        }
+    }
+
+    @Test
+    void testConcurrentAudit(@TempDir Path tmp) throws Exception {
+        int threadCount = 8;
+        // more than fits into the queue at once, but less than required to roll over the log file.
+        int recordCount = 1_500;
+
+        try (RollingFileAuditor auditor = RollingFileAuditor.getInstance(tmp)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < threadCount; ++t) {
+                String what = "Thread-" + t;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < recordCount; ++i) {
+                        auditor.audit(AuditRecord.Builder.fromSystem().setWhat(what).setMessage("Record " + i).build());
+                    }
+                }));
+            }
+
+            long start = System.nanoTime();
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            log.info("Auditing took {}ms", (System.nanoTime() - start) / 1_000_000);
+        }
+
+        // closing writes all pending records, none is dropped.
+        assertEquals(threadCount * recordCount, Files.readAllLines(tmp.resolve(RollingFileAuditor.LOG_TXT_FILENAME)).size());
+    }
+
+}
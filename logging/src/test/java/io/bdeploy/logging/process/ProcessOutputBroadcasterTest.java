@@ -0,0 +1,204 @@
+package io.bdeploy.logging.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.logging.process.ProcessOutputBroadcaster.Channel;
+import io.bdeploy.logging.process.ProcessOutputBroadcaster.ProcessOutputListener;
+import io.bdeploy.logging.process.ProcessOutputBroadcaster.Subscription;
+
+class ProcessOutputBroadcasterTest {
+
+    private static final ProcessOutputBroadcaster broadcaster = ProcessOutputBroadcaster.getInstance();
+
+    @Test
+    void testFanOut(@TempDir Path tmp) throws Exception {
+        Path file = tmp.resolve("out.txt");
+        Collector first = new Collector();
+        Collector second = new Collector();
+
+        Channel channel = broadcaster.attach(file);
+        try (Subscription s1 = broadcaster.subscribe(file, first, target -> target.onOutput(bytes("old\n"), 0, 4));
+                Subscription s2 = broadcaster.subscribe(file, second, target -> {
+                    // nothing to catch up.
+                })) {
+            assertTrue(channel.hasSubscribers());
+
+            long offset = 4;
+            for (int i = 0; i < 100; ++i) {
+                byte[] line = bytes("line " + i + "\n");
+                channel.publish(line, offset, offset + line.length);
+                offset += line.length;
+            }
+
+            first.await(offset);
+            second.await(offset);
+
+            // both receive everything in order, the first one including the content it caught up with.
+            assertEquals("old\n" + expectedLines(100), first.getContent());
+            assertEquals(expectedLines(100), second.getContent());
+            assertEquals(0, first.getGaps());
+            assertEquals(0, second.getGaps());
+        } finally {
+            broadcaster.detach(channel);
+        }
+    }
+
+    @Test
+    void testSlowSubscriber(@TempDir Path tmp) throws Exception {
+        Path file = tmp.resolve("out.txt");
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Collector fast = new Collector();
+        Collector slow = new Collector() {
+
+            @Override
+            public void onOutput(byte[] content, long start, long end) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onOutput(content, start, end);
+            }
+        };
+
+        Channel channel = broadcaster.attach(file);
+        try (Subscription s1 = broadcaster.subscribe(file, fast, target -> {
+        }); Subscription s2 = broadcaster.subscribe(file, slow, target -> {
+        })) {
+            byte[] chunk = new byte[16 * 1024];
+            channel.publish(chunk, 0, chunk.length);
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            // neither publishing nor other subscribers are blocked, although the slow subscriber does not make any progress.
+            long offset = chunk.length;
+            long total = 4L * ProcessOutputBroadcaster.MAX_PENDING_BYTES;
+            while (offset < total) {
+                channel.publish(chunk, offset, offset + chunk.length);
+                offset += chunk.length;
+                fast.await(offset);
+            }
+            assertEquals(offset, fast.getBytes());
+            assertEquals(0, fast.getGaps());
+
+            release.countDown();
+            slow.await(offset);
+
+            // the oldest output has been dropped, which shows as a gap.
+            assertEquals(1, slow.getGaps());
+            assertTrue(slow.getBytes() <= ProcessOutputBroadcaster.MAX_PENDING_BYTES + chunk.length);
+        } finally {
+            release.countDown();
+            broadcaster.detach(channel);
+        }
+    }
+
+    @Test
+    void testUnsubscribe(@TempDir Path tmp) throws Exception {
+        Path file = tmp.resolve("out.txt");
+        Collector collector = new Collector();
+
+        Channel channel = broadcaster.attach(file);
+        try {
+            Subscription sub = broadcaster.subscribe(file, collector, target -> {
+            });
+            byte[] line = bytes("first\n");
+            channel.publish(line, 0, line.length);
+            collector.await(line.length);
+
+            sub.close();
+            assertFalse(channel.hasSubscribers());
+
+            channel.publish(bytes("second\n"), line.length, line.length + 7L);
+            Thread.sleep(100);
+            assertEquals("first\n", collector.getContent());
+
+            // closing again is harmless.
+            sub.close();
+        } finally {
+            broadcaster.detach(channel);
+        }
+
+        // the channel has been removed along with its last writer and subscriber.
+        Channel other = broadcaster.attach(file);
+        try {
+            assertTrue(other != channel);
+            assertFalse(other.hasSubscribers());
+        } finally {
+            broadcaster.detach(other);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String expectedLines(int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            result.append("line ").append(i).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Collects all delivered output, and counts gaps between delivered chunks.
+     */
+    private static class Collector implements ProcessOutputListener {
+
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private final List<long[]> chunks = new ArrayList<>();
+
+        @Override
+        public void onOutput(byte[] data, long start, long end) {
+            synchronized (this) {
+                assertEquals(end - start, data.length);
+                content.write(data, 0, data.length);
+                chunks.add(new long[] { start, end });
+                notifyAll();
+            }
+        }
+
+        synchronized void await(long end) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (chunks.isEmpty() || chunks.get(chunks.size() - 1)[1] < end) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue(remaining > 0, "Output not delivered in time");
+                wait(remaining);
+            }
+        }
+
+        synchronized String getContent() {
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        synchronized long getBytes() {
+            return content.size();
+        }
+
+        synchronized int getGaps() {
+            int gaps = 0;
+            for (int i = 1; i < chunks.size(); ++i) {
+                if (chunks.get(i)[0] != chunks.get(i - 1)[1]) {
+                    gaps++;
+                }
+            }
+            return gaps;
+        }
+    }
+
+}
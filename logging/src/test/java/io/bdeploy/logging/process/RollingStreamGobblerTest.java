@@ -0,0 +1,108 @@
+package io.bdeploy.logging.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.logging.process.ProcessOutputBroadcaster.Subscription;
+
+class RollingStreamGobblerTest {
+
+    @Test
+    void testCapture(@TempDir Path tmp) throws Exception {
+        Path out = tmp.resolve(RollingStreamGobbler.OUT_TXT);
+        ByteArrayOutputStream live = new ByteArrayOutputStream();
+        CountDownLatch done = new CountDownLatch(1);
+
+        try (Subscription sub = ProcessOutputBroadcaster.getInstance().subscribe(out, (content, start, end) -> {
+            synchronized (live) {
+                live.write(content, 0, content.length);
+                if (new String(live.toByteArray(), StandardCharsets.UTF_8).contains("last")) {
+                    done.countDown();
+                }
+            }
+        }, target -> {
+            // nothing written yet.
+        })) {
+            try (RollingStreamGobbler gobbler = new RollingStreamGobbler(tmp, new FakeProcess("first\r\nsecond\rthird\nlast"),
+                    "instance", "app")) {
+                gobbler.start();
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+                assertEquals(24, gobbler.getOutputBytes());
+            }
+        }
+
+        List<String> lines = Files.readAllLines(out);
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(0).contains("Starting output capture for instance/app"));
+        assertTrue(lines.get(1).endsWith("|\u001b[m first"));
+        assertTrue(lines.get(2).endsWith(" second"));
+        assertTrue(lines.get(3).endsWith(" third"));
+        assertTrue(lines.get(4).endsWith(" last"));
+        assertTrue(lines.get(5).contains("Stopping output capture for instance/app"));
+
+        // the live output is the same as written to the file.
+        String file = Files.readString(out);
+        synchronized (live) {
+            assertTrue(file.startsWith(new String(live.toByteArray(), StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static final class FakeProcess extends Process {
+
+        private final InputStream output;
+
+        FakeProcess(String output) {
+            this.output = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return output;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+            // nothing to do
+        }
+
+        @Override
+        public long pid() {
+            return 1;
+        }
+    }
+
+}
@@ -11,6 +11,7 @@ import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.cert.Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -907,6 +908,9 @@ public class MinionRoot extends LockableDatabase implements Minion, AutoCloseabl
     private void initProcessController() {
         log.info("Initializing process controller.");
 
+        Integer sampleInterval = getState().processSampleIntervalSeconds;
+        ProcessController.setResourceSampleInterval(Duration.ofSeconds(sampleInterval != null ? sampleInterval : 10));
+
         // Find all deployed instance node controllers and add them to the controller
         SortedSet<Key> keys = InstanceNodeManifest.scan(hive);
         if (keys.isEmpty()) {
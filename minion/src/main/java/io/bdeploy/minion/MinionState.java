@@ -148,4 +148,9 @@ public class MinionState {
      * A {@link Path} which points to the log data directory.
      */
     public Path logDataDir;
+
+    /**
+     * Interval in seconds at which resources used by running processes are sampled. Zero disables sampling.
+     */
+    public Integer processSampleIntervalSeconds = 10;
 }
@@ -56,6 +56,9 @@ public class ConfigTool extends ConfiguredCliTool<ConfigToolConfig> {
         @Help("Changes the web session 'active' timeout, after which a users need to re-login. The user must be active within this timeframe for their session to stay valid. Timeout is specified in hours.")
         int sessionActiveTimeout() default -1;
 
+        @Help("Changes the interval in seconds at which resources used by running processes are sampled. 0 disables sampling.")
+        int processSampleInterval() default -1;
+
         @Help("The target mode of the minion.")
         MinionMode mode();
 
@@ -70,7 +73,7 @@ public class ConfigTool extends ConfiguredCliTool<ConfigToolConfig> {
     @Override
     protected RenderableResult run(ConfigToolConfig config) {
         if (config.logData() == null && config.hostname() == null && config.port() == -1 && config.sessionTimeout() == -1
-                && config.mode() == null) {
+                && config.processSampleInterval() == -1 && config.mode() == null) {
             return createNoOp();
         }
 
@@ -114,6 +117,12 @@ public class ConfigTool extends ConfiguredCliTool<ConfigToolConfig> {
                 result.addField("Session active timeout (hours)", newActiveSessionTimeout);
             }
 
+            int newSampleInterval = config.processSampleInterval();
+            if (newSampleInterval != -1) {
+                r.modifyState(s -> s.processSampleIntervalSeconds = newSampleInterval);
+                result.addField("Process sample interval (seconds)", newSampleInterval);
+            }
+
             String logDataDir = config.logData();
             if (!StringHelper.isNullOrEmpty(logDataDir)) {
                 Path logDataDirPath = Paths.get(logDataDir).toAbsolutePath().normalize();
@@ -63,6 +63,7 @@ import io.bdeploy.minion.plugin.VersionSorterServiceImpl;
 import io.bdeploy.minion.remote.jersey.CentralUpdateResourceImpl;
 import io.bdeploy.minion.remote.jersey.CommonDirectoryEntryResourceImpl;
 import io.bdeploy.minion.remote.jersey.CommonRootResourceImpl;
+import io.bdeploy.minion.remote.jersey.EntryStreamWebSocket;
 import io.bdeploy.minion.remote.jersey.JerseyAwareMinionServerProcessManager;
 import io.bdeploy.minion.remote.jersey.MasterRootResourceImpl;
 import io.bdeploy.minion.remote.jersey.MasterSettingsResourceImpl;
@@ -351,6 +352,10 @@ public class StartTool extends ConfiguredCliTool<MasterConfig> {
         ObjectChangeWebSocket ocws = new ObjectChangeWebSocket(srv.getKeyStore());
         srv.registerWebsocketApplication(ObjectChangeWebSocket.OCWS_PATH, ocws);
 
+        if (root.getMode() != MinionMode.CENTRAL) {
+            srv.registerWebsocketApplication(EntryStreamWebSocket.ESWS_PATH, new EntryStreamWebSocket(root, srv.getKeyStore()));
+        }
+
         srv.register(new MinionCommonBinder(root, ocws));
         srv.registerResource(r);
 
@@ -11,6 +11,7 @@ import org.glassfish.grizzly.http.server.HttpHandler;
 import io.bdeploy.api.plugin.v1.Plugin;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.objects.ObjectFile;
 import io.bdeploy.interfaces.plugin.PluginHeader;
 
 /**
@@ -23,6 +24,7 @@ class PluginInternalHandle {
     public Plugin plugin;
     public boolean global;
     public URLClassLoader pluginLoader;
+    public ObjectFile file;
     public List<HttpHandler> createdHandlers = new ArrayList<>();
     public SortedSet<Manifest.Key> requestedFrom = new TreeSet<>();
 
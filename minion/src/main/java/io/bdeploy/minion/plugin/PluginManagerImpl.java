@@ -32,6 +32,7 @@ import io.bdeploy.bhive.ReadOnlyOperation;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.objects.ObjectFile;
 import io.bdeploy.interfaces.plugin.PluginHeader;
 import io.bdeploy.interfaces.plugin.PluginInfoDto;
 import io.bdeploy.interfaces.plugin.PluginManager;
@@ -116,8 +117,7 @@ public class PluginManagerImpl implements PluginManager {
         try {
             PluginInternalHandle handle = loaded.get(id);
             if (handle == null) {
-                Path pluginPath = source.execute(new FindFileOperation().setObject(id));
-                handle = loadFile(pluginPath);
+                handle = loadFile(source.execute(new FindFileOperation().setObject(id)));
                 handle.id = id;
 
                 register(id, handle);
@@ -140,11 +140,11 @@ public class PluginManagerImpl implements PluginManager {
             return loaded.get(id).header;
         }
         try {
-            Path pluginPath = source.execute(new FindFileOperation().setObject(id));
-            try (InputStream is = Files.newInputStream(pluginPath)) {
+            try (ObjectFile plugin = source.execute(new FindFileOperation().setObject(id));
+                    InputStream is = Files.newInputStream(plugin.getPath())) {
                 return PluginHeader.read(is);
             } catch (IOException e) {
-                throw new IllegalStateException("Cannot load plugin from " + pluginPath, e);
+                throw new IllegalStateException("Cannot load plugin " + id, e);
             }
         } catch (Throwable e) {
             unloadableLocal.add(id);
@@ -247,23 +247,26 @@ public class PluginManagerImpl implements PluginManager {
     /**
      * Creates a new {@link PluginInternalHandle} by loading the given JAR file, creating a classloader and instantiating the
      * plugin.
+     * <p>
+     * The file is kept open as long as the plugin is loaded, and closed when unloading it, see {@link #unloadFile}.
      */
-    private static PluginInternalHandle loadFile(Path plugin) {
-        PluginHeader hdr;
-        try (InputStream is = Files.newInputStream(plugin)) {
-            hdr = PluginHeader.read(is);
-        } catch (IOException e) {
-            throw new IllegalStateException("Cannot load plugin from " + plugin, e);
-        }
-
+    private static PluginInternalHandle loadFile(ObjectFile file) {
+        Path plugin = file.getPath();
         PluginInternalHandle handle = new PluginInternalHandle();
-        try {
-            handle.header = hdr;
+        handle.file = file;
+        try (InputStream is = Files.newInputStream(plugin)) {
+            handle.header = PluginHeader.read(is);
             handle.pluginLoader = new URLClassLoader(new URL[] { plugin.toUri().toURL() },
                     Thread.currentThread().getContextClassLoader());
-            handle.plugin = Plugin.class.cast(handle.pluginLoader.loadClass(hdr.mainClass).getConstructor().newInstance());
+            Class<?> mainClass = handle.pluginLoader.loadClass(handle.header.mainClass);
+            handle.plugin = Plugin.class.cast(mainClass.getConstructor().newInstance());
             return handle;
         } catch (Exception e) {
+            try {
+                unloadFile(handle);
+            } catch (IOException ioe) {
+                e.addSuppressed(ioe);
+            }
             throw new IllegalStateException("Cannot load plugin from " + plugin, e);
         }
     }
@@ -342,19 +345,25 @@ public class PluginManagerImpl implements PluginManager {
 
     private static void unloadFile(PluginInternalHandle handle) throws IOException {
         handle.plugin = null;
-        if (handle.pluginLoader != null) {
-            handle.pluginLoader.close();
+        try {
+            if (handle.pluginLoader != null) {
+                handle.pluginLoader.close();
+            }
+        } finally {
+            if (handle.file != null) {
+                handle.file.close();
+            }
         }
     }
 
     @ReadOnlyOperation
-    private static class FindFileOperation extends BHive.Operation<Path> {
+    private static class FindFileOperation extends BHive.Operation<ObjectFile> {
 
         private ObjectId object;
 
         @Override
-        public Path call() {
-            return getObjectManager().db(db -> db.getObjectFile(object));
+        public ObjectFile call() {
+            return getObjectManager().db(db -> db.openObjectFile(object));
         }
 
         public FindFileOperation setObject(ObjectId id) {
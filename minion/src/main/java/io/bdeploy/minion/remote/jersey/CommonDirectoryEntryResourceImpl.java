@@ -1,10 +1,7 @@
 package io.bdeploy.minion.remote.jersey;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -20,6 +17,8 @@ import com.j256.simplemagic.ContentInfoUtil;
 
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.interfaces.directory.EntryChunk;
+import io.bdeploy.interfaces.directory.EntryChunkReader;
+import io.bdeploy.interfaces.directory.EntryChunkReader.Range;
 import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
 import io.bdeploy.interfaces.remote.CommonDirectoryEntryResource;
 import io.bdeploy.interfaces.variables.DeploymentPathProvider;
@@ -44,37 +43,48 @@ public class CommonDirectoryEntryResourceImpl implements CommonDirectoryEntryRes
         // determine file first...
         Path actual = getEntryPath(root, entry);
 
-        if (limit == 0) {
-            limit = Long.MAX_VALUE;
+        try {
+            // null if offset == size...
+            return EntryChunkReader.read(actual, offset, limit);
+        } catch (IOException e) {
+            throw new WebApplicationException("Cannot read chunk of " + actual, e);
         }
+    }
 
-        File file = actual.toFile();
-        long currentSize = file.length();
-        if (currentSize < offset) {
-            // file has been reset.
-            return EntryChunk.ROLLOVER_CHUNK;
-        } else if (currentSize > offset) {
-            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-                raf.seek(offset);
-                try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                    int b;
-                    long c = 0;
-                    while ((b = raf.read()) != -1) {
-                        if (c++ >= limit) {
-                            break;
-                        }
-
-                        baos.write(b);
-                    }
+    @Override
+    public EntryChunk getEntryTail(RemoteDirectoryEntry entry, int lines) {
+        Path actual = getEntryPath(root, entry);
 
-                    return new EntryChunk(baos.toByteArray(), offset, raf.getFilePointer());
-                }
-            } catch (IOException e) {
-                throw new WebApplicationException("Cannot read chunk of " + actual, e);
-            }
+        try {
+            return EntryChunkReader.read(actual, EntryChunkReader.findTailOffset(actual, lines), EntryChunkReader.MAX_CHUNK_SIZE);
+        } catch (IOException e) {
+            throw new WebApplicationException("Cannot read tail of " + actual, e);
+        }
+    }
+
+    @Override
+    public Response getEntryChunkStream(RemoteDirectoryEntry entry, long offset, long limit) {
+        Path actual = getEntryPath(root, entry);
+
+        Range range;
+        try {
+            long max = limit <= 0 ? EntryChunkReader.MAX_CHUNK_SIZE : Math.min(limit, EntryChunkReader.MAX_CHUNK_SIZE);
+            range = EntryChunkReader.range(actual, offset, max);
+        } catch (IOException e) {
+            throw new WebApplicationException("Cannot read chunk of " + actual, e);
+        }
+
+        if (range.rollover) {
+            // file has been reset.
+            EntryChunk rollover = EntryChunk.ROLLOVER_CHUNK;
+            return Response.ok(rollover.content, MediaType.APPLICATION_OCTET_STREAM)
+                    .header(EntryChunk.START_POINTER_HDR, rollover.startPointer)
+                    .header(EntryChunk.END_POINTER_HDR, rollover.endPointer).build();
         }
 
-        return null; // offset == size...
+        return Response.ok((StreamingOutput) output -> EntryChunkReader.transfer(actual, range, output),
+                MediaType.APPLICATION_OCTET_STREAM).header(EntryChunk.START_POINTER_HDR, range.start)
+                .header(EntryChunk.END_POINTER_HDR, range.end).header("Content-Length", range.length()).build();
     }
 
     static Path getEntryPath(MinionRoot root, RemoteDirectoryEntry entry) {
@@ -18,6 +18,7 @@ import io.bdeploy.interfaces.configuration.dcu.EndpointsConfiguration;
 import io.bdeploy.interfaces.configuration.instance.InstanceConfiguration;
 import io.bdeploy.interfaces.manifest.InstanceManifest;
 import io.bdeploy.interfaces.manifest.InstanceNodeManifest;
+import io.bdeploy.interfaces.manifest.history.InstanceManifestHistory;
 import io.bdeploy.interfaces.manifest.managed.MasterProvider;
 import io.bdeploy.interfaces.manifest.state.InstanceStateRecord;
 import io.bdeploy.interfaces.remote.CommonInstanceResource;
@@ -77,7 +78,11 @@ public class CommonInstanceResourceImpl implements CommonInstanceResource {
 
     @Override
     public SortedSet<Key> listInstanceKeys(boolean latestOnly) {
-        return InstanceManifest.scan(hive, latestOnly);
+        SortedSet<Key> keys = InstanceManifest.scan(hive, latestOnly);
+
+        // the keys are used to synchronize instances, which includes their history.
+        keys.forEach(k -> new InstanceManifestHistory(k, hive).compact());
+        return keys;
     }
 
     private InstanceStateRecord getInstanceState(String instance) {
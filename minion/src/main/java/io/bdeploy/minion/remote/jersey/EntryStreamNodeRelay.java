@@ -0,0 +1,273 @@
+package io.bdeploy.minion.remote.jersey;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.ws.DefaultWebSocketListener;
+import com.ning.http.client.ws.WebSocket;
+import com.ning.http.client.ws.WebSocketUpgradeHandler;
+
+import io.bdeploy.common.NoThrowAutoCloseable;
+import io.bdeploy.common.security.RemoteService;
+import io.bdeploy.common.security.SecurityHelper;
+import io.bdeploy.common.util.JacksonHelper;
+import io.bdeploy.interfaces.directory.EntryStreamChunkDto;
+import io.bdeploy.interfaces.directory.EntryStreamRequestDto;
+import io.bdeploy.interfaces.directory.EntryStreamRequestDto.EntryStreamAction;
+import io.bdeploy.interfaces.minion.MinionDto;
+import io.bdeploy.jersey.JerseyClientFactory;
+import io.bdeploy.jersey.ws.change.msg.ObjectChangeInitDto;
+import io.bdeploy.minion.MinionRoot;
+
+/**
+ * Relays entry stream subscriptions from the master to the nodes.
+ * <p>
+ * All subscriptions for a node share a single {@link WebSocket} connection to the node, which is opened on demand and closed
+ * once the last subscription is gone, for whatever reason. Subscriptions are re-identified on the node connection, so that
+ * subscriptions of different clients never clash.
+ * <p>
+ * Connections are opened outside of any lock, so a slow or unreachable node only delays subscriptions on that very node.
+ */
+class EntryStreamNodeRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(EntryStreamNodeRelay.class);
+
+    private final MinionRoot root;
+    private final Map<String, NodeConnection> connections = new HashMap<>();
+
+    EntryStreamNodeRelay(MinionRoot root) {
+        this.root = root;
+    }
+
+    /**
+     * @param request the request of the client, naming the node to subscribe on.
+     * @param target receives all chunks of the subscription, re-identified using the id of the client's request.
+     * @return the subscription, which must be closed once no longer required.
+     */
+    NoThrowAutoCloseable subscribe(EntryStreamRequestDto request, Consumer<EntryStreamChunkDto> target) {
+        String nodeId = UUID.randomUUID().toString();
+        Consumer<EntryStreamChunkDto> forward = c -> target.accept(new EntryStreamChunkDto(request.id, c.chunk, c.error));
+
+        NodeConnection connection;
+        synchronized (connections) {
+            connection = connections.get(request.minion);
+            if (connection == null || !connection.isUsable()) {
+                connection = new NodeConnection(request.minion);
+                connections.put(request.minion, connection);
+            }
+            connection.targets.put(nodeId, forward);
+        }
+
+        try {
+            connection.connect();
+        } catch (RuntimeException e) {
+            removeTarget(connection, nodeId, false);
+            throw e;
+        }
+
+        EntryStreamRequestDto nodeRequest = new EntryStreamRequestDto();
+        nodeRequest.action = EntryStreamAction.SUBSCRIBE;
+        nodeRequest.id = nodeId;
+        nodeRequest.group = request.group;
+        nodeRequest.entry = request.entry;
+        nodeRequest.offset = request.offset;
+        connection.send(nodeRequest);
+
+        NodeConnection subscribed = connection;
+        return () -> removeTarget(subscribed, nodeId, true);
+    }
+
+    /**
+     * Removes a subscription from a connection, and closes the connection if this was the last subscription on it.
+     *
+     * @param connection the connection the subscription belongs to.
+     * @param nodeId the id of the subscription on the node connection.
+     * @param unsubscribe whether the node still needs to be told to stop sending for this subscription.
+     */
+    private void removeTarget(NodeConnection connection, String nodeId, boolean unsubscribe) {
+        boolean last;
+        synchronized (connections) {
+            if (connection.targets.remove(nodeId) == null) {
+                return;
+            }
+
+            last = connection.targets.isEmpty();
+            if (last) {
+                connections.remove(connection.node, connection);
+            }
+        }
+
+        if (last) {
+            connection.close();
+        } else if (unsubscribe) {
+            EntryStreamRequestDto nodeRequest = new EntryStreamRequestDto();
+            nodeRequest.action = EntryStreamAction.UNSUBSCRIBE;
+            nodeRequest.id = nodeId;
+            connection.send(nodeRequest);
+        }
+    }
+
+    private RemoteService getRemote(String node) {
+        MinionDto config = root.getNodeManager().getAllNodes().get(node);
+        if (config == null) {
+            throw new IllegalStateException("Node not known " + node);
+        }
+        if (config.minionNodeType == MinionDto.MinionNodeType.MULTI) {
+            throw new IllegalStateException("Cannot stream entries of multi-node " + node);
+        }
+        return config.remote;
+    }
+
+    /**
+     * A connection to a single node, shared by all subscriptions on that node.
+     */
+    private final class NodeConnection extends DefaultWebSocketListener implements NoThrowAutoCloseable {
+
+        private final String node;
+        private final Map<String, Consumer<EntryStreamChunkDto>> targets = new ConcurrentHashMap<>();
+        private final AtomicBoolean connecting = new AtomicBoolean();
+        private final CompletableFuture<WebSocket> socket = new CompletableFuture<>();
+        private volatile AsyncHttpClient client;
+
+        private NodeConnection(String node) {
+            this.node = node;
+        }
+
+        /**
+         * Opens the connection to the node. In case the connection is already being opened, waits for it to be established.
+         */
+        void connect() {
+            if (connecting.compareAndSet(false, true)) {
+                try {
+                    socket.complete(open(getRemote(node)));
+                } catch (RuntimeException e) {
+                    synchronized (connections) {
+                        connections.remove(node, this);
+                    }
+                    socket.completeExceptionally(e);
+                }
+            }
+
+            try {
+                socket.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Cannot connect to node " + node + " (interrupted)", ie);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Cannot connect to node " + node, e.getCause());
+            }
+        }
+
+        private WebSocket open(RemoteService remote) {
+            client = JerseyClientFactory.get(remote).getWebSocketClient();
+
+            WebSocket ws;
+            try {
+                ws = client.prepareGet(remote.getWebSocketUri(EntryStreamWebSocket.ESWS_PATH).toString())
+                        .execute(new WebSocketUpgradeHandler.Builder().addWebSocketListener(this).build()).get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                client.close();
+                throw new IllegalStateException("Cannot connect to node " + node + " (interrupted)", ie);
+            } catch (Exception e) {
+                client.close();
+                throw new IllegalStateException("Cannot connect to node " + node, e);
+            }
+
+            ObjectChangeInitDto init = new ObjectChangeInitDto();
+            init.token = SecurityHelper.getInstance().getTokenFromPack(remote.getAuthPack());
+            try {
+                ws.sendMessage(JacksonHelper.getDefaultJsonObjectMapper().writeValueAsString(init));
+            } catch (JsonProcessingException e) {
+                ws.close();
+                client.close();
+                throw new IllegalStateException("Cannot authenticate with node " + node, e);
+            }
+            return ws;
+        }
+
+        /**
+         * @return whether the connection is still being opened, or open.
+         */
+        boolean isUsable() {
+            if (!socket.isDone()) {
+                return true;
+            }
+            return !socket.isCompletedExceptionally() && socket.join().isOpen();
+        }
+
+        void send(EntryStreamRequestDto request) {
+            try {
+                socket.join().sendMessage(JacksonHelper.getDefaultJsonObjectMapper().writeValueAsString(request));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot write JSON to WebSocket", e);
+            }
+        }
+
+        @Override
+        public void onMessage(String message) {
+            onMessage(message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onMessage(byte[] message) {
+            try {
+                EntryStreamChunkDto chunk = JacksonHelper.getDefaultJsonObjectMapper().readValue(message,
+                        EntryStreamChunkDto.class);
+                Consumer<EntryStreamChunkDto> target = targets.get(chunk.id);
+                if (target == null) {
+                    return;
+                }
+
+                if (chunk.error != null) {
+                    // the node dropped the subscription already.
+                    removeTarget(this, chunk.id, false);
+                }
+                target.accept(chunk);
+            } catch (IOException e) {
+                log.error("Cannot process entry stream message from node {}", node, e);
+            }
+        }
+
+        @Override
+        public void onClose(WebSocket websocket) {
+            synchronized (connections) {
+                connections.remove(node, this);
+            }
+
+            // let clients know, so they can re-subscribe or fall back to polling.
+            EntryStreamChunkDto lost = new EntryStreamChunkDto(null, null, "Connection to node " + node + " lost");
+            targets.forEach((id, target) -> target.accept(lost));
+            targets.clear();
+            client.close();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.warn("Error on entry stream connection to node {}", node, t);
+        }
+
+        @Override
+        public void close() {
+            // in case the connection is still being opened, it is closed as soon as it is established.
+            socket.thenAccept(ws -> {
+                ws.close();
+                client.close();
+            });
+        }
+    }
+
+}
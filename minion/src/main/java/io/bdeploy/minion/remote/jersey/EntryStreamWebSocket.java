@@ -0,0 +1,283 @@
+package io.bdeploy.minion.remote.jersey;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.GrizzlyFuture;
+import org.glassfish.grizzly.websockets.DataFrame;
+import org.glassfish.grizzly.websockets.WebSocket;
+import org.glassfish.grizzly.websockets.WebSocketAdapter;
+import org.glassfish.grizzly.websockets.WebSocketApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import io.bdeploy.common.NoThrowAutoCloseable;
+import io.bdeploy.common.security.ApiAccessToken;
+import io.bdeploy.common.security.ScopedPermission;
+import io.bdeploy.common.security.ScopedPermission.Permission;
+import io.bdeploy.common.util.JacksonHelper;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+import io.bdeploy.interfaces.directory.EntryChunk;
+import io.bdeploy.interfaces.directory.EntryChunkReader;
+import io.bdeploy.interfaces.directory.EntryStreamChunkDto;
+import io.bdeploy.interfaces.directory.EntryStreamRequestDto;
+import io.bdeploy.interfaces.directory.EntryStreamRequestDto.EntryStreamAction;
+import io.bdeploy.jersey.JerseyAuthenticationProvider;
+import io.bdeploy.jersey.ws.change.msg.ObjectChangeInitDto;
+import io.bdeploy.logging.process.ProcessOutputBroadcaster;
+import io.bdeploy.minion.MinionRoot;
+import io.bdeploy.ui.api.MinionMode;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Streams content appended to files (mainly process output) to subscribed clients as it is written.
+ * <p>
+ * Clients authenticate using a {@link ObjectChangeInitDto} message, the same way as for object changes. Afterwards they send
+ * {@link EntryStreamRequestDto}s to (un-)subscribe, and receive {@link EntryStreamChunkDto}s for each subscription. On the
+ * master, subscriptions for other nodes are relayed through a single connection per node, see {@link EntryStreamNodeRelay}.
+ */
+public class EntryStreamWebSocket extends WebSocketApplication {
+
+    private static final Logger log = LoggerFactory.getLogger(EntryStreamWebSocket.class);
+
+    public static final String ESWS_PATH = "/entry-stream";
+
+    /** Maximum time to wait for a chunk to be written to a client before giving up on the subscription */
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    /** Maximum amount of relayed chunks which are not yet written to a client before further chunks are dropped */
+    private static final int MAX_RELAY_IN_FLIGHT = 256;
+
+    private final MinionRoot root;
+    private final KeyStore authStore;
+    private final EntryStreamNodeRelay relay;
+
+    /** Keeps track of {@link WebSocket}s in authenticating state and closes them if they fail to authenticate in time. */
+    private final ScheduledExecutorService autoCloser = Executors
+            .newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Entry Stream Authentication"));
+
+    private final ConcurrentMap<WebSocket, Connection> connections = new ConcurrentHashMap<>();
+
+    public EntryStreamWebSocket(MinionRoot root, KeyStore authStore) {
+        this.root = root;
+        this.authStore = authStore;
+        this.relay = (root.getMode() == MinionMode.STANDALONE || root.getMode() == MinionMode.MANAGED)
+                ? new EntryStreamNodeRelay(root)
+                : null;
+    }
+
+    @Override
+    public void onConnect(WebSocket socket) {
+        ScheduledFuture<?> schedule = autoCloser
+                .schedule(() -> socket.close(Status.UNAUTHORIZED.getStatusCode(), "No Token received"), 5, TimeUnit.SECONDS);
+
+        Connection connection = new Connection(socket, schedule);
+        connections.put(socket, connection);
+        socket.add(connection);
+    }
+
+    @Override
+    public boolean remove(WebSocket socket) {
+        Connection connection = connections.remove(socket);
+        if (connection == null) {
+            return false;
+        }
+        connection.close();
+        return true;
+    }
+
+    private boolean isAuthorized(ApiAccessToken token, String group) {
+        ScopedPermission required = group == null ? new ScopedPermission(Permission.READ)
+                : new ScopedPermission(group, Permission.READ);
+        if (token.getPermissions().stream().anyMatch(p -> p.satisfies(required))) {
+            return true;
+        }
+        return root.getUsers().isAuthorized(token.getIssuedTo(), required);
+    }
+
+    /**
+     * State of a single client connection.
+     */
+    private final class Connection extends WebSocketAdapter implements NoThrowAutoCloseable {
+
+        private final WebSocket socket;
+        private final ScheduledFuture<?> kicker;
+        private final Map<String, NoThrowAutoCloseable> subscriptions = new ConcurrentHashMap<>();
+        private final AtomicInteger relayInFlight = new AtomicInteger();
+        private ApiAccessToken token;
+
+        private Connection(WebSocket socket, ScheduledFuture<?> kicker) {
+            this.socket = socket;
+            this.kicker = kicker;
+        }
+
+        @Override
+        public void onMessage(WebSocket s, String text) {
+            if (token == null) {
+                authenticate(text);
+                return;
+            }
+
+            EntryStreamRequestDto request;
+            try {
+                request = JacksonHelper.getDefaultJsonObjectMapper().readValue(text, EntryStreamRequestDto.class);
+            } catch (IOException e) {
+                log.error("Cannot read entry stream request", e);
+                return;
+            }
+
+            if (request.action == EntryStreamAction.UNSUBSCRIBE) {
+                NoThrowAutoCloseable sub = subscriptions.remove(request.id);
+                if (sub != null) {
+                    sub.close();
+                }
+            } else if (request.action == EntryStreamAction.SUBSCRIBE) {
+                subscribe(request);
+            } else {
+                log.error("Unknown entry stream action: {}", request.action);
+            }
+        }
+
+        private void authenticate(String text) {
+            kicker.cancel(false);
+
+            try {
+                ObjectChangeInitDto init = JacksonHelper.getDefaultJsonObjectMapper().readValue(text, ObjectChangeInitDto.class);
+                token = JerseyAuthenticationProvider.validateToken(init.token, authStore);
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Cannot parse authentication token", e);
+                }
+            }
+
+            if (token == null) {
+                socket.close(Status.UNAUTHORIZED.getStatusCode(), "Invalid Authentication Token");
+            }
+        }
+
+        private void subscribe(EntryStreamRequestDto request) {
+            if (request.id == null || request.entry == null) {
+                log.error("Invalid entry stream subscription request");
+                return;
+            }
+
+            if (!isAuthorized(token, request.group)) {
+                sendError(request.id, "Not authorized to read entries of " + request.group);
+                return;
+            }
+
+            try {
+                NoThrowAutoCloseable sub;
+                if (relay != null && request.minion != null) {
+                    sub = relay.subscribe(request, this::relay);
+                } else {
+                    sub = subscribeLocal(request);
+                }
+
+                NoThrowAutoCloseable previous = subscriptions.put(request.id, sub);
+                if (previous != null) {
+                    previous.close();
+                }
+            } catch (Exception e) {
+                log.debug("Cannot subscribe to entry {}", request.entry.path, e);
+                sendError(request.id, e.getMessage());
+            }
+        }
+
+        private NoThrowAutoCloseable subscribeLocal(EntryStreamRequestDto request) {
+            Path path = CommonDirectoryEntryResourceImpl.getEntryPath(root, request.entry);
+            return ProcessOutputBroadcaster.getInstance().subscribe(path, (content, start, end) -> {
+                try {
+                    send(new EntryStreamChunkDto(request.id, new EntryChunk(content, start, end), null))
+                            .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while sending chunk", e);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Cannot send chunk of " + request.entry.path, e);
+                }
+            }, target -> {
+                try {
+                    EntryChunk chunk = EntryChunkReader.read(path, request.offset, EntryChunkReader.MAX_CHUNK_SIZE);
+                    if (chunk != null) {
+                        target.onOutput(chunk.content, chunk.startPointer, chunk.endPointer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        /**
+         * Forwards a chunk received from a node. The relay must never block, so chunks are dropped in case the client does not
+         * keep up. The client notices the gap and fetches the missing content.
+         */
+        private void relay(EntryStreamChunkDto chunk) {
+            if (chunk.error != null) {
+                NoThrowAutoCloseable sub = subscriptions.remove(chunk.id);
+                if (sub != null) {
+                    sub.close();
+                }
+            } else if (relayInFlight.get() >= MAX_RELAY_IN_FLIGHT) {
+                return;
+            }
+
+            relayInFlight.incrementAndGet();
+            send(chunk).addCompletionHandler(new CompletionHandler<DataFrame>() {
+
+                @Override
+                public void cancelled() {
+                    relayInFlight.decrementAndGet();
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    relayInFlight.decrementAndGet();
+                }
+
+                @Override
+                public void completed(DataFrame result) {
+                    relayInFlight.decrementAndGet();
+                }
+
+                @Override
+                public void updated(DataFrame result) {
+                    // nothing to do
+                }
+            });
+        }
+
+        private void sendError(String id, String error) {
+            send(new EntryStreamChunkDto(id, null, error));
+        }
+
+        private GrizzlyFuture<DataFrame> send(EntryStreamChunkDto chunk) {
+            try {
+                return socket.send(JacksonHelper.getDefaultJsonObjectMapper().writeValueAsString(chunk));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot write JSON to WebSocket", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            kicker.cancel(false);
+            subscriptions.values().forEach(NoThrowAutoCloseable::close);
+            subscriptions.clear();
+        }
+    }
+
+}
@@ -41,6 +41,7 @@ import io.bdeploy.api.product.v1.impl.LocalDependencyFetcher;
 import io.bdeploy.api.product.v1.impl.ScopedManifestKey;
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.meta.MetaEventLog;
 import io.bdeploy.bhive.meta.MetaManifest;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
@@ -140,6 +141,7 @@ import io.bdeploy.ui.dto.ObjectChangeHint;
 import io.bdeploy.ui.dto.ObjectChangeType;
 import jakarta.inject.Inject;
 import jakarta.mail.internet.InternetAddress;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.container.ResourceContext;
 import jakarta.ws.rs.core.Context;
@@ -845,6 +847,8 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
                 .forEach(pushOp::addManifest);
 
         // 2) ALL meta-manifests starting with the instance ID - the *latest* of each *would* be enough, but we're keeping it simple and send all of them.
+        //    History records which are pending locally must be compacted into the meta-manifests first.
+        new InstanceManifestHistory(key, hive).compact();
         hive.execute(new ManifestListOperation().setManifestName(MetaManifest.META_PREFIX + cfg.id)).forEach(pushOp::addManifest);
 
         // 3) In case the instance is part of a system, send the system configuration as well.
@@ -1033,6 +1037,9 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
 
             allInstanceObjects.forEach(x -> hive.execute(new ManifestDeleteOperation().setToDelete(x)));
 
+            // meta manifests are removed by the cleanup, but local event logs are never synchronized and thus orphaned.
+            MetaEventLog.deleteLocal(hive, instanceId);
+
             changes.remove(ObjectChangeType.INSTANCE, allInstanceObjects.first(), new ObjectScope(name, instanceId));
         }
     }
@@ -1108,6 +1115,18 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
                 offset, limit);
     }
 
+    @Override
+    public EntryChunk getEntryTail(String nodeName, RemoteDirectoryEntry entry, int lines) {
+        return nodes.getNodeResourceIfOnlineOrThrow(nodeName, CommonDirectoryEntryResource.class, context).getEntryTail(entry,
+                lines);
+    }
+
+    @Override
+    public Response getEntryChunkStream(String nodeName, RemoteDirectoryEntry entry, long offset, long limit) {
+        return nodes.getNodeResourceIfOnlineOrThrow(nodeName, CommonDirectoryEntryResource.class, context)
+                .getEntryChunkStream(entry, offset, limit);
+    }
+
     @Override
     public Response getEntryStream(String nodeName, RemoteDirectoryEntry entry) {
         return nodes.getNodeResourceIfOnlineOrThrow(nodeName, CommonDirectoryEntryResource.class, context).getEntryStream(entry);
@@ -1379,12 +1398,7 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
             actions.add(() -> {
                 NodeProcessResource spc = ResourceProvider.getVersionedResource(node.remote, NodeProcessResource.class, context);
                 try {
-                    InstanceNodeStatusDto nodeStatus = spc.getStatus(instanceId);
-                    if(node.minionNodeType == MinionDto.MinionNodeType.MULTI_RUNTIME) {
-                        instanceStatus.add(nodes.getMultiNodeConfigNameForRuntimeNode(nodeName), nodeName, nodeStatus);
-                    } else {
-                        instanceStatus.add(nodeName, nodeStatus);
-                    }
+                    addNodeStatus(instanceStatus, node, nodeName, spc.getStatus(instanceId));
                 } catch (Exception e) {
                     log.error("Cannot fetch process status of {}", nodeName);
                     if (log.isDebugEnabled()) {
@@ -1397,6 +1411,76 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
         return instanceStatus;
     }
 
+    /**
+     * Returns the status of multiple instances at once. Each node is queried only once, regardless of the amount of instances.
+     *
+     * @param instanceIds the instances to query.
+     * @return the status of each instance. Key = InstanceId.
+     */
+    private Map<String, InstanceStatusDto> getStatus(Collection<String> instanceIds) {
+        Map<String, InstanceStatusDto> result = new TreeMap<>();
+        for (String instanceId : instanceIds) {
+            result.put(instanceId, new InstanceStatusDto(instanceId));
+        }
+
+        List<Runnable> actions = new ArrayList<>();
+        for (var entry : nodes.getAllNodes().entrySet()) {
+            if (entry.getValue().minionNodeType == MinionDto.MinionNodeType.MULTI) {
+                continue; // cannot have status.
+            }
+
+            String nodeName = entry.getKey();
+            MinionDto node = nodes.getSingleOnlineNodeConfig(nodeName);
+            if (node == null) {
+                continue; // don't log to avoid flooding - node manager will log once.
+            }
+
+            actions.add(() -> {
+                NodeProcessResource spc = ResourceProvider.getVersionedResource(node.remote, NodeProcessResource.class, context);
+                Map<String, InstanceNodeStatusDto> nodeStatus;
+                try {
+                    nodeStatus = spc.getStatusOfAllInstances();
+                } catch (NotFoundException e) {
+                    // node has not been updated yet, and does not know about querying all instances at once.
+                    nodeStatus = new TreeMap<>();
+                    for (String instanceId : instanceIds) {
+                        try {
+                            nodeStatus.put(instanceId, spc.getStatus(instanceId));
+                        } catch (Exception ex) {
+                            log.error("Cannot fetch process status of {} on {}", instanceId, nodeName);
+                            if (log.isDebugEnabled()) {
+                                log.debug("Exception:", ex);
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Cannot fetch process status of {}", nodeName);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Exception:", e);
+                    }
+                    return;
+                }
+
+                for (InstanceStatusDto instanceStatus : result.values()) {
+                    // nodes report an empty status for instances they do not know, so do we.
+                    InstanceNodeStatusDto status = nodeStatus.get(instanceStatus.getInstanceId());
+                    addNodeStatus(instanceStatus, node, nodeName, status != null ? status : new InstanceNodeStatusDto());
+                }
+            });
+        }
+        rspos.runAndAwaitAll("Node-Process-Status", actions, hive.getTransactions());
+        return result;
+    }
+
+    private void addNodeStatus(InstanceStatusDto instanceStatus, MinionDto node, String nodeName,
+            InstanceNodeStatusDto nodeStatus) {
+        if (node.minionNodeType == MinionDto.MinionNodeType.MULTI_RUNTIME) {
+            instanceStatus.add(nodes.getMultiNodeConfigNameForRuntimeNode(nodeName), nodeName, nodeStatus);
+        } else {
+            instanceStatus.add(nodeName, nodeStatus);
+        }
+    }
+
     @Override
     public ProcessDetailDto getProcessDetails(String instanceId, String appId) {
         try (var handle = af.run(Actions.READ_PROCESS_STATUS, name, instanceId, appId)) {
@@ -1538,6 +1622,7 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
         SortedSet<Key> imKeys = InstanceManifest.scan(hive, true);
 
         try (var handle = af.run(Actions.UPDATE_OVERALL_STATUS, name)) {
+            Map<String, InstanceManifest> active = new TreeMap<>();
             for (Key imKey : imKeys) {
                 InstanceManifest im = InstanceManifest.of(hive, imKey);
 
@@ -1545,10 +1630,14 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
                     continue; // no active tag means there cannot be any status.
                 }
 
-                InstanceConfiguration config = im.getConfiguration();
+                active.put(im.getConfiguration().id, im);
+            }
+
+            // get all node status of the responsible master, querying each node only once.
+            Map<String, InstanceStatusDto> allStatus = getStatus(active.keySet());
 
-                // get all node status of the responsible master.
-                InstanceStatusDto processStatus = getStatus(config.id);
+            for (InstanceManifest im : active.values()) {
+                InstanceStatusDto processStatus = allStatus.get(im.getConfiguration().id);
                 List<InstanceNodeConfigurationDto> nodeConfigs = readExistingNodeConfigs(im);
 
                 int stoppedApps = 0;
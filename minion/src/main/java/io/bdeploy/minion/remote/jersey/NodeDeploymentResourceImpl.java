@@ -23,10 +23,12 @@ import io.bdeploy.api.deploy.v1.InstanceDeploymentInformationApi;
 import io.bdeploy.api.remote.v1.dto.InstanceConfigurationApi;
 import io.bdeploy.api.remote.v1.dto.InstanceConfigurationApi.InstancePurposeApi;
 import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.meta.MetaEventLog;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.op.ManifestDeleteOperation;
 import io.bdeploy.bhive.op.ManifestExistsOperation;
+import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.common.TaskSynchronizer;
 import io.bdeploy.common.util.PathHelper;
@@ -190,6 +192,12 @@ public class NodeDeploymentResourceImpl implements NodeDeploymentResource {
 
         // Remove the InstanceNodeManifest
         hive.execute(new ManifestDeleteOperation().setToDelete(key));
+
+        // pending runtime events of the instance are no longer required once its last version is gone.
+        if (hive.execute(new ManifestListOperation().setManifestName(key.getName())).stream()
+                .noneMatch(k -> k.getName().equals(key.getName()))) {
+            MetaEventLog.deleteLocal(hive, key.getName());
+        }
     }
 
     private InstanceNodeManifest findInstanceNodeManifest(String instanceId) {
@@ -3,6 +3,7 @@ package io.bdeploy.minion.remote.jersey;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest.Key;
@@ -10,6 +11,7 @@ import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.interfaces.configuration.pcu.InstanceNodeStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceUsageDto;
 import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
 import io.bdeploy.interfaces.manifest.InstanceNodeManifest;
 import io.bdeploy.interfaces.manifest.history.runtime.MinionRuntimeHistory;
@@ -104,12 +106,23 @@ public class NodeProcessResourceImpl implements NodeProcessResource {
         return instanceController.getStatus();
     }
 
+    @Override
+    public Map<String, InstanceNodeStatusDto> getStatusOfAllInstances() {
+        return root.getProcessController().getStatus();
+    }
+
     @Override
     public ProcessDetailDto getProcessDetails(String instanceId, String appId) {
         MinionProcessController processController = root.getProcessController();
         return processController.getDetails(instanceId, appId);
     }
 
+    @Override
+    public ProcessResourceUsageDto getResourceUsage(String instanceId, String appId) {
+        MinionProcessController processController = root.getProcessController();
+        return processController.getResourceUsage(instanceId, appId);
+    }
+
     @Override
     public RemoteDirectoryEntry getOutputEntry(String instanceId, String tag, String applicationId) {
         DeploymentPathProvider dpp = new DeploymentPathProvider(root.getDeploymentDir(), root.getLogDataDir(), instanceId, tag);
@@ -18,6 +18,7 @@ import java.util.SortedSet;
 import java.util.StringJoiner;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -79,6 +80,12 @@ public class UserDatabase implements AuthService {
     private final Cache<String, UserInfo> userCache = CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES)
             .maximumSize(1_000).build();
 
+    private final Cache<String, UserPermissionIndex> permissionCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES).maximumSize(1_000).build();
+
+    /** Incremented on each modification of any user, allows to detect a concurrent modification while indexing permissions */
+    private final AtomicLong version = new AtomicLong();
+
     private final List<Authenticator> authenticators = new ArrayList<>();
     private final Map<SpecialAuthenticators, Authenticator> specialAuths = new EnumMap<>(SpecialAuthenticators.class);
 
@@ -231,6 +238,7 @@ public class UserDatabase implements AuthService {
         }
 
         userCache.put(normUser, info);
+        invalidatePermissions(normUser);
     }
 
     @Override
@@ -253,6 +261,12 @@ public class UserDatabase implements AuthService {
         log.info("Deleting {} manifests for user {}", mfs.size(), name);
         mfs.forEach(k -> bhive.execute(new ManifestDeleteOperation().setToDelete(k)));
         userCache.invalidate(name);
+        invalidatePermissions(name);
+    }
+
+    private void invalidatePermissions(String name) {
+        version.incrementAndGet();
+        permissionCache.invalidate(name);
     }
 
     @Override
@@ -571,16 +585,25 @@ public class UserDatabase implements AuthService {
     @Override
     public boolean isAuthorized(String name, ScopedPermission required) {
         name = UserInfo.normalizeName(name);
-        UserInfo info = getUser(name);
-        if (info == null) {
-            return false;
-        }
-        UserInfo cloned = userGroupDatabase.getCloneWithMergedPermissions(info);
-        for (ScopedPermission permission : cloned.mergedPermissions) {
-            if (permission.satisfies(required)) {
-                return true;
+        long groupVersion = userGroupDatabase.getVersion();
+
+        UserPermissionIndex index = permissionCache.getIfPresent(name);
+        if (index == null || index.getGroupVersion() != groupVersion) {
+            long userVersion = version.get();
+            UserInfo info = getUser(name);
+            if (info == null) {
+                return false;
+            }
+
+            index = new UserPermissionIndex(userGroupDatabase.getCloneWithMergedPermissions(info).mergedPermissions,
+                    groupVersion);
+            permissionCache.put(name, index);
+
+            // the user may have been modified while indexing, don't keep the stale index in this case.
+            if (version.get() != userVersion) {
+                permissionCache.invalidate(name);
             }
         }
-        return false;
+        return index.isAuthorized(required);
     }
 }
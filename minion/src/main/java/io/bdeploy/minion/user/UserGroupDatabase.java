@@ -10,6 +10,7 @@ import java.util.SortedSet;
 import java.util.StringJoiner;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -54,6 +55,9 @@ public class UserGroupDatabase implements AuthGroupService {
     private final Cache<String, UserGroupInfo> userGroupCache = CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES)
             .maximumSize(1_000).build();
 
+    /** Incremented on each modification of any group, allows to detect stale merged permissions */
+    private final AtomicLong version = new AtomicLong();
+
     private final BHive target;
 
     public UserGroupDatabase(MinionRoot root) {
@@ -179,6 +183,7 @@ public class UserGroupDatabase implements AuthGroupService {
 
         // update the cache.
         userGroupCache.put(info.id, info);
+        version.incrementAndGet();
     }
 
     private void validateUniqueName(UserGroupInfo info) {
@@ -198,6 +203,14 @@ public class UserGroupDatabase implements AuthGroupService {
         log.info("Deleting {} manifests for user group {}", mfs.size(), groupId);
         mfs.forEach(k -> target.execute(new ManifestDeleteOperation().setToDelete(k)));
         userGroupCache.invalidate(groupId);
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return the current version of all groups, which changes whenever any group is modified.
+     */
+    long getVersion() {
+        return version.get();
     }
 
     @Override
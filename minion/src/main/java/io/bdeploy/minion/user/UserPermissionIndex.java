@@ -0,0 +1,73 @@
+package io.bdeploy.minion.user;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.bdeploy.common.security.ScopedPermission;
+
+/**
+ * The merged user and group permissions of a single user, indexed by scope.
+ * <p>
+ * Only the highest permission per scope is kept, as permissions are inclusive. Checking a permission thus is a single lookup
+ * instead of a scan of all permissions.
+ */
+final class UserPermissionIndex {
+
+    private final Map<String, ScopedPermission> scoped = new HashMap<>();
+    private final long groupVersion;
+
+    private ScopedPermission global;
+
+    /**
+     * @param permissions the merged permissions of the user.
+     * @param groupVersion the version of the user groups the permissions have been merged from.
+     */
+    UserPermissionIndex(Collection<ScopedPermission> permissions, long groupVersion) {
+        this.groupVersion = groupVersion;
+
+        for (ScopedPermission permission : permissions) {
+            if (permission.isGlobal()) {
+                global = max(global, permission);
+            } else {
+                scoped.merge(permission.scope, permission, UserPermissionIndex::max);
+            }
+        }
+    }
+
+    /**
+     * @return the version of the user groups this index has been built from.
+     */
+    long getGroupVersion() {
+        return groupVersion;
+    }
+
+    /**
+     * @see ScopedPermission#satisfies(ScopedPermission)
+     */
+    boolean isAuthorized(ScopedPermission required) {
+        // global permissions satisfy all scopes
+        if (global != null && global.satisfies(required)) {
+            return true;
+        }
+
+        // scoped permissions never satisfy a global one
+        if (required.isGlobal()) {
+            return false;
+        }
+
+        ScopedPermission permission = scoped.get(required.scope);
+        return permission != null && permission.satisfies(required);
+    }
+
+    /**
+     * @return the higher one of two permissions of the same scope.
+     */
+    private static ScopedPermission max(ScopedPermission a, ScopedPermission b) {
+        if (a == null || !a.satisfies(b)) {
+            return b;
+        }
+        return a;
+    }
+
+}
@@ -83,6 +83,7 @@ class AuditTest {
         assertThrows(RuntimeException.class, svc::throwSomething);
 
         RollingFileAuditor auditor = (RollingFileAuditor) srv.getAuditor();
+        auditor.flush();
         List<String> lines = Files.readAllLines(auditor.getLogDir().resolve("audit.log"));
         assertEquals(2, lines.size());
         assertTrue(lines.get(1).contains("Something happened"));
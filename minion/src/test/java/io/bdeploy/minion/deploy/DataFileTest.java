@@ -11,6 +11,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -25,6 +26,7 @@ import io.bdeploy.bhive.op.ManifestLoadOperation;
 import io.bdeploy.common.security.RemoteService;
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.interfaces.directory.EntryChunk;
+import io.bdeploy.interfaces.directory.EntryChunkReader;
 import io.bdeploy.interfaces.directory.RemoteDirectory;
 import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
 import io.bdeploy.interfaces.manifest.InstanceManifest;
@@ -124,6 +126,14 @@ class DataFileTest {
 
         chunk = master.getNamedMaster("demo").getEntryContent("master", sub, 6 + System.lineSeparator().length(), 6);
         assertArrayEquals("Line 2".getBytes(StandardCharsets.UTF_8), chunk.content);
+
+        // without limit, the whole file is read, regardless of its size - e.g. when editing a data file.
+        byte[] large = new byte[EntryChunkReader.MAX_CHUNK_SIZE * 2 + 17];
+        Arrays.fill(large, (byte) 'x');
+        Files.write(testFile2, large);
+        chunk = master.getNamedMaster("demo").getEntryContent("master", sub, 0, 0);
+        assertEquals(large.length, chunk.content.length);
+        assertEquals(large.length, chunk.endPointer);
     }
 
 }
@@ -0,0 +1,139 @@
+package io.bdeploy.minion.deploy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.TestHive;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.op.remote.PushOperation;
+import io.bdeploy.common.SlowTest;
+import io.bdeploy.common.security.RemoteService;
+import io.bdeploy.common.util.UuidHelper;
+import io.bdeploy.interfaces.configuration.instance.InstanceConfiguration;
+import io.bdeploy.interfaces.configuration.instance.InstanceNodeConfiguration;
+import io.bdeploy.interfaces.configuration.pcu.InstanceStatusDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessState;
+import io.bdeploy.interfaces.descriptor.application.ProcessControlDescriptor.ApplicationStartType;
+import io.bdeploy.interfaces.manifest.InstanceManifest;
+import io.bdeploy.interfaces.manifest.InstanceNodeManifest;
+import io.bdeploy.interfaces.manifest.state.InstanceOverallStateRecord;
+import io.bdeploy.interfaces.manifest.state.InstanceOverallStateRecord.OverallStatus;
+import io.bdeploy.interfaces.remote.CommonRootResource;
+import io.bdeploy.interfaces.remote.MasterNamedResource;
+import io.bdeploy.interfaces.remote.MasterRootResource;
+import io.bdeploy.interfaces.remote.ResourceProvider;
+import io.bdeploy.minion.TestFactory;
+import io.bdeploy.minion.TestMinion;
+import io.bdeploy.ui.api.InstanceGroupResource;
+import io.bdeploy.ui.api.Minion;
+import io.bdeploy.ui.api.MinionMode;
+import io.bdeploy.ui.api.NodeManagementResource;
+import io.bdeploy.ui.dto.NodeAttachDto;
+
+@ExtendWith(TestMinion.class)
+@ExtendWith(TestHive.class)
+class InstanceStatusTest {
+
+    @SlowTest
+    @Test
+    void testOverallStatusOfAllInstances(BHive local, MasterRootResource master, CommonRootResource common,
+            InstanceGroupResource groups, RemoteService remote, @TempDir Path tmp) throws IOException, InterruptedException {
+        Manifest.Key template = TestFactory.createApplicationsAndInstance(local, common, remote, tmp, true);
+
+        // a second node, which is the same server in reality.
+        NodeManagementResource nmr = ResourceProvider.getResource(remote, NodeManagementResource.class, null);
+        NodeAttachDto node = new NodeAttachDto();
+        node.name = "Node1";
+        node.sourceMode = MinionMode.NODE;
+        node.remote = remote;
+        nmr.addServerNode(node);
+
+        MasterNamedResource demo = master.getNamedMaster("demo");
+        String running = deploy(demo, local, remote, template, Minion.DEFAULT_NAME, true);
+        String stopped = deploy(demo, local, remote, template, Minion.DEFAULT_NAME, true);
+        String empty = deploy(demo, local, remote, template, Minion.DEFAULT_NAME, false);
+        String offline = deploy(demo, local, remote, template, "Node1", true);
+
+        demo.start(running, List.of("app"));
+
+        InstanceStatusDto status;
+        do {
+            Thread.sleep(10);
+            status = demo.getStatus(running);
+        } while (status.getAppStatus().get("app").processState != ProcessState.RUNNING);
+
+        // the node goes away, which must not affect the status of instances on other nodes.
+        int port;
+        try (ServerSocket ss = new ServerSocket(0)) {
+            port = ss.getLocalPort();
+        }
+        nmr.editNode("Node1", new RemoteService(URI.create("https://localhost:" + port + "/api"), remote.getAuthPack()));
+
+        try {
+            demo.updateOverallStatus();
+
+            Map<String, InstanceOverallStateRecord> states = groups.getInstanceResource("demo").list().stream()
+                    .collect(Collectors.toMap(i -> i.instanceConfiguration.id, i -> i.overallState));
+
+            // all instances on the same node are updated from a single query, each with its own processes.
+            assertEquals(OverallStatus.RUNNING, states.get(running).status);
+            assertEquals(OverallStatus.STOPPED, states.get(stopped).status);
+
+            // no processes at all is a valid, stopped instance.
+            assertEquals(OverallStatus.STOPPED, states.get(empty).status);
+
+            assertEquals(OverallStatus.WARNING, states.get(offline).status);
+            assertTrue(states.get(offline).messages.contains("Node Node1 is not available"));
+        } finally {
+            demo.stop(running, List.of("app"));
+        }
+    }
+
+    /**
+     * Creates a copy of the template instance on the given node, and installs and activates it.
+     *
+     * @return the ID of the new instance.
+     */
+    private static String deploy(MasterNamedResource demo, BHive local, RemoteService remote, Manifest.Key template,
+            String nodeName, boolean withApps) {
+        String id = UuidHelper.randomId();
+
+        InstanceManifest im = InstanceManifest.of(local, template);
+        InstanceNodeConfiguration inc = InstanceNodeManifest
+                .of(local, im.getInstanceNodeManifestKeys().get(Minion.DEFAULT_NAME)).getConfiguration();
+        inc.id = id;
+        if (withApps) {
+            inc.applications.forEach(a -> a.processControl.startType = ApplicationStartType.INSTANCE);
+        } else {
+            inc.applications.clear();
+        }
+
+        InstanceConfiguration ic = im.getConfiguration();
+        ic.id = id;
+        ic.name = id;
+
+        Manifest.Key inmKey = new InstanceNodeManifest.Builder().setInstanceNodeConfiguration(inc).setMinionName(nodeName)
+                .addConfigTreeId(InstanceNodeManifest.ROOT_CONFIG_NAME, ic.configTree).insert(local);
+        Manifest.Key key = new InstanceManifest.Builder().setInstanceConfiguration(ic).addInstanceNodeManifest(nodeName, inmKey)
+                .insert(local);
+        local.execute(new PushOperation().setRemote(remote).setHiveName("demo").addManifest(key));
+
+        demo.install(key);
+        demo.activate(key, false);
+        return id;
+    }
+
+}
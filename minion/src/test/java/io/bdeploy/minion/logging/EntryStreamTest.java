@@ -0,0 +1,293 @@
+package io.bdeploy.minion.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.ws.DefaultWebSocketListener;
+import com.ning.http.client.ws.WebSocket;
+import com.ning.http.client.ws.WebSocketUpgradeHandler;
+
+import io.bdeploy.common.security.RemoteService;
+import io.bdeploy.common.security.SecurityHelper;
+import io.bdeploy.common.util.JacksonHelper;
+import io.bdeploy.interfaces.directory.EntryStreamChunkDto;
+import io.bdeploy.interfaces.directory.EntryStreamRequestDto;
+import io.bdeploy.interfaces.directory.EntryStreamRequestDto.EntryStreamAction;
+import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
+import io.bdeploy.jersey.JerseyClientFactory;
+import io.bdeploy.jersey.ws.change.msg.ObjectChangeInitDto;
+import io.bdeploy.logging.process.RollingStreamGobbler;
+import io.bdeploy.minion.MinionRoot;
+import io.bdeploy.minion.TestMinion;
+import io.bdeploy.minion.remote.jersey.EntryStreamWebSocket;
+
+@ExtendWith(TestMinion.class)
+class EntryStreamTest {
+
+    private static final String NODE = "master";
+
+    @Test
+    void testLocalAndRelayed(MinionRoot mr, RemoteService svc) throws Exception {
+        Path dir = mr.getRootDir().resolve("stream-test");
+        try (FakeProcess process = new FakeProcess();
+                RollingStreamGobbler gobbler = new RollingStreamGobbler(dir, process, "instance", "app");
+                StreamClient client = new StreamClient(svc)) {
+            gobbler.start();
+            process.println("before subscribing");
+            RemoteDirectoryEntry entry = entry(mr, dir);
+            waitForFile(dir, "before subscribing");
+
+            client.subscribe("local", null, entry);
+            client.subscribe("relayed", NODE, entry);
+
+            // both catch up with the present content, and receive live output.
+            client.await("local", "before subscribing");
+            client.await("relayed", "before subscribing");
+            process.println("live output");
+            client.await("local", "live output");
+            client.await("relayed", "live output");
+            assertEquals(client.getContent("local"), client.getContent("relayed"));
+
+            // once unsubscribed, the relayed subscription does not receive anything, while others still do.
+            client.unsubscribe("relayed");
+            String relayed = client.getContent("relayed");
+            process.println("after unsubscribing");
+            client.await("local", "after unsubscribing");
+            Thread.sleep(200);
+            assertEquals(relayed, client.getContent("relayed"));
+        }
+    }
+
+    @Test
+    void testRelayFanOut(MinionRoot mr, RemoteService svc) throws Exception {
+        Path dir = mr.getRootDir().resolve("stream-fan-out");
+        try (FakeProcess process = new FakeProcess();
+                RollingStreamGobbler gobbler = new RollingStreamGobbler(dir, process, "instance", "app");
+                StreamClient first = new StreamClient(svc);
+                StreamClient second = new StreamClient(svc)) {
+            gobbler.start();
+            process.println("start");
+            RemoteDirectoryEntry entry = entry(mr, dir);
+            waitForFile(dir, "start");
+
+            // both clients use the same subscription id, which must not clash on the shared node connection.
+            first.subscribe("sub", NODE, entry);
+            second.subscribe("sub", NODE, entry);
+            for (int i = 0; i < 50; ++i) {
+                process.println("line " + i);
+            }
+            first.await("sub", "line 49");
+            second.await("sub", "line 49");
+
+            // closing one client leaves the subscription of the other one intact.
+            first.close();
+            process.println("only second");
+            second.await("sub", "only second");
+        }
+    }
+
+    @Test
+    void testRelayedError(MinionRoot mr, RemoteService svc) throws Exception {
+        try (StreamClient client = new StreamClient(svc)) {
+            RemoteDirectoryEntry missing = new RemoteDirectoryEntry();
+            missing.path = "does-not-exist/" + RollingStreamGobbler.OUT_TXT;
+
+            client.subscribe("missing", NODE, missing);
+            EntryStreamChunkDto error = client.awaitError("missing");
+            assertNotNull(error.error);
+            assertTrue(client.getContent("missing").isEmpty());
+        }
+    }
+
+    private static RemoteDirectoryEntry entry(MinionRoot mr, Path dir) {
+        RemoteDirectoryEntry entry = new RemoteDirectoryEntry();
+        entry.path = mr.getRootDir().relativize(dir.resolve(RollingStreamGobbler.OUT_TXT)).toString().replace('\\', '/');
+        return entry;
+    }
+
+    private static void waitForFile(Path dir, String content) throws Exception {
+        Path file = dir.resolve(RollingStreamGobbler.OUT_TXT);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!file.toFile().isFile() || !Files.readString(file).contains(content)) {
+            assertTrue(System.currentTimeMillis() < deadline, "Output not written in time");
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * A client of the entry stream WebSocket, collecting the content received for each subscription.
+     */
+    private static final class StreamClient extends DefaultWebSocketListener implements AutoCloseable {
+
+        private final AsyncHttpClient client;
+        private final WebSocket socket;
+        private final Map<String, StringBuilder> content = new ConcurrentHashMap<>();
+        private final List<EntryStreamChunkDto> errors = new ArrayList<>();
+
+        StreamClient(RemoteService svc) throws Exception {
+            client = JerseyClientFactory.get(svc).getWebSocketClient();
+            socket = client.prepareGet(svc.getWebSocketUri(EntryStreamWebSocket.ESWS_PATH).toString())
+                    .execute(new WebSocketUpgradeHandler.Builder().addWebSocketListener(this).build()).get();
+
+            ObjectChangeInitDto init = new ObjectChangeInitDto();
+            init.token = SecurityHelper.getInstance().getTokenFromPack(svc.getAuthPack());
+            send(init);
+        }
+
+        void subscribe(String id, String minion, RemoteDirectoryEntry entry) throws JsonProcessingException {
+            content.put(id, new StringBuilder());
+
+            EntryStreamRequestDto request = new EntryStreamRequestDto();
+            request.action = EntryStreamAction.SUBSCRIBE;
+            request.id = id;
+            request.minion = minion;
+            request.entry = entry;
+            send(request);
+        }
+
+        void unsubscribe(String id) throws JsonProcessingException {
+            EntryStreamRequestDto request = new EntryStreamRequestDto();
+            request.action = EntryStreamAction.UNSUBSCRIBE;
+            request.id = id;
+            send(request);
+        }
+
+        private void send(Object message) throws JsonProcessingException {
+            socket.sendMessage(JacksonHelper.getDefaultJsonObjectMapper().writeValueAsString(message));
+        }
+
+        @Override
+        public void onMessage(String message) {
+            try {
+                EntryStreamChunkDto chunk = JacksonHelper.getDefaultJsonObjectMapper().readValue(message,
+                        EntryStreamChunkDto.class);
+                synchronized (this) {
+                    if (chunk.error != null) {
+                        errors.add(chunk);
+                    } else {
+                        content.get(chunk.id).append(new String(chunk.chunk.content, StandardCharsets.UTF_8));
+                    }
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read message", e);
+            }
+        }
+
+        synchronized String getContent(String id) {
+            return content.get(id).toString();
+        }
+
+        synchronized void await(String id, String expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (!content.get(id).toString().contains(expected)) {
+                assertFalse(errors.stream().anyMatch(e -> id.equals(e.id)), "Subscription failed");
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue(remaining > 0, "Content not received in time: " + expected);
+                wait(remaining);
+            }
+        }
+
+        synchronized EntryStreamChunkDto awaitError(String id) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (true) {
+                for (EntryStreamChunkDto error : errors) {
+                    if (id.equals(error.id)) {
+                        return error;
+                    }
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue(remaining > 0, "Error not received in time");
+                wait(remaining);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (socket.isOpen()) {
+                socket.close();
+            }
+            client.close();
+        }
+    }
+
+    /**
+     * A process which writes whatever is printed to it.
+     */
+    private static final class FakeProcess extends Process implements AutoCloseable {
+
+        private final PipedOutputStream writer = new PipedOutputStream();
+        private final PipedInputStream output;
+
+        FakeProcess() throws IOException {
+            output = new PipedInputStream(writer);
+        }
+
+        void println(String line) throws IOException {
+            writer.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            writer.flush();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return output;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+            // nothing to do
+        }
+
+        @Override
+        public long pid() {
+            return 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+}
@@ -1,11 +1,14 @@
 package io.bdeploy.minion.ui;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -57,6 +60,15 @@ class ProductResourceTest {
 
         Response response = dlService.download(zipToken);
         assertEquals(Response.Status.OK, response.getStatusInfo().toEnum());
+
+        // the same version again is served from the cache.
+        String cachedToken = productResource.createProductZipFile(prod.getName(), prod.getTag());
+        assertNotEquals(zipToken, cachedToken);
+        try (Stream<Path> cached = Files.list(minion.getTempDir().resolve("zip-cache"))) {
+            List<Path> entries = cached.toList();
+            assertEquals(1, entries.size());
+            assertEquals(Files.size(entries.get(0)), Files.size(minion.getDownloadDir().resolve(cachedToken)));
+        }
     }
 
     @Test
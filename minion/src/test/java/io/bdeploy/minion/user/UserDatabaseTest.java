@@ -21,7 +21,9 @@ import io.bdeploy.common.security.ScopedPermission;
 import io.bdeploy.common.security.ScopedPermission.Permission;
 import io.bdeploy.common.util.StringHelper;
 import io.bdeploy.interfaces.UserGroupInfo;
+import io.bdeploy.interfaces.UserGroupPermissionUpdateDto;
 import io.bdeploy.interfaces.UserInfo;
+import io.bdeploy.interfaces.UserPermissionUpdateDto;
 import io.bdeploy.minion.MinionRoot;
 import io.bdeploy.minion.TestMinion;
 
@@ -236,4 +238,44 @@ class UserDatabaseTest {
         // Check that removal from the all-users-group is impossible
         assertThrows(RuntimeException.class, () -> db.removeUserFromGroup(admin.name, UserGroupInfo.ALL_USERS_GROUP_ID));
     }
+
+    @Test
+    void testPermissionChanges(MinionRoot root) {
+        UserDatabase db = root.getUsers();
+        UserGroupDatabase groups = root.getUserGroups();
+
+        ScopedPermission read = new ScopedPermission("JunitScope", Permission.READ);
+        ScopedPermission write = new ScopedPermission("JunitScope", Permission.WRITE);
+
+        db.createLocalUser("JunitTest", "JunitTestJunitTest", Collections.singleton(read));
+        assertTrue(db.isAuthorized("JunitTest", read));
+        assertFalse(db.isAuthorized("JunitTest", write));
+        assertFalse(db.isAuthorized("JunitTest", new ScopedPermission("OtherScope", Permission.READ)));
+        assertFalse(db.isAuthorized("JunitTest", new ScopedPermission(Permission.READ)));
+
+        // changes of the user are visible immediately
+        db.updatePermissions("JunitScope",
+                new UserPermissionUpdateDto[] { new UserPermissionUpdateDto("JunitTest", Permission.WRITE) });
+        assertTrue(db.isAuthorized("JunitTest", read));
+        assertTrue(db.isAuthorized("JunitTest", write));
+
+        // changes of a group the user is member of are visible immediately
+        UserGroupInfo group = new UserGroupInfo();
+        group.name = "JunitGroup";
+        groups.createUserGroup(group);
+        db.addUserToGroup(group.id, "JunitTest");
+
+        ScopedPermission admin = new ScopedPermission("JunitScope", Permission.ADMIN);
+        assertFalse(db.isAuthorized("JunitTest", admin));
+        groups.updatePermissions("JunitScope",
+                new UserGroupPermissionUpdateDto[] { new UserGroupPermissionUpdateDto(group.id, Permission.ADMIN) });
+        assertTrue(db.isAuthorized("JunitTest", admin));
+
+        groups.deleteUserGroup(group.id);
+        assertFalse(db.isAuthorized("JunitTest", admin));
+        assertTrue(db.isAuthorized("JunitTest", write));
+
+        db.deleteUser("JunitTest");
+        assertFalse(db.isAuthorized("JunitTest", read));
+    }
 }
@@ -17,6 +17,7 @@ import io.bdeploy.common.util.VariableResolver;
 import io.bdeploy.interfaces.configuration.pcu.InstanceNodeStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessConfiguration;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceUsageDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessGroupConfiguration;
 import io.bdeploy.interfaces.configuration.pcu.ProcessState;
 import io.bdeploy.interfaces.configuration.pcu.ProcessStatusDto;
@@ -295,6 +296,25 @@ public class InstanceProcessController {
         return processList.get(appId).getDetails();
     }
 
+    /**
+     * Returns the history of resources used by the given application.
+     *
+     * @param appId
+     *            the application identifier
+     * @return the resource usage
+     */
+    public ProcessResourceUsageDto getResourceUsage(String appId) {
+        // Get usage if it is running or scheduled
+        ProcessController processController = findProcessController(appId, SET_RUNNING_SCHEDULED);
+        if (processController != null) {
+            return processController.getResourceUsage();
+        }
+
+        // Get usage of the activated version
+        ProcessList processList = processMap.get(activeTag);
+        return processList.get(appId).getResourceUsage();
+    }
+
     /**
      * TESTING only: Detaches all running applications so that they cannot be controlled any more.
      */
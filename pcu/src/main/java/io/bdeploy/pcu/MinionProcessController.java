@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -12,7 +13,9 @@ import java.util.stream.Collectors;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.common.util.FutureHelper;
 import io.bdeploy.common.util.MdcLogger;
+import io.bdeploy.interfaces.configuration.pcu.InstanceNodeStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceUsageDto;
 import io.bdeploy.interfaces.manifest.InstanceNodeManifest;
 
 /**
@@ -77,6 +80,17 @@ public class MinionProcessController {
         return instance2Controller.get(instanceId);
     }
 
+    /**
+     * Returns runtime details about all instances known to this controller.
+     *
+     * @return the status of each instance. Key = InstanceId.
+     */
+    public SortedMap<String, InstanceNodeStatusDto> getStatus() {
+        SortedMap<String, InstanceNodeStatusDto> result = new TreeMap<>();
+        instance2Controller.forEach((instanceId, controller) -> result.put(instanceId, controller.getStatus()));
+        return result;
+    }
+
     /**
      * Returns an existing instance controller or creates a new one if not existing
      *
@@ -103,4 +117,18 @@ public class MinionProcessController {
         return ipc.getDetails(appId);
     }
 
+    /**
+     * Returns the history of resources used by the process launched for a given application.
+     *
+     * @param instanceId
+     *            the instance ID
+     * @param appId
+     *            the application ID
+     * @return the DTO containing the resource usage
+     */
+    public ProcessResourceUsageDto getResourceUsage(String instanceId, String appId) {
+        InstanceProcessController ipc = get(instanceId);
+        return ipc.getResourceUsage(appId);
+    }
+
 }
@@ -17,9 +17,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
@@ -27,6 +25,9 @@ import java.util.function.Consumer;
 
 import org.glassfish.jersey.client.ClientProperties;
 
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
 import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.common.NoThrowAutoCloseable;
 import io.bdeploy.common.security.ApiAccessToken;
@@ -40,8 +41,10 @@ import io.bdeploy.common.util.VariableResolver;
 import io.bdeploy.interfaces.configuration.pcu.ProcessConfiguration;
 import io.bdeploy.interfaces.configuration.pcu.ProcessControlConfiguration;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessProbeLatencyDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessProbeResultDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessProbeResultDto.ProcessProbeType;
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceUsageDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessState;
 import io.bdeploy.interfaces.configuration.pcu.ProcessStatusDto;
 import io.bdeploy.interfaces.descriptor.application.HttpEndpoint;
@@ -80,6 +83,9 @@ public class ProcessController {
     /** In production, by default, don't wait for out.txt file lock */
     private static boolean lockWait = false;
 
+    /** Interval at which resources used by running processes are sampled, zero disables sampling */
+    private static Duration resourceSampleInterval = Duration.ofSeconds(10);
+
     private final MdcLogger logger = new MdcLogger(ProcessController.class);
     private final Path processDir;
     private final String instanceId;
@@ -92,9 +98,6 @@ public class ProcessController {
     /** The active task that has the lock */
     private String lockTask = null;
 
-    /** Executor used to schedule re-launching of application */
-    private final ScheduledExecutorService executorService;
-
     /** Task scheduled to monitor the up-time */
     private Future<?> uptimeTask;
 
@@ -107,6 +110,12 @@ public class ProcessController {
     /** Task scheduled to monitor process liveness probe */
     private Future<?> aliveTask;
 
+    /** Task scheduled to sample the resources used by the process */
+    private Future<?> sampleTask;
+
+    /** The resources used by the process over time */
+    private final ProcessResourceHistory resourceHistory = new ProcessResourceHistory();
+
     /** The native process. Only used to evaluate exit code */
     private Process process;
 
@@ -157,7 +166,11 @@ public class ProcessController {
     private VariableResolver variableResolver;
 
     /** The results of the last probe calls */
-    private final Map<ProcessProbeType, ProcessProbeResultDto> lastProbeResults = new EnumMap<>(ProcessProbeType.class);
+    private final Map<ProcessProbeType, ProcessProbeResultDto> lastProbeResults = Collections
+            .synchronizedMap(new EnumMap<>(ProcessProbeType.class));
+
+    /** The time it took to perform probe calls */
+    private final Map<ProcessProbeType, Timer> probeTimers = new EnumMap<>(ProcessProbeType.class);
 
     /**
      * Creates a new process controller for the given configuration.
@@ -179,7 +192,10 @@ public class ProcessController {
         this.processConfig = pc;
         this.recoverAttempts = pc.processControl.noOfRetries;
         this.processDir = processDir;
-        this.executorService = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name(processConfig.id).factory());
+
+        for (ProcessProbeType type : ProcessProbeType.values()) {
+            probeTimers.put(type, new Timer());
+        }
     }
 
     @Override
@@ -315,9 +331,28 @@ public class ProcessController {
             dto.handle = ProcessControllerHelper.collectProcessInfo(processHandle);
         }
         dto.lastProbes = new ArrayList<>(lastProbeResults.values());
+        dto.probeLatencies = new ArrayList<>();
+        probeTimers.forEach((type, timer) -> {
+            if (timer.getCount() > 0) {
+                dto.probeLatencies.add(toLatencyDto(type, timer));
+            }
+        });
+        if (processLogger != null) {
+            dto.outputRate = processLogger.getOutputRate();
+        }
+        dto.resources = resourceHistory.getLast();
         return dto;
     }
 
+    /**
+     * Returns the history of resources used by the process and its children.
+     *
+     * @return the resources sampled while the process was running
+     */
+    public ProcessResourceUsageDto getResourceUsage() {
+        return resourceHistory.toDto();
+    }
+
     /**
      * Returns the process configuration.
      *
@@ -458,7 +493,8 @@ public class ProcessController {
             process = launch(processConfig.start, processConfig.startEnv);
             processHandle = process.toHandle();
             processStdin = process.getOutputStream();
-            processLogger = new RollingStreamGobbler(processDir, process, instanceId, processConfig.id);
+            processLogger = new RollingStreamGobbler(processDir, process, instanceId, processConfig.id,
+                    Thread.ofVirtual().name("Gobbler [" + instanceId + "/" + processConfig.id + "]").factory());
             processExit = processHandle.onExit();
             startTime = processHandle.info().startInstant().orElseGet(() -> {
                 logger.log(l -> l.error("Start time of process not available, falling back to current time. PID = {}.",
@@ -635,6 +671,11 @@ public class ProcessController {
 
         // Cancel restart task and monitoring task
         doCancelMonitorTasks();
+
+        if (sampleTask != null) {
+            sampleTask.cancel(true);
+            sampleTask = null;
+        }
     }
 
     /**
@@ -686,6 +727,14 @@ public class ProcessController {
         lockWait = enable;
     }
 
+    /**
+     * @param interval the interval at which resources used by processes are sampled. Applies to processes started afterwards.
+     *            A zero interval disables sampling.
+     */
+    public static void setResourceSampleInterval(Duration interval) {
+        resourceSampleInterval = interval;
+    }
+
     /**
      * Waits until the process releases the lock that is hold on the out.txt file.
      */
@@ -750,12 +799,21 @@ public class ProcessController {
             if (rateInSeconds == 0) {
                 rateInSeconds = 1;
             }
-            uptimeTask = executorService.scheduleAtFixedRate(this::doCheckUptime, rateInSeconds, rateInSeconds, TimeUnit.SECONDS);
+            uptimeTask = ProcessScheduler.scheduleAtFixedRate(this::doCheckUptime, rateInSeconds, rateInSeconds,
+                    TimeUnit.SECONDS);
             String requiredUptime = ProcessControllerHelper.formatDuration(stableThreshold);
             logger.log(l -> l.info("Application will be marked as stable after: {}", requiredUptime));
         }
 
-        startupTask = executorService.scheduleWithFixedDelay(this::doCheckStarted, 500, 500, TimeUnit.MILLISECONDS);
+        startupTask = ProcessScheduler.scheduleWithFixedDelay(this::doCheckStarted, 500, 500, TimeUnit.MILLISECONDS, true);
+
+        long sampleMillis = resourceSampleInterval.toMillis();
+        if (sampleMillis > 0 && sampleTask == null) {
+            ProcessHandle sampled = processHandle;
+            sampleTask = ProcessScheduler.scheduleAtFixedRate(
+                    () -> resourceHistory.add(ProcessResourceSampler.sample(sampled), sampleMillis), 0, sampleMillis,
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
     private void doCheckStarted() {
@@ -790,8 +848,8 @@ public class ProcessController {
                         logger.log(l -> l.warn("Application defined liveness probe endpoint {} missing or has wrong type.",
                                 liveness.endpoint));
                     } else {
-                        aliveTask = executorService.scheduleWithFixedDelay(this::doCheckAlive, liveness.initialDelaySeconds,
-                                liveness.periodSeconds, TimeUnit.SECONDS);
+                        aliveTask = ProcessScheduler.scheduleWithFixedDelay(this::doCheckAlive, liveness.initialDelaySeconds,
+                                liveness.periodSeconds, TimeUnit.SECONDS, true);
                     }
                 }
 
@@ -844,9 +902,13 @@ public class ProcessController {
             }
 
             Builder builder = CommonEndpointHelper.createRequestBuilder(processed, null, properties, Collections.emptyMap());
-            Response rs = builder.get();
-            String resp = rs.hasEntity() ? rs.readEntity(String.class) : "Empty Response";
-            int status = rs.getStatus();
+            String resp;
+            int status;
+            try (Timer.Context timing = probeTimers.get(type).time(); Response rs = builder.get()) {
+                // the response needs to be consumed and closed to keep the connection alive for the next probe.
+                resp = rs.hasEntity() ? rs.readEntity(String.class) : "Empty Response";
+                status = rs.getStatus();
+            }
 
             lastProbeResults.put(type, new ProcessProbeResultDto(type, status, resp, System.currentTimeMillis()));
 
@@ -859,6 +921,25 @@ public class ProcessController {
         }
     }
 
+    private static ProcessProbeLatencyDto toLatencyDto(ProcessProbeType type, Timer timer) {
+        Snapshot snapshot = timer.getSnapshot();
+
+        ProcessProbeLatencyDto dto = new ProcessProbeLatencyDto();
+        dto.type = type;
+        dto.count = timer.getCount();
+        dto.min = toMillis(snapshot.getMin());
+        dto.mean = toMillis(snapshot.getMean());
+        dto.median = toMillis(snapshot.getMedian());
+        dto.p95th = toMillis(snapshot.get95thPercentile());
+        dto.p99th = toMillis(snapshot.get99thPercentile());
+        dto.max = toMillis(snapshot.getMax());
+        return dto;
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
     /** Callback method that is executed when the process terminates */
     private void onTerminated() {
         stopTime = Instant.now();
@@ -915,10 +996,10 @@ public class ProcessController {
         Runnable task = () -> executeLocked("Restart", DEFAULT_USER, this::doRestart);
         if (delay.isZero()) {
             logger.log(l -> l.info("Re-launching application immediatly."));
-            recoverTask = executorService.schedule(task, 0, TimeUnit.SECONDS);
+            recoverTask = ProcessScheduler.schedule(task, 0, TimeUnit.SECONDS);
         } else {
             logger.log(l -> l.info("Waiting {} before re-launching application.", ProcessControllerHelper.formatDuration(delay)));
-            recoverTask = executorService.schedule(task, delay.getSeconds(), TimeUnit.SECONDS);
+            recoverTask = ProcessScheduler.schedule(task, delay.getSeconds(), TimeUnit.SECONDS);
         }
     }
 
@@ -1038,7 +1119,8 @@ public class ProcessController {
             } else {
                 // java compiler misses that we're auto-closing the resource in any case through stopLogger
                 @SuppressWarnings("resource")
-                var gobbler = new RollingStreamGobbler(processDir, stopProcess, instanceId, "STOP-" + processConfig.id);
+                var gobbler = new RollingStreamGobbler(processDir, stopProcess, instanceId, "STOP-" + processConfig.id,
+                        Thread.ofVirtual().name("Gobbler [" + instanceId + "/STOP-" + processConfig.id + "]").factory());
                 gobbler.start();
 
                 stopLogger = gobbler;
@@ -0,0 +1,172 @@
+package io.bdeploy.pcu;
+
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceSampleDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceSeriesDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceUsageDto;
+import io.bdeploy.pcu.ProcessResourceSampler.Sample;
+
+/**
+ * Keeps the history of resources used by a single process in memory.
+ * <p>
+ * Recent samples are kept as they are. Every {@link #DOWNSAMPLE_FACTOR} samples are combined into a single downsampled one,
+ * which allows to keep a much longer period at the same cost. Both are kept in fixed-size ring buffers of primitive values, so
+ * the memory required does not grow over time.
+ */
+class ProcessResourceHistory {
+
+    /** Amount of recent samples to keep, one hour when sampling every 10 seconds */
+    static final int RECENT_SAMPLES = 360;
+
+    /** Amount of downsampled samples to keep, one day when sampling every 10 seconds */
+    static final int DOWNSAMPLED_SAMPLES = 288;
+
+    /** Amount of recent samples combined into one downsampled sample */
+    static final int DOWNSAMPLE_FACTOR = 30;
+
+    private final Series recent = new Series(RECENT_SAMPLES);
+    private final Series downsampled = new Series(DOWNSAMPLED_SAMPLES);
+
+    private long interval;
+    private Sample previous;
+
+    // accumulates recent samples until a downsampled sample is complete.
+    private int pending;
+    private double pendingCpu;
+    private long pendingRss = -1;
+    private int pendingFds = -1;
+    private int pendingThreads = -1;
+
+    /**
+     * @param sample the sample to add.
+     * @param interval the interval in milliseconds at which samples are taken.
+     */
+    synchronized void add(Sample sample, long interval) {
+        if (this.interval != interval) {
+            // samples taken at different intervals cannot be combined reasonably.
+            recent.clear();
+            downsampled.clear();
+            pending = 0;
+            this.interval = interval;
+        }
+
+        double cpu = -1;
+        if (previous != null && previous.cpuNanos >= 0 && sample.cpuNanos >= 0 && sample.timestamp > previous.timestamp) {
+            // children which exited since the last sample take their CPU time with them, never report negative usage.
+            long cpuDelta = Math.max(0, sample.cpuNanos - previous.cpuNanos);
+            cpu = cpuDelta / 1_000_000d / (sample.timestamp - previous.timestamp) * 100d;
+        }
+        previous = sample;
+
+        recent.add(sample.timestamp, cpu, sample.rssBytes, sample.fileDescriptors, sample.threads);
+
+        if (pending == 0) {
+            pendingCpu = 0;
+            pendingRss = -1;
+            pendingFds = -1;
+            pendingThreads = -1;
+        }
+        pending++;
+        pendingCpu += Math.max(0, cpu);
+        pendingRss = Math.max(pendingRss, sample.rssBytes);
+        pendingFds = Math.max(pendingFds, sample.fileDescriptors);
+        pendingThreads = Math.max(pendingThreads, sample.threads);
+
+        if (pending == DOWNSAMPLE_FACTOR) {
+            downsampled.add(sample.timestamp, pendingCpu / pending, pendingRss, pendingFds, pendingThreads);
+            pending = 0;
+        }
+    }
+
+    /**
+     * @return the most recent sample, or <code>null</code> if no sample has been taken yet.
+     */
+    synchronized ProcessResourceSampleDto getLast() {
+        if (recent.size == 0) {
+            return null;
+        }
+
+        int index = recent.index(recent.size - 1);
+        ProcessResourceSampleDto dto = new ProcessResourceSampleDto();
+        dto.timestamp = recent.timestamps[index];
+        dto.cpuPercent = recent.cpu[index];
+        dto.rssBytes = recent.rss[index];
+        dto.fileDescriptors = recent.fds[index];
+        dto.threads = recent.threads[index];
+        return dto;
+    }
+
+    synchronized ProcessResourceUsageDto toDto() {
+        ProcessResourceUsageDto dto = new ProcessResourceUsageDto();
+        dto.recent = recent.toDto(interval);
+        dto.downsampled = downsampled.toDto(interval * DOWNSAMPLE_FACTOR);
+        return dto;
+    }
+
+    /**
+     * A ring buffer of samples, overwriting the oldest sample once full.
+     */
+    private static final class Series {
+
+        private final long[] timestamps;
+        private final double[] cpu;
+        private final long[] rss;
+        private final int[] fds;
+        private final int[] threads;
+
+        private int head;
+        private int size;
+
+        private Series(int capacity) {
+            timestamps = new long[capacity];
+            cpu = new double[capacity];
+            rss = new long[capacity];
+            fds = new int[capacity];
+            threads = new int[capacity];
+        }
+
+        private void add(long timestamp, double cpuPercent, long rssBytes, int fileDescriptors, int threadCount) {
+            timestamps[head] = timestamp;
+            cpu[head] = cpuPercent;
+            rss[head] = rssBytes;
+            fds[head] = fileDescriptors;
+            threads[head] = threadCount;
+
+            head = (head + 1) % timestamps.length;
+            size = Math.min(size + 1, timestamps.length);
+        }
+
+        private void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        /**
+         * @param n the n-th oldest sample.
+         * @return the index of the sample in the arrays.
+         */
+        private int index(int n) {
+            return (head - size + n + timestamps.length) % timestamps.length;
+        }
+
+        private ProcessResourceSeriesDto toDto(long interval) {
+            ProcessResourceSeriesDto dto = new ProcessResourceSeriesDto();
+            dto.interval = interval;
+            dto.timestamps = new long[size];
+            dto.cpuPercent = new double[size];
+            dto.rssBytes = new long[size];
+            dto.fileDescriptors = new int[size];
+            dto.threads = new int[size];
+
+            for (int i = 0; i < size; ++i) {
+                int index = index(i);
+                dto.timestamps[i] = timestamps[index];
+                dto.cpuPercent[i] = cpu[index];
+                dto.rssBytes[i] = rss[index];
+                dto.fileDescriptors[i] = fds[index];
+                dto.threads[i] = threads[index];
+            }
+            return dto;
+        }
+    }
+
+}
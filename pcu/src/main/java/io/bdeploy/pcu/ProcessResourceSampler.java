@@ -0,0 +1,117 @@
+package io.bdeploy.pcu;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.common.util.OsHelper;
+import io.bdeploy.common.util.OsHelper.OperatingSystem;
+
+/**
+ * Samples the resources used by a process tree.
+ * <p>
+ * CPU time is available on all operating systems through {@link ProcessHandle}. On Linux, resident memory, threads and open
+ * file descriptors are read from <code>/proc/[pid]/status</code> and <code>/proc/[pid]/fd</code>, which does not require any
+ * agent in the process.
+ */
+final class ProcessResourceSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessResourceSampler.class);
+
+    private static final Path PROC = Paths.get("/proc");
+
+    private ProcessResourceSampler() {
+    }
+
+    /**
+     * Raw values of a single sample. Values are -1 if they cannot be determined.
+     */
+    static final class Sample {
+
+        long timestamp;
+        long cpuNanos = -1;
+        long rssBytes = -1;
+        int fileDescriptors = -1;
+        int threads = -1;
+    }
+
+    /**
+     * @param root the root of the process tree to sample.
+     * @return the resources used by the process and all its descendants.
+     */
+    static Sample sample(ProcessHandle root) {
+        Sample sample = new Sample();
+        sample.timestamp = System.currentTimeMillis();
+
+        boolean proc = OsHelper.getRunningOs() == OperatingSystem.LINUX;
+        Iterator<ProcessHandle> tree = Stream.concat(Stream.of(root), root.descendants()).iterator();
+        while (tree.hasNext()) {
+            ProcessHandle handle = tree.next();
+
+            Optional<Duration> cpu = handle.info().totalCpuDuration();
+            if (cpu.isPresent()) {
+                sample.cpuNanos = add(sample.cpuNanos, cpu.get().toNanos());
+            }
+
+            if (proc) {
+                sampleProc(handle.pid(), sample);
+            }
+        }
+        return sample;
+    }
+
+    private static void sampleProc(long pid, Sample sample) {
+        Path dir = PROC.resolve(String.valueOf(pid));
+        try {
+            for (String line : Files.readAllLines(dir.resolve("status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    // the value is always given in kB, e.g. "VmRSS:	   12345 kB".
+                    sample.rssBytes = add(sample.rssBytes, parseValue(line) * 1024);
+                } else if (line.startsWith("Threads:")) {
+                    sample.threads = (int) add(sample.threads, parseValue(line));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the process may just have exited.
+            if (log.isTraceEnabled()) {
+                log.trace("Cannot read status of process {}", pid, e);
+            }
+        }
+
+        int fds = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.resolve("fd"))) {
+            Iterator<Path> it = stream.iterator();
+            while (it.hasNext()) {
+                it.next();
+                fds++;
+            }
+            sample.fileDescriptors = (int) add(sample.fileDescriptors, fds);
+        } catch (IOException | RuntimeException e) {
+            // the process may have exited or belong to another user.
+            if (log.isTraceEnabled()) {
+                log.trace("Cannot read file descriptors of process {}", pid, e);
+            }
+        }
+    }
+
+    private static long parseValue(String line) {
+        String value = line.substring(line.indexOf(':') + 1).trim();
+        int space = value.indexOf(' ');
+        return Long.parseLong(space < 0 ? value : value.substring(0, space));
+    }
+
+    private static long add(long current, long value) {
+        return current < 0 ? value : current + value;
+    }
+
+}
@@ -0,0 +1,145 @@
+package io.bdeploy.pcu;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+
+/**
+ * Schedules the periodic and delayed tasks of all {@link ProcessController}s on a node.
+ * <p>
+ * A single timer thread keeps track of when tasks are due, each execution runs on its own virtual thread. Thus a blocking task
+ * (e.g. a probe waiting for a slow application) never delays the tasks of other processes, while the amount of timers and
+ * platform threads does not grow with the number of processes.
+ * <p>
+ * Tasks of a single {@link ProcessController} are not guaranteed to run one after another. They must synchronize on their own,
+ * which {@link ProcessController} does by executing them locked.
+ */
+final class ProcessScheduler {
+
+    private static final ScheduledExecutorService timer = Executors
+            .newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Process Scheduler"));
+
+    private static final ExecutorService workers = Executors
+            .newThreadPerTaskExecutor(Thread.ofVirtual().name("Process Task-", 0).factory());
+
+    /** The maximum fraction of a delay which is added as random jitter */
+    private static final int JITTER_DIVISOR = 10;
+
+    private ProcessScheduler() {
+    }
+
+    /**
+     * Executes the given task once after the given delay.
+     *
+     * @return a {@link Future} which completes once the task has been executed.
+     */
+    static Future<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return new Task(task, 0, false, false).arm(unit.toNanos(delay));
+    }
+
+    /**
+     * Executes the given task periodically, starting after the initial delay. The next execution is due after the given delay
+     * counting from the end of the previous execution.
+     *
+     * @param jitter whether to add up to a tenth of the delay as random jitter to each delay. This spreads tasks scheduled at the
+     *            same time (e.g. probes of processes started together) over time.
+     * @return a {@link Future} which completes when the task is cancelled or throws an exception.
+     */
+    static Future<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit, boolean jitter) {
+        return new Task(task, unit.toNanos(delay), false, jitter).arm(unit.toNanos(initialDelay));
+    }
+
+    /**
+     * Executes the given task periodically, starting after the initial delay. Executions are due at the given rate. If an
+     * execution takes longer than the period, the next one starts late but never concurrently.
+     *
+     * @return a {@link Future} which completes when the task is cancelled or throws an exception.
+     */
+    static Future<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return new Task(task, unit.toNanos(period), true, false).arm(unit.toNanos(initialDelay));
+    }
+
+    /**
+     * A scheduled task. Cancelling the task cancels the next execution, and optionally interrupts the running one.
+     */
+    private static final class Task extends CompletableFuture<Void> {
+
+        private final Runnable runnable;
+        private final long period;
+        private final boolean fixedRate;
+        private final boolean jitter;
+
+        private volatile ScheduledFuture<?> next;
+        private volatile Thread runner;
+
+        private Task(Runnable runnable, long period, boolean fixedRate, boolean jitter) {
+            this.runnable = runnable;
+            this.period = period;
+            this.fixedRate = fixedRate;
+            this.jitter = jitter;
+        }
+
+        private Task arm(long delayNanos) {
+            long delay = delayNanos;
+            if (jitter && delay >= JITTER_DIVISOR) {
+                delay += ThreadLocalRandom.current().nextLong(delay / JITTER_DIVISOR);
+            }
+
+            next = timer.schedule(() -> workers.execute(this::run), delay, TimeUnit.NANOSECONDS);
+
+            // cancel might have happened while arming, in which case it missed the new execution.
+            if (isDone()) {
+                next.cancel(false);
+            }
+            return this;
+        }
+
+        private void run() {
+            if (isDone()) {
+                return;
+            }
+
+            long started = System.nanoTime();
+            runner = Thread.currentThread();
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                // same as with a ScheduledExecutorService, a failing task is not executed again.
+                completeExceptionally(t);
+                return;
+            } finally {
+                runner = null;
+            }
+
+            if (period <= 0) {
+                complete(null);
+            } else if (!isDone()) {
+                arm(fixedRate ? Math.max(0, period - (System.nanoTime() - started)) : period);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean result = super.cancel(mayInterruptIfRunning);
+
+            ScheduledFuture<?> scheduled = next;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+
+            Thread running = runner;
+            if (mayInterruptIfRunning && running != null) {
+                running.interrupt();
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package io.bdeploy.pcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import io.bdeploy.interfaces.configuration.pcu.ProcessResourceUsageDto;
+import io.bdeploy.pcu.ProcessResourceSampler.Sample;
+
+class ProcessResourceHistoryTest {
+
+    private static Sample sample(long timestamp, long cpuMillis, long rss) {
+        Sample s = new Sample();
+        s.timestamp = timestamp;
+        s.cpuNanos = cpuMillis * 1_000_000;
+        s.rssBytes = rss;
+        s.fileDescriptors = 10;
+        s.threads = 2;
+        return s;
+    }
+
+    @Test
+    void testCpuAndLast() {
+        ProcessResourceHistory history = new ProcessResourceHistory();
+        assertNull(history.getLast());
+
+        history.add(sample(1000, 0, 100), 1000);
+        assertEquals(-1, history.getLast().cpuPercent);
+
+        // half a second of CPU time within a second.
+        history.add(sample(2000, 500, 200), 1000);
+        assertEquals(50, history.getLast().cpuPercent, 0.001);
+        assertEquals(200, history.getLast().rssBytes);
+
+        // a child exiting reduces the accumulated CPU time of the tree.
+        history.add(sample(3000, 100, 200), 1000);
+        assertEquals(0, history.getLast().cpuPercent, 0.001);
+    }
+
+    @Test
+    void testRingBufferAndDownsampling() {
+        ProcessResourceHistory history = new ProcessResourceHistory();
+        int total = ProcessResourceHistory.RECENT_SAMPLES + 10;
+        for (int i = 0; i < total; ++i) {
+            history.add(sample(i * 1000L, i * 100L, i), 1000);
+        }
+
+        ProcessResourceUsageDto dto = history.toDto();
+        assertEquals(ProcessResourceHistory.RECENT_SAMPLES, dto.recent.timestamps.length);
+        assertEquals(10_000, dto.recent.timestamps[0]);
+        assertEquals((total - 1) * 1000L, dto.recent.timestamps[dto.recent.timestamps.length - 1]);
+        assertEquals(1000, dto.recent.interval);
+
+        assertEquals(total / ProcessResourceHistory.DOWNSAMPLE_FACTOR, dto.downsampled.timestamps.length);
+        assertEquals(1000L * ProcessResourceHistory.DOWNSAMPLE_FACTOR, dto.downsampled.interval);
+
+        // the maximum memory of the combined samples is kept.
+        assertEquals(ProcessResourceHistory.DOWNSAMPLE_FACTOR - 1, dto.downsampled.rssBytes[0]);
+        assertEquals(10, dto.downsampled.cpuPercent[1], 0.001);
+    }
+
+}
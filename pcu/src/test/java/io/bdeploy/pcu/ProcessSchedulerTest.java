@@ -0,0 +1,79 @@
+package io.bdeploy.pcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class ProcessSchedulerTest {
+
+    @Test
+    void testSchedule() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        Future<?> task = ProcessScheduler.schedule(count::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+
+        task.get(5, TimeUnit.SECONDS);
+        assertTrue(task.isDone());
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    void testFixedDelayAndCancel() throws Exception {
+        CountDownLatch executed = new CountDownLatch(3);
+        AtomicInteger count = new AtomicInteger();
+        Future<?> task = ProcessScheduler.scheduleWithFixedDelay(() -> {
+            count.incrementAndGet();
+            executed.countDown();
+        }, 0, 10, TimeUnit.MILLISECONDS, true);
+
+        assertTrue(executed.await(5, TimeUnit.SECONDS));
+        assertFalse(task.isDone());
+
+        task.cancel(false);
+        assertTrue(task.isCancelled());
+
+        int cancelledAt = count.get();
+        Thread.sleep(100);
+        assertTrue(count.get() <= cancelledAt + 1); // one execution might have been in flight.
+    }
+
+    @Test
+    void testCancelInterruptsBlockingTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Future<?> task = ProcessScheduler.scheduleAtFixedRate(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        task.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFailingTaskStops() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        Future<?> task = ProcessScheduler.scheduleWithFixedDelay(() -> {
+            count.incrementAndGet();
+            throw new IllegalStateException("Failure");
+        }, 0, 10, TimeUnit.MILLISECONDS, false);
+
+        assertThrows(ExecutionException.class, () -> task.get(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, count.get());
+    }
+
+}
@@ -1,6 +1,7 @@
 package io.bdeploy.ui;
 
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import org.glassfish.jersey.process.internal.RequestContext;
@@ -43,16 +44,70 @@ public class RequestScopedNamedDaemonThreadFactory extends NamedDaemonThreadFact
 
     @Override
     public Thread newThread(Runnable r) {
-        RequestContext scope = reqScope.get().referenceCurrent();
-        ObjectScope objscope = scopeService.getObjectScope();
-        return super.newThread(() -> {
-            if (tx != null) {
-                tx.detachThread();
+        return super.newThread(bindToCurrentScope(reqScope, tx, scopeService, r));
+    }
+
+    /**
+     * Binds the given {@link Runnable} to the current request's context. Must be called on the thread running the request, the
+     * returned {@link Runnable} can then be run on any other thread.
+     * <p>
+     * The request's context is referenced until the task has run. A task which will never run must be discarded to release the
+     * reference, see {@link ScopedTask#discard()}.
+     */
+    static ScopedTask bindToCurrentScope(Provider<RequestScope> reqScope, BHiveTransactions tx, JerseyScopeService scopeService,
+            Runnable r) {
+        return new ScopedTask(reqScope, reqScope.get().referenceCurrent(), tx, scopeService, r);
+    }
+
+    /**
+     * A task bound to a request's context, which is run or discarded exactly once.
+     */
+    static final class ScopedTask implements Runnable {
+
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private final Provider<RequestScope> reqScope;
+        private final RequestContext scope;
+        private final ObjectScope objscope;
+        private final BHiveTransactions tx;
+        private final JerseyScopeService scopeService;
+        private final Runnable task;
+
+        private ScopedTask(Provider<RequestScope> reqScope, RequestContext scope, BHiveTransactions tx,
+                JerseyScopeService scopeService, Runnable task) {
+            this.reqScope = reqScope;
+            this.scope = scope;
+            this.objscope = scopeService.getObjectScope();
+            this.tx = tx;
+            this.scopeService = scopeService;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (!done.compareAndSet(false, true)) {
+                return; // discarded already.
             }
 
-            scopeService.setScope(objscope);
-            reqScope.get().runInScope(scope, r::run);
-        });
+            try {
+                if (tx != null) {
+                    tx.detachThread();
+                }
+
+                scopeService.setScope(objscope);
+                reqScope.get().runInScope(scope, task::run);
+            } finally {
+                scope.release();
+            }
+        }
+
+        /**
+         * Releases the request's context in case the task did not run (yet). The task will not run afterwards.
+         */
+        void discard() {
+            if (done.compareAndSet(false, true)) {
+                scope.release();
+            }
+        }
     }
 
 }
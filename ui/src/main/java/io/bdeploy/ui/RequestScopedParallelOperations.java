@@ -6,39 +6,88 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Supplier;
+import java.util.concurrent.Semaphore;
 
 import org.glassfish.jersey.process.internal.RequestScope;
 
 import io.bdeploy.bhive.BHiveTransactions;
 import io.bdeploy.common.util.FutureHelper;
 import io.bdeploy.jersey.JerseyScopeService;
+import io.bdeploy.ui.RequestScopedNamedDaemonThreadFactory.ScopedTask;
 import jakarta.inject.Provider;
 
 public class RequestScopedParallelOperations {
 
-    private static final int MAX_OPS = 4;
+    /** Concurrency limit for bulk operations, which all work on the same (local) resources */
+    public static final int MAX_BULK_OPS = 4;
+
+    /** Marker for operations without concurrency limit */
+    public static final int UNLIMITED = -1;
 
     private RequestScopedParallelOperations() {
     }
 
     public static void runAndAwaitAll(String id, Collection<Runnable> actions, Provider<RequestScope> scope, BHiveTransactions tx,
             JerseyScopeService scopeService) {
-        // use the id plus a number for each new thread.
-        AtomicLong threadNum = new AtomicLong(0);
-        Supplier<String> threadId = () -> id + "-" + threadNum.incrementAndGet();
+        runAndAwaitAll(id, actions, scope, tx, scopeService, UNLIMITED);
+    }
 
-        // create a pool with a fixed size, which is capable of inheriting the current request scope.
-        try (ExecutorService pool = Executors.newFixedThreadPool(MAX_OPS,
-                new RequestScopedNamedDaemonThreadFactory(scope, tx, scopeService, threadId))) {
+    /**
+     * Runs all actions in parallel, each on its own virtual thread which inherits the current request scope, and waits for all
+     * of them to complete.
+     * <p>
+     * Remote calls to different targets (e.g. one per node) should run without limit, so that the total time is bound by the
+     * slowest target. Actions which all work on the same target should limit their concurrency to not overload it.
+     * <p>
+     * If the calling thread is interrupted while waiting, all actions which are still running are interrupted as well.
+     *
+     * @param maxConcurrent the maximum amount of actions running at the same time, or {@link #UNLIMITED}.
+     */
+    public static void runAndAwaitAll(String id, Collection<Runnable> actions, Provider<RequestScope> scope, BHiveTransactions tx,
+            JerseyScopeService scopeService, int maxConcurrent) {
+        Semaphore limit = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
 
-            // submit all tasks and map to their result.
+        // use the id plus a number for each new thread. threads are created on demand per action.
+        ExecutorService pool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(id + "-", 1).factory());
+        List<ScopedTask> scoped = new ArrayList<>();
+        try {
             List<Future<?>> tasks = new ArrayList<>();
-            tasks.addAll(actions.stream().map(pool::submit).toList());
+            for (Runnable action : actions) {
+                // binding to the scope must happen on this thread, which is the one running in the request.
+                ScopedTask task = RequestScopedNamedDaemonThreadFactory.bindToCurrentScope(scope, tx, scopeService,
+                        () -> runLimited(limit, action));
+                scoped.add(task);
+                tasks.add(pool.submit(task));
+            }
 
-            // wait for all tasks and shutdown the pool.
+            // wait for all tasks.
             FutureHelper.awaitAll(tasks);
+        } finally {
+            // all tasks are done unless we have been interrupted, in which case stragglers are cancelled.
+            pool.shutdownNow();
+
+            // tasks which did not start will never run, and need to release the request's context.
+            scoped.forEach(ScopedTask::discard);
+        }
+    }
+
+    private static void runLimited(Semaphore limit, Runnable action) {
+        if (limit == null) {
+            action.run();
+            return;
+        }
+
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to run", e);
+        }
+
+        try {
+            action.run();
+        } finally {
+            limit.release();
         }
     }
 
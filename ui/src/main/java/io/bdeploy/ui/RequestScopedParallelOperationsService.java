@@ -19,8 +19,19 @@ public class RequestScopedParallelOperationsService {
     @Inject
     private JerseyScopeService jss;
 
+    /**
+     * Runs all actions in parallel without limit, see {@link RequestScopedParallelOperations}. Meant for actions which each
+     * target a different remote, e.g. one action per node.
+     */
     public void runAndAwaitAll(String id, Collection<Runnable> runnables, BHiveTransactions tx) {
         RequestScopedParallelOperations.runAndAwaitAll(id, runnables, reqScope, tx, jss);
     }
 
+    /**
+     * Runs all actions in parallel, but never more than the given amount at the same time.
+     */
+    public void runAndAwaitAll(String id, Collection<Runnable> runnables, BHiveTransactions tx, int maxConcurrent) {
+        RequestScopedParallelOperations.runAndAwaitAll(id, runnables, reqScope, tx, jss, maxConcurrent);
+    }
+
 }
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Set;
@@ -21,13 +22,12 @@ import io.bdeploy.bhive.BHiveExecution;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.op.CopyOperation;
-import io.bdeploy.bhive.op.ExportOperation;
-import io.bdeploy.bhive.op.ExportTreeOperation;
+import io.bdeploy.bhive.op.ExportZipOperation;
+import io.bdeploy.bhive.op.ManifestLoadOperation;
 import io.bdeploy.bhive.op.ObjectListOperation;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.common.util.UuidHelper;
-import io.bdeploy.common.util.ZipHelper;
 import io.bdeploy.ui.api.DownloadService;
 import io.bdeploy.ui.api.Minion;
 import jakarta.inject.Inject;
@@ -64,6 +64,9 @@ public class DownloadServiceImpl implements DownloadService {
     @Inject
     private DownloadTokenCache tokenCache;
 
+    @Inject
+    private DownloadZipCache zipCache;
+
     @Override
     public Response download(String token) {
         // Check if we still know this file
@@ -195,6 +198,60 @@ public class DownloadServiceImpl implements DownloadService {
         return responeBuilder.build();
     }
 
+    /**
+     * Creates a new response to serve a file from the {@link DownloadZipCache}. In contrast to
+     * {@link #serveFile(Path, String)}, the file is kept once served.
+     */
+    private static Response serveCachedFile(Path file, String name) {
+        ResponseBuilder responeBuilder = Response.ok((StreamingOutput) output -> {
+            try (InputStream is = Files.newInputStream(file)) {
+                is.transferTo(output);
+            }
+        }, MediaType.APPLICATION_OCTET_STREAM);
+        ContentDispositionBuilder<?, ?> builder = ContentDisposition.type(ATTACHMENT_DISPOSITION);
+        builder.size(file.toFile().length()).fileName(name);
+        responeBuilder.header(HttpHeaders.CONTENT_DISPOSITION, builder.build());
+        responeBuilder.header(HttpHeaders.CONTENT_LENGTH, file.toFile().length());
+        return responeBuilder.build();
+    }
+
+    /**
+     * Creates a new response serving the given tree as ZIP. The ZIP is written while reading the tree from the {@link BHive}, so
+     * the download starts right away. Repeated downloads of the same tree are served from the {@link DownloadZipCache}.
+     *
+     * @param hive the {@link BHive} to use as source
+     * @param tree the tree to serve
+     * @param dirName the name of the directory within the ZIP containing the content of the tree
+     */
+    public Response serveTreeZip(BHiveExecution hive, ObjectId tree, String dirName) {
+        String cacheKey = getTreeZipCacheKey(tree, dirName);
+        Path cached = zipCache.get(cacheKey);
+        if (cached != null) {
+            return serveCachedFile(cached, dirName + ".zip");
+        }
+
+        ResponseBuilder responeBuilder = Response.ok(
+                (StreamingOutput) output -> zipCache.writeThrough(cacheKey, output, os -> writeTreeZip(hive, tree, dirName, os)),
+                MediaType.APPLICATION_OCTET_STREAM);
+
+        // the size is not known up front, the response is chunked.
+        ContentDispositionBuilder<?, ?> builder = ContentDisposition.type(ATTACHMENT_DISPOSITION);
+        builder.fileName(dirName + ".zip");
+        responeBuilder.header(HttpHeaders.CONTENT_DISPOSITION, builder.build());
+        return responeBuilder.build();
+    }
+
+    /**
+     * @param hive the {@link BHive} to use as source
+     * @param name the name of the manifest to serve
+     * @param tag the tag of the manifest to serve
+     * @see #serveTreeZip(BHiveExecution, ObjectId, String)
+     */
+    public Response serveManifestZip(BHiveExecution hive, String name, String tag) {
+        Manifest.Key key = new Manifest.Key(name, tag);
+        return serveTreeZip(hive, loadRoot(hive, key), key.directoryFriendlyName());
+    }
+
     /**
      * @param hive the {@link BHive} to use as source
      * @param name the name of the manifest to export
@@ -203,60 +260,17 @@ public class DownloadServiceImpl implements DownloadService {
      */
     public String createOriginalZipAndRegister(BHiveExecution hive, String name, String tag) {
         Manifest.Key key = new Manifest.Key(name, tag);
-        String token = createNewToken();
-        Path targetFile = getStoragePath(token);
 
-        try {
-            // build ZIP from key.
-            Path tmpFile = Files.createTempFile(minion.getTempDir(), "sw-", ".zip");
-            Path tmpFolder = minion.getTempDir().resolve(token);
-            try {
-                // add once more the directoryFriendlyName, as it should be included in the ZIP!
-                hive.execute(new ExportOperation().setManifest(key).setTarget(tmpFolder.resolve(key.directoryFriendlyName())));
-
-                ZipHelper.zip(tmpFile, tmpFolder);
-                Files.copy(tmpFile, targetFile);
-            } finally {
-                try {
-                    PathHelper.deleteIfExistsRetry(tmpFile);
-                    PathHelper.deleteRecursiveRetry(tmpFolder);
-                } catch (Exception e) {
-                    log.warn("Cannot clean temporary files after packaging download", e);
-                }
-            }
-        } catch (IOException e) {
-            throw new WebApplicationException("Error packaging download", e);
-        }
-        registerForDownload(token, key.directoryFriendlyName() + ".zip");
-        return token;
+        // add once more the directoryFriendlyName, as it should be included in the ZIP!
+        return downloadBHiveContent(hive, loadRoot(hive, key), key.directoryFriendlyName());
     }
 
     public String downloadBHiveContent(BHiveExecution hive, ObjectId id, String dirName) {
-        String token = createNewToken();
-        Path targetFile = getStoragePath(token);
-
-        try {
-            Path tmpFile = Files.createTempFile(minion.getTempDir(), "", ".zip");
-            Path tmpFolder = minion.getTempDir().resolve(token);
-            try {
-                // add once more the dirName, as it should be included in the ZIP!
-                hive.execute(new ExportTreeOperation().setSourceTree(id).setTargetPath(tmpFolder.resolve(dirName)));
-
-                ZipHelper.zip(tmpFile, tmpFolder);
-                Files.copy(tmpFile, targetFile);
-            } finally {
-                try {
-                    PathHelper.deleteIfExistsRetry(tmpFile);
-                    PathHelper.deleteRecursiveRetry(tmpFolder);
-                } catch (Exception e) {
-                    log.warn("Cannot clean temporary files after packaging download", e);
-                }
+        return registerCached(getTreeZipCacheKey(id, dirName), dirName + ".zip", target -> {
+            try (OutputStream os = Files.newOutputStream(target)) {
+                writeTreeZip(hive, id, dirName, os);
             }
-        } catch (IOException e) {
-            throw new WebApplicationException("Error packaging download", e);
-        }
-        registerForDownload(token, dirName + ".zip");
-        return token;
+        });
     }
 
     /**
@@ -268,22 +282,59 @@ public class DownloadServiceImpl implements DownloadService {
     public String createManifestZipAndRegister(BHiveExecution hive, String name, String tag) {
         Manifest.Key key = new Manifest.Key(name, tag);
 
-        // Determine required objects
-        Set<ObjectId> objectIds = hive.execute(new ObjectListOperation().addManifest(key));
+        // the ZIP is a BHive containing the manifest, thus it depends on the key as well as the content.
+        String cacheKey = "hive:" + key + ":" + loadRoot(hive, key);
+        return registerCached(cacheKey, key.directoryFriendlyName() + ".zip", target -> {
+            // Determine required objects
+            Set<ObjectId> objectIds = hive.execute(new ObjectListOperation().addManifest(key));
 
-        // Copy objects into the target hive
+            // Copy objects into the target hive
+            URI targetUri = UriBuilder.fromUri("jar:" + target.toUri()).build();
+            try (BHive zipHive = new BHive(targetUri, null, new ActivityReporter.Null())) {
+                CopyOperation op = new CopyOperation().setDestinationHive(zipHive);
+                op.addManifest(key);
+                objectIds.forEach(op::addObject);
+                hive.execute(op);
+            }
+        });
+    }
 
+    /**
+     * Places a file from the {@link DownloadZipCache} in the download directory and registers it for download. The file is
+     * linked where possible, so registering does not require to copy the file.
+     */
+    private String registerCached(String cacheKey, String fileName, DownloadZipCache.EntryCreator creator) {
         String token = createNewToken();
         Path targetFile = getStoragePath(token);
-        URI targetUri = UriBuilder.fromUri("jar:" + targetFile.toUri()).build();
-        try (BHive zipHive = new BHive(targetUri, null, new ActivityReporter.Null())) {
-            CopyOperation op = new CopyOperation().setDestinationHive(zipHive);
-            op.addManifest(key);
-            objectIds.forEach(op::addObject);
-            hive.execute(op);
+        try {
+            Path cached = zipCache.computeIfAbsent(cacheKey, creator);
+            try {
+                Files.createLink(targetFile, cached);
+            } catch (FileSystemException | UnsupportedOperationException e) {
+                log.debug("Cannot link {} to {}, falling back to copy", cached, targetFile, e);
+                Files.copy(cached, targetFile);
+            }
+        } catch (IOException e) {
+            throw new WebApplicationException("Error packaging download", e);
         }
-        registerForDownload(token, key.directoryFriendlyName() + ".zip");
+        registerForDownload(token, fileName);
         return token;
     }
 
+    private static void writeTreeZip(BHiveExecution hive, ObjectId tree, String dirName, OutputStream output) {
+        hive.execute(new ExportZipOperation().setSourceTree(tree).setPrefix(dirName).setOutput(output));
+    }
+
+    private static String getTreeZipCacheKey(ObjectId tree, String dirName) {
+        return "tree:" + tree + ":" + dirName;
+    }
+
+    private static ObjectId loadRoot(BHiveExecution hive, Manifest.Key key) {
+        Manifest mf = hive.execute(new ManifestLoadOperation().setManifest(key));
+        if (mf == null) {
+            throw new WebApplicationException("Cannot find " + key, Status.NOT_FOUND);
+        }
+        return mf.getRoot();
+    }
+
 }
@@ -0,0 +1,306 @@
+package io.bdeploy.ui.api.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+import org.jvnet.hk2.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Striped;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.UuidHelper;
+import io.bdeploy.ui.api.Minion;
+import jakarta.inject.Inject;
+
+/**
+ * Keeps finished ZIP archives on disk, so repeated downloads of the same content are served without creating them again.
+ * <p>
+ * Entries are identified by a key describing their content, e.g. the root tree of a manifest. The cache is bounded by the total
+ * size of its entries, the least recently used entries are removed first. Entries used recently are kept in any case, as they
+ * might still be served.
+ */
+@Service
+public class DownloadZipCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DownloadZipCache.class);
+
+    /** The total size of all entries, above which entries are removed. */
+    private static final long MAX_CACHE_SIZE = Long.getLong("bdeploy.download.cache.size", 2L * 1024 * 1024 * 1024);
+
+    /** Entries used within this time are never removed. Matches the time a download token is valid. */
+    private static final long IN_USE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String ENTRY_SUFFIX = ".zip";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Striped<Lock> locks = Striped.lock(16);
+
+    @Inject
+    private Minion minion;
+
+    /**
+     * Creates the file of an entry.
+     */
+    @FunctionalInterface
+    public interface EntryCreator {
+
+        /**
+         * @param target the file to create, which does not exist yet.
+         */
+        public void create(Path target) throws IOException;
+    }
+
+    /**
+     * Writes the content of an entry to a stream.
+     */
+    @FunctionalInterface
+    public interface EntryWriter {
+
+        public void write(OutputStream output) throws IOException;
+    }
+
+    /**
+     * @param key the key describing the content of the entry.
+     * @return the cached entry, or <code>null</code> if the entry is not (yet) cached.
+     */
+    public Path get(String key) {
+        Path entry = getEntryPath(key);
+        if (!PathHelper.exists(entry)) {
+            return null;
+        }
+
+        touch(entry);
+        return entry;
+    }
+
+    /**
+     * Returns the cached entry, creating it if required. Concurrent calls for the same key create the entry only once.
+     *
+     * @param key the key describing the content of the entry.
+     * @param creator creates the entry in case it is not cached.
+     * @return the cached entry.
+     */
+    public Path computeIfAbsent(String key, EntryCreator creator) throws IOException {
+        Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            Path entry = get(key);
+            if (entry != null) {
+                return entry;
+            }
+
+            Path tmp = createTempFile();
+            try {
+                creator.create(tmp);
+                return commit(key, tmp);
+            } finally {
+                PathHelper.deleteIfExistsRetry(tmp);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the content of an entry to the given stream, keeping a copy in the cache while writing. The copy is added to the
+     * cache only if the content is written completely. Problems writing or adding the copy never affect writing to the given
+     * stream.
+     *
+     * @param key the key describing the content of the entry.
+     * @param output the stream to write to.
+     * @param writer writes the content.
+     */
+    public void writeThrough(String key, OutputStream output, EntryWriter writer) throws IOException {
+        Path tmp = createTempFile();
+        try {
+            OutputStream copy;
+            try {
+                copy = Files.newOutputStream(tmp);
+            } catch (IOException e) {
+                log.warn("Cannot write to download cache, continuing without: {}", e.toString());
+                writer.write(output);
+                return;
+            }
+
+            CopyingOutputStream copying = new CopyingOutputStream(output, copy);
+            try {
+                writer.write(copying);
+                copying.flush();
+            } finally {
+                copying.close();
+            }
+
+            if (copying.isCopyComplete()) {
+                commitCopy(key, tmp);
+            }
+        } finally {
+            PathHelper.deleteIfExistsRetry(tmp);
+        }
+    }
+
+    private void commitCopy(String key, Path tmp) {
+        Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            commit(key, tmp);
+        } catch (Exception e) {
+            // the content has been written already, the next download will try to cache it again.
+            log.warn("Cannot add {} to download cache", key, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path commit(String key, Path tmp) throws IOException {
+        Path entry = getEntryPath(key);
+        try {
+            Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        evict();
+        return entry;
+    }
+
+    /**
+     * Removes the least recently used entries until the cache does not exceed its maximum size anymore.
+     */
+    private synchronized void evict() {
+        List<Path> entries;
+        try (Stream<Path> list = Files.list(getCacheDir())) {
+            entries = list.filter(p -> p.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .sorted(Comparator.comparingLong(p -> p.toFile().lastModified())).toList();
+        } catch (IOException e) {
+            log.warn("Cannot list download cache", e);
+            return;
+        }
+
+        long total = entries.stream().mapToLong(p -> p.toFile().length()).sum();
+        long inUse = System.currentTimeMillis() - IN_USE_MILLIS;
+        for (Path entry : entries) {
+            if (total <= MAX_CACHE_SIZE) {
+                break;
+            }
+
+            long size = entry.toFile().length();
+            if (entry.toFile().lastModified() > inUse) {
+                continue;
+            }
+
+            try {
+                Files.deleteIfExists(entry);
+                total -= size;
+            } catch (IOException e) {
+                // served right now on a system which does not allow deleting open files, next time.
+                log.debug("Cannot remove {} from download cache", entry, e);
+            }
+        }
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("Cannot update access time of {}", entry, e);
+        }
+    }
+
+    private Path createTempFile() {
+        return getCacheDir().resolve(UuidHelper.randomId() + TEMP_SUFFIX);
+    }
+
+    private Path getEntryPath(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        return getCacheDir().resolve(ObjectId.create(bytes, 0, bytes.length).getId() + ENTRY_SUFFIX);
+    }
+
+    private Path getCacheDir() {
+        // the temporary directory is cleaned on startup, so there are no leftovers from a previous run.
+        Path dir = minion.getTempDir().resolve("zip-cache");
+        PathHelper.mkdirs(dir);
+        return dir;
+    }
+
+    /**
+     * Writes to the target stream and a copy. Once writing the copy fails, only the target is written.
+     */
+    private static final class CopyingOutputStream extends OutputStream {
+
+        private final OutputStream target;
+        private final OutputStream copy;
+        private boolean failed;
+
+        private CopyingOutputStream(OutputStream target, OutputStream copy) {
+            this.target = target;
+            this.copy = copy;
+        }
+
+        boolean isCopyComplete() {
+            return !failed;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            if (!failed) {
+                try {
+                    copy.write(b, off, len);
+                } catch (IOException e) {
+                    abandonCopy(e);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+            if (!failed) {
+                try {
+                    copy.flush();
+                } catch (IOException e) {
+                    abandonCopy(e);
+                }
+            }
+        }
+
+        /**
+         * Closes the copy only, the target belongs to the caller.
+         */
+        @Override
+        public void close() {
+            try {
+                copy.close();
+            } catch (IOException e) {
+                if (!failed) {
+                    abandonCopy(e);
+                }
+            }
+        }
+
+        private void abandonCopy(IOException e) {
+            log.warn("Cannot write to download cache, continuing without: {}", e.toString());
+            failed = true;
+        }
+    }
+
+}
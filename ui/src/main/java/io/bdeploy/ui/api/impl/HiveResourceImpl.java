@@ -161,8 +161,8 @@ public class HiveResourceImpl implements HiveResource {
         ObjectId id = (dto.id != null && !dto.id.isBlank()) ? ObjectId.parse(dto.id)
                 : hive.execute(new ManifestLoadOperation().setManifest(new Manifest.Key(dto.mName, dto.mTag))).getRoot();
         return switch (dto.type) {
-            case TREE -> ds.download(ds.downloadBHiveContent(hive, id, dto.name));
-            case MANIFEST -> ds.download(ds.createOriginalZipAndRegister(hive, dto.mName, dto.mTag));
+            case TREE -> ds.serveTreeZip(hive, id, dto.name);
+            case MANIFEST -> ds.serveManifestZip(hive, dto.mName, dto.mTag);
             default -> download(hiveParam, dto.id);
         };
     }
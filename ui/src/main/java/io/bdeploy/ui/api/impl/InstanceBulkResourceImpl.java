@@ -42,6 +42,7 @@ import io.bdeploy.jersey.actions.ActionFactory;
 import io.bdeploy.jersey.actions.ActionService.ActionHandle;
 import io.bdeploy.jersey.ws.change.msg.ObjectScope;
 import io.bdeploy.ui.ProductUpdateService;
+import io.bdeploy.ui.RequestScopedParallelOperations;
 import io.bdeploy.ui.RequestScopedParallelOperationsService;
 import io.bdeploy.ui.api.InstanceBulkResource;
 import io.bdeploy.ui.api.InstanceResource;
@@ -223,7 +224,8 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
 
             // 6) run all prepared tasks.
-            rspos.runAndAwaitAll("Bulk-Update", updateRuns, hive.getTransactions());
+            rspos.runAndAwaitAll("Bulk-Update", updateRuns, hive.getTransactions(),
+                    RequestScopedParallelOperations.MAX_BULK_OPS);
 
             // 7) sync!
             syncManipulatedInstances(toSync);
@@ -251,7 +253,7 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Start", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Start", actions, hive.getTransactions(), RequestScopedParallelOperations.MAX_BULK_OPS);
 
         syncManipulatedInstances(sync.keySet());
 
@@ -282,7 +284,7 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Start", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Start", actions, hive.getTransactions(), RequestScopedParallelOperations.MAX_BULK_OPS);
 
         syncManipulatedInstances(sync.keySet());
 
@@ -313,7 +315,7 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Stop", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Stop", actions, hive.getTransactions(), RequestScopedParallelOperations.MAX_BULK_OPS);
 
         syncManipulatedInstances(sync.keySet());
 
@@ -345,7 +347,7 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Delete", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Delete", actions, hive.getTransactions(), RequestScopedParallelOperations.MAX_BULK_OPS);
 
         // now sync and fire update for all manipulated instances.
         syncManipulatedInstances(sync.keySet());
@@ -386,7 +388,7 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Push-Products", push, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Push-Products", push, hive.getTransactions(), RequestScopedParallelOperations.MAX_BULK_OPS);
 
         var actions = instances.stream().map(i -> (Runnable) () -> {
             var im = InstanceManifest.load(hive, i, null);
@@ -411,7 +413,8 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Install-Latest", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Install-Latest", actions, hive.getTransactions(),
+                RequestScopedParallelOperations.MAX_BULK_OPS);
 
         // now sync and fire update for all manipulated instances.
         syncManipulatedInstances(sync.keySet());
@@ -454,7 +457,8 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Activate-Latest", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Activate-Latest", actions, hive.getTransactions(),
+                RequestScopedParallelOperations.MAX_BULK_OPS);
 
         // now sync and fire update for all manipulated instances.
         syncManipulatedInstances(sync.keySet());
@@ -505,7 +509,8 @@ public class InstanceBulkResourceImpl implements InstanceBulkResource {
                 });
             }
 
-            rspos.runAndAwaitAll("Mass-Synchronizer", syncTasks, hive.getTransactions());
+            rspos.runAndAwaitAll("Mass-Synchronizer", syncTasks, hive.getTransactions(),
+                    RequestScopedParallelOperations.MAX_BULK_OPS);
         } else {
             // update the local stored state.
             ResourceProvider.getResource(minion.getSelf(), MasterRootResource.class, context).getNamedMaster(group)
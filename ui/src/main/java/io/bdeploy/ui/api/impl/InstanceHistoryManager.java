@@ -18,6 +18,7 @@ import io.bdeploy.common.util.StringHelper;
 import io.bdeploy.interfaces.UserInfo;
 import io.bdeploy.interfaces.configuration.pcu.ProcessState;
 import io.bdeploy.interfaces.manifest.InstanceManifest;
+import io.bdeploy.interfaces.manifest.history.InstanceManifestHistory;
 import io.bdeploy.interfaces.manifest.history.InstanceManifestHistory.Action;
 import io.bdeploy.interfaces.manifest.history.InstanceManifestHistoryRecord;
 import io.bdeploy.interfaces.manifest.history.runtime.MasterRuntimeHistoryDto;
@@ -84,9 +85,8 @@ public class InstanceHistoryManager {
             Manifest.Key nextKey = (i + 1) < (subList.size()) ? subList.get(i + 1) : null;
             result.next = nextKey != null ? nextKey.getTag() : null;
 
-            // Load history
-            InstanceManifest manifest = InstanceManifest.load(hive, instanceId, key.getTag());
-            List<HistoryEntryDto> events = loadHistory(manifest);
+            // Load history, which does not require loading the instance itself.
+            List<HistoryEntryDto> events = loadHistory(key, filter);
             result.addAll(events, filter);
 
             // Append all runtime events from this version
@@ -105,26 +105,45 @@ public class InstanceHistoryManager {
         return result;
     }
 
-    private List<HistoryEntryDto> loadHistory(InstanceManifest mf) {
+    /**
+     * Loads all history of the given version which matches the type filter. The history is read once, all at once.
+     */
+    private List<HistoryEntryDto> loadHistory(Manifest.Key key, HistoryFilterDto filter) {
         List<HistoryEntryDto> entries = new ArrayList<>();
-        String tag = mf.getKey().getTag();
-        for (InstanceManifestHistoryRecord rec : mf.getHistory(hive).getFullHistory()) {
-            HistoryEntryType type = computeType(rec.action);
-            HistoryEntryDto entry = new HistoryEntryDto(rec.timestamp, tag);
+        if (!filter.showCreateEvents && !filter.showDeploymentEvents) {
+            return entries;
+        }
 
-            UserInfo userInfo = computeUser(rec.user);
-            if (userInfo != null) {
-                entry.user = userInfo.name;
-                entry.email = userInfo.email;
+        for (InstanceManifestHistoryRecord rec : new InstanceManifestHistory(key, hive).getFullHistory()) {
+            HistoryEntryDto entry = createHistoryEntry(rec, key.getTag(), filter);
+            if (entry != null) {
+                entries.add(entry);
             }
-
-            entry.title = computeConfigTitle(rec.action, tag);
-            entry.type = type;
-            entries.add(entry);
         }
         return entries;
     }
 
+    private HistoryEntryDto createHistoryEntry(InstanceManifestHistoryRecord rec, String tag, HistoryFilterDto filter) {
+        HistoryEntryType type = computeType(rec.action);
+        if ((type == HistoryEntryType.CREATE && !filter.showCreateEvents)
+                || (type == HistoryEntryType.DEPLOYMENT && !filter.showDeploymentEvents)) {
+            // don't bother to look up the user.
+            return null;
+        }
+
+        HistoryEntryDto entry = new HistoryEntryDto(rec.timestamp, tag);
+
+        UserInfo userInfo = computeUser(rec.user);
+        if (userInfo != null) {
+            entry.user = userInfo.name;
+            entry.email = userInfo.email;
+        }
+
+        entry.title = computeConfigTitle(rec.action, tag);
+        entry.type = type;
+        return entry;
+    }
+
     private MasterRuntimeHistoryDto loadRuntimeHistory(MasterProvider provider, String group, String instanceId) {
         RemoteService svc = provider.getControllingMaster(hive, InstanceManifest.load(hive, instanceId, null).getKey());
         MasterRootResource master = ResourceProvider.getVersionedResource(svc, MasterRootResource.class, context);
@@ -15,6 +15,7 @@ import io.bdeploy.interfaces.manifest.ProductManifest;
 import io.bdeploy.interfaces.plugin.PluginManager;
 import io.bdeploy.jersey.actions.ActionFactory;
 import io.bdeploy.jersey.actions.ActionService.ActionHandle;
+import io.bdeploy.ui.RequestScopedParallelOperations;
 import io.bdeploy.ui.RequestScopedParallelOperationsService;
 import io.bdeploy.ui.api.ProductBulkResource;
 import io.bdeploy.ui.dto.BulkOperationResultDto;
@@ -80,7 +81,7 @@ public class ProductBulkResourceImpl implements ProductBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Delete", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Delete", actions, hive.getTransactions(), RequestScopedParallelOperations.MAX_BULK_OPS);
 
         ProductManifest.invalidateScanCache(hive);
         deleted.keys().asIterator().forEachRemaining(key -> changes.remove(ObjectChangeType.PRODUCT, key));
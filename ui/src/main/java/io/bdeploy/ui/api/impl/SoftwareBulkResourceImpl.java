@@ -15,6 +15,7 @@ import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.common.actions.Actions;
 import io.bdeploy.jersey.actions.ActionFactory;
 import io.bdeploy.jersey.actions.ActionService.ActionHandle;
+import io.bdeploy.ui.RequestScopedParallelOperations;
 import io.bdeploy.ui.RequestScopedParallelOperationsService;
 import io.bdeploy.ui.api.SoftwareBulkResource;
 import io.bdeploy.ui.dto.BulkOperationResultDto;
@@ -68,7 +69,7 @@ public class SoftwareBulkResourceImpl implements SoftwareBulkResource {
             }
         }).toList();
 
-        rspos.runAndAwaitAll("Bulk-Delete", actions, hive.getTransactions());
+        rspos.runAndAwaitAll("Bulk-Delete", actions, hive.getTransactions(), RequestScopedParallelOperations.MAX_BULK_OPS);
 
         deleted.keys().asIterator().forEachRemaining(key -> changes.remove(ObjectChangeType.SOFTWARE_PACKAGE, key));
 
@@ -79,6 +79,7 @@ public class UiResources {
             @Override
             protected void configure() {
                 bind(DownloadTokenCache.class).in(Singleton.class).to(DownloadTokenCache.class);
+                bind(DownloadZipCache.class).in(Singleton.class).to(DownloadZipCache.class);
                 bind(ProductTransferService.class).in(Singleton.class).to(ProductTransferService.class);
                 bind(RemoteEntryStreamRequestService.class).in(Singleton.class).to(RemoteEntryStreamRequestService.class);
                 bind(ChangeEventManager.class).in(Singleton.class).to(ChangeEventManager.class);
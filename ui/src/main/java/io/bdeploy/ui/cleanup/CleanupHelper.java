@@ -162,8 +162,9 @@ public class CleanupHelper {
         // this targets mainly "rolling" manifests which are updated (created & deleted) in a rolling
         // fashion like meta-manifests keeping track of things. Since those things are not created
         // on a central, *and* central is the one with *a lot* of hives, we do this only on non-central.
+        // incremental pruning is sufficient as only manifests are deleted, a full sweep is still done from time to time.
         if (minion.getMode() != MinionMode.CENTRAL || !group.actions.isEmpty()) {
-            hive.execute(new PruneOperation());
+            hive.execute(new PruneOperation().setIncremental(true));
         }
     }
 